@@ -0,0 +1,58 @@
+package com.github.setxpro.nfce_java.infra.persistences.model.converter;
+
+import com.github.setxpro.nfce_java.infra.services.NfceFixtures;
+import com.github.setxpro.nfce_java.infra.services.XmlService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo de gravação (compactar) e leitura (descompactar) do XML. A razão de compactação de cada
+ * tamanho de nota é impressa no início do fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlCompactadoConverterBenchmark {
+
+    @Param({"1", "20", "990"})
+    private int itens;
+
+    private final XmlCompactadoConverter converter = new XmlCompactadoConverter();
+    private String xml;
+    private byte[] compactado;
+
+    @Setup
+    public void setup() {
+        xml = new XmlService(NfceFixtures.configuracao()).gerarXmlNfce(NfceFixtures.nota(itens));
+        compactado = converter.convertToDatabaseColumn(xml);
+
+        int original = xml.getBytes(StandardCharsets.UTF_8).length;
+        System.out.printf("%n%d itens: %d -> %d bytes (%.1f%%)%n",
+                itens, original, compactado.length, 100.0 * compactado.length / original);
+    }
+
+    @Benchmark
+    public byte[] compactar() {
+        return converter.convertToDatabaseColumn(xml);
+    }
+
+    @Benchmark
+    public String descompactar() {
+        return converter.convertToEntityAttribute(compactado);
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.setxpro.nfce_java.infra.persistences.repositories;
+
+import com.github.setxpro.nfce_java.NfceJavaApplication;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.services.NfceFixtures;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gravação de uma NFC-e com itens e pagamentos pelo {@link NfceRepository}, numa transação por nota, contra
+ * H2 em memória. Os comandos JDBC preparados por nota são impressos ao fim de cada iteração.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NfceRepositoryBenchmark {
+
+    @Param({"1", "50", "500"})
+    private int itens;
+
+    private ConfigurableApplicationContext contexto;
+    private NfceRepository nfceRepository;
+    private EntityManager entityManager;
+    private TransactionTemplate transactionTemplate;
+    private Statistics statistics;
+    private int numero;
+    private long notasNaIteracao;
+
+    @Setup
+    public void setup() {
+        contexto = new SpringApplicationBuilder(NfceJavaApplication.class)
+                .web(WebApplicationType.NONE)
+                // Argumentos de linha de comando: precisam sobrepor o application.properties (show-sql)
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.jpa.properties.hibernate.generate_statistics=true",
+                        "--logging.level.root=WARN");
+        nfceRepository = contexto.getBean(NfceRepository.class);
+        entityManager = contexto.getBean(EntityManager.class);
+        transactionTemplate = new TransactionTemplate(contexto.getBean(PlatformTransactionManager.class));
+        statistics = contexto.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Setup(Level.Iteration)
+    public void iniciarIteracao() {
+        statistics.clear();
+        notasNaIteracao = 0;
+    }
+
+    @Benchmark
+    public Nfce salvar() {
+        Nfce nfce = NfceFixtures.nota(itens);
+        nfce.setId(null);
+        nfce.setNumero(++numero);
+        nfce.setChaveAcesso(null);
+        notasNaIteracao++;
+        return transactionTemplate.execute(status -> nfceRepository.saveAndFlush(nfce));
+    }
+
+    @TearDown(Level.Iteration)
+    public void encerrarIteracao() {
+        System.out.printf("%n%d itens: %.1f comandos JDBC por nota%n",
+                itens, (double) statistics.getPrepareStatementCount() / notasNaIteracao);
+
+        // Mantém o banco pequeno entre as iterações
+        transactionTemplate.executeWithoutResult(status -> {
+            entityManager.createQuery("DELETE FROM ItemNfce").executeUpdate();
+            entityManager.createQuery("DELETE FROM PagamentoNfce").executeUpdate();
+            entityManager.createQuery("DELETE FROM Nfce").executeUpdate();
+        });
+    }
+
+    @TearDown
+    public void encerrar() {
+        contexto.close();
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.services.xml.CanonicalizadorXml;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Canonicalização, assinatura de uma nota na thread atual e assinatura de um lote de 50 notas no pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssinaturaDigitalServiceBenchmark {
+
+    private static final int TAMANHO_LOTE = 50;
+
+    @Param({"1", "20", "990"})
+    private int itens;
+
+    private AssinaturaDigitalService assinaturaDigitalService;
+    private String xml;
+    private List<String> lote;
+
+    @Setup
+    public void setup() {
+        NfceConfiguration configuracao = NfceFixtures.configuracao();
+        assinaturaDigitalService = new AssinaturaDigitalService(CertificadoTesteFactory.servico(configuracao));
+        xml = new XmlService(configuracao).gerarXmlNfce(NfceFixtures.nota(itens));
+        lote = new ArrayList<>(TAMANHO_LOTE);
+        for (int i = 0; i < TAMANHO_LOTE; i++) {
+            lote.add(xml);
+        }
+    }
+
+    @TearDown
+    public void encerrar() {
+        assinaturaDigitalService.encerrar();
+    }
+
+    @Benchmark
+    public CanonicalizadorXml.Resultado canonicalizar() {
+        return CanonicalizadorXml.canonicalizar(xml, "infNFe");
+    }
+
+    @Benchmark
+    public String assinar() {
+        return assinaturaDigitalService.assinarNaThreadAtual(xml, "infNFe");
+    }
+
+    @Benchmark
+    public List<String> assinarLote() {
+        return assinaturaDigitalService.assinarLote(lote, "infNFe");
+    }
+}
@@ -0,0 +1,56 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implementação atual contra a anterior ({@link ChaveAcessoLegado}) na geração e na validação.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChaveAcessoServiceBenchmark {
+
+    private final ChaveAcessoService chaveAcessoService = new ChaveAcessoService();
+    private final LocalDateTime dataEmissao = NfceFixtures.DATA_EMISSAO;
+    private final String chave = chaveAcessoService.gerarChaveAcesso(35, dataEmissao, NfceFixtures.CNPJ_EMITENTE,
+            "65", 1, 123456, 1, 12345678);
+
+    @Benchmark
+    public String gerarChaveAcessoNfce() {
+        return chaveAcessoService.gerarChaveAcessoNfce(35, dataEmissao, NfceFixtures.CNPJ_EMITENTE, 1, 123456, 1);
+    }
+
+    @Benchmark
+    public String gerarChaveAcesso() {
+        return chaveAcessoService.gerarChaveAcesso(35, dataEmissao, NfceFixtures.CNPJ_EMITENTE, "65", 1, 123456, 1, 12345678);
+    }
+
+    @Benchmark
+    public String gerarChaveAcessoLegado() {
+        return ChaveAcessoLegado.gerarChaveAcesso(35, dataEmissao, NfceFixtures.CNPJ_EMITENTE, "65", 1, 123456, 1, 12345678);
+    }
+
+    @Benchmark
+    public boolean validarChaveAcesso() {
+        return chaveAcessoService.validarChaveAcesso(chave);
+    }
+
+    @Benchmark
+    public boolean validarChaveAcessoLegado() {
+        return ChaveAcessoLegado.validarChaveAcesso(chave);
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceRequestDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Etapas de CPU de um bloco de NFC-e (totais, chave, QR Code e XML) no fork-join, de 1 até N threads.
+ * A gravação fica de fora: só ela depende do banco e não escala com os núcleos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmissaoParalelaBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    private int paralelismo;
+
+    @Param({"500"})
+    private int notas;
+
+    @Param({"20"})
+    private int itens;
+
+    private EmissaoParalelaService emissaoParalelaService;
+    private List<NfceRequestDto> requests;
+    private int[] numeros;
+
+    @Setup
+    public void setup() {
+        NfceConfiguration configuracao = NfceFixtures.configuracao();
+        configuracao.getEmissao().setParalelismoCpu(paralelismo);
+        NfceService nfceService = new NfceService(null, null, configuracao, new ChaveAcessoService(),
+                new QrCodeService(configuracao), new XmlService(configuracao), null, null,
+                new ContingenciaService(configuracao), null,
+                new TributacaoService(new DefaultResourceLoader(), configuracao));
+        emissaoParalelaService = new EmissaoParalelaService(nfceService, null, configuracao);
+
+        requests = new ArrayList<>(notas);
+        numeros = new int[notas];
+        for (int i = 0; i < notas; i++) {
+            NfceRequestDto request = NfceFixtures.requisicao(itens);
+            request.setNumero(null);
+            requests.add(request);
+            numeros[i] = i + 1;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        emissaoParalelaService.encerrar();
+    }
+
+    @Benchmark
+    public NfceService.NfceMontada[] montarBloco() {
+        return emissaoParalelaService.montar(requests, numeros, new EmissaoParalelaService.Resultado[notas]);
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceRequestDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceResponseDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapeamento da requisição, cálculo de totais e mapeamento da resposta, sem acesso ao banco.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NfceServiceBenchmark {
+
+    @Param({"1", "20", "990"})
+    private int itens;
+
+    private NfceService nfceService;
+    private NfceRequestDto request;
+    private Nfce nfce;
+
+    @Setup
+    public void setup() {
+        NfceConfiguration configuracao = NfceFixtures.configuracao();
+        nfceService = new NfceService(null, null, configuracao, new ChaveAcessoService(),
+                new QrCodeService(configuracao), new XmlService(configuracao), null, null,
+                new ContingenciaService(configuracao), null,
+                new TributacaoService(new DefaultResourceLoader(), configuracao));
+        request = NfceFixtures.requisicao(itens);
+        nfce = mapearECalcularTotais();
+    }
+
+    @Benchmark
+    public Nfce mapearECalcularTotais() {
+        Nfce nova = new Nfce();
+        nfceService.mapearRequestParaEntity(request, nova);
+        nfceService.calcularTotais(nova);
+        return nova;
+    }
+
+    @Benchmark
+    public NfceResponseDto mapearEntityParaResponse() {
+        return nfceService.mapearEntityParaResponse(nfce);
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.google.zxing.WriterException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QrCodeServiceBenchmark {
+
+    private final QrCodeService qrCodeService = new QrCodeService(NfceFixtures.configuracao());
+    private final QrCodeService qrCodeServiceV2 = new QrCodeService(configuracaoComCsc());
+
+    private Nfce nfce;
+    private BigDecimal valorTotal;
+    private String urlQrCode;
+
+    @Setup
+    public void setup() {
+        nfce = NfceFixtures.nota(20);
+        valorTotal = nfce.getValorTotalNota().setScale(2, RoundingMode.HALF_UP);
+        urlQrCode = gerarUrlQrCode();
+    }
+
+    @Benchmark
+    public String gerarUrlQrCode() {
+        return qrCodeService.gerarUrlQrCode(nfce.getChaveAcesso(), nfce.getAmbiente().getCodigo(),
+                nfce.getDataEmissao(), valorTotal, nfce.getDestinatarioCpfCnpj());
+    }
+
+    @Benchmark
+    public String gerarUrlQrCodeV2() {
+        return qrCodeServiceV2.gerarUrlQrCodeV2(nfce.getChaveAcesso(), nfce.getAmbiente().getCodigo());
+    }
+
+    @Benchmark
+    public byte[] gerarImagemQrCode() throws WriterException {
+        return qrCodeService.gerarImagemQrCode(urlQrCode, 300, 300);
+    }
+
+    @Benchmark
+    public byte[] gerarImagemQrCodeLegado() throws WriterException, IOException {
+        return QrCodeImagemLegado.gerarImagemQrCode(urlQrCode, 300, 300);
+    }
+
+    @Benchmark
+    public byte[] gerarRasterEscPos() throws WriterException {
+        return qrCodeService.gerarRasterEscPos(urlQrCode, 256);
+    }
+
+    @Benchmark
+    public String gerarSvgQrCode() throws WriterException {
+        return qrCodeService.gerarSvgQrCode(urlQrCode, 300, 300);
+    }
+
+    private static NfceConfiguration configuracaoComCsc() {
+        NfceConfiguration configuracao = NfceFixtures.configuracao();
+        configuracao.getQrcode().getCsc().setId(1);
+        configuracao.getQrcode().getCsc().setToken("0123456789ABCDEF0123456789ABCDEF01234567");
+        return configuracao;
+    }
+}
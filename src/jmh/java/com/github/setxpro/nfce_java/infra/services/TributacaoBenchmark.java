@@ -0,0 +1,76 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.services.tributacao.LeitorRegras;
+import com.github.setxpro.nfce_java.infra.services.tributacao.RegraTributaria;
+import com.github.setxpro.nfce_java.infra.services.tributacao.TabelaTributaria;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tributação de uma nota inteira pela tabela compilada: a tabela do projeto e a mesma tabela com milhares de
+ * regras por NCM, para mostrar que o custo por item não depende do tamanho da tabela.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TributacaoBenchmark {
+
+    @Param({"1", "990"})
+    private int itens;
+
+    @Param({"0", "10000"})
+    private int regrasPorNcm;
+
+    @Param({"SIMPLES_NACIONAL", "REGIME_NORMAL"})
+    private Nfce.RegimeTributario regime;
+
+    private TabelaTributaria tabela;
+    private Nfce nfce;
+
+    @Setup
+    public void setup() throws Exception {
+        List<RegraTributaria> regras;
+        try (Reader leitor = new InputStreamReader(
+                TributacaoBenchmark.class.getResourceAsStream("/tributacao/regras.csv"), StandardCharsets.UTF_8)) {
+            regras = new ArrayList<>(LeitorRegras.ler(leitor));
+        }
+        for (int i = 0; i < regrasPorNcm; i++) {
+            regras.add(new RegraTributaria("SP", Nfce.RegimeTributario.REGIME_NORMAL,
+                    String.format("%08d", 30_000_000 + i), "5102", "000", 3, new BigDecimal("12.00"),
+                    "01", new BigDecimal("1.6500"), "01", new BigDecimal("7.6000"), 0));
+        }
+        tabela = TabelaTributaria.compilar(regras);
+
+        nfce = NfceFixtures.nota(itens);
+        nfce.setEmitenteRegimeTributario(regime);
+    }
+
+    /**
+     * Aplicar de novo sobre a mesma nota dá o mesmo resultado, então a nota é reaproveitada entre as chamadas.
+     */
+    @Benchmark
+    public int tributar() {
+        return tabela.tributar(nfce);
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlServiceBenchmark {
+
+    @Param({"1", "20", "990"})
+    private int itens;
+
+    private final XmlService xmlService = new XmlService(NfceFixtures.configuracao());
+    private Nfce nfce;
+
+    @Setup
+    public void setup() {
+        nfce = NfceFixtures.nota(itens);
+    }
+
+    @Benchmark
+    public String gerarXmlNfce() {
+        return xmlService.gerarXmlNfce(nfce);
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.setxpro.nfce_java.delivery.controllers;
+
+import com.github.setxpro.nfce_java.infra.services.ValidacaoLoteChaveService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+@RestController
+@RequestMapping("/api/v1/chave")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "Chave de Acesso", description = "APIs para validação de chaves de acesso")
+public class ChaveAcessoController {
+    private final ValidacaoLoteChaveService validacaoLoteChaveService;
+
+    @PostMapping(value = "/validar-lote",
+            consumes = {MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Validar chaves de acesso em lote",
+            description = "Recebe uma chave por linha e devolve, em NDJSON, as chaves inválidas com o motivo "
+                    + "(tamanho, caractere não numérico, dígito verificador, UF ou mês) e um resumo na última linha")
+    public void validarLote(InputStream entrada, HttpServletResponse response) throws IOException {
+
+        log.info("Recebida requisição de validação de chaves em lote");
+
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        ValidacaoLoteChaveService.Resumo resumo = validacaoLoteChaveService.validar(entrada, response.getOutputStream());
+
+        log.info("Validação em lote concluída - Total: {}, Inválidas: {}", resumo.total(), resumo.invalidas());
+    }
+}
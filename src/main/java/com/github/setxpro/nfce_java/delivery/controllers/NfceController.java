@@ -2,19 +2,35 @@ package com.github.setxpro.nfce_java.delivery.controllers;
 
 import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceRequestDto;
 import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceResponseDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.TransicaoLoteRequestDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.EventoNfce;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.ProcessamentoNfce;
+import com.github.setxpro.nfce_java.infra.services.EmissaoAssincronaService;
+import com.github.setxpro.nfce_java.infra.services.EmissaoLoteService;
+import com.github.setxpro.nfce_java.infra.services.IdempotenciaService;
 import com.github.setxpro.nfce_java.infra.services.NfceService;
+import com.github.setxpro.nfce_java.infra.services.TransicaoLoteService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 @RestController
 @RequestMapping("/api/v1/nfce")
@@ -22,28 +38,149 @@ import java.util.Map;
 @Slf4j
 @Tag(name = "NFC-e", description = "APIs para gerenciamento de NFC-e")
 public class NfceController {
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
     private final NfceService nfceService;
+    private final EmissaoAssincronaService emissaoAssincronaService;
+    private final EmissaoLoteService emissaoLoteService;
+    private final TransicaoLoteService transicaoLoteService;
+    private final IdempotenciaService idempotenciaService;
 
     @PostMapping
-    @Operation(summary = "Criar nova NFC-e", description = "Cria uma nova NFC-e com os dados fornecidos")
-    public ResponseEntity<NfceResponseDto> criarNfce(
-            @Valid @RequestBody NfceRequestDto request) {
+    @Operation(summary = "Criar nova NFC-e", description = "Cria uma nova NFC-e com os dados fornecidos. Com assincrono=true, "
+            + "grava a nota e responde 202; chave, XML, assinatura e transmissão seguem em segundo plano. Com o cabeçalho "
+            + "Idempotency-Key, a repetição da requisição devolve a resposta original (com Idempotent-Replayed: true) sem emitir de novo")
+    public ResponseEntity<?> criarNfce(
+            @Valid @RequestBody NfceRequestDto request,
+            @Parameter(description = "Processa chave, XML, assinatura e transmissão em segundo plano")
+            @RequestParam(defaultValue = "false") boolean assincrono,
+            @Parameter(description = "Identificador único da requisição, repetido pelo PDV nas novas tentativas")
+            @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String chaveIdempotencia) {
 
         log.info("Recebida requisição para criar NFC-e - Série: {}, Número: {}",
                 request.getSerie(), request.getNumero());
 
         try {
-            NfceResponseDto response = nfceService.criarNfce(request);
-            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+            if (assincrono) {
+                IdempotenciaService.Resultado<ProcessamentoNfce> resultado = chaveIdempotencia == null
+                        ? new IdempotenciaService.Resultado<>(emissaoAssincronaService.receber(request), false)
+                        : idempotenciaService.executar(chaveIdempotencia, List.of(true, request),
+                        ProcessamentoNfce.class, () -> emissaoAssincronaService.receber(request));
+                return ResponseEntity.accepted()
+                        .location(ServletUriComponentsBuilder.fromCurrentContextPath()
+                                .path("/api/v1/nfce/{id}/processamento")
+                                .buildAndExpand(resultado.corpo().getNfceId())
+                                .toUri())
+                        .headers(repeticao(resultado))
+                        .body(resultado.corpo());
+            }
+            IdempotenciaService.Resultado<NfceResponseDto> resultado = chaveIdempotencia == null
+                    ? new IdempotenciaService.Resultado<>(nfceService.criarNfce(request), false)
+                    : idempotenciaService.executar(chaveIdempotencia, List.of(false, request),
+                    NfceResponseDto.class, () -> nfceService.criarNfce(request));
+            return ResponseEntity.status(HttpStatus.CREATED).headers(repeticao(resultado)).body(resultado.corpo());
         } catch (IllegalArgumentException e) {
             log.error("Erro de validação ao criar NFC-e", e);
             throw e;
+        } catch (IllegalStateException e) {
+            log.error("Estado inválido ao criar NFC-e: {}", e.getMessage());
+            throw e;
         } catch (Exception e) {
             log.error("Erro interno ao criar NFC-e", e);
             throw new RuntimeException("Erro interno do servidor", e);
         }
     }
 
+    private static HttpHeaders repeticao(IdempotenciaService.Resultado<?> resultado) {
+        HttpHeaders headers = new HttpHeaders();
+        if (resultado.repetida()) {
+            headers.set(IDEMPOTENT_REPLAYED, "true");
+        }
+        return headers;
+    }
+
+    @PostMapping(value = "/lote", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Emitir NFC-e em lote",
+            description = "Recebe uma NFC-e por linha em NDJSON (aceita Content-Encoding: gzip) e devolve, em NDJSON e na "
+                    + "ordem da entrada, o id e a chave de cada nota emitida ou o erro da linha, com um resumo na última linha")
+    public void emitirLote(InputStream entrada,
+                           @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+                           HttpServletResponse response) throws IOException {
+
+        log.info("Recebida requisição de emissão de NFC-e em lote");
+
+        InputStream corpo = "gzip".equalsIgnoreCase(contentEncoding)
+                ? new GZIPInputStream(entrada, 64 * 1024)
+                : entrada;
+
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        EmissaoLoteService.Resumo resumo = emissaoLoteService.emitir(corpo, response.getOutputStream());
+
+        log.info("Emissão em lote concluída - Total: {}, Emitidas: {}, Rejeitadas: {}",
+                resumo.total(), resumo.emitidas(), resumo.rejeitadas());
+    }
+
+    @PostMapping("/lote/transicoes")
+    @Operation(summary = "Assinar, enviar ou cancelar NFC-e em lote",
+            description = "Recebe uma lista de ids ou um filtro (série, status, período) e processa a transição em blocos "
+                    + "em segundo plano. Responde 202 com o andamento, que pode ser consultado no endereço do Location")
+    public ResponseEntity<TransicaoLoteService.Progresso> iniciarTransicaoLote(
+            @Valid @RequestBody TransicaoLoteRequestDto request) {
+
+        log.info("Recebida requisição de transição em lote - Ação: {}", request.getAcao());
+
+        TransicaoLoteService.Progresso progresso = transicaoLoteService.iniciar(request);
+        return ResponseEntity.accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentContextPath()
+                        .path("/api/v1/nfce/lote/transicoes/{id}")
+                        .buildAndExpand(progresso.id())
+                        .toUri())
+                .body(progresso);
+    }
+
+    @GetMapping("/lote/transicoes/{id}")
+    @Operation(summary = "Consultar transição em lote",
+            description = "Retorna o andamento da transição em lote e o erro de cada NFC-e que falhou")
+    public ResponseEntity<TransicaoLoteService.Progresso> consultarTransicaoLote(
+            @Parameter(description = "ID da transição em lote") @PathVariable String id) {
+
+        try {
+            return ResponseEntity.ok(transicaoLoteService.consultar(id));
+        } catch (IllegalArgumentException e) {
+            log.error("Transição em lote não encontrada: {}", id);
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @GetMapping("/{id}/processamento")
+    @Operation(summary = "Consultar emissão assíncrona", description = "Retorna a última etapa concluída da emissão assíncrona")
+    public ResponseEntity<ProcessamentoNfce> consultarProcessamento(
+            @Parameter(description = "ID da NFC-e") @PathVariable Long id) {
+
+        try {
+            return ResponseEntity.ok(emissaoAssincronaService.consultar(id));
+        } catch (IllegalArgumentException e) {
+            log.error("Emissão assíncrona não encontrada: {}", id);
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @GetMapping(value = "/{id}/processamento/eventos", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Acompanhar emissão assíncrona", description = "Server-Sent Events com um evento 'etapa' a cada etapa concluída")
+    public ResponseEntity<SseEmitter> acompanharProcessamento(
+            @Parameter(description = "ID da NFC-e") @PathVariable Long id) {
+
+        try {
+            return ResponseEntity.ok(emissaoAssincronaService.acompanhar(id));
+        } catch (IllegalArgumentException e) {
+            log.error("Emissão assíncrona não encontrada: {}", id);
+            return ResponseEntity.notFound().build();
+        }
+    }
+
     @GetMapping("/{id}")
     @Operation(summary = "Buscar NFC-e por ID", description = "Retorna os dados de uma NFC-e pelo ID")
     public ResponseEntity<NfceResponseDto> buscarPorId(
@@ -60,6 +197,24 @@ public class NfceController {
         }
     }
 
+    @GetMapping(value = "/{id}/xml", produces = MediaType.APPLICATION_XML_VALUE)
+    @Operation(summary = "Baixar XML da NFC-e", description = "Retorna o XML autorizado da NFC-e ou, se ainda não autorizada, o XML assinado")
+    public ResponseEntity<String> baixarXml(
+            @Parameter(description = "ID da NFC-e") @PathVariable Long id) {
+
+        log.info("Baixando XML da NFC-e: {}", id);
+
+        try {
+            String xml = nfceService.buscarXml(id);
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"nfce-" + id + ".xml\"")
+                    .body(xml);
+        } catch (IllegalArgumentException e) {
+            log.error("XML não encontrado para NFC-e: {}", id);
+            return ResponseEntity.notFound().build();
+        }
+    }
+
     @GetMapping("/chave/{chaveAcesso}")
     @Operation(summary = "Buscar NFC-e por chave de acesso", description = "Retorna os dados de uma NFC-e pela chave de acesso")
     public ResponseEntity<NfceResponseDto> buscarPorChaveAcesso(
@@ -162,7 +317,8 @@ public class NfceController {
     }
 
     @PostMapping("/{id}/cancelar")
-    @Operation(summary = "Cancelar NFC-e", description = "Cancela uma NFC-e autorizada")
+    @Operation(summary = "Cancelar NFC-e", description = "Cancela uma NFC-e autorizada. Com a transmissão à SEFAZ "
+            + "habilitada, registra o evento de cancelamento na fila e a NFC-e passa a CANCELADA quando a SEFAZ o registrar")
     public ResponseEntity<NfceResponseDto> cancelarNfce(
             @Parameter(description = "ID da NFC-e") @PathVariable Long id,
             @RequestBody Map<String, String> request) {
@@ -182,6 +338,19 @@ public class NfceController {
         }
     }
 
+    @GetMapping("/{id}/eventos")
+    @Operation(summary = "Listar eventos da NFC-e", description = "Retorna os eventos da NFC-e (cancelamento) e a situação de cada um na SEFAZ")
+    public ResponseEntity<List<EventoNfce>> listarEventos(
+            @Parameter(description = "ID da NFC-e") @PathVariable Long id) {
+
+        try {
+            return ResponseEntity.ok(nfceService.listarEventos(id));
+        } catch (IllegalArgumentException e) {
+            log.error("NFC-e não encontrada: {}", id);
+            return ResponseEntity.notFound().build();
+        }
+    }
+
     @GetMapping("/numeracao/proxima/{serie}")
     @Operation(summary = "Obter próximo número", description = "Retorna o próximo número disponível para a série")
     public ResponseEntity<Map<String, Object>> obterProximoNumero(
@@ -196,4 +365,22 @@ public class NfceController {
                 "proximo_numero", proximoNumero
         ));
     }
+
+    @GetMapping("/numeracao/nao-utilizada")
+    @Operation(summary = "Listar numeração não utilizada", description = "Retorna as faixas reservadas e não emitidas, pendentes de inutilização")
+    public ResponseEntity<List<Map<String, Object>>> listarNumeracaoNaoUtilizada() {
+
+        log.info("Listando numeração não utilizada");
+
+        List<Map<String, Object>> faixas = nfceService.listarNumeracaoNaoUtilizada().stream()
+                .map(faixa -> Map.<String, Object>of(
+                        "serie", faixa.getSerie(),
+                        "numero_inicial", faixa.getNumeroInicial(),
+                        "numero_final", faixa.getNumeroFinal(),
+                        "registrado_em", faixa.getRegistradoEm()
+                ))
+                .toList();
+
+        return ResponseEntity.ok(faixas);
+    }
 }
@@ -1,19 +1,23 @@
 package com.github.setxpro.nfce_java.delivery.controllers;
 
 import com.github.setxpro.nfce_java.infra.services.QrCodeService;
+import com.github.setxpro.nfce_java.infra.services.imagem.CacheImagemQrCode;
+import com.github.setxpro.nfce_java.infra.services.imagem.ImagemQrCode;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
+import org.springframework.http.CacheControl;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Base64;
 import java.util.Map;
 
 @RestController
@@ -22,6 +26,9 @@ import java.util.Map;
 @Slf4j
 @Tag(name = "QR Code", description = "APIs para geração e validação de QR Code da NFC-e")
 public class QrCodeController {
+    // A imagem é função exclusiva dos parâmetros da URL: clientes e proxies podem guardá-la indefinidamente
+    private static final CacheControl CACHE_IMUTAVEL = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+
     private final QrCodeService qrCodeService;
 
     @GetMapping("/gerar")
@@ -57,24 +64,56 @@ public class QrCodeController {
         }
     }
 
+    @GetMapping("/gerar-v2")
+    @Operation(summary = "Gerar URL do QR Code 2.00", description = "Gera a URL do QR Code no leiaute 2.00, com o hash do CSC configurado")
+    public ResponseEntity<Map<String, String>> gerarUrlQrCodeV2(
+            @Parameter(description = "Chave de acesso da NFC-e") @RequestParam String chaveAcesso,
+            @Parameter(description = "Ambiente (1=Produção, 2=Homologação)") @RequestParam Integer ambiente) {
+
+        try {
+            String urlQrCode = qrCodeService.gerarUrlQrCodeV2(chaveAcesso, ambiente);
+
+            return ResponseEntity.ok(Map.of(
+                    "url_qrcode", urlQrCode,
+                    "chave_acesso", chaveAcesso
+            ));
+
+        } catch (IllegalArgumentException e) {
+            log.warn("Parâmetros inválidos para QR Code 2.00: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            log.error("QR Code 2.00 indisponível: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @GetMapping("/imagem")
     @Operation(summary = "Gerar imagem do QR Code", description = "Gera a imagem PNG do QR Code")
     public ResponseEntity<byte[]> gerarImagemQrCode(
             @Parameter(description = "Conteúdo do QR Code (URL)") @RequestParam String conteudo,
             @Parameter(description = "Largura da imagem") @RequestParam(defaultValue = "300") int largura,
-            @Parameter(description = "Altura da imagem") @RequestParam(defaultValue = "300") int altura) {
+            @Parameter(description = "Altura da imagem") @RequestParam(defaultValue = "300") int altura,
+            WebRequest webRequest) {
 
-        log.info("Gerando imagem do QR Code com dimensões: {}x{}", largura, altura);
+        log.debug("Gerando imagem do QR Code com dimensões: {}x{}", largura, altura);
 
         try {
-            byte[] imagemBytes = qrCodeService.gerarImagemQrCode(conteudo, largura, altura);
+            ImagemQrCode imagem = qrCodeService.obterImagemQrCode(conteudo, largura, altura);
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.IMAGE_PNG);
-            headers.setContentLength(imagemBytes.length);
+            if (webRequest.checkNotModified(imagem.etag())) {
+                return null;
+            }
 
-            return new ResponseEntity<>(imagemBytes, headers, HttpStatus.OK);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.IMAGE_PNG)
+                    .contentLength(imagem.png().length)
+                    .eTag(imagem.etag())
+                    .cacheControl(CACHE_IMUTAVEL)
+                    .body(imagem.png());
 
+        } catch (IllegalArgumentException e) {
+            log.warn("Conteúdo inválido para QR Code: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             log.error("Erro ao gerar imagem do QR Code", e);
             return ResponseEntity.internalServerError().build();
@@ -86,31 +125,113 @@ public class QrCodeController {
     public ResponseEntity<Map<String, String>> gerarImagemQrCodeBase64(
             @Parameter(description = "Conteúdo do QR Code (URL)") @RequestParam String conteudo,
             @Parameter(description = "Largura da imagem") @RequestParam(defaultValue = "300") int largura,
-            @Parameter(description = "Altura da imagem") @RequestParam(defaultValue = "300") int altura) {
+            @Parameter(description = "Altura da imagem") @RequestParam(defaultValue = "300") int altura,
+            WebRequest webRequest) {
 
-        log.info("Gerando imagem Base64 do QR Code com dimensões: {}x{}", largura, altura);
+        log.debug("Gerando imagem Base64 do QR Code com dimensões: {}x{}", largura, altura);
 
         try {
-            String imagemBase64 = qrCodeService.gerarImagemQrCodeBase64(conteudo, largura, altura);
-
-            if (imagemBase64 != null) {
-                return ResponseEntity.ok(Map.of(
-                        "imagem_base64", imagemBase64,
-                        "largura", String.valueOf(largura),
-                        "altura", String.valueOf(altura)
-                ));
-            } else {
-                return ResponseEntity.internalServerError().build();
+            ImagemQrCode imagem = qrCodeService.obterImagemQrCode(conteudo, largura, altura);
+
+            // Representação diferente da imagem PNG, então o validador também é outro
+            String etag = imagem.etag().substring(0, imagem.etag().length() - 1) + "-b64\"";
+            if (webRequest.checkNotModified(etag)) {
+                return null;
             }
 
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(CACHE_IMUTAVEL)
+                    .body(Map.of(
+                            "imagem_base64", "data:image/png;base64," + Base64.getEncoder().encodeToString(imagem.png()),
+                            "largura", String.valueOf(largura),
+                            "altura", String.valueOf(altura)
+                    ));
+
+        } catch (IllegalArgumentException e) {
+            log.warn("Conteúdo inválido para QR Code: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             log.error("Erro ao gerar imagem Base64 do QR Code", e);
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    @GetMapping("/imagem-svg")
+    @Operation(summary = "Gerar QR Code em SVG", description = "Gera o QR Code como SVG vetorial, um único path em coordenadas de módulo")
+    public ResponseEntity<String> gerarSvgQrCode(
+            @Parameter(description = "Conteúdo do QR Code (URL)") @RequestParam String conteudo,
+            @Parameter(description = "Largura da imagem") @RequestParam(defaultValue = "300") int largura,
+            @Parameter(description = "Altura da imagem") @RequestParam(defaultValue = "300") int altura) {
+
+        log.debug("Gerando SVG do QR Code com dimensões: {}x{}", largura, altura);
+
+        try {
+            String svg = qrCodeService.gerarSvgQrCode(conteudo, largura, altura);
+
+            return ResponseEntity.ok()
+                    .contentType(MediaType.valueOf("image/svg+xml"))
+                    .cacheControl(CACHE_IMUTAVEL)
+                    .body(svg);
+
+        } catch (Exception e) {
+            log.error("Erro ao gerar SVG do QR Code", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    @GetMapping("/escpos/raster")
+    @Operation(summary = "Gerar QR Code ESC/POS rasterizado", description = "Gera o comando GS v 0 com o QR Code em bitmap, pronto para a impressora térmica")
+    public ResponseEntity<byte[]> gerarRasterEscPos(
+            @Parameter(description = "Conteúdo do QR Code (URL)") @RequestParam String conteudo,
+            @Parameter(description = "Lado do QR Code em pontos da impressora") @RequestParam(defaultValue = "256") int pontos) {
+
+        log.debug("Gerando raster ESC/POS do QR Code com {} pontos", pontos);
+
+        try {
+            byte[] comando = qrCodeService.gerarRasterEscPos(conteudo, pontos);
+
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .contentLength(comando.length)
+                    .cacheControl(CACHE_IMUTAVEL)
+                    .body(comando);
+
+        } catch (Exception e) {
+            log.error("Erro ao gerar raster ESC/POS do QR Code", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    @GetMapping("/escpos/nativo")
+    @Operation(summary = "Gerar comando ESC/POS de QR Code", description = "Gera a sequência GS ( k para a impressora montar o QR Code")
+    public ResponseEntity<byte[]> gerarComandoQrCodeEscPos(
+            @Parameter(description = "Conteúdo do QR Code (URL)") @RequestParam String conteudo,
+            @Parameter(description = "Tamanho do módulo em pontos (1 a 16)") @RequestParam(defaultValue = "4") int tamanhoModulo) {
+
+        try {
+            byte[] comando = qrCodeService.gerarComandoQrCodeEscPos(conteudo, tamanhoModulo);
+
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .contentLength(comando.length)
+                    .cacheControl(CACHE_IMUTAVEL)
+                    .body(comando);
+
+        } catch (IllegalArgumentException e) {
+            log.warn("Parâmetros inválidos para comando ESC/POS: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/imagem/cache")
+    @Operation(summary = "Estatísticas do cache de imagens", description = "Acertos, faltas, remoções e ocupação do cache LRU de imagens de QR Code")
+    public ResponseEntity<CacheImagemQrCode.Estatisticas> estatisticasCacheImagens() {
+        return ResponseEntity.ok(qrCodeService.estatisticasCacheImagens());
+    }
+
     @PostMapping("/validar")
-    @Operation(summary = "Validar QR Code", description = "Valida se o QR Code está corretamente formatado")
+    @Operation(summary = "Validar QR Code", description = "Confere a chave de acesso da URL e, no leiaute 2.00, o hash do CSC")
     public ResponseEntity<Map<String, Object>> validarQrCode(
             @RequestBody Map<String, String> request) {
 
@@ -0,0 +1,65 @@
+package com.github.setxpro.nfce_java.delivery.controllers;
+
+import com.github.setxpro.nfce_java.infra.services.ComunicacaoSefazService;
+import com.github.setxpro.nfce_java.infra.services.ContingenciaService;
+import com.github.setxpro.nfce_java.infra.services.MonitorSefazService;
+import com.github.setxpro.nfce_java.infra.services.sefaz.ClienteSefaz;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/v1/sefaz")
+@RequiredArgsConstructor
+@Tag(name = "SEFAZ", description = "APIs de acompanhamento da comunicação com a SEFAZ")
+public class SefazController {
+    private final ComunicacaoSefazService comunicacaoSefazService;
+    private final ContingenciaService contingenciaService;
+    private final MonitorSefazService monitorSefazService;
+
+    @GetMapping("/conexoes")
+    @Operation(summary = "Estatísticas do pool de conexões",
+            description = "Conexões alugadas, disponíveis e aguardando, limites do pool, conexões (handshakes TLS) "
+                    + "abertas, requisições e falhas desde a criação do pool")
+    public ResponseEntity<ClienteSefaz.Metricas> metricasConexoes() {
+        return ResponseEntity.ok(comunicacaoSefazService.metricas());
+    }
+
+    @GetMapping("/status")
+    @Operation(summary = "Disponibilidade da SEFAZ",
+            description = "Última consulta ao NfeStatusServico (em cache), estado do disjuntor, chamadas recusadas "
+                    + "e contagem de transições, e se a contingência atual foi ligada automaticamente")
+    public ResponseEntity<MonitorSefazService.Situacao> statusSefaz() {
+        return ResponseEntity.ok(monitorSefazService.situacao());
+    }
+
+    @GetMapping("/contingencia")
+    @Operation(summary = "Situação da contingência offline",
+            description = "Se a emissão em contingência (tpEmis=9) está ativa e quantas NFC-e aguardam no journal")
+    public ResponseEntity<ContingenciaService.Situacao> situacaoContingencia() {
+        return ResponseEntity.ok(contingenciaService.situacao());
+    }
+
+    @PostMapping("/contingencia")
+    @Operation(summary = "Ativar contingência offline",
+            description = "As próximas NFC-e saem com tpEmis=9 e a justificativa informada (15 a 256 caracteres)")
+    public ResponseEntity<ContingenciaService.Situacao> ativarContingencia(@RequestBody Map<String, String> request) {
+        return ResponseEntity.ok(contingenciaService.ativar(request.get("justificativa")));
+    }
+
+    @DeleteMapping("/contingencia")
+    @Operation(summary = "Desativar contingência offline",
+            description = "Volta à emissão normal; as NFC-e do journal continuam sendo transmitidas")
+    public ResponseEntity<ContingenciaService.Situacao> desativarContingencia() {
+        return ResponseEntity.ok(contingenciaService.desativar());
+    }
+}
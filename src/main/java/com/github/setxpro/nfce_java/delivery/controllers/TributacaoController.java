@@ -0,0 +1,34 @@
+package com.github.setxpro.nfce_java.delivery.controllers;
+
+import com.github.setxpro.nfce_java.infra.services.TributacaoService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/v1/tributacao")
+@RequiredArgsConstructor
+@Tag(name = "Tributação", description = "APIs da tabela de tributação dos itens")
+public class TributacaoController {
+    private final TributacaoService tributacaoService;
+
+    @GetMapping
+    @Operation(summary = "Tabela de tributação em uso",
+            description = "Origem, regras e formatos de chave da tabela carregada, versão e data da carga e "
+                    + "itens tributados e sem regra desde a inicialização")
+    public ResponseEntity<TributacaoService.Situacao> situacao() {
+        return ResponseEntity.ok(tributacaoService.situacao());
+    }
+
+    @PostMapping("/recarregar")
+    @Operation(summary = "Recarregar a tabela de tributação",
+            description = "Lê e compila a tabela de novo; se ela for inválida a tabela atual continua valendo")
+    public ResponseEntity<TributacaoService.Situacao> recarregar() {
+        return ResponseEntity.ok(tributacaoService.recarregar());
+    }
+}
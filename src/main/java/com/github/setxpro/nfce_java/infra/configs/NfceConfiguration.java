@@ -13,20 +13,138 @@ public class NfceConfiguration {
     private Integer uf;
     private Integer serie;
     private Integer numeroInicial;
+    private String fusoHorario = "America/Sao_Paulo";
 
+    private Numeracao numeracao = new Numeracao();
+    private Emissao emissao = new Emissao();
     private Certificado certificado = new Certificado();
     private Webservice webservice = new Webservice();
+    private Transmissao transmissao = new Transmissao();
+    private Contingencia contingencia = new Contingencia();
+    private Monitor monitor = new Monitor();
+    private Idempotencia idempotencia = new Idempotencia();
+    private Tributacao tributacao = new Tributacao();
     private Qrcode qrcode = new Qrcode();
 
+    @Data
+    public static class Numeracao {
+        private int tamanhoBloco = 50;
+    }
+
+    /**
+     * Emissão assíncrona: quantas NFC-e podem estar ao mesmo tempo em cada etapa. Cada etapa ocupa uma
+     * conexão do pool enquanto roda, então a soma deve ficar abaixo do tamanho do pool.
+     * <p>
+     * No upload NDJSON as notas são emitidas em blocos de {@code tamanhoBlocoLote}, com no máximo
+     * {@code concorrenciaLote} blocos em andamento; as etapas de CPU usam {@code paralelismoCpu} threads
+     * (0 = número de núcleos). As transições em lote (assinar, enviar, cancelar) andam em blocos de
+     * {@code tamanhoBlocoTransicao} NFC-e, cada bloco numa transação.
+     */
+    @Data
+    public static class Emissao {
+        private int concorrenciaChave = 2;
+        private int concorrenciaXml = 2;
+        private int concorrenciaAssinatura = 2;
+        private int concorrenciaTransmissao = 2;
+        private int concorrenciaLote = 4;
+        private int tamanhoBlocoLote = 50;
+        private int paralelismoCpu = 0;
+        private int tamanhoBlocoTransicao = 200;
+        private long timeoutEventosMs = 60_000;
+    }
+
     @Data
     public static class Certificado {
         private String path;
         private String senha;
     }
 
+    /**
+     * Transmissão para a SEFAZ: as NFC-e enviadas são agrupadas em lotes {@code enviNFe} de até
+     * {@code tamanhoLote} documentos (máximo 50), com até {@code lotesSimultaneos} lotes por ciclo. No modo
+     * assíncrono o recibo é consultado com espera entre {@code esperaMinimaMs} e {@code esperaMaximaMs}. Os
+     * eventos de cancelamento seguem em lotes {@code envEvento} de até {@code tamanhoLoteEvento} (máximo 20).
+     */
+    @Data
+    public static class Transmissao {
+        private boolean habilitada = false;
+        private boolean sincrona = false;
+        private int tamanhoLote = 50;
+        private int lotesSimultaneos = 4;
+        private long intervaloMs = 500;
+        private long esperaMinimaMs = 500;
+        private long esperaMaximaMs = 30_000;
+        private int tamanhoLoteEvento = 20;
+    }
+
+    /**
+     * Contingência offline ({@code tpEmis=9}): com {@code ativa} as NFC-e saem com {@code tpEmis=9} e a
+     * {@code justificativa}, e no envio o XML assinado vai para o {@code journal}, que a transmissão esvazia
+     * quando a SEFAZ volta a responder. A contingência também pode ser ligada e desligada em tempo de execução.
+     */
+    @Data
+    public static class Contingencia {
+        private boolean ativa = false;
+        private String justificativa = "SEFAZ indisponivel - emissao em contingencia offline";
+        private String journal = "./data/contingencia.journal";
+    }
+
+    /**
+     * Monitor de disponibilidade: consulta o {@code NfeStatusServico} a cada {@code intervaloMaximoMs} enquanto a
+     * SEFAZ está em operação; fora dela, a partir de {@code intervaloMinimoMs}, dobrando até o máximo. Com
+     * {@code contingenciaAutomatica} a abertura do disjuntor liga a contingência offline e o fechamento a desliga.
+     */
+    @Data
+    public static class Monitor {
+        private boolean habilitado = false;
+        private long intervaloMinimoMs = 5_000;
+        private long intervaloMaximoMs = 60_000;
+        private boolean contingenciaAutomatica = true;
+    }
+
+    /**
+     * {@code Idempotency-Key} no POST de NFC-e: a resposta de cada chave fica gravada por {@code validadeHoras}
+     * e as {@code maximoEntradasCache} mais recentes também em memória. Uma chave em processamento há mais de
+     * {@code tempoMaximoProcessamentoMs} é considerada abandonada e pode ser assumida por outra requisição.
+     */
+    @Data
+    public static class Idempotencia {
+        private int maximoEntradasCache = 10_000;
+        private long validadeHoras = 24;
+        private long tempoMaximoProcessamentoMs = 60_000;
+    }
+
+    /**
+     * Tributação pelo servidor: com {@code habilitada} o ICMS, o PIS e o COFINS de cada item saem da tabela
+     * {@code regras} (por UF, regime, NCM e CFOP) em vez dos valores enviados pelo PDV. Um arquivo fora do
+     * classpath é verificado a cada {@code intervaloVerificacaoMs} e recarregado quando muda (0 desliga).
+     */
+    @Data
+    public static class Tributacao {
+        private boolean habilitada = false;
+        private String regras = "classpath:tributacao/regras.csv";
+        private long intervaloVerificacaoMs = 10_000;
+    }
+
+    /**
+     * Conexões com os webservices: um pool compartilhado, com TLS mútuo usando o certificado A1. Sem
+     * {@code truststore} valem as autoridades da JVM (a cadeia ICP-Brasil da SEFAZ precisa estar nela).
+     */
     @Data
     public static class Webservice {
         private Url url = new Url();
+        private int maxConexoes = 32;
+        private int maxConexoesPorRota = 8;
+        private int timeoutConexaoMs = 5_000;
+        private int timeoutLeituraMs = 30_000;
+        private long keepAliveMs = 60_000;
+        private String truststore;
+        private String truststoreSenha;
+        /**
+         * Conecta sem o certificado do cliente quando não há certificado; só para a SEFAZ simulada.
+         */
+        private boolean semAutenticacaoCliente;
+        private Disjuntor disjuntor = new Disjuntor();
 
         @Data
         public static class Url {
@@ -34,17 +152,43 @@ public class NfceConfiguration {
             private String retornoAutorizacao;
             private String consultaProtocolo;
             private String statusServico;
+            private String recepcaoEvento;
             private String consultaCadastro;
         }
+
+        /**
+         * Disjuntor das chamadas: abre depois de {@code falhasParaAbrir} falhas seguidas e recusa na hora por
+         * {@code tempoAbertoMs}, que dobra a cada sonda que falha até {@code tempoAbertoMaximoMs}.
+         */
+        @Data
+        public static class Disjuntor {
+            private int falhasParaAbrir = 5;
+            private long tempoAbertoMs = 10_000;
+            private long tempoAbertoMaximoMs = 120_000;
+        }
     }
 
     @Data
     public static class Qrcode {
         private Url url = new Url();
+        private Cache cache = new Cache();
+        private Csc csc = new Csc();
 
         @Data
         public static class Url {
             private String consulta;
         }
+
+        @Data
+        public static class Csc {
+            private Integer id;
+            private String token;
+        }
+
+        @Data
+        public static class Cache {
+            private int maximoEntradas = 2048;
+            private long maximoBytes = 8 * 1024 * 1024;
+        }
     }
 }
@@ -0,0 +1,87 @@
+package com.github.setxpro.nfce_java.infra.persistences.model.converter;
+
+import com.github.setxpro.nfce_java.infra.util.PoolRecursos;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Grava documentos XML compactados (zlib/deflate) em colunas binárias e os descompacta na leitura.
+ * <p>
+ * O XML indentado da NFC-e é muito repetitivo: a partir de algumas dezenas de itens fica com menos de
+ * um quarto do tamanho original. {@link Deflater} e {@link Inflater} mantêm buffers nativos, por isso são reaproveitados
+ * num {@link PoolRecursos} em vez de criados a cada linha.
+ */
+@Converter
+public class XmlCompactadoConverter implements AttributeConverter<String, byte[]> {
+
+    private static final int TAMANHO_MINIMO_BUFFER = 256;
+
+    private static final PoolRecursos<Deflater> DEFLATERS = new PoolRecursos<>(() -> new Deflater(Deflater.BEST_SPEED),
+            Deflater::end);
+    private static final PoolRecursos<Inflater> INFLATERS = new PoolRecursos<>(Inflater::new, Inflater::end);
+
+    @Override
+    public byte[] convertToDatabaseColumn(String xml) {
+        return xml == null ? null : compactar(xml);
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] dados) {
+        return dados == null ? null : descompactar(dados);
+    }
+
+    public static byte[] compactar(String xml) {
+        byte[] entrada = xml.getBytes(StandardCharsets.UTF_8);
+
+        Deflater deflater = DEFLATERS.obter();
+        try {
+            deflater.reset();
+            deflater.setInput(entrada);
+            deflater.finish();
+
+            byte[] saida = new byte[Math.max(TAMANHO_MINIMO_BUFFER, entrada.length / 4)];
+            int tamanho = 0;
+            while (!deflater.finished()) {
+                if (tamanho == saida.length) {
+                    saida = Arrays.copyOf(saida, saida.length * 2);
+                }
+                tamanho += deflater.deflate(saida, tamanho, saida.length - tamanho);
+            }
+            return Arrays.copyOf(saida, tamanho);
+        } finally {
+            DEFLATERS.devolver(deflater);
+        }
+    }
+
+    public static String descompactar(byte[] dados) {
+        Inflater inflater = INFLATERS.obter();
+        inflater.reset();
+        inflater.setInput(dados);
+
+        byte[] saida = new byte[Math.max(TAMANHO_MINIMO_BUFFER, dados.length * 6)];
+        int tamanho = 0;
+        try {
+            while (!inflater.finished()) {
+                if (tamanho == saida.length) {
+                    saida = Arrays.copyOf(saida, saida.length * 2);
+                }
+                int lidos = inflater.inflate(saida, tamanho, saida.length - tamanho);
+                if (lidos == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("XML compactado truncado ou corrompido");
+                }
+                tamanho += lidos;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("XML compactado inválido: " + e.getMessage(), e);
+        } finally {
+            INFLATERS.devolver(inflater);
+        }
+        return new String(saida, 0, tamanho, StandardCharsets.UTF_8);
+    }
+}
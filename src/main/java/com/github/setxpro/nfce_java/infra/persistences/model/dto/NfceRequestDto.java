@@ -11,7 +11,7 @@ import java.util.List;
 @Data
 public class NfceRequestDto {
 
-    @NotNull(message = "Número da nota é obrigatório")
+    // Opcional: quando ausente, o próximo número da série é reservado automaticamente
     @Min(value = 1, message = "Número da nota deve ser maior que zero")
     private Integer numero;
 
@@ -31,6 +31,12 @@ public class NfceResponseDto {
     @JsonProperty("data_autorizacao")
     private LocalDateTime dataAutorizacao;
 
+    @JsonProperty("retorno_sefaz")
+    private String retornoSefaz;
+
+    @JsonProperty("tipo_emissao")
+    private String tipoEmissao;
+
     @JsonProperty("qr_code")
     private String qrCode;
 
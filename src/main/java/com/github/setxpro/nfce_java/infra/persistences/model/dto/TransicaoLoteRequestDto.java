@@ -0,0 +1,49 @@
+package com.github.setxpro.nfce_java.infra.persistences.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Transição em lote: informe {@code ids} ou {@code filtro}, não os dois.
+ */
+@Data
+public class TransicaoLoteRequestDto {
+
+    @NotNull(message = "Ação é obrigatória")
+    private Acao acao;
+
+    @Size(max = 100_000, message = "No máximo 100000 ids por requisição; para mais, use o filtro")
+    private List<Long> ids;
+
+    @Valid
+    private FiltroDto filtro;
+
+    // Obrigatória para CANCELAR
+    private String justificativa;
+
+    public enum Acao {
+        ASSINAR, ENVIAR, CANCELAR
+    }
+
+    @Data
+    public static class FiltroDto {
+
+        private Integer serie;
+
+        // Quando ausente, usa o status de origem da ação (RASCUNHO, ASSINADA ou AUTORIZADA)
+        private String status;
+
+        @JsonProperty("data_inicio")
+        private LocalDateTime dataInicio;
+
+        // Exclusiva
+        @JsonProperty("data_fim")
+        private LocalDateTime dataFim;
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.setxpro.nfce_java.infra.persistences.model.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.github.setxpro.nfce_java.infra.persistences.model.converter.XmlCompactadoConverter;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Evento de uma NFC-e a registrar na SEFAZ (por ora só o cancelamento, 110111). A linha nasce PENDENTE na
+ * solicitação; o {@code xml} é o {@code <evento>} assinado, gravado antes do primeiro envio e reaproveitado
+ * nas tentativas seguintes, e depois do registro passa a ser o {@code procEventoNFe}.
+ */
+@Entity
+@Table(name = "nfce_evento", uniqueConstraints = @UniqueConstraint(name = "uk_nfce_evento",
+        columnNames = {"nfce_id", "tipo_evento", "sequencia"}))
+@Data
+@ToString(exclude = "xml")
+public class EventoNfce {
+
+    public static final String CANCELAMENTO = "110111";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "nfce_evento_seq")
+    @SequenceGenerator(name = "nfce_evento_seq", sequenceName = "nfce_evento_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "nfce_id", nullable = false)
+    private Long nfceId;
+
+    @Column(name = "chave_acesso", nullable = false, length = 44)
+    private String chaveAcesso;
+
+    @Column(name = "tipo_evento", nullable = false, length = 6)
+    private String tipoEvento;
+
+    @Column(name = "sequencia", nullable = false)
+    private Integer sequencia;
+
+    // nProt da autorização da NFC-e, exigido no detEvento do cancelamento
+    @Column(name = "protocolo_nfe", nullable = false, length = 15)
+    private String protocoloNfe;
+
+    @Column(name = "justificativa", nullable = false, length = 255)
+    private String justificativa;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private StatusEvento status;
+
+    @Column(name = "retorno_sefaz", length = 255)
+    private String retornoSefaz;
+
+    @Column(name = "protocolo", length = 15)
+    private String protocolo;
+
+    @Column(name = "data_registro")
+    private LocalDateTime dataRegistro;
+
+    @JsonIgnore
+    @Convert(converter = XmlCompactadoConverter.class)
+    @Column(name = "xml", columnDefinition = "BLOB")
+    private String xml;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = createdAt;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    public enum StatusEvento {
+        PENDENTE, REGISTRADO, REJEITADO
+    }
+}
@@ -2,6 +2,7 @@ package com.github.setxpro.nfce_java.infra.persistences.model.entity;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import jakarta.persistence.*;
 import java.math.BigDecimal;
@@ -10,10 +11,12 @@ import java.math.BigDecimal;
 @Table(name = "item_nfce")
 @Data
 @EqualsAndHashCode(exclude = {"nfce"})
+@ToString(exclude = {"nfce"})
 public class ItemNfce {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "item_nfce_seq")
+    @SequenceGenerator(name = "item_nfce_seq", sequenceName = "item_nfce_seq", allocationSize = Nfce.TAMANHO_LOTE_IDS)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -2,6 +2,7 @@ package com.github.setxpro.nfce_java.infra.persistences.model.entity;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import jakarta.persistence.*;
 import java.math.BigDecimal;
@@ -10,15 +11,31 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "nfce")
+@Table(name = "nfce", uniqueConstraints = @UniqueConstraint(name = "uk_nfce_serie_numero", columnNames = {"serie", "numero"}))
 @Data
 @EqualsAndHashCode(exclude = {"itens", "pagamentos"})
+@ToString(exclude = {"itens", "pagamentos"})
 public class Nfce {
 
+    /**
+     * Ids reservados por acesso à sequence (otimizador pooled). Com IDENTITY o Hibernate precisa do id de
+     * cada linha na hora e não agrupa os INSERTs; com sequence itens e pagamentos vão em lote JDBC.
+     */
+    public static final int TAMANHO_LOTE_IDS = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "nfce_seq")
+    @SequenceGenerator(name = "nfce_seq", sequenceName = "nfce_seq", allocationSize = TAMANHO_LOTE_IDS)
     private Long id;
 
+    /**
+     * Protege as atualizações da entidade inteira; as mudanças de status são UPDATEs condicionais no
+     * {@code NfceRepository}, que também incrementam a versão.
+     */
+    @Version
+    @Column(name = "versao", nullable = false)
+    private Long versao;
+
     @Column(name = "numero", nullable = false)
     private Integer numero;
 
@@ -54,19 +71,33 @@ public class Nfce {
     @Column(name = "status", nullable = false)
     private StatusNfce status;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "tipo_emissao", nullable = false)
+    private TipoEmissao tipoEmissao;
+
+    // Entrada em contingência (dhCont e xJust); só nas NFC-e emitidas offline
+    @Column(name = "data_contingencia")
+    private LocalDateTime dataContingencia;
+
+    @Column(name = "justificativa_contingencia", length = 256)
+    private String justificativaContingencia;
+
     @Column(name = "protocolo_autorizacao", length = 15)
     private String protocoloAutorizacao;
 
     @Column(name = "data_autorizacao")
     private LocalDateTime dataAutorizacao;
 
-    @Column(name = "xml_assinado", columnDefinition = "TEXT")
-    private String xmlAssinado;
+    // Recibo do lote assíncrono em que a NFC-e foi transmitida; nulo enquanto aguarda transmissão
+    @Column(name = "recibo_lote", length = 15)
+    private String reciboLote;
 
-    @Column(name = "xml_autorizado", columnDefinition = "TEXT")
-    private String xmlAutorizado;
+    // cStat e xMotivo do último retorno da SEFAZ
+    @Column(name = "retorno_sefaz", length = 255)
+    private String retornoSefaz;
 
-    @Column(name = "qr_code", columnDefinition = "TEXT")
+    // Os XMLs ficam em NfceDocumento e só são lidos no download
+    @Column(name = "qr_code", length = 1000)
     private String qrCode;
 
     @Column(name = "url_consulta", length = 500)
@@ -175,6 +206,9 @@ public class Nfce {
         if (status == null) {
             status = StatusNfce.RASCUNHO;
         }
+        if (tipoEmissao == null) {
+            tipoEmissao = TipoEmissao.NORMAL;
+        }
     }
 
     @PreUpdate
@@ -238,6 +272,20 @@ public class Nfce {
         }
     }
 
+    public enum TipoEmissao {
+        NORMAL(1), CONTINGENCIA_OFFLINE(9);
+
+        private final int codigo;
+
+        TipoEmissao(int codigo) {
+            this.codigo = codigo;
+        }
+
+        public int getCodigo() {
+            return codigo;
+        }
+    }
+
     public enum StatusNfce {
         RASCUNHO, ASSINADA, ENVIADA, AUTORIZADA, REJEITADA, CANCELADA, DENEGADA
     }
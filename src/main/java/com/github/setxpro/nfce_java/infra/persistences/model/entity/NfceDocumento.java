@@ -0,0 +1,47 @@
+package com.github.setxpro.nfce_java.infra.persistences.model.entity;
+
+import com.github.setxpro.nfce_java.infra.persistences.model.converter.XmlCompactadoConverter;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * XMLs da NFC-e, em tabela própria para que consultas e listagens de {@link Nfce} não leiam os documentos.
+ * A chave primária é o próprio id da NFC-e.
+ */
+@Entity
+@Table(name = "nfce_documento")
+@Data
+@EqualsAndHashCode(exclude = {"nfce"})
+@ToString(exclude = {"nfce", "xmlAssinado", "xmlAutorizado"})
+public class NfceDocumento {
+
+    @Id
+    @Column(name = "nfce_id")
+    private Long nfceId;
+
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "nfce_id")
+    private Nfce nfce;
+
+    @Convert(converter = XmlCompactadoConverter.class)
+    @Column(name = "xml_assinado", columnDefinition = "BLOB")
+    private String xmlAssinado;
+
+    @Convert(converter = XmlCompactadoConverter.class)
+    @Column(name = "xml_autorizado", columnDefinition = "BLOB")
+    private String xmlAutorizado;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
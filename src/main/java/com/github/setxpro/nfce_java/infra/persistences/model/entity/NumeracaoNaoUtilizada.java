@@ -0,0 +1,37 @@
+package com.github.setxpro.nfce_java.infra.persistences.model.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Faixa de números reservada e não utilizada (por exemplo, sobra de bloco no desligamento), pendente
+ * de inutilização na SEFAZ.
+ */
+@Entity
+@Table(name = "numeracao_nao_utilizada")
+@Data
+public class NumeracaoNaoUtilizada {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "serie", nullable = false)
+    private Integer serie;
+
+    @Column(name = "numero_inicial", nullable = false)
+    private Integer numeroInicial;
+
+    @Column(name = "numero_final", nullable = false)
+    private Integer numeroFinal;
+
+    @Column(name = "registrado_em", nullable = false)
+    private LocalDateTime registradoEm;
+
+    @PrePersist
+    protected void onCreate() {
+        registradoEm = LocalDateTime.now();
+    }
+}
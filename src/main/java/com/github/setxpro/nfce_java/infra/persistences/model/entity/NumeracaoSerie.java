@@ -0,0 +1,21 @@
+package com.github.setxpro.nfce_java.infra.persistences.model.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Contador persistente da numeração de cada série. Guarda o primeiro número ainda não reservado;
+ * as instâncias reservam blocos a partir dele e os distribuem em memória.
+ */
+@Entity
+@Table(name = "numeracao_serie")
+@Data
+public class NumeracaoSerie {
+
+    @Id
+    @Column(name = "serie")
+    private Integer serie;
+
+    @Column(name = "proximo_numero", nullable = false)
+    private Integer proximoNumero;
+}
@@ -3,6 +3,7 @@ package com.github.setxpro.nfce_java.infra.persistences.model.entity;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import java.math.BigDecimal;
 
@@ -10,10 +11,12 @@ import java.math.BigDecimal;
 @Table(name = "pagamento_nfce")
 @Data
 @EqualsAndHashCode(exclude = {"nfce"})
+@ToString(exclude = {"nfce"})
 public class PagamentoNfce {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "pagamento_nfce_seq")
+    @SequenceGenerator(name = "pagamento_nfce_seq", sequenceName = "pagamento_nfce_seq", allocationSize = Nfce.TAMANHO_LOTE_IDS)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -0,0 +1,55 @@
+package com.github.setxpro.nfce_java.infra.persistences.model.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Andamento da emissão assíncrona de uma NFC-e. A chave primária é o id da NFC-e; a linha é criada junto
+ * com a nota na recepção e atualizada ao fim de cada etapa, na mesma transação da etapa.
+ */
+@Entity
+@Table(name = "nfce_processamento")
+@Data
+public class ProcessamentoNfce {
+
+    @Id
+    @Column(name = "nfce_id")
+    private Long nfceId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "etapa", nullable = false, length = 20)
+    private Etapa etapa;
+
+    @Column(name = "mensagem_erro", length = 500)
+    private String mensagemErro;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = createdAt;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    /**
+     * Última etapa concluída, na ordem em que o pipeline as executa.
+     */
+    public enum Etapa {
+        RECEBIDA, CHAVE_GERADA, XML_GERADO, ASSINADA, TRANSMITIDA, ERRO;
+
+        public boolean isFinal() {
+            return this == TRANSMITIDA || this == ERRO;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.setxpro.nfce_java.infra.persistences.model.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Requisição identificada por um {@code Idempotency-Key}. A linha é reservada EM_ANDAMENTO antes da emissão e
+ * passa a CONCLUIDA, com a resposta em JSON, na mesma transação que grava a NFC-e; até {@code expiraEm} uma
+ * repetição com a mesma chave devolve essa resposta.
+ * <p>
+ * A {@code versao} cerca a reserva: quem assume uma chave abandonada a incrementa, e o dono anterior, se ainda
+ * estiver emitindo, não consegue mais gravar a resposta nem liberar a chave.
+ */
+@Entity
+@Table(name = "nfce_idempotencia")
+@Data
+@ToString(exclude = "resposta")
+public class RequisicaoIdempotente {
+
+    @Id
+    @Column(name = "chave", length = 255)
+    private String chave;
+
+    // SHA-256 do corpo da requisição: a mesma chave com outro corpo é recusada
+    @Column(name = "hash_requisicao", nullable = false, length = 64)
+    private String hashRequisicao;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "situacao", nullable = false, length = 20)
+    private Situacao situacao;
+
+    @Lob
+    @Column(name = "resposta")
+    private String resposta;
+
+    @Column(name = "expira_em", nullable = false)
+    private LocalDateTime expiraEm;
+
+    @Version
+    @Column(name = "versao", nullable = false)
+    private Long versao;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = createdAt;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    public enum Situacao {
+        EM_ANDAMENTO, CONCLUIDA
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.setxpro.nfce_java.infra.persistences.repositories;
+
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.EventoNfce;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface EventoNfceRepository extends JpaRepository<EventoNfce, Long> {
+
+    List<EventoNfce> findByNfceIdOrderByIdAsc(Long nfceId);
+
+    List<EventoNfce> findByNfceIdInAndTipoEvento(Collection<Long> nfceIds, String tipoEvento);
+
+    /**
+     * Próximos eventos a transmitir, dos mais antigos para os mais novos.
+     */
+    List<EventoNfce> findByStatusOrderByIdAsc(EventoNfce.StatusEvento status, Limit limite);
+
+    long countByStatus(EventoNfce.StatusEvento status);
+}
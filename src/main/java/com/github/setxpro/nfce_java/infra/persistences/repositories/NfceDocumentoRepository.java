@@ -0,0 +1,9 @@
+package com.github.setxpro.nfce_java.infra.persistences.repositories;
+
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.NfceDocumento;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface NfceDocumentoRepository extends JpaRepository<NfceDocumento, Long> {
+}
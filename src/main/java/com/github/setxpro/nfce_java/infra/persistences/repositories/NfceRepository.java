@@ -1,12 +1,17 @@
 package com.github.setxpro.nfce_java.infra.persistences.repositories;
 
 import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -36,4 +41,179 @@ public interface NfceRepository extends JpaRepository<Nfce, Long> {
     List<Nfce> findByDestinatarioCpfCnpjOrderByDataEmissaoDesc(@Param("cpfCnpj") String cpfCnpj);
 
     boolean existsByNumeroAndSerie(Integer numero, Integer serie);
+
+    /**
+     * Muda o status só se a NFC-e ainda estiver em {@code atual}. Devolve 0 quando ela não existe ou já mudou,
+     * o que torna a transição segura entre chamadas concorrentes sem carregar a entidade.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Nfce n SET n.status = :novo, n.versao = n.versao + 1, n.updatedAt = :agora "
+            + "WHERE n.id = :id AND n.status = :atual")
+    int atualizarStatus(@Param("id") Long id,
+                        @Param("atual") Nfce.StatusNfce atual,
+                        @Param("novo") Nfce.StatusNfce novo,
+                        @Param("agora") LocalDateTime agora);
+
+    /**
+     * Como {@link #atualizarStatus}, gravando também o protocolo e a data de autorização.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Nfce n SET n.status = :novo, n.protocoloAutorizacao = :protocolo, n.dataAutorizacao = :agora, "
+            + "n.versao = n.versao + 1, n.updatedAt = :agora WHERE n.id = :id AND n.status = :atual")
+    int atualizarStatusAutorizacao(@Param("id") Long id,
+                                   @Param("atual") Nfce.StatusNfce atual,
+                                   @Param("novo") Nfce.StatusNfce novo,
+                                   @Param("protocolo") String protocolo,
+                                   @Param("agora") LocalDateTime agora);
+
+    /**
+     * Id e status de uma NFC-e, sem carregar a entidade.
+     */
+    interface Situacao {
+        Long getId();
+
+        Nfce.StatusNfce getStatus();
+    }
+
+    /**
+     * Status das NFC-e com as linhas bloqueadas até o fim da transação, para decidir a transição em lote
+     * de cada uma sem corrida com chamadas concorrentes.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT n.id AS id, n.status AS status FROM Nfce n WHERE n.id IN :ids")
+    List<Situacao> bloquearSituacoes(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Status, chave e protocolo de autorização das NFC-e, com as linhas bloqueadas até o fim da transação:
+     * o que a solicitação de cancelamento precisa para montar o evento.
+     */
+    interface Autorizacao {
+        Long getId();
+
+        Nfce.StatusNfce getStatus();
+
+        String getChaveAcesso();
+
+        String getProtocoloAutorizacao();
+    }
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT n.id AS id, n.status AS status, n.chaveAcesso AS chaveAcesso, "
+            + "n.protocoloAutorizacao AS protocoloAutorizacao FROM Nfce n WHERE n.id IN :ids")
+    List<Autorizacao> bloquearAutorizacoes(@Param("ids") Collection<Long> ids);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Nfce n SET n.status = :novo, n.versao = n.versao + 1, n.updatedAt = :agora "
+            + "WHERE n.id IN :ids AND n.status = :atual")
+    int atualizarStatusEmLote(@Param("ids") Collection<Long> ids,
+                              @Param("atual") Nfce.StatusNfce atual,
+                              @Param("novo") Nfce.StatusNfce novo,
+                              @Param("agora") LocalDateTime agora);
+
+    /**
+     * Próximos ids do filtro depois de {@code aposId}, em ordem crescente (paginação por chave).
+     */
+    @Query("SELECT n.id FROM Nfce n WHERE n.status = :status AND n.id > :aposId "
+            + "AND (:serie IS NULL OR n.serie = :serie) "
+            + "AND (:inicio IS NULL OR n.dataEmissao >= :inicio) "
+            + "AND (:fim IS NULL OR n.dataEmissao < :fim) ORDER BY n.id")
+    List<Long> findIdsPorFiltro(@Param("status") Nfce.StatusNfce status,
+                                @Param("serie") Integer serie,
+                                @Param("inicio") LocalDateTime inicio,
+                                @Param("fim") LocalDateTime fim,
+                                @Param("aposId") Long aposId,
+                                Limit limite);
+
+    @Query("SELECT COUNT(n) FROM Nfce n WHERE n.status = :status "
+            + "AND (:serie IS NULL OR n.serie = :serie) "
+            + "AND (:inicio IS NULL OR n.dataEmissao >= :inicio) "
+            + "AND (:fim IS NULL OR n.dataEmissao < :fim)")
+    long countPorFiltro(@Param("status") Nfce.StatusNfce status,
+                        @Param("serie") Integer serie,
+                        @Param("inicio") LocalDateTime inicio,
+                        @Param("fim") LocalDateTime fim);
+
+    /**
+     * NFC-e enviadas que ainda não foram transmitidas à SEFAZ, em ordem de id. As emitidas em contingência
+     * são transmitidas a partir do journal e ficam de fora.
+     */
+    @Query("SELECT n.id FROM Nfce n WHERE n.status = :status AND n.reciboLote IS NULL "
+            + "AND n.tipoEmissao = :tipoEmissao ORDER BY n.id")
+    List<Long> findIdsAguardandoTransmissao(@Param("status") Nfce.StatusNfce status,
+                                            @Param("tipoEmissao") Nfce.TipoEmissao tipoEmissao,
+                                            Limit limite);
+
+    /**
+     * Id e chave de acesso de uma NFC-e, sem carregar a entidade.
+     */
+    interface Identificacao {
+        Long getId();
+
+        String getChaveAcesso();
+    }
+
+    @Query("SELECT n.id AS id, n.chaveAcesso AS chaveAcesso FROM Nfce n "
+            + "WHERE n.id IN :ids AND n.tipoEmissao = :tipoEmissao")
+    List<Identificacao> findIdentificacoesPorTipoEmissao(@Param("ids") Collection<Long> ids,
+                                                         @Param("tipoEmissao") Nfce.TipoEmissao tipoEmissao);
+
+    /**
+     * Status e recibo de lote de uma NFC-e, para decidir se uma nota do journal de contingência ainda
+     * precisa ser transmitida.
+     */
+    interface SituacaoTransmissao {
+        Long getId();
+
+        String getChaveAcesso();
+
+        Nfce.StatusNfce getStatus();
+
+        String getReciboLote();
+    }
+
+    @Query("SELECT n.id AS id, n.chaveAcesso AS chaveAcesso, n.status AS status, n.reciboLote AS reciboLote "
+            + "FROM Nfce n WHERE n.chaveAcesso IN :chaves")
+    List<SituacaoTransmissao> findSituacoesTransmissao(@Param("chaves") Collection<String> chaves);
+
+    @Query("SELECT DISTINCT n.reciboLote FROM Nfce n WHERE n.status = :status AND n.reciboLote IS NOT NULL")
+    List<String> findRecibosPendentes(@Param("status") Nfce.StatusNfce status);
+
+    List<Nfce> findByChaveAcessoIn(Collection<String> chavesAcesso);
+
+    /**
+     * Associa ao recibo as NFC-e do lote que continuam enviadas e sem recibo.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Nfce n SET n.reciboLote = :recibo, n.versao = n.versao + 1, n.updatedAt = :agora "
+            + "WHERE n.id IN :ids AND n.status = :status AND n.reciboLote IS NULL")
+    int registrarReciboLote(@Param("ids") Collection<Long> ids,
+                            @Param("status") Nfce.StatusNfce status,
+                            @Param("recibo") String recibo,
+                            @Param("agora") LocalDateTime agora);
+
+    @Query("SELECT n.id FROM Nfce n WHERE n.reciboLote = :recibo AND n.status = :status ORDER BY n.id")
+    List<Long> findIdsPorRecibo(@Param("recibo") String recibo, @Param("status") Nfce.StatusNfce status);
+
+    /**
+     * Devolve à fila de transmissão, sem recibo, as NFC-e que a SEFAZ não localizou ou cujo resultado não veio.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Nfce n SET n.reciboLote = NULL, n.retornoSefaz = :retorno, n.versao = n.versao + 1, "
+            + "n.updatedAt = :agora WHERE n.id IN :ids AND n.status = :status")
+    int devolverParaTransmissao(@Param("ids") Collection<Long> ids,
+                                @Param("status") Nfce.StatusNfce status,
+                                @Param("retorno") String retorno,
+                                @Param("agora") LocalDateTime agora);
+
+    /**
+     * Rejeição do lote inteiro: todas as NFC-e dele saem de {@code atual} com o mesmo retorno.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Nfce n SET n.status = :novo, n.retornoSefaz = :retorno, n.versao = n.versao + 1, "
+            + "n.updatedAt = :agora WHERE n.id IN :ids AND n.status = :atual")
+    int rejeitarLote(@Param("ids") Collection<Long> ids,
+                     @Param("atual") Nfce.StatusNfce atual,
+                     @Param("novo") Nfce.StatusNfce novo,
+                     @Param("retorno") String retorno,
+                     @Param("agora") LocalDateTime agora);
 }
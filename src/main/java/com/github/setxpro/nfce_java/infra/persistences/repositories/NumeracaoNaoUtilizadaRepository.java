@@ -0,0 +1,13 @@
+package com.github.setxpro.nfce_java.infra.persistences.repositories;
+
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.NumeracaoNaoUtilizada;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface NumeracaoNaoUtilizadaRepository extends JpaRepository<NumeracaoNaoUtilizada, Long> {
+
+    List<NumeracaoNaoUtilizada> findAllByOrderBySerieAscNumeroInicialAsc();
+}
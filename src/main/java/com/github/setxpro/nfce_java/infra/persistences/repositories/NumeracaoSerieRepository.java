@@ -0,0 +1,19 @@
+package com.github.setxpro.nfce_java.infra.persistences.repositories;
+
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.NumeracaoSerie;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface NumeracaoSerieRepository extends JpaRepository<NumeracaoSerie, Integer> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT n FROM NumeracaoSerie n WHERE n.serie = :serie")
+    Optional<NumeracaoSerie> findBySerieParaAtualizacao(@Param("serie") Integer serie);
+}
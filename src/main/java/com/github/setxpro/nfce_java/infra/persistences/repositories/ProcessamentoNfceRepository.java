@@ -0,0 +1,14 @@
+package com.github.setxpro.nfce_java.infra.persistences.repositories;
+
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.ProcessamentoNfce;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ProcessamentoNfceRepository extends JpaRepository<ProcessamentoNfce, Long> {
+
+    List<ProcessamentoNfce> findByEtapaNotInOrderByNfceIdAsc(Collection<ProcessamentoNfce.Etapa> etapas);
+}
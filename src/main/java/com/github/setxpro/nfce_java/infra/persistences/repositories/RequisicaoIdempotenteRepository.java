@@ -0,0 +1,27 @@
+package com.github.setxpro.nfce_java.infra.persistences.repositories;
+
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.RequisicaoIdempotente;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface RequisicaoIdempotenteRepository extends JpaRepository<RequisicaoIdempotente, String> {
+
+    /**
+     * Libera a chave de uma requisição que falhou, para que a repetição seja processada de novo. Só apaga a
+     * reserva na {@code versao} de quem falhou: uma reserva assumida por outra requisição fica.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM RequisicaoIdempotente r WHERE r.chave = :chave AND r.versao = :versao "
+            + "AND r.situacao = com.github.setxpro.nfce_java.infra.persistences.model.entity.RequisicaoIdempotente.Situacao.EM_ANDAMENTO")
+    int liberar(@Param("chave") String chave, @Param("versao") Long versao);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM RequisicaoIdempotente r WHERE r.expiraEm < :agora")
+    int removerExpiradas(@Param("agora") LocalDateTime agora);
+}
@@ -0,0 +1,212 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.services.xml.CanonicalizadorXml;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assinatura XMLDSig envelopada (C14N, RSA-SHA1, SHA-1) conforme o Manual de Orientação do Contribuinte.
+ * <p>
+ * A canonicalização é feita em fluxo pelo {@link CanonicalizadorXml}; as instâncias de {@link Signature}
+ * e {@link MessageDigest} são mantidas por thread e o trabalho roda num pool limitado ao número de núcleos.
+ */
+@Service
+@Slf4j
+public class AssinaturaDigitalService {
+
+    private static final String NAMESPACE_DSIG = "http://www.w3.org/2000/09/xmldsig#";
+    private static final String ALGORITMO_C14N = "http://www.w3.org/TR/2001/REC-xml-c14n-20010315";
+    private static final String ALGORITMO_ASSINATURA = "http://www.w3.org/2000/09/xmldsig#rsa-sha1";
+    private static final String ALGORITMO_DIGEST = "http://www.w3.org/2000/09/xmldsig#sha1";
+    private static final String TRANSFORMACAO_ENVELOPADA = "http://www.w3.org/2000/09/xmldsig#enveloped-signature";
+
+    private static final int CAPACIDADE_FILA = 1024;
+
+    private final CertificadoDigitalService certificadoDigitalService;
+    private final ThreadPoolExecutor executor;
+
+    private final ThreadLocal<MessageDigest> digest = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-1 indisponível", e);
+        }
+    });
+
+    private final ThreadLocal<Assinador> assinador = new ThreadLocal<>();
+
+    public AssinaturaDigitalService(CertificadoDigitalService certificadoDigitalService) {
+        this.certificadoDigitalService = certificadoDigitalService;
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(CAPACIDADE_FILA),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "nfce-assinatura-" + contador.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // Fila cheia: quem pediu a assinatura executa, o que segura a taxa de entrada
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public boolean isCertificadoDisponivel() {
+        return certificadoDigitalService.isDisponivel();
+    }
+
+    /**
+     * Garante que há certificado para assinar; sem ele gera {@link IllegalStateException} com o motivo.
+     */
+    public void exigirCertificado() {
+        certificadoDigitalService.getCertificado();
+    }
+
+    /**
+     * Assina o elemento informado (por exemplo {@code infNFe} ou {@code infEvento}) e devolve o XML com o
+     * elemento {@code Signature} inserido logo após ele.
+     */
+    public String assinar(String xml, String elemento) {
+        try {
+            return assinarAsync(xml, elemento).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+
+    public CompletableFuture<String> assinarAsync(String xml, String elemento) {
+        return CompletableFuture.supplyAsync(() -> assinarNaThreadAtual(xml, elemento), executor);
+    }
+
+    /**
+     * Assina vários documentos em paralelo no pool de assinatura, preservando a ordem da entrada.
+     */
+    public List<String> assinarLote(List<String> xmls, String elemento) {
+        List<CompletableFuture<String>> futuros = new ArrayList<>(xmls.size());
+        for (String xml : xmls) {
+            futuros.add(assinarAsync(xml, elemento));
+        }
+        List<String> assinados = new ArrayList<>(xmls.size());
+        for (CompletableFuture<String> futuro : futuros) {
+            assinados.add(futuro.join());
+        }
+        return assinados;
+    }
+
+    String assinarNaThreadAtual(String xml, String elemento) {
+        CertificadoDigitalService.Certificado certificado = certificadoDigitalService.getCertificado();
+
+        CanonicalizadorXml.Resultado canonico = CanonicalizadorXml.canonicalizar(xml, elemento);
+        if (canonico.id() == null) {
+            throw new IllegalArgumentException("Elemento <" + elemento + "> sem atributo Id");
+        }
+
+        String digestValue = Base64.getEncoder().encodeToString(digest.get().digest(canonico.bytes()));
+        String signedInfo = montarSignedInfo(canonico.id(), digestValue);
+
+        String signatureValue;
+        try {
+            Signature signature = obterAssinador(certificado.chavePrivada());
+            // A forma canônica do SignedInfo é ele próprio com o namespace do xmldsig declarado
+            signature.update(("<SignedInfo xmlns=\"" + NAMESPACE_DSIG + "\">" + signedInfo + "</SignedInfo>")
+                    .getBytes(StandardCharsets.UTF_8));
+            signatureValue = Base64.getEncoder().encodeToString(signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Erro ao assinar " + elemento + ": " + e.getMessage(), e);
+        }
+
+        String assinatura = "<Signature xmlns=\"" + NAMESPACE_DSIG + "\">"
+                + "<SignedInfo>" + signedInfo + "</SignedInfo>"
+                + "<SignatureValue>" + signatureValue + "</SignatureValue>"
+                + "<KeyInfo><X509Data><X509Certificate>" + certificado.certificadoBase64()
+                + "</X509Certificate></X509Data></KeyInfo>"
+                + "</Signature>";
+
+        return inserirAposElemento(xml, elemento, assinatura);
+    }
+
+    /**
+     * {@code DigestValue} (Base64) da primeira assinatura do XML, a do documento assinado.
+     */
+    public static String digestValue(String xmlAssinado) {
+        int inicio = xmlAssinado.indexOf("<DigestValue>");
+        int fim = inicio < 0 ? -1 : xmlAssinado.indexOf("</DigestValue>", inicio);
+        if (fim < 0) {
+            throw new IllegalArgumentException("XML sem DigestValue: documento não assinado");
+        }
+        return xmlAssinado.substring(inicio + "<DigestValue>".length(), fim);
+    }
+
+    @PreDestroy
+    void encerrar() {
+        executor.shutdown();
+    }
+
+    private Signature obterAssinador(PrivateKey chavePrivada) throws GeneralSecurityException {
+        Assinador atual = assinador.get();
+        // Troca de certificado: a instância da thread é reinicializada com a nova chave
+        if (atual == null || atual.chavePrivada() != chavePrivada) {
+            Signature signature = Signature.getInstance("SHA1withRSA");
+            signature.initSign(chavePrivada);
+            atual = new Assinador(chavePrivada, signature);
+            assinador.set(atual);
+        }
+        return atual.signature();
+    }
+
+    private String montarSignedInfo(String id, String digestValue) {
+        return "<CanonicalizationMethod Algorithm=\"" + ALGORITMO_C14N + "\"></CanonicalizationMethod>"
+                + "<SignatureMethod Algorithm=\"" + ALGORITMO_ASSINATURA + "\"></SignatureMethod>"
+                + "<Reference URI=\"#" + id + "\">"
+                + "<Transforms>"
+                + "<Transform Algorithm=\"" + TRANSFORMACAO_ENVELOPADA + "\"></Transform>"
+                + "<Transform Algorithm=\"" + ALGORITMO_C14N + "\"></Transform>"
+                + "</Transforms>"
+                + "<DigestMethod Algorithm=\"" + ALGORITMO_DIGEST + "\"></DigestMethod>"
+                + "<DigestValue>" + digestValue + "</DigestValue>"
+                + "</Reference>";
+    }
+
+    private String inserirAposElemento(String xml, String elemento, String assinatura) {
+        String fechamento = "</" + elemento + ">";
+        int posicao = xml.lastIndexOf(fechamento);
+        if (posicao < 0) {
+            throw new IllegalArgumentException("Elemento <" + elemento + "> não encontrado no XML");
+        }
+        int fim = posicao + fechamento.length();
+
+        // Documento indentado: a assinatura vai para a linha seguinte, na mesma coluna do elemento assinado
+        int inicioLinha = xml.lastIndexOf('\n', posicao) + 1;
+        String indentacao = xml.substring(inicioLinha, posicao);
+        String separador = indentacao.isBlank() ? "\n" + indentacao : "";
+
+        return new StringBuilder(xml.length() + assinatura.length() + separador.length())
+                .append(xml, 0, fim)
+                .append(separador)
+                .append(assinatura)
+                .append(xml, fim, xml.length())
+                .toString();
+    }
+
+    private record Assinador(PrivateKey chavePrivada, Signature signature) {
+    }
+}
@@ -0,0 +1,328 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.EventoNfce;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.EventoNfceRepository;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceRepository;
+import com.github.setxpro.nfce_java.infra.services.sefaz.MensagemSefaz;
+import com.github.setxpro.nfce_java.infra.services.sefaz.RetornoEvento;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Registro na SEFAZ dos eventos de cancelamento (110111) em lotes {@code envEvento} (NFeRecepcaoEvento4).
+ * <p>
+ * Com {@code nfce.transmissao.habilitada}, {@link NfceService#cancelarNfce} e o cancelamento em lote só gravam
+ * um {@link EventoNfce} PENDENTE. A cada ciclo esta classe pega até {@code lotes-simultaneos} lotes de
+ * {@code tamanho-lote-evento} eventos, monta e assina em paralelo os que ainda não têm XML (o XML assinado é
+ * gravado antes do envio e reaproveitado nas tentativas seguintes) e posta os lotes em paralelo. Cada
+ * {@code retEvento} volta para o seu evento pela chave de acesso: registrado, o evento guarda o protocolo e o
+ * {@code procEventoNFe} e a NFC-e passa a CANCELADA; rejeitado, a NFC-e continua AUTORIZADA e o cancelamento
+ * pode ser pedido de novo.
+ * <p>
+ * Falha de comunicação ou serviço paralisado (108/109) deixa os eventos pendentes e suspende os envios com a
+ * mesma progressão da {@link TransmissaoSefazService}. Sem certificado digital nada é assinado nem enviado: os
+ * eventos ficam pendentes até o certificado estar disponível.
+ */
+@Service
+@Slf4j
+public class CancelamentoSefazService {
+
+    private static final int TAMANHO_MAXIMO_RETORNO = 255;
+
+    private final EventoNfceRepository eventoNfceRepository;
+    private final NfceRepository nfceRepository;
+    private final XmlService xmlService;
+    private final AssinaturaDigitalService assinaturaDigitalService;
+    private final ComunicacaoSefazService comunicacaoSefazService;
+    private final TransactionTemplate transactionTemplate;
+    private final NfceConfiguration nfceConfiguration;
+    private final NfceConfiguration.Transmissao transmissao;
+    private final int tpAmb;
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("nfce-evento-", 1).factory());
+    private final AtomicLong sequenciaLote = new AtomicLong(System.currentTimeMillis());
+    private volatile ScheduledExecutorService agendador;
+    private volatile long esperaEnvioMs;
+    private volatile long envioSuspensoAte = System.nanoTime();
+    private volatile boolean aguardandoCertificado;
+
+    public CancelamentoSefazService(EventoNfceRepository eventoNfceRepository,
+                                    NfceRepository nfceRepository,
+                                    XmlService xmlService,
+                                    AssinaturaDigitalService assinaturaDigitalService,
+                                    ComunicacaoSefazService comunicacaoSefazService,
+                                    PlatformTransactionManager transactionManager,
+                                    NfceConfiguration nfceConfiguration) {
+        this.eventoNfceRepository = eventoNfceRepository;
+        this.nfceRepository = nfceRepository;
+        this.xmlService = xmlService;
+        this.assinaturaDigitalService = assinaturaDigitalService;
+        this.comunicacaoSefazService = comunicacaoSefazService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.nfceConfiguration = nfceConfiguration;
+        this.transmissao = nfceConfiguration.getTransmissao();
+        if (transmissao.getTamanhoLoteEvento() < 1
+                || transmissao.getTamanhoLoteEvento() > MensagemSefaz.MAXIMO_EVENTOS_LOTE) {
+            throw new IllegalStateException("nfce.transmissao.tamanho-lote-evento deve estar entre 1 e "
+                    + MensagemSefaz.MAXIMO_EVENTOS_LOTE + ": " + transmissao.getTamanhoLoteEvento());
+        }
+        this.tpAmb = "producao".equals(nfceConfiguration.getAmbiente())
+                ? Nfce.Ambiente.PRODUCAO.getCodigo()
+                : Nfce.Ambiente.HOMOLOGACAO.getCodigo();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciar() {
+        if (!transmissao.isHabilitada()) {
+            return;
+        }
+        long pendentes = eventoNfceRepository.countByStatus(EventoNfce.StatusEvento.PENDENTE);
+        if (pendentes > 0) {
+            log.info("Retomando o registro de {} eventos de cancelamento pendentes", pendentes);
+        }
+
+        ScheduledExecutorService novo = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("nfce-evento-ciclo").daemon().factory());
+        novo.scheduleWithFixedDelay(this::cicloProtegido, 0, transmissao.getIntervaloMs(), TimeUnit.MILLISECONDS);
+        agendador = novo;
+    }
+
+    /**
+     * Um ciclo: assina os eventos pendentes que ainda não têm XML, posta os lotes em paralelo e espera todos.
+     */
+    void ciclo() {
+        if (System.nanoTime() - envioSuspensoAte < 0) {
+            return;
+        }
+        int tamanhoLote = transmissao.getTamanhoLoteEvento();
+        List<EventoNfce> pendentes = eventoNfceRepository.findByStatusOrderByIdAsc(EventoNfce.StatusEvento.PENDENTE,
+                Limit.of(tamanhoLote * transmissao.getLotesSimultaneos()));
+        if (pendentes.isEmpty() || !certificadoDisponivel()) {
+            return;
+        }
+        List<EventoNfce> assinados = assinar(pendentes);
+
+        List<Future<?>> tarefas = new ArrayList<>();
+        for (int inicio = 0; inicio < assinados.size(); inicio += tamanhoLote) {
+            List<EventoNfce> lote = assinados.subList(inicio, Math.min(inicio + tamanhoLote, assinados.size()));
+            tarefas.add(executor.submit(() -> transmitir(lote)));
+        }
+        for (Future<?> tarefa : tarefas) {
+            try {
+                tarefa.get();
+            } catch (ExecutionException e) {
+                log.error("Falha inesperada no registro de eventos na SEFAZ", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public long pendentes() {
+        return eventoNfceRepository.countByStatus(EventoNfce.StatusEvento.PENDENTE);
+    }
+
+    private void cicloProtegido() {
+        try {
+            ciclo();
+        } catch (RuntimeException e) {
+            // Uma exceção cancelaria o agendamento
+            log.error("Ciclo de registro de eventos na SEFAZ falhou", e);
+        }
+    }
+
+    /**
+     * Sem certificado o evento sairia sem assinatura e a SEFAZ o rejeitaria, então o ciclo espera. Cada ciclo
+     * tenta carregar o certificado de novo; o aviso sai uma vez por indisponibilidade.
+     */
+    private boolean certificadoDisponivel() {
+        try {
+            assinaturaDigitalService.exigirCertificado();
+        } catch (IllegalStateException e) {
+            if (!aguardandoCertificado) {
+                aguardandoCertificado = true;
+                log.warn("Eventos de cancelamento pendentes aguardando o certificado digital: {}", e.getMessage());
+            }
+            return false;
+        }
+        if (aguardandoCertificado) {
+            aguardandoCertificado = false;
+            log.info("Certificado digital disponível - retomando o registro dos eventos de cancelamento");
+        }
+        return true;
+    }
+
+    /**
+     * Monta e assina em paralelo, no pool de assinatura, os eventos ainda sem XML e grava o resultado numa
+     * transação. Evento que não pôde ser assinado fica REJEITADO com o erro; os demais seguem para o envio.
+     */
+    private List<EventoNfce> assinar(List<EventoNfce> pendentes) {
+        List<EventoNfce> semXml = pendentes.stream().filter(evento -> evento.getXml() == null).toList();
+        if (semXml.isEmpty()) {
+            return pendentes;
+        }
+
+        LocalDateTime agora = LocalDateTime.now();
+        Map<EventoNfce, CompletableFuture<String>> assinaturas = new HashMap<>();
+        for (EventoNfce evento : semXml) {
+            String xml = xmlService.gerarXmlEventoCancelamento(evento, tpAmb, agora);
+            assinaturas.put(evento, assinaturaDigitalService.assinarAsync(xml, "infEvento"));
+        }
+
+        assinaturas.forEach((evento, assinatura) -> {
+            try {
+                evento.setXml(assinatura.join());
+            } catch (CompletionException e) {
+                String erro = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+                evento.setStatus(EventoNfce.StatusEvento.REJEITADO);
+                evento.setRetornoSefaz(truncar("Erro ao assinar o evento: " + erro));
+            }
+        });
+        transactionTemplate.executeWithoutResult(status -> eventoNfceRepository.saveAll(semXml));
+
+        return pendentes.stream().filter(evento -> evento.getStatus() == EventoNfce.StatusEvento.PENDENTE).toList();
+    }
+
+    private void transmitir(List<EventoNfce> lote) {
+        long idLote = sequenciaLote.incrementAndGet();
+        String envelope = MensagemSefaz.envEvento(idLote, lote.stream().map(EventoNfce::getXml).toList());
+
+        RetornoEvento retorno;
+        try {
+            retorno = RetornoEvento.ler(comunicacaoSefazService.enviar(
+                    nfceConfiguration.getWebservice().getUrl().getRecepcaoEvento(),
+                    MensagemSefaz.ACAO_RECEPCAO_EVENTO, envelope));
+        } catch (IOException | IllegalArgumentException e) {
+            suspenderEnvio(idLote, e.getMessage());
+            return;
+        }
+        if (retorno.servicoParalisado()) {
+            String motivo = retorno.cStat() + " - " + retorno.motivo();
+            comunicacaoSefazService.registrarIndisponibilidade(motivo);
+            suspenderEnvio(idLote, motivo);
+            return;
+        }
+        esperaEnvioMs = 0;
+
+        if (RetornoEvento.LOTE_PROCESSADO.equals(retorno.cStat())) {
+            aplicarRegistros(lote, retorno.registros());
+        } else {
+            rejeitar(lote, retorno.cStat() + " - " + retorno.motivo());
+        }
+        log.info("Lote de eventos {} transmitido - Eventos: {}, Retorno: {} - {}",
+                idLote, lote.size(), retorno.cStat(), retorno.motivo());
+    }
+
+    /**
+     * Grava o resultado de cada evento e cancela, num único UPDATE, as NFC-e com evento registrado. Evento sem
+     * {@code retEvento} na resposta continua pendente.
+     */
+    private void aplicarRegistros(List<EventoNfce> lote, List<RetornoEvento.Registro> registros) {
+        Map<String, RetornoEvento.Registro> porChave = registros.stream()
+                .collect(Collectors.toMap(RetornoEvento.Registro::chave, Function.identity(), (a, b) -> b));
+
+        List<EventoNfce> alterados = new ArrayList<>(lote.size());
+        List<Long> canceladas = new ArrayList<>(lote.size());
+        for (EventoNfce evento : lote) {
+            RetornoEvento.Registro registro = porChave.get(evento.getChaveAcesso());
+            if (registro == null) {
+                log.warn("Evento de cancelamento da chave {} sem retorno no lote", evento.getChaveAcesso());
+                continue;
+            }
+            evento.setRetornoSefaz(truncar(registro.cStat() + " - " + registro.motivo()));
+            if (registro.registrado() || registro.duplicado()) {
+                evento.setStatus(EventoNfce.StatusEvento.REGISTRADO);
+                evento.setProtocolo(registro.protocolo());
+                evento.setDataRegistro(dataRegistro(registro.dataRegistro()));
+                if (registro.registrado()) {
+                    evento.setXml(MensagemSefaz.procEventoNFe(evento.getXml(), tpAmb, registro));
+                }
+                canceladas.add(evento.getNfceId());
+            } else {
+                evento.setStatus(EventoNfce.StatusEvento.REJEITADO);
+            }
+            alterados.add(evento);
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            eventoNfceRepository.saveAll(alterados);
+            if (!canceladas.isEmpty()) {
+                nfceRepository.atualizarStatusEmLote(canceladas, Nfce.StatusNfce.AUTORIZADA,
+                        Nfce.StatusNfce.CANCELADA, LocalDateTime.now());
+            }
+        });
+    }
+
+    private void rejeitar(List<EventoNfce> lote, String motivo) {
+        for (EventoNfce evento : lote) {
+            evento.setStatus(EventoNfce.StatusEvento.REJEITADO);
+            evento.setRetornoSefaz(truncar(motivo));
+        }
+        transactionTemplate.executeWithoutResult(status -> eventoNfceRepository.saveAll(lote));
+        log.warn("{} eventos de cancelamento rejeitados no lote: {}", lote.size(), motivo);
+    }
+
+    private void suspenderEnvio(long idLote, String motivo) {
+        long espera = esperaEnvioMs == 0
+                ? transmissao.getEsperaMinimaMs()
+                : Math.min(esperaEnvioMs * 2, transmissao.getEsperaMaximaMs());
+        esperaEnvioMs = espera;
+        envioSuspensoAte = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(espera);
+        log.warn("Lote de eventos {} não transmitido: {} - novos envios em {} ms", idLote, motivo, espera);
+    }
+
+    private static LocalDateTime dataRegistro(String dhRegEvento) {
+        if (dhRegEvento == null) {
+            return LocalDateTime.now();
+        }
+        try {
+            return OffsetDateTime.parse(dhRegEvento).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        } catch (DateTimeParseException e) {
+            return LocalDateTime.now();
+        }
+    }
+
+    private static String truncar(String texto) {
+        return texto.length() <= TAMANHO_MAXIMO_RETORNO ? texto : texto.substring(0, TAMANHO_MAXIMO_RETORNO);
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        ScheduledExecutorService atual = agendador;
+        if (atual != null) {
+            atual.shutdownNow();
+        }
+        executor.shutdownNow();
+    }
+}
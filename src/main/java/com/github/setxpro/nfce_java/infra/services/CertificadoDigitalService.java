@@ -0,0 +1,125 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Collections;
+
+/**
+ * Carrega o certificado A1 (PKCS#12) configurado em {@code nfce.certificado} e mantém a chave privada e a
+ * cadeia em memória para assinatura e TLS. Só o certificado carregado fica em memória: uma falha na leitura
+ * gera {@link IllegalStateException} e o próximo uso tenta de novo, então corrigir o arquivo basta.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CertificadoDigitalService {
+
+    private static final String TIPO_KEYSTORE = "PKCS12";
+
+    private final NfceConfiguration nfceConfiguration;
+    private final ResourceLoader resourceLoader;
+
+    private volatile Certificado certificado;
+
+    /**
+     * Material do certificado já decodificado. {@code certificadoBase64} é o certificado do titular
+     * em DER/Base64, pronto para o {@code X509Certificate} da assinatura.
+     */
+    public record Certificado(PrivateKey chavePrivada, X509Certificate[] cadeia, String certificadoBase64) {
+
+        public X509Certificate titular() {
+            return cadeia[0];
+        }
+    }
+
+    public boolean isDisponivel() {
+        try {
+            getCertificado();
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Certificado em memória, carregado no primeiro uso; sem certificado válido gera {@link IllegalStateException}.
+     */
+    public Certificado getCertificado() {
+        Certificado atual = certificado;
+        if (atual == null) {
+            synchronized (this) {
+                atual = certificado;
+                if (atual == null) {
+                    atual = carregar();
+                    certificado = atual;
+                }
+            }
+        }
+        return atual;
+    }
+
+    /**
+     * Descarta o certificado em memória; o próximo uso relê o keystore (troca de certificado).
+     */
+    public synchronized void recarregar() {
+        certificado = null;
+    }
+
+    private Certificado carregar() {
+        NfceConfiguration.Certificado configuracao = nfceConfiguration.getCertificado();
+        if (configuracao.getPath() == null || configuracao.getPath().isBlank()) {
+            throw new IllegalStateException("Certificado digital não configurado (nfce.certificado.path)");
+        }
+
+        Resource resource = resourceLoader.getResource(configuracao.getPath());
+        if (!resource.exists() || !resource.isReadable()) {
+            throw new IllegalStateException("Certificado digital não encontrado em " + configuracao.getPath());
+        }
+
+        char[] senha = configuracao.getSenha() == null ? new char[0] : configuracao.getSenha().toCharArray();
+
+        try (InputStream entrada = resource.getInputStream()) {
+            KeyStore keyStore = KeyStore.getInstance(TIPO_KEYSTORE);
+            keyStore.load(entrada, senha);
+
+            for (String alias : Collections.list(keyStore.aliases())) {
+                if (!keyStore.isKeyEntry(alias)) {
+                    continue;
+                }
+                PrivateKey chave = (PrivateKey) keyStore.getKey(alias, senha);
+                Certificate[] cadeia = keyStore.getCertificateChain(alias);
+                X509Certificate[] cadeiaX509 = new X509Certificate[cadeia.length];
+                for (int i = 0; i < cadeia.length; i++) {
+                    cadeiaX509[i] = (X509Certificate) cadeia[i];
+                }
+
+                log.info("Certificado digital carregado - Titular: {}, Validade: {}",
+                        cadeiaX509[0].getSubjectX500Principal().getName(), cadeiaX509[0].getNotAfter());
+
+                return new Certificado(chave, cadeiaX509, codificar(cadeiaX509[0]));
+            }
+
+        } catch (Exception e) {
+            log.error("Erro ao carregar certificado digital de {}", configuracao.getPath(), e);
+            throw new IllegalStateException("Erro ao carregar certificado digital de " + configuracao.getPath()
+                    + ": " + e.getMessage(), e);
+        }
+        throw new IllegalStateException("Nenhuma chave privada encontrada no certificado " + configuracao.getPath());
+    }
+
+    private String codificar(X509Certificate certificado) throws CertificateEncodingException {
+        return Base64.getEncoder().encodeToString(certificado.getEncoded());
+    }
+}
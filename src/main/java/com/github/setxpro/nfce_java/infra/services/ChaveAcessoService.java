@@ -3,112 +3,214 @@ package com.github.setxpro.nfce_java.infra.services;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Random;
-
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Geração e validação da chave de acesso de 44 dígitos.
+ * <p>
+ * Os dígitos são escritos aritmeticamente num {@code char[44]} e o dígito verificador (módulo 11) é acumulado
+ * durante a escrita; além do buffer, a única alocação é a {@code String} final.
+ */
 @Service
 public class ChaveAcessoService {
     private static final int[] PESOS = {4, 3, 2, 9, 8, 7, 6, 5, 4, 3, 2, 9, 8, 7, 6, 5, 4, 3, 2, 9, 8, 7, 6, 5, 4, 3, 2, 9, 8, 7, 6, 5, 4, 3, 2, 9, 8, 7, 6, 5, 4, 3, 2};
 
+    private static final int TAMANHO_CHAVE = 44;
+    private static final int POSICAO_DV = 43;
+
+    // Posições de cada campo na chave
+    private static final int UF = 0;
+    private static final int ANO_MES = 2;
+    private static final int CNPJ = 6;
+    private static final int MODELO = 20;
+    private static final int SERIE = 22;
+    private static final int NUMERO = 25;
+    private static final int TIPO_EMISSAO = 34;
+    private static final int CODIGO_NUMERICO = 35;
+
+    // Códigos IBGE das UFs
+    private static final boolean[] UFS_VALIDAS = new boolean[100];
+
+    static {
+        for (int uf : new int[]{11, 12, 13, 14, 15, 16, 17, 21, 22, 23, 24, 25, 26, 27, 28, 29,
+                31, 32, 33, 35, 41, 42, 43, 50, 51, 52, 53}) {
+            UFS_VALIDAS[uf] = true;
+        }
+    }
+
     public String gerarChaveAcesso(Integer uf, LocalDateTime dataEmissao, String cnpj,
                                    String modelo, Integer serie, Integer numero,
                                    Integer tipoEmissao, Integer codigoNumerico) {
 
-        StringBuilder chave = new StringBuilder();
-
-        // UF (2 dígitos)
-        chave.append(String.format("%02d", uf));
-
-        // Ano e mês (AAMM)
-        chave.append(dataEmissao.format(DateTimeFormatter.ofPattern("yyMM")));
-
-        // CNPJ (14 dígitos)
-        chave.append(cnpj);
-
-        // Modelo (2 dígitos)
-        chave.append(modelo);
-
-        // Série (3 dígitos)
-        chave.append(String.format("%03d", serie));
-
-        // Número (9 dígitos)
-        chave.append(String.format("%09d", numero));
-
-        // Tipo de emissão (1 dígito)
-        chave.append(tipoEmissao);
+        // Buffer local: a geração roda em threads virtuais, onde um cache por thread não é reaproveitado
+        char[] chave = new char[TAMANHO_CHAVE];
+        int soma = 0;
 
-        // Código numérico (8 dígitos)
-        chave.append(String.format("%08d", codigoNumerico));
+        soma += escreverNumero(chave, UF, 2, uf, "UF");
+        soma += escreverNumero(chave, ANO_MES, 2, dataEmissao.getYear() % 100, "Ano");
+        soma += escreverNumero(chave, ANO_MES + 2, 2, dataEmissao.getMonthValue(), "Mês");
+        soma += copiarDigitos(chave, CNPJ, 14, cnpj, "CNPJ");
+        soma += copiarDigitos(chave, MODELO, 2, modelo, "Modelo");
+        soma += escreverNumero(chave, SERIE, 3, serie, "Série");
+        soma += escreverNumero(chave, NUMERO, 9, numero, "Número");
+        soma += escreverNumero(chave, TIPO_EMISSAO, 1, tipoEmissao, "Tipo de emissão");
+        soma += escreverNumero(chave, CODIGO_NUMERICO, 8, codigoNumerico, "Código numérico");
 
-        // Cálculo do dígito verificador
-        int digitoVerificador = calcularDigitoVerificador(chave.toString());
-        chave.append(digitoVerificador);
+        chave[POSICAO_DV] = (char) ('0' + digitoVerificador(soma));
 
-        return chave.toString();
+        return new String(chave);
     }
 
     public String gerarChaveAcessoNfce(Integer uf, LocalDateTime dataEmissao, String cnpj,
                                        Integer serie, Integer numero, Integer tipoEmissao) {
 
         // Gera um código numérico aleatório de 8 dígitos
-        int codigoNumerico = new Random().nextInt(99999999 - 10000000) + 10000000;
+        int codigoNumerico = ThreadLocalRandom.current().nextInt(10000000, 99999999);
 
         return gerarChaveAcesso(uf, dataEmissao, cnpj, "65", serie, numero, tipoEmissao, codigoNumerico);
     }
 
-    private int calcularDigitoVerificador(String chave) {
+    public boolean validarChaveAcesso(String chaveAcesso) {
+        if (chaveAcesso == null || chaveAcesso.length() != TAMANHO_CHAVE) {
+            return false;
+        }
+
         int soma = 0;
+        for (int i = 0; i < POSICAO_DV; i++) {
+            int digito = chaveAcesso.charAt(i) - '0';
+            if (digito < 0 || digito > 9) {
+                return false;
+            }
+            soma += digito * PESOS[i];
+        }
 
-        for (int i = 0; i < chave.length(); i++) {
-            int digito = Character.getNumericValue(chave.charAt(i));
+        int digitoInformado = chaveAcesso.charAt(POSICAO_DV) - '0';
+        return digitoInformado == digitoVerificador(soma);
+    }
+
+    /**
+     * Motivo pelo qual uma chave é inválida, ou {@code null} se ela for válida. Além do dígito
+     * verificador, confere a UF (código IBGE) e o mês de emissão.
+     */
+    public MotivoInvalidade diagnosticarChaveAcesso(String chaveAcesso) {
+        if (chaveAcesso == null || chaveAcesso.length() != TAMANHO_CHAVE) {
+            return MotivoInvalidade.TAMANHO_INVALIDO;
+        }
+
+        int soma = 0;
+        for (int i = 0; i < POSICAO_DV; i++) {
+            int digito = chaveAcesso.charAt(i) - '0';
+            if (digito < 0 || digito > 9) {
+                return MotivoInvalidade.CARACTERE_NAO_NUMERICO;
+            }
             soma += digito * PESOS[i];
         }
 
-        int resto = soma % 11;
+        int digitoInformado = chaveAcesso.charAt(POSICAO_DV) - '0';
+        if (digitoInformado < 0 || digitoInformado > 9) {
+            return MotivoInvalidade.CARACTERE_NAO_NUMERICO;
+        }
+        if (digitoInformado != digitoVerificador(soma)) {
+            return MotivoInvalidade.DIGITO_VERIFICADOR_INVALIDO;
+        }
 
-        if (resto < 2) {
-            return 0;
-        } else {
-            return 11 - resto;
+        int uf = (chaveAcesso.charAt(UF) - '0') * 10 + chaveAcesso.charAt(UF + 1) - '0';
+        if (!UFS_VALIDAS[uf]) {
+            return MotivoInvalidade.UF_DESCONHECIDA;
+        }
+
+        int mes = (chaveAcesso.charAt(ANO_MES + 2) - '0') * 10 + chaveAcesso.charAt(ANO_MES + 3) - '0';
+        if (mes < 1 || mes > 12) {
+            return MotivoInvalidade.MES_INVALIDO;
         }
+
+        return null;
     }
 
-    public boolean validarChaveAcesso(String chaveAcesso) {
-        if (chaveAcesso == null || chaveAcesso.length() != 44) {
-            return false;
+    public String formatarChaveAcesso(String chaveAcesso) {
+        if (chaveAcesso == null || chaveAcesso.length() != TAMANHO_CHAVE) {
+            return chaveAcesso;
         }
 
-        try {
-            // Verifica se todos os caracteres são dígitos
-            Long.parseLong(chaveAcesso);
+        // 11 grupos de 4 dígitos separados por espaço
+        char[] formatada = new char[TAMANHO_CHAVE + TAMANHO_CHAVE / 4 - 1];
+        int posicao = 0;
+        for (int i = 0; i < TAMANHO_CHAVE; i++) {
+            if (i > 0 && i % 4 == 0) {
+                formatada[posicao++] = ' ';
+            }
+            formatada[posicao++] = chaveAcesso.charAt(i);
+        }
 
-            // Extrai a chave sem o dígito verificador
-            String chaveSemDv = chaveAcesso.substring(0, 43);
-            int digitoInformado = Character.getNumericValue(chaveAcesso.charAt(43));
+        return new String(formatada);
+    }
 
-            // Calcula o dígito verificador
-            int digitoCalculado = calcularDigitoVerificador(chaveSemDv);
+    /**
+     * Escreve {@code valor} com zeros à esquerda em {@code largura} posições e devolve a soma ponderada
+     * dos dígitos escritos.
+     */
+    private static int escreverNumero(char[] chave, int inicio, int largura, Integer valor, String campo) {
+        if (valor == null || valor < 0) {
+            throw new IllegalArgumentException(campo + " inválido para a chave de acesso: " + valor);
+        }
 
-            return digitoInformado == digitoCalculado;
+        int restante = valor;
+        int soma = 0;
+        for (int i = inicio + largura - 1; i >= inicio; i--) {
+            int digito = restante % 10;
+            restante /= 10;
+            chave[i] = (char) ('0' + digito);
+            soma += digito * PESOS[i];
+        }
 
-        } catch (NumberFormatException e) {
-            return false;
+        if (restante != 0) {
+            throw new IllegalArgumentException(campo + " excede " + largura + " dígitos na chave de acesso: " + valor);
         }
+        return soma;
     }
 
-    public String formatarChaveAcesso(String chaveAcesso) {
-        if (chaveAcesso == null || chaveAcesso.length() != 44) {
-            return chaveAcesso;
+    private static int copiarDigitos(char[] chave, int inicio, int largura, String valor, String campo) {
+        if (valor == null || valor.length() != largura) {
+            throw new IllegalArgumentException(campo + " deve ter " + largura + " dígitos: " + valor);
         }
 
-        StringBuilder chaveFormatada = new StringBuilder();
-        for (int i = 0; i < chaveAcesso.length(); i++) {
-            if (i > 0 && i % 4 == 0) {
-                chaveFormatada.append(" ");
+        int soma = 0;
+        for (int i = 0; i < largura; i++) {
+            char c = valor.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException(campo + " deve conter apenas dígitos: " + valor);
             }
-            chaveFormatada.append(chaveAcesso.charAt(i));
+            chave[inicio + i] = c;
+            soma += (c - '0') * PESOS[inicio + i];
+        }
+        return soma;
+    }
+
+    public enum MotivoInvalidade {
+        TAMANHO_INVALIDO("Chave deve ter 44 dígitos"),
+        CARACTERE_NAO_NUMERICO("Chave contém caracteres não numéricos"),
+        DIGITO_VERIFICADOR_INVALIDO("Dígito verificador não confere"),
+        UF_DESCONHECIDA("Código de UF desconhecido"),
+        MES_INVALIDO("Mês de emissão inválido");
+
+        private final String descricao;
+
+        MotivoInvalidade(String descricao) {
+            this.descricao = descricao;
+        }
+
+        public String getDescricao() {
+            return descricao;
         }
+    }
+
+    private static int digitoVerificador(int soma) {
+        int resto = soma % 11;
 
-        return chaveFormatada.toString();
+        if (resto < 2) {
+            return 0;
+        } else {
+            return 11 - resto;
+        }
     }
 }
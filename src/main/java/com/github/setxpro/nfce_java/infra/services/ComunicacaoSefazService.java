@@ -0,0 +1,198 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.services.sefaz.ClienteSefaz;
+import com.github.setxpro.nfce_java.infra.services.sefaz.DisjuntorSefaz;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/**
+ * Cliente SOAP compartilhado com os webservices da SEFAZ.
+ * <p>
+ * Na primeira chamada monta o {@link SSLContext} com o certificado de {@link CertificadoDigitalService} e o
+ * pool de {@link ClienteSefaz}; as chamadas seguintes, de qualquer serviço, reaproveitam as mesmas conexões.
+ * Sem certificado a chamada falha com {@link IOException} e nenhum cliente é guardado, então a primeira chamada
+ * depois de o certificado ser carregado monta o pool com ele. Só com
+ * {@code nfce.webservice.sem-autenticacao-cliente} o cliente sobe sem autenticação TLS do cliente, o que só
+ * serve para a SEFAZ simulada.
+ * <p>
+ * As chamadas passam pelo {@link DisjuntorSefaz}: com ele aberto, {@link #enviar} falha na hora com
+ * {@link IOException}, como uma falha de comunicação, sem ocupar conexão do pool. {@link #sondar} fica fora
+ * dele, para o {@link MonitorSefazService} consultar o status do serviço com o disjuntor aberto.
+ */
+@Service
+@Slf4j
+public class ComunicacaoSefazService {
+
+    private static final char[] SENHA_KEYSTORE_MEMORIA = "nfce".toCharArray();
+
+    private static final ClienteSefaz.Metricas SEM_CONEXOES = new ClienteSefaz.Metricas(0, 0, 0, 0, 0, 0, 0, 0);
+
+    private final NfceConfiguration nfceConfiguration;
+    private final CertificadoDigitalService certificadoDigitalService;
+    private final ResourceLoader resourceLoader;
+    private final DisjuntorSefaz disjuntor;
+
+    private volatile ClienteSefaz cliente;
+
+    public ComunicacaoSefazService(NfceConfiguration nfceConfiguration,
+                                   CertificadoDigitalService certificadoDigitalService,
+                                   ResourceLoader resourceLoader) {
+        this.nfceConfiguration = nfceConfiguration;
+        this.certificadoDigitalService = certificadoDigitalService;
+        this.resourceLoader = resourceLoader;
+        NfceConfiguration.Webservice.Disjuntor disjuntorConfig = nfceConfiguration.getWebservice().getDisjuntor();
+        this.disjuntor = new DisjuntorSefaz(new DisjuntorSefaz.Parametros(disjuntorConfig.getFalhasParaAbrir(),
+                disjuntorConfig.getTempoAbertoMs(), disjuntorConfig.getTempoAbertoMaximoMs()));
+        this.disjuntor.observar((anterior, novo, motivo) -> {
+            if (novo == DisjuntorSefaz.Estado.ABERTO) {
+                log.warn("Disjuntor da SEFAZ aberto ({} -> {}): {}", anterior, novo, motivo);
+            } else {
+                log.info("Disjuntor da SEFAZ {} -> {}", anterior, novo);
+            }
+        });
+    }
+
+    public String enviar(String url, String acao, String envelope) throws IOException {
+        // Falta de certificado não é falha da SEFAZ: não conta no disjuntor
+        ClienteSefaz atual = obterCliente();
+        if (!disjuntor.permitir()) {
+            DisjuntorSefaz.Metricas metricas = disjuntor.metricas();
+            throw new IOException("SEFAZ indisponível, disjuntor " + metricas.estado() + ": " + metricas.motivo());
+        }
+        String resposta;
+        try {
+            resposta = atual.enviar(url, acao, envelope);
+        } catch (IOException | RuntimeException e) {
+            disjuntor.registrarFalha(e.getMessage());
+            throw e;
+        }
+        disjuntor.registrarSucesso();
+        return resposta;
+    }
+
+    /**
+     * Chamada fora do disjuntor: passa com ele aberto e o resultado não conta nas falhas.
+     */
+    public String sondar(String url, String acao, String envelope) throws IOException {
+        return obterCliente().enviar(url, acao, envelope);
+    }
+
+    /**
+     * Resposta da SEFAZ que diz que o serviço está paralisado (108/109): conta como falha do disjuntor.
+     */
+    public void registrarIndisponibilidade(String motivo) {
+        disjuntor.registrarFalha(motivo);
+    }
+
+    public DisjuntorSefaz disjuntor() {
+        return disjuntor;
+    }
+
+    public ClienteSefaz.Metricas metricas() {
+        ClienteSefaz atual = cliente;
+        return atual != null ? atual.metricas() : SEM_CONEXOES;
+    }
+
+    /**
+     * Fecha o pool e relê o certificado; a próxima chamada abre conexões com o certificado novo.
+     */
+    public synchronized void recarregar() throws IOException {
+        certificadoDigitalService.recarregar();
+        ClienteSefaz anterior = cliente;
+        cliente = null;
+        if (anterior != null) {
+            anterior.close();
+        }
+    }
+
+    private ClienteSefaz obterCliente() throws IOException {
+        ClienteSefaz atual = cliente;
+        if (atual == null) {
+            synchronized (this) {
+                atual = cliente;
+                if (atual == null) {
+                    atual = criarCliente();
+                    cliente = atual;
+                }
+            }
+        }
+        return atual;
+    }
+
+    private ClienteSefaz criarCliente() throws IOException {
+        NfceConfiguration.Webservice webservice = nfceConfiguration.getWebservice();
+        boolean comCertificado = certificadoDigitalService.isDisponivel();
+        if (!comCertificado && !webservice.isSemAutenticacaoCliente()) {
+            throw new IOException("Certificado digital indisponível - sem conexão com a SEFAZ");
+        }
+        ClienteSefaz novo = new ClienteSefaz(criarContextoSsl(webservice, comCertificado), new ClienteSefaz.Parametros(
+                webservice.getMaxConexoes(), webservice.getMaxConexoesPorRota(), webservice.getTimeoutConexaoMs(),
+                webservice.getTimeoutLeituraMs(), webservice.getKeepAliveMs()));
+        if (!comCertificado) {
+            log.warn("Certificado digital indisponível - conexões com a SEFAZ sem autenticação do cliente "
+                    + "(nfce.webservice.sem-autenticacao-cliente)");
+        }
+        log.info("Pool de conexões com a SEFAZ criado - Máximo: {}, Por rota: {}",
+                webservice.getMaxConexoes(), webservice.getMaxConexoesPorRota());
+        return novo;
+    }
+
+    private SSLContext criarContextoSsl(NfceConfiguration.Webservice webservice, boolean comCertificado) {
+        try {
+            SSLContext contexto = SSLContext.getInstance("TLS");
+            contexto.init(comCertificado ? gerenciadoresChave() : null, gerenciadoresConfianca(webservice), null);
+            return contexto;
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Erro ao montar o contexto TLS para a SEFAZ", e);
+        }
+    }
+
+    private KeyManager[] gerenciadoresChave() throws GeneralSecurityException, IOException {
+        CertificadoDigitalService.Certificado certificado = certificadoDigitalService.getCertificado();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("nfce", certificado.chavePrivada(), SENHA_KEYSTORE_MEMORIA, certificado.cadeia());
+
+        KeyManagerFactory fabrica = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        fabrica.init(keyStore, SENHA_KEYSTORE_MEMORIA);
+        return fabrica.getKeyManagers();
+    }
+
+    private TrustManager[] gerenciadoresConfianca(NfceConfiguration.Webservice webservice)
+            throws GeneralSecurityException, IOException {
+        if (webservice.getTruststore() == null || webservice.getTruststore().isBlank()) {
+            return null;
+        }
+        Resource resource = resourceLoader.getResource(webservice.getTruststore());
+        char[] senha = webservice.getTruststoreSenha() == null ? null : webservice.getTruststoreSenha().toCharArray();
+        KeyStore truststore = KeyStore.getInstance(KeyStore.getDefaultType());
+        try (InputStream entrada = resource.getInputStream()) {
+            truststore.load(entrada, senha);
+        }
+        TrustManagerFactory fabrica = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        fabrica.init(truststore);
+        return fabrica.getTrustManagers();
+    }
+
+    @PreDestroy
+    public void encerrar() throws IOException {
+        ClienteSefaz atual = cliente;
+        if (atual != null) {
+            atual.close();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.services.contingencia.JournalContingencia;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Emissão em contingência offline ({@code tpEmis=9}) e o {@link JournalContingencia} das notas emitidas nela.
+ * <p>
+ * Enquanto a contingência está ativa as NFC-e preparadas recebem o tipo de emissão 9, a data de entrada e a
+ * justificativa. No envio o XML assinado dessas notas vai para o journal; o {@link TransmissaoSefazService}
+ * transmite o journal em lotes e confirma o que a SEFAZ recebeu. O journal só é aberto quando alguém precisa
+ * dele, e na abertura as notas não confirmadas de antes de uma queda voltam a ficar pendentes.
+ */
+@Service
+@Slf4j
+public class ContingenciaService {
+
+    private static final int TAMANHO_MINIMO_JUSTIFICATIVA = 15;
+    private static final int TAMANHO_MAXIMO_JUSTIFICATIVA = 256;
+
+    /**
+     * Estado da contingência e do journal.
+     */
+    public record Situacao(boolean ativa, LocalDateTime inicio, String justificativa, int notasPendentes,
+                           long tamanhoJournal) {
+    }
+
+    private record Entrada(LocalDateTime inicio, String justificativa) {
+    }
+
+    private final Path arquivoJournal;
+
+    private volatile Entrada entrada;
+    private volatile JournalContingencia journal;
+
+    public ContingenciaService(NfceConfiguration nfceConfiguration) {
+        NfceConfiguration.Contingencia contingencia = nfceConfiguration.getContingencia();
+        this.arquivoJournal = Path.of(contingencia.getJournal());
+        if (contingencia.isAtiva()) {
+            this.entrada = new Entrada(LocalDateTime.now(), validarJustificativa(contingencia.getJustificativa()));
+        }
+    }
+
+    public boolean isAtiva() {
+        return entrada != null;
+    }
+
+    /**
+     * Liga a contingência; se já estiver ativa, mantém a data de entrada e a justificativa originais.
+     */
+    public synchronized Situacao ativar(String justificativa) {
+        String validada = validarJustificativa(justificativa);
+        if (entrada == null) {
+            entrada = new Entrada(LocalDateTime.now(), validada);
+            log.warn("Contingência offline ativada - Justificativa: {}", validada);
+        }
+        return situacao();
+    }
+
+    public synchronized Situacao desativar() {
+        if (entrada != null) {
+            entrada = null;
+            log.info("Contingência offline desativada - NFC-e no journal: {}", notasPendentes());
+        }
+        return situacao();
+    }
+
+    public Situacao situacao() {
+        Entrada atual = entrada;
+        JournalContingencia aberto = journal;
+        return new Situacao(atual != null, atual != null ? atual.inicio() : null,
+                atual != null ? atual.justificativa() : null, notasPendentes(),
+                aberto != null ? aberto.tamanho() : 0);
+    }
+
+    /**
+     * Tipo de emissão de uma NFC-e que está sendo preparada, com a entrada em contingência quando ativa.
+     */
+    public void aplicar(Nfce nfce) {
+        Entrada atual = entrada;
+        if (atual == null) {
+            nfce.setTipoEmissao(Nfce.TipoEmissao.NORMAL);
+            return;
+        }
+        nfce.setTipoEmissao(Nfce.TipoEmissao.CONTINGENCIA_OFFLINE);
+        nfce.setDataContingencia(atual.inicio());
+        nfce.setJustificativaContingencia(atual.justificativa());
+    }
+
+    /**
+     * Grava as notas no journal; retorna depois do fsync.
+     */
+    public void registrar(List<JournalContingencia.Nota> notas) {
+        if (notas.isEmpty()) {
+            return;
+        }
+        try {
+            journal().anexar(notas);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erro ao gravar o journal de contingência", e);
+        }
+    }
+
+    /**
+     * Próximas notas a transmitir, das mais antigas para as mais novas.
+     */
+    public List<JournalContingencia.Nota> pendentes(int maximo) {
+        if (!journalExiste()) {
+            return List.of();
+        }
+        try {
+            return journal().pendentes(maximo);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erro ao ler o journal de contingência", e);
+        }
+    }
+
+    /**
+     * Tira do journal as notas, pela chave de acesso, que já chegaram à SEFAZ.
+     */
+    public void confirmar(Collection<String> chaves) {
+        if (chaves.isEmpty()) {
+            return;
+        }
+        try {
+            journal().confirmar(chaves);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erro ao confirmar notas no journal de contingência", e);
+        }
+    }
+
+    public int notasPendentes() {
+        return journalExiste() ? journal().quantidadePendentes() : 0;
+    }
+
+    private boolean journalExiste() {
+        return journal != null || Files.exists(arquivoJournal);
+    }
+
+    private JournalContingencia journal() {
+        JournalContingencia atual = journal;
+        if (atual == null) {
+            synchronized (this) {
+                atual = journal;
+                if (atual == null) {
+                    atual = abrirJournal();
+                    journal = atual;
+                }
+            }
+        }
+        return atual;
+    }
+
+    private JournalContingencia abrirJournal() {
+        try {
+            JournalContingencia aberto = new JournalContingencia(arquivoJournal);
+            if (aberto.bytesDescartados() > 0) {
+                log.warn("Journal de contingência {} tinha {} bytes de registro incompleto, descartados",
+                        arquivoJournal, aberto.bytesDescartados());
+            }
+            if (aberto.quantidadePendentes() > 0) {
+                log.info("Journal de contingência aberto com {} NFC-e a transmitir", aberto.quantidadePendentes());
+            }
+            return aberto;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Erro ao abrir o journal de contingência " + arquivoJournal, e);
+        }
+    }
+
+    private static String validarJustificativa(String justificativa) {
+        if (justificativa == null || justificativa.trim().length() < TAMANHO_MINIMO_JUSTIFICATIVA
+                || justificativa.trim().length() > TAMANHO_MAXIMO_JUSTIFICATIVA) {
+            throw new IllegalArgumentException("Justificativa da contingência deve ter entre "
+                    + TAMANHO_MINIMO_JUSTIFICATIVA + " e " + TAMANHO_MAXIMO_JUSTIFICATIVA + " caracteres");
+        }
+        return justificativa.trim();
+    }
+
+    @PreDestroy
+    public void encerrar() throws IOException {
+        JournalContingencia atual = journal;
+        if (atual != null) {
+            atual.close();
+        }
+    }
+}
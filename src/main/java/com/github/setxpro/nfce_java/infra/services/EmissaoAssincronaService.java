@@ -0,0 +1,236 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceRequestDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.ProcessamentoNfce;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.ProcessamentoNfce.Etapa;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.ProcessamentoNfceRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Emissão assíncrona da NFC-e: a recepção grava a nota numerada e totalizada e devolve o id; chave de
+ * acesso, XML, assinatura e transmissão rodam depois, cada uma na sua transação curta.
+ * <p>
+ * Cada NFC-e percorre as etapas numa virtual thread própria. O limite de cada etapa é um {@link Semaphore},
+ * de modo que um pico de recepções vira threads estacionadas baratas em vez de conexões do pool ocupadas.
+ * O andamento fica em {@link ProcessamentoNfce}, pode ser consultado ou acompanhado por SSE, e as notas
+ * interrompidas por um desligamento são retomadas da última etapa concluída na subida seguinte.
+ */
+@Service
+@Slf4j
+public class EmissaoAssincronaService {
+
+    private static final int TAMANHO_MAXIMO_MENSAGEM = 500;
+
+    private final NfceService nfceService;
+    private final ProcessamentoNfceRepository processamentoNfceRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long timeoutEventosMs;
+    private final List<Estagio> estagios;
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("nfce-emissao-", 1).factory());
+    private final Map<Long, List<SseEmitter>> assinantes = new ConcurrentHashMap<>();
+    private volatile boolean encerrando;
+
+    public EmissaoAssincronaService(NfceService nfceService,
+                                    ProcessamentoNfceRepository processamentoNfceRepository,
+                                    PlatformTransactionManager transactionManager,
+                                    NfceConfiguration nfceConfiguration) {
+        this.nfceService = nfceService;
+        this.processamentoNfceRepository = processamentoNfceRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        NfceConfiguration.Emissao emissao = nfceConfiguration.getEmissao();
+        this.timeoutEventosMs = emissao.getTimeoutEventosMs();
+        this.estagios = List.of(
+                new Estagio(Etapa.CHAVE_GERADA, new Semaphore(emissao.getConcorrenciaChave()), nfceService::gerarChaveAcesso),
+                new Estagio(Etapa.XML_GERADO, new Semaphore(emissao.getConcorrenciaXml()), nfceService::gerarXml),
+                new Estagio(Etapa.ASSINADA, new Semaphore(emissao.getConcorrenciaAssinatura()), nfceService::assinarNfce),
+                new Estagio(Etapa.TRANSMITIDA, new Semaphore(emissao.getConcorrenciaTransmissao()), nfceService::enviarNfce));
+    }
+
+    /**
+     * Grava a NFC-e e o registro de andamento numa única transação e agenda as etapas seguintes. Dentro de uma
+     * transação maior (a da {@code Idempotency-Key}) o agendamento espera o commit, para que as etapas encontrem
+     * a nota gravada.
+     */
+    public ProcessamentoNfce receber(NfceRequestDto request) {
+        ProcessamentoNfce processamento = transactionTemplate.execute(status -> {
+            ProcessamentoNfce novo = new ProcessamentoNfce();
+            novo.setNfceId(nfceService.registrarNfce(request));
+            novo.setEtapa(Etapa.RECEBIDA);
+            return processamentoNfceRepository.save(novo);
+        });
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    agendar(processamento.getNfceId(), Etapa.RECEBIDA);
+                }
+            });
+        } else {
+            agendar(processamento.getNfceId(), Etapa.RECEBIDA);
+        }
+        return processamento;
+    }
+
+    public ProcessamentoNfce consultar(Long id) {
+        return processamentoNfceRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("NFC-e sem emissão assíncrona com ID: " + id));
+    }
+
+    /**
+     * Canal SSE com um evento {@code etapa} a cada etapa concluída; fecha quando a emissão termina.
+     */
+    public SseEmitter acompanhar(Long id) {
+        ProcessamentoNfce atual = consultar(id);
+        SseEmitter emitter = new SseEmitter(timeoutEventosMs);
+
+        if (!atual.getEtapa().isFinal()) {
+            assinantes.computeIfAbsent(id, chave -> new CopyOnWriteArrayList<>()).add(emitter);
+            Runnable remover = () -> remover(id, emitter);
+            emitter.onCompletion(remover);
+            emitter.onTimeout(remover);
+            emitter.onError(erro -> remover.run());
+
+            // Uma etapa pode ter terminado entre a consulta e o registro: relê para não perder a transição
+            atual = consultar(id);
+        }
+
+        enviar(emitter, atual);
+        if (atual.getEtapa().isFinal()) {
+            remover(id, emitter);
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void retomarPendentes() {
+        List<ProcessamentoNfce> pendentes = processamentoNfceRepository
+                .findByEtapaNotInOrderByNfceIdAsc(Set.of(Etapa.TRANSMITIDA, Etapa.ERRO));
+        if (!pendentes.isEmpty()) {
+            log.info("Retomando {} emissões assíncronas pendentes", pendentes.size());
+        }
+        for (ProcessamentoNfce pendente : pendentes) {
+            agendar(pendente.getNfceId(), pendente.getEtapa());
+        }
+    }
+
+    @PreDestroy
+    void encerrar() throws InterruptedException {
+        // Sem interromper: a etapa em andamento termina e as demais ficam para a retomada
+        encerrando = true;
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private void agendar(Long id, Etapa ultimaConcluida) {
+        executor.execute(() -> processar(id, ultimaConcluida));
+    }
+
+    void processar(Long id, Etapa ultimaConcluida) {
+        for (Estagio estagio : estagios) {
+            if (estagio.etapa().ordinal() <= ultimaConcluida.ordinal()) {
+                continue;
+            }
+            if (encerrando) {
+                return;
+            }
+
+            ProcessamentoNfce processamento;
+            try {
+                processamento = executar(id, estagio);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Falha na emissão assíncrona da NFC-e {} antes de {}", id, estagio.etapa(), e);
+                notificar(registrarErro(id, e));
+                return;
+            }
+            notificar(processamento);
+        }
+    }
+
+    private ProcessamentoNfce executar(Long id, Estagio estagio) throws InterruptedException {
+        estagio.limite().acquire();
+        try {
+            return transactionTemplate.execute(status -> {
+                estagio.acao().accept(id);
+                ProcessamentoNfce processamento = consultar(id);
+                processamento.setEtapa(estagio.etapa());
+                return processamento;
+            });
+        } finally {
+            estagio.limite().release();
+        }
+    }
+
+    private ProcessamentoNfce registrarErro(Long id, RuntimeException erro) {
+        String mensagem = erro.getMessage() == null ? erro.getClass().getSimpleName() : erro.getMessage();
+        return transactionTemplate.execute(status -> {
+            ProcessamentoNfce processamento = consultar(id);
+            processamento.setEtapa(Etapa.ERRO);
+            processamento.setMensagemErro(mensagem.length() > TAMANHO_MAXIMO_MENSAGEM
+                    ? mensagem.substring(0, TAMANHO_MAXIMO_MENSAGEM) : mensagem);
+            return processamento;
+        });
+    }
+
+    private void notificar(ProcessamentoNfce processamento) {
+        Long id = processamento.getNfceId();
+        List<SseEmitter> emitters = processamento.getEtapa().isFinal() ? assinantes.remove(id) : assinantes.get(id);
+        if (emitters == null) {
+            return;
+        }
+        for (SseEmitter emitter : emitters) {
+            enviar(emitter, processamento);
+            if (processamento.getEtapa().isFinal()) {
+                emitter.complete();
+            }
+        }
+    }
+
+    private void enviar(SseEmitter emitter, ProcessamentoNfce processamento) {
+        try {
+            emitter.send(SseEmitter.event().name("etapa").data(processamento));
+        } catch (IOException | IllegalStateException e) {
+            // Cliente desconectado ou emitter já encerrado
+            remover(processamento.getNfceId(), emitter);
+        }
+    }
+
+    private void remover(Long id, SseEmitter emitter) {
+        assinantes.computeIfPresent(id, (chave, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+
+    private record Estagio(Etapa etapa, Semaphore limite, LongConsumer acao) {
+    }
+}
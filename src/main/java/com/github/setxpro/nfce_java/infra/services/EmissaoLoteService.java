@@ -0,0 +1,230 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceRequestDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceResponseDto;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Emissão em lote a partir de um upload NDJSON (uma {@link NfceRequestDto} por linha), pensada para o
+ * fechamento do PDV que operou em contingência e envia o movimento do dia de uma vez.
+ * <p>
+ * A entrada é lida com o parser de streaming do Jackson, uma nota por vez, e as linhas são agrupadas em
+ * blocos de {@code nfce.emissao.tamanho-bloco-lote}. Cada bloco é emitido pelo {@link EmissaoParalelaService}
+ * numa virtual thread. No máximo {@code nfce.emissao.concorrencia-lote} blocos ficam em andamento: a leitura
+ * espera o mais antigo terminar, então a memória não depende do tamanho do upload e o cliente que envia mais
+ * rápido do que o banco grava é freado pelo próprio TCP. O resultado de cada linha sai em NDJSON, na ordem da
+ * entrada, com um resumo na última linha.
+ */
+@Service
+@Slf4j
+public class EmissaoLoteService {
+
+    private static final String ERRO_INTERNO = "Erro interno ao emitir a NFC-e";
+
+    private final EmissaoParalelaService emissaoParalelaService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int maximoEmAndamento;
+    private final int tamanhoBloco;
+
+    public EmissaoLoteService(EmissaoParalelaService emissaoParalelaService,
+                              ObjectMapper objectMapper,
+                              Validator validator,
+                              NfceConfiguration nfceConfiguration) {
+        this.emissaoParalelaService = emissaoParalelaService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.maximoEmAndamento = nfceConfiguration.getEmissao().getConcorrenciaLote();
+        this.tamanhoBloco = nfceConfiguration.getEmissao().getTamanhoBlocoLote();
+    }
+
+    /**
+     * {@code erro} só vem preenchido quando a entrada deixou de ser JSON válido e a leitura parou antes do fim.
+     */
+    public record Resumo(long total, long emitidas, long rejeitadas, String erro) {
+    }
+
+    private record Resultado(long linha, NfceResponseDto nota, String erro) {
+    }
+
+    /**
+     * Linha lida: a requisição validada ou o erro de leitura/validação.
+     */
+    private record Entrada(long linha, NfceRequestDto request, String erro) {
+    }
+
+    public Resumo emitir(InputStream entrada, OutputStream saida) throws IOException {
+        Deque<CompletableFuture<List<Resultado>>> pendentes = new ArrayDeque<>(maximoEmAndamento);
+        List<Entrada> bloco = new ArrayList<>(tamanhoBloco);
+        long total = 0;
+        long emitidas = 0;
+        String erroLeitura = null;
+
+        try (ExecutorService executor = Executors.newThreadPerTaskExecutor(
+                     Thread.ofVirtual().name("nfce-lote-", 1).factory());
+             JsonParser parser = objectMapper.getFactory().createParser(entrada);
+             JsonGenerator json = objectMapper.getFactory().createGenerator(saida)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.setRootValueSeparator(null);
+
+            while (true) {
+                long linha = parser.currentLocation().getLineNr();
+                try {
+                    JsonToken token = parser.nextToken();
+                    if (token == null) {
+                        break;
+                    }
+                    linha = parser.currentTokenLocation().getLineNr();
+                    if (token != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        bloco.add(new Entrada(linha, null, "Cada linha deve ser um objeto JSON"));
+                    } else {
+                        bloco.add(preparar(linha, objectMapper.readTree(parser)));
+                    }
+                } catch (JsonProcessingException e) {
+                    // Depois de um erro de sintaxe não há como achar com segurança o início da próxima nota
+                    erroLeitura = "Linha " + linha + ": JSON inválido - " + e.getOriginalMessage();
+                    break;
+                }
+                total++;
+
+                if (bloco.size() == tamanhoBloco) {
+                    pendentes.addLast(enviar(bloco, executor));
+                    bloco = new ArrayList<>(tamanhoBloco);
+
+                    // Segura a leitura até o bloco mais antigo terminar, o que limita a memória e as conexões em uso
+                    if (pendentes.size() >= maximoEmAndamento) {
+                        emitidas += escrever(json, pendentes.removeFirst().join());
+                    }
+                }
+            }
+            if (!bloco.isEmpty()) {
+                pendentes.addLast(enviar(bloco, executor));
+            }
+            while (!pendentes.isEmpty()) {
+                emitidas += escrever(json, pendentes.removeFirst().join());
+            }
+
+            json.writeStartObject();
+            json.writeNumberField("total", total);
+            json.writeNumberField("emitidas", emitidas);
+            json.writeNumberField("rejeitadas", total - emitidas);
+            if (erroLeitura != null) {
+                json.writeStringField("erro", erroLeitura);
+            }
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+
+        return new Resumo(total, emitidas, total - emitidas, erroLeitura);
+    }
+
+    /**
+     * Converte e valida a nota na thread de leitura; só as válidas seguem para a emissão.
+     */
+    private Entrada preparar(long linha, JsonNode no) {
+        NfceRequestDto request;
+        try {
+            request = objectMapper.treeToValue(no, NfceRequestDto.class);
+        } catch (JsonProcessingException e) {
+            return new Entrada(linha, null, e.getOriginalMessage());
+        }
+
+        Set<ConstraintViolation<NfceRequestDto>> violacoes = validator.validate(request);
+        if (!violacoes.isEmpty()) {
+            String erro = violacoes.stream()
+                    .sorted(Comparator.comparing(violacao -> violacao.getPropertyPath().toString()))
+                    .map(violacao -> violacao.getPropertyPath() + ": " + violacao.getMessage())
+                    .collect(Collectors.joining("; "));
+            return new Entrada(linha, null, erro);
+        }
+
+        return new Entrada(linha, request, null);
+    }
+
+    private CompletableFuture<List<Resultado>> enviar(List<Entrada> bloco, ExecutorService executor) {
+        return CompletableFuture.supplyAsync(() -> emitirBloco(bloco), executor);
+    }
+
+    private List<Resultado> emitirBloco(List<Entrada> bloco) {
+        List<NfceRequestDto> validas = new ArrayList<>(bloco.size());
+        for (Entrada entrada : bloco) {
+            if (entrada.request() != null) {
+                validas.add(entrada.request());
+            }
+        }
+
+        List<EmissaoParalelaService.Resultado> emitidas;
+        try {
+            emitidas = validas.isEmpty() ? List.of() : emissaoParalelaService.emitir(validas);
+        } catch (RuntimeException e) {
+            log.error("Erro ao emitir bloco de {} NFC-e do lote", validas.size(), e);
+            emitidas = Collections.nCopies(validas.size(), new EmissaoParalelaService.Resultado(null, ERRO_INTERNO));
+        }
+
+        List<Resultado> resultados = new ArrayList<>(bloco.size());
+        int proxima = 0;
+        for (Entrada entrada : bloco) {
+            if (entrada.request() == null) {
+                resultados.add(new Resultado(entrada.linha(), null, entrada.erro()));
+            } else {
+                EmissaoParalelaService.Resultado emitida = emitidas.get(proxima++);
+                resultados.add(new Resultado(entrada.linha(), emitida.nota(), emitida.erro()));
+            }
+        }
+        return resultados;
+    }
+
+    private int escrever(JsonGenerator json, List<Resultado> resultados) throws IOException {
+        int emitidas = 0;
+        for (Resultado resultado : resultados) {
+            emitidas += escrever(json, resultado);
+        }
+        // Entrega o progresso ao cliente a cada bloco
+        json.flush();
+        return emitidas;
+    }
+
+    private int escrever(JsonGenerator json, Resultado resultado) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("linha", resultado.linha());
+        NfceResponseDto nota = resultado.nota();
+        if (nota != null) {
+            json.writeNumberField("id", nota.getId());
+            json.writeNumberField("serie", nota.getSerie());
+            json.writeNumberField("numero", nota.getNumero());
+            json.writeStringField("chave_acesso", nota.getChaveAcesso());
+            json.writeStringField("status", nota.getStatus());
+        } else {
+            json.writeStringField("erro", resultado.erro());
+        }
+        json.writeEndObject();
+        json.writeRaw('\n');
+        return nota != null ? 1 : 0;
+    }
+}
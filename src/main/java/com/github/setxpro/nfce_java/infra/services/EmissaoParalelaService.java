@@ -0,0 +1,186 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceRequestDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceResponseDto;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Emissão de um bloco de NFC-e em três passos:
+ * <ol>
+ *     <li>reserva dos números, em sequência, para que sigam a ordem de entrada;</li>
+ *     <li>etapas de CPU (totais, chave de acesso, QR Code e XML) distribuídas num {@link ForkJoinPool}
+ *     próprio, já que cada nota é independente das outras;</li>
+ *     <li>gravação do bloco inteiro numa única transação, com os inserts em batch.</li>
+ * </ol>
+ * Se a transação do bloco falhar, cada nota é montada de novo e gravada sozinha, para que só as
+ * problemáticas fiquem com erro.
+ */
+@Service
+@Slf4j
+public class EmissaoParalelaService {
+
+    /**
+     * Abaixo disso a divisão custa mais do que montar as notas na própria thread.
+     */
+    static final int LIMIAR_DIVISAO = 4;
+
+    private static final String ERRO_INTERNO = "Erro interno ao emitir a NFC-e";
+
+    private final NfceService nfceService;
+    private final NumeracaoService numeracaoService;
+    private final ForkJoinPool pool;
+
+    public EmissaoParalelaService(NfceService nfceService,
+                                  NumeracaoService numeracaoService,
+                                  NfceConfiguration nfceConfiguration) {
+        this.nfceService = nfceService;
+        this.numeracaoService = numeracaoService;
+
+        int paralelismo = nfceConfiguration.getEmissao().getParalelismoCpu();
+        this.pool = new ForkJoinPool(paralelismo > 0 ? paralelismo : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Resultado de uma nota do bloco: a nota gravada ou o erro.
+     */
+    public record Resultado(NfceResponseDto nota, String erro) {
+    }
+
+    /**
+     * Emite as notas do bloco e devolve o resultado de cada uma, na ordem recebida.
+     */
+    public List<Resultado> emitir(List<NfceRequestDto> requests) {
+        int quantidade = requests.size();
+        Resultado[] resultados = new Resultado[quantidade];
+
+        int[] numeros = new int[quantidade];
+        for (int i = 0; i < quantidade; i++) {
+            NfceRequestDto request = requests.get(i);
+            if (request.getNumero() == null) {
+                try {
+                    numeros[i] = numeracaoService.reservarNumero(request.getSerie());
+                } catch (RuntimeException e) {
+                    resultados[i] = erro(e);
+                }
+            }
+        }
+
+        NfceService.NfceMontada[] montadas = montar(requests, numeros, resultados);
+
+        List<NfceService.NfceMontada> paraGravar = new ArrayList<>(quantidade);
+        for (NfceService.NfceMontada montada : montadas) {
+            if (montada != null) {
+                paraGravar.add(montada);
+            }
+        }
+
+        if (!paraGravar.isEmpty()) {
+            try {
+                List<NfceResponseDto> gravadas = nfceService.gravarLote(paraGravar);
+                for (int i = 0, j = 0; i < quantidade; i++) {
+                    if (montadas[i] != null) {
+                        resultados[i] = new Resultado(gravadas.get(j++), null);
+                    }
+                }
+            } catch (RuntimeException e) {
+                log.warn("Bloco de {} NFC-e não gravado ({}); gravando uma a uma", paraGravar.size(), e.getMessage());
+                gravarUmaAUma(requests, numeros, montadas, resultados);
+            }
+        }
+
+        return List.of(resultados);
+    }
+
+    /**
+     * Etapas de CPU de todas as notas do bloco no {@link ForkJoinPool}. Devolve a nota montada em cada posição
+     * ou {@code null}, com o erro já registrado em {@code resultados}.
+     */
+    NfceService.NfceMontada[] montar(List<NfceRequestDto> requests, int[] numeros, Resultado[] resultados) {
+        NfceService.NfceMontada[] montadas = new NfceService.NfceMontada[requests.size()];
+        pool.invoke(new Montagem(requests, numeros, resultados, montadas, 0, requests.size()));
+        return montadas;
+    }
+
+    /**
+     * A transação do bloco foi desfeita e as entidades ficaram com ids que não existem no banco, então cada
+     * nota é montada de novo, com o mesmo número, antes de ser gravada.
+     */
+    private void gravarUmaAUma(List<NfceRequestDto> requests, int[] numeros,
+                               NfceService.NfceMontada[] montadas, Resultado[] resultados) {
+        for (int i = 0; i < montadas.length; i++) {
+            if (montadas[i] == null) {
+                continue;
+            }
+            try {
+                resultados[i] = new Resultado(
+                        nfceService.gravarNfce(nfceService.montarNfce(requests.get(i), numeros[i])), null);
+            } catch (RuntimeException e) {
+                resultados[i] = erro(e);
+            }
+        }
+    }
+
+    private static Resultado erro(RuntimeException e) {
+        if (e instanceof IllegalArgumentException || e instanceof IllegalStateException) {
+            return new Resultado(null, e.getMessage());
+        }
+        log.error("Erro ao emitir NFC-e do bloco", e);
+        return new Resultado(null, ERRO_INTERNO);
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        pool.shutdown();
+    }
+
+    /**
+     * Divide o intervalo ao meio até {@value #LIMIAR_DIVISAO} notas; cada tarefa escreve só nas suas posições.
+     */
+    private final class Montagem extends RecursiveAction {
+
+        private final List<NfceRequestDto> requests;
+        private final int[] numeros;
+        private final Resultado[] resultados;
+        private final NfceService.NfceMontada[] montadas;
+        private final int inicio;
+        private final int fim;
+
+        private Montagem(List<NfceRequestDto> requests, int[] numeros, Resultado[] resultados,
+                         NfceService.NfceMontada[] montadas, int inicio, int fim) {
+            this.requests = requests;
+            this.numeros = numeros;
+            this.resultados = resultados;
+            this.montadas = montadas;
+            this.inicio = inicio;
+            this.fim = fim;
+        }
+
+        @Override
+        protected void compute() {
+            if (fim - inicio <= LIMIAR_DIVISAO) {
+                for (int i = inicio; i < fim; i++) {
+                    if (resultados[i] != null) {
+                        continue;
+                    }
+                    try {
+                        montadas[i] = nfceService.montarNfce(requests.get(i), numeros[i]);
+                    } catch (RuntimeException e) {
+                        resultados[i] = erro(e);
+                    }
+                }
+                return;
+            }
+            int meio = (inicio + fim) >>> 1;
+            invokeAll(new Montagem(requests, numeros, resultados, montadas, inicio, meio),
+                    new Montagem(requests, numeros, resultados, montadas, meio, fim));
+        }
+    }
+}
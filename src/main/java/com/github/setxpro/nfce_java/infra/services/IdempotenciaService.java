@@ -0,0 +1,267 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.RequisicaoIdempotente;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.RequisicaoIdempotenteRepository;
+import com.github.setxpro.nfce_java.infra.services.idempotencia.CacheRespostas;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * {@code Idempotency-Key} do POST de NFC-e: a repetição de uma requisição já atendida devolve a resposta
+ * original sem refazer chave de acesso, QR Code e XML.
+ * <p>
+ * A chave é reservada em {@code nfce_idempotencia} antes da emissão e a resposta é gravada na mesma transação
+ * que grava a NFC-e, então uma nota nunca fica emitida sem a resposta da sua chave. As respostas mais recentes
+ * ficam também num {@link CacheRespostas} em memória. Duplicatas simultâneas na mesma instância esperam a
+ * primeira terminar e recebem o mesmo resultado (single-flight); em outra instância, a chave ainda reservada
+ * é recusada com {@link IllegalStateException}. A mesma chave com outro corpo gera
+ * {@link IllegalArgumentException}. Se a emissão falha a reserva é desfeita e a chave pode ser usada de novo.
+ * <p>
+ * Uma reserva abandonada pode ser assumida por outra requisição. A versão da linha garante que só uma delas
+ * grava a resposta: a outra tem a emissão desfeita e recebe {@link IllegalStateException}.
+ */
+@Service
+@Slf4j
+public class IdempotenciaService {
+
+    public static final int TAMANHO_MAXIMO_CHAVE = 255;
+
+    private final RequisicaoIdempotenteRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final NfceConfiguration.Idempotencia configuracao;
+    private final CacheRespostas cache;
+
+    private final Map<String, CompletableFuture<CacheRespostas.Resposta>> emAndamento = new ConcurrentHashMap<>();
+    private volatile ScheduledExecutorService agendador;
+
+    /**
+     * Corpo da resposta e se ele veio de uma execução anterior.
+     */
+    public record Resultado<T>(T corpo, boolean repetida) {
+    }
+
+    public IdempotenciaService(RequisicaoIdempotenteRepository repository,
+                               PlatformTransactionManager transactionManager,
+                               ObjectMapper objectMapper,
+                               NfceConfiguration nfceConfiguration) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.configuracao = nfceConfiguration.getIdempotencia();
+        this.cache = new CacheRespostas(configuracao.getMaximoEntradasCache());
+    }
+
+    /**
+     * Executa {@code operacao} uma única vez por {@code chave}. {@code requisicao} identifica o pedido (o seu
+     * JSON é comparado nas repetições) e {@code tipo} é o tipo da resposta, usado para lê-la do banco.
+     */
+    public <T> Resultado<T> executar(String chave, Object requisicao, Class<T> tipo, Supplier<T> operacao) {
+        validarChave(chave);
+        String hash = hash(requisicao);
+
+        CacheRespostas.Resposta recente = cache.obter(chave, LocalDateTime.now());
+        if (recente != null) {
+            return repetir(chave, hash, recente, tipo);
+        }
+
+        CompletableFuture<CacheRespostas.Resposta> execucao = new CompletableFuture<>();
+        CompletableFuture<CacheRespostas.Resposta> existente = emAndamento.putIfAbsent(chave, execucao);
+        if (existente != null) {
+            log.info("Requisição com Idempotency-Key {} já em andamento - aguardando o resultado", chave);
+            return repetir(chave, hash, aguardar(existente), tipo);
+        }
+
+        try {
+            Resultado<T> resultado = executarUnica(chave, hash, tipo, operacao);
+            // Quem espera só compara o hash e usa o corpo; a validade fica com o cache
+            execucao.complete(new CacheRespostas.Resposta(hash, resultado.corpo(), LocalDateTime.MAX));
+            return resultado;
+        } catch (RuntimeException e) {
+            execucao.completeExceptionally(e);
+            throw e;
+        } finally {
+            emAndamento.remove(chave, execucao);
+        }
+    }
+
+    private <T> Resultado<T> executarUnica(String chave, String hash, Class<T> tipo, Supplier<T> operacao) {
+        RequisicaoIdempotente reserva = reservar(chave, hash);
+        if (reserva.getSituacao() == RequisicaoIdempotente.Situacao.CONCLUIDA) {
+            CacheRespostas.Resposta gravada = new CacheRespostas.Resposta(reserva.getHashRequisicao(),
+                    ler(reserva.getResposta(), tipo), reserva.getExpiraEm());
+            cache.guardar(chave, gravada);
+            return repetir(chave, hash, gravada, tipo);
+        }
+
+        T corpo;
+        try {
+            corpo = transactionTemplate.execute(status -> {
+                T resposta = operacao.get();
+                reserva.setSituacao(RequisicaoIdempotente.Situacao.CONCLUIDA);
+                reserva.setResposta(json(resposta));
+                repository.save(reserva);
+                return resposta;
+            });
+        } catch (OptimisticLockingFailureException e) {
+            // A reserva foi assumida por outra requisição, que grava a resposta; esta emissão foi desfeita
+            throw new IllegalStateException("Idempotency-Key assumida por outra requisição durante o processamento: "
+                    + chave);
+        } catch (RuntimeException e) {
+            transactionTemplate.executeWithoutResult(status -> repository.liberar(chave, reserva.getVersao()));
+            throw e;
+        }
+        cache.guardar(chave, new CacheRespostas.Resposta(hash, corpo, reserva.getExpiraEm()));
+        return new Resultado<>(corpo, false);
+    }
+
+    /**
+     * Lê a chave do banco e, se não houver resposta válida, a reserva para esta requisição. Uma reserva vencida
+     * ou abandonada (processando há mais de {@code tempoMaximoProcessamentoMs}) é assumida.
+     */
+    private RequisicaoIdempotente reservar(String chave, String hash) {
+        try {
+            return transactionTemplate.execute(status -> {
+                LocalDateTime agora = LocalDateTime.now();
+                RequisicaoIdempotente requisicao = repository.findById(chave).orElse(null);
+                if (requisicao != null && requisicao.getExpiraEm().isAfter(agora)) {
+                    if (requisicao.getSituacao() == RequisicaoIdempotente.Situacao.CONCLUIDA) {
+                        return requisicao;
+                    }
+                    LocalDateTime abandonadaEm = requisicao.getUpdatedAt()
+                            .plusNanos(TimeUnit.MILLISECONDS.toNanos(configuracao.getTempoMaximoProcessamentoMs()));
+                    if (abandonadaEm.isAfter(agora)) {
+                        throw new IllegalStateException("Requisição com a mesma Idempotency-Key em processamento: " + chave);
+                    }
+                    log.warn("Assumindo a Idempotency-Key {} abandonada desde {}", chave, requisicao.getUpdatedAt());
+                }
+                if (requisicao == null) {
+                    requisicao = new RequisicaoIdempotente();
+                    requisicao.setChave(chave);
+                }
+                requisicao.setHashRequisicao(hash);
+                requisicao.setSituacao(RequisicaoIdempotente.Situacao.EM_ANDAMENTO);
+                requisicao.setResposta(null);
+                requisicao.setExpiraEm(agora.plusHours(configuracao.getValidadeHoras()));
+                return repository.saveAndFlush(requisicao);
+            });
+        } catch (DataIntegrityViolationException | OptimisticLockingFailureException e) {
+            // Outra instância inseriu ou assumiu a mesma chave entre a leitura e a gravação
+            throw new IllegalStateException("Requisição com a mesma Idempotency-Key em processamento: " + chave);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Resultado<T> repetir(String chave, String hash, CacheRespostas.Resposta resposta, Class<T> tipo) {
+        if (!resposta.hashRequisicao().equals(hash) || !tipo.isInstance(resposta.corpo())) {
+            throw new IllegalArgumentException("Idempotency-Key já utilizada com outra requisição: " + chave);
+        }
+        log.info("Requisição repetida com Idempotency-Key {} - devolvendo a resposta original", chave);
+        return new Resultado<>((T) resposta.corpo(), true);
+    }
+
+    private static CacheRespostas.Resposta aguardar(CompletableFuture<CacheRespostas.Resposta> execucao) {
+        try {
+            return execucao.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+
+    public CacheRespostas.Estatisticas estatisticasCache() {
+        return cache.estatisticas();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciar() {
+        ScheduledExecutorService novo = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("nfce-idempotencia-limpeza").daemon().factory());
+        novo.scheduleWithFixedDelay(this::removerExpiradas, 1, 1, TimeUnit.HOURS);
+        agendador = novo;
+    }
+
+    /**
+     * Apaga as chaves vencidas; devolve quantas foram removidas.
+     */
+    public int removerExpiradas() {
+        try {
+            Integer removidas = transactionTemplate.execute(status -> repository.removerExpiradas(LocalDateTime.now()));
+            if (removidas != null && removidas > 0) {
+                log.info("{} Idempotency-Keys vencidas removidas", removidas);
+            }
+            return removidas == null ? 0 : removidas;
+        } catch (RuntimeException e) {
+            // Uma exceção cancelaria o agendamento
+            log.error("Falha ao remover Idempotency-Keys vencidas", e);
+            return 0;
+        }
+    }
+
+    private static void validarChave(String chave) {
+        if (chave == null || chave.isBlank()) {
+            throw new IllegalArgumentException("Idempotency-Key não pode ser vazia");
+        }
+        if (chave.length() > TAMANHO_MAXIMO_CHAVE) {
+            throw new IllegalArgumentException("Idempotency-Key deve ter no máximo " + TAMANHO_MAXIMO_CHAVE + " caracteres");
+        }
+    }
+
+    private String hash(Object requisicao) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(objectMapper.writeValueAsBytes(requisicao)));
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Erro ao calcular o hash da requisição", e);
+        }
+    }
+
+    private String json(Object resposta) {
+        try {
+            return objectMapper.writeValueAsString(resposta);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Erro ao gravar a resposta da requisição idempotente", e);
+        }
+    }
+
+    private <T> T ler(String resposta, Class<T> tipo) {
+        try {
+            return objectMapper.readValue(resposta, tipo);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Erro ao ler a resposta da requisição idempotente", e);
+        }
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        ScheduledExecutorService atual = agendador;
+        if (atual != null) {
+            atual.shutdownNow();
+        }
+    }
+}
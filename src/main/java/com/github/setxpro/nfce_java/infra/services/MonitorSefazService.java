@@ -0,0 +1,201 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.services.sefaz.DisjuntorSefaz;
+import com.github.setxpro.nfce_java.infra.services.sefaz.MensagemSefaz;
+import com.github.setxpro.nfce_java.infra.services.sefaz.RetornoSefaz;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Monitor de disponibilidade da SEFAZ pelo {@code NfeStatusServico}, com o resultado em cache.
+ * <p>
+ * Com a SEFAZ em operação (107) consulta a cada {@code intervalo-maximo-ms}; fora dela consulta a partir de
+ * {@code intervalo-minimo-ms}, dobrando a cada consulta sem sucesso. A consulta passa por fora do disjuntor e
+ * manda nele: 107 fecha, falha de comunicação ou 108/109 abre. Quando o disjuntor abre por falhas nas chamadas
+ * de transmissão, a próxima consulta é antecipada para o intervalo mínimo.
+ * <p>
+ * Com {@code contingencia-automatica} a abertura do disjuntor liga a contingência offline e o fechamento a
+ * desliga, mas só a que o próprio monitor ligou: contingência ligada pela API fica como está. Com o monitor
+ * desabilitado nada disso acontece: ele não consulta nem acompanha o disjuntor.
+ */
+@Service
+@Slf4j
+public class MonitorSefazService {
+
+    private static final int TAMANHO_MAXIMO_JUSTIFICATIVA = 256;
+
+    /**
+     * Última consulta ao status do serviço; {@code cStat} nulo quando a SEFAZ não respondeu.
+     */
+    public record StatusServico(boolean disponivel, String cStat, String motivo, Integer tempoMedioSegundos,
+                                long latenciaMs, LocalDateTime consultadoEm) {
+    }
+
+    /**
+     * Status em cache, estado do disjuntor e se a contingência atual foi ligada pelo monitor.
+     */
+    public record Situacao(StatusServico statusServico, DisjuntorSefaz.Metricas disjuntor,
+                           boolean contingenciaAutomatica, long intervaloConsultaMs, long consultas) {
+    }
+
+    private final ComunicacaoSefazService comunicacaoSefazService;
+    private final ContingenciaService contingenciaService;
+    private final NfceConfiguration nfceConfiguration;
+    private final NfceConfiguration.Monitor monitor;
+    private final int tpAmb;
+
+    private volatile StatusServico ultimo;
+    private volatile boolean contingenciaAutomatica;
+    private volatile long intervaloAtualMs;
+    private volatile long consultas;
+    private volatile ScheduledExecutorService agendador;
+    private ScheduledFuture<?> proxima;
+
+    public MonitorSefazService(ComunicacaoSefazService comunicacaoSefazService,
+                               ContingenciaService contingenciaService,
+                               NfceConfiguration nfceConfiguration) {
+        this.comunicacaoSefazService = comunicacaoSefazService;
+        this.contingenciaService = contingenciaService;
+        this.nfceConfiguration = nfceConfiguration;
+        this.monitor = nfceConfiguration.getMonitor();
+        if (monitor.getIntervaloMinimoMs() < 1 || monitor.getIntervaloMaximoMs() < monitor.getIntervaloMinimoMs()) {
+            throw new IllegalStateException("nfce.monitor.intervalo-minimo-ms deve ser positivo e não maior que "
+                    + "nfce.monitor.intervalo-maximo-ms");
+        }
+        this.tpAmb = "producao".equals(nfceConfiguration.getAmbiente())
+                ? Nfce.Ambiente.PRODUCAO.getCodigo()
+                : Nfce.Ambiente.HOMOLOGACAO.getCodigo();
+        this.intervaloAtualMs = monitor.getIntervaloMaximoMs();
+        if (monitor.isHabilitado()) {
+            comunicacaoSefazService.disjuntor().observar(this::aoMudarDisjuntor);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciar() {
+        if (!monitor.isHabilitado()) {
+            return;
+        }
+        agendador = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("nfce-sefaz-monitor").daemon().factory());
+        agendar(0);
+    }
+
+    /**
+     * Consulta o status do serviço agora, atualiza o cache e o disjuntor e devolve o resultado.
+     */
+    StatusServico verificar() {
+        long inicio = System.nanoTime();
+        StatusServico status;
+        try {
+            RetornoSefaz retorno = RetornoSefaz.ler(comunicacaoSefazService.sondar(
+                    nfceConfiguration.getWebservice().getUrl().getStatusServico(),
+                    MensagemSefaz.ACAO_STATUS_SERVICO, MensagemSefaz.consStatServ(tpAmb, nfceConfiguration.getUf())));
+            status = new StatusServico(RetornoSefaz.SERVICO_EM_OPERACAO.equals(retorno.cStat()), retorno.cStat(),
+                    retorno.motivo(), retorno.tempoMedioSegundos(), decorrido(inicio), LocalDateTime.now());
+        } catch (IOException | IllegalArgumentException e) {
+            status = new StatusServico(false, null, e.getMessage(), null, decorrido(inicio), LocalDateTime.now());
+        }
+        ultimo = status;
+        consultas++;
+
+        DisjuntorSefaz disjuntor = comunicacaoSefazService.disjuntor();
+        if (status.disponivel()) {
+            intervaloAtualMs = monitor.getIntervaloMaximoMs();
+            disjuntor.fechar();
+        } else {
+            intervaloAtualMs = intervaloAtualMs >= monitor.getIntervaloMaximoMs()
+                    ? monitor.getIntervaloMinimoMs()
+                    : Math.min(intervaloAtualMs * 2, monitor.getIntervaloMaximoMs());
+            String motivo = status.cStat() != null ? status.cStat() + " - " + status.motivo() : status.motivo();
+            log.warn("SEFAZ fora de operação: {} - nova consulta em {} ms", motivo, intervaloAtualMs);
+            disjuntor.abrir(motivo);
+        }
+        return status;
+    }
+
+    public StatusServico statusServico() {
+        return ultimo;
+    }
+
+    public Situacao situacao() {
+        return new Situacao(ultimo, comunicacaoSefazService.disjuntor().metricas(), contingenciaAutomatica,
+                intervaloAtualMs, consultas);
+    }
+
+    private void aoMudarDisjuntor(DisjuntorSefaz.Estado anterior, DisjuntorSefaz.Estado novo, String motivo) {
+        if (novo == DisjuntorSefaz.Estado.ABERTO) {
+            if (anterior == DisjuntorSefaz.Estado.FECHADO && agendador != null) {
+                // Abriu por falhas nas chamadas: confirma pelo status do serviço sem esperar o intervalo longo
+                intervaloAtualMs = monitor.getIntervaloMinimoMs();
+                agendar(intervaloAtualMs);
+            }
+            ligarContingencia(motivo);
+        } else if (novo == DisjuntorSefaz.Estado.FECHADO) {
+            desligarContingencia();
+        }
+    }
+
+    private synchronized void ligarContingencia(String motivo) {
+        if (!monitor.isContingenciaAutomatica() || contingenciaService.isAtiva()) {
+            return;
+        }
+        String justificativa = "SEFAZ indisponivel: " + (motivo != null ? motivo : "disjuntor aberto");
+        contingenciaService.ativar(justificativa.length() <= TAMANHO_MAXIMO_JUSTIFICATIVA
+                ? justificativa
+                : justificativa.substring(0, TAMANHO_MAXIMO_JUSTIFICATIVA));
+        contingenciaAutomatica = true;
+    }
+
+    private synchronized void desligarContingencia() {
+        if (contingenciaAutomatica) {
+            contingenciaAutomatica = false;
+            contingenciaService.desativar();
+        }
+    }
+
+    private synchronized void agendar(long esperaMs) {
+        ScheduledExecutorService atual = agendador;
+        if (atual == null || atual.isShutdown()) {
+            return;
+        }
+        if (proxima != null) {
+            proxima.cancel(false);
+        }
+        proxima = atual.schedule(this::cicloProtegido, esperaMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cicloProtegido() {
+        try {
+            verificar();
+        } catch (RuntimeException e) {
+            log.error("Consulta do status da SEFAZ falhou", e);
+        } finally {
+            agendar(intervaloAtualMs);
+        }
+    }
+
+    private static long decorrido(long inicio) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        ScheduledExecutorService atual = agendador;
+        if (atual != null) {
+            atual.shutdownNow();
+        }
+    }
+}
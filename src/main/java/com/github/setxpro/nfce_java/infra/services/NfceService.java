@@ -3,18 +3,32 @@ package com.github.setxpro.nfce_java.infra.services;
 import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
 import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceRequestDto;
 import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceResponseDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.EventoNfce;
 import com.github.setxpro.nfce_java.infra.persistences.model.entity.ItemNfce;
 import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.NfceDocumento;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.NumeracaoNaoUtilizada;
 import com.github.setxpro.nfce_java.infra.persistences.model.entity.PagamentoNfce;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.EventoNfceRepository;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceDocumentoRepository;
 import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceRepository;
+import com.github.setxpro.nfce_java.infra.services.contingencia.JournalContingencia;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,64 +38,123 @@ import java.util.stream.Collectors;
 public class NfceService {
 
     private final NfceRepository nfceRepository;
+    private final NfceDocumentoRepository nfceDocumentoRepository;
     private final NfceConfiguration nfceConfiguration;
     private final ChaveAcessoService chaveAcessoService;
     private final QrCodeService qrCodeService;
     private final XmlService xmlService;
     private final NumeracaoService numeracaoService;
+    private final AssinaturaDigitalService assinaturaDigitalService;
+    private final ContingenciaService contingenciaService;
+    private final EventoNfceRepository eventoNfceRepository;
+    private final TributacaoService tributacaoService;
+
+    /**
+     * NFC-e com chave, QR Code e XML, pronta para ser gravada.
+     */
+    public record NfceMontada(Nfce nfce, String xmlAssinado) {
+    }
 
     public NfceResponseDto criarNfce(NfceRequestDto request) {
         log.info("Criando nova NFC-e - Série: {}, Número: {}", request.getSerie(), request.getNumero());
 
-        // Validar se já existe NFC-e com mesmo número e série
-        if (nfceRepository.existsByNumeroAndSerie(request.getNumero(), request.getSerie())) {
-            throw new IllegalArgumentException("Já existe uma NFC-e com o número " + request.getNumero() + " e série " + request.getSerie());
-        }
+        // Gerar chave de acesso, URL do QR Code e XML
+        NfceMontada montada = montar(prepararNfce(request, null));
 
-        // Criar entidade NFC-e
-        Nfce nfce = new Nfce();
-        mapearRequestParaEntity(request, nfce);
+        // Salvar no banco
+        Nfce nfce = salvarNova(montada.nfce());
+        nfceDocumentoRepository.save(novoDocumento(nfce, montada.xmlAssinado()));
 
-        // Calcular totais
-        calcularTotais(nfce);
+        log.info("NFC-e criada com sucesso - ID: {}, Chave: {}", nfce.getId(), nfce.getChaveAcesso());
 
-        // Gerar chave de acesso
-        String chaveAcesso = chaveAcessoService.gerarChaveAcessoNfce(
-                nfceConfiguration.getUf(),
-                nfce.getDataEmissao(),
-                nfce.getEmitenteCnpj(),
-                nfce.getSerie(),
-                nfce.getNumero(),
-                1 // Tipo emissão normal
-        );
-        nfce.setChaveAcesso(chaveAcesso);
+        return mapearEntityParaResponse(nfce);
+    }
 
-        // Gerar URL do QR Code
-        String urlQrCode = qrCodeService.gerarUrlQrCode(
-                chaveAcesso,
-                nfce.getAmbiente().getCodigo(),
-                nfce.getDataEmissao(),
-                nfce.getValorTotalNota(),
-                nfce.getDestinatarioCpfCnpj()
-        );
-        nfce.setUrlConsulta(urlQrCode);
-        nfce.setQrCode(urlQrCode);
+    /**
+     * Etapas de CPU da emissão em lote: mapeamento, totais, chave de acesso, QR Code e XML. Não acessa o
+     * banco, então roda fora de transação e pode ser chamada em paralelo. {@code numero} só é usado quando
+     * a requisição não traz o número da nota.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public NfceMontada montarNfce(NfceRequestDto request, int numero) {
+        return montar(prepararNfce(request, numero));
+    }
 
-        // Gerar XML
-        String xmlAssinado = xmlService.gerarXmlNfce(nfce);
-        nfce.setXmlAssinado(xmlAssinado);
+    /**
+     * Grava as NFC-e montadas e seus XML numa única transação, em batch. Se alguma nota violar a
+     * unicidade de série/número, nenhuma do lote é gravada.
+     */
+    public List<NfceResponseDto> gravarLote(List<NfceMontada> montadas) {
+        List<Nfce> nfces = montadas.stream().map(NfceMontada::nfce).toList();
+        try {
+            nfceRepository.saveAllAndFlush(nfces);
+        } catch (DataIntegrityViolationException e) {
+            throw new IllegalArgumentException("Lote contém NFC-e com número já utilizado na série");
+        }
 
-        // Definir status inicial
-        nfce.setStatus(Nfce.StatusNfce.RASCUNHO);
+        nfceDocumentoRepository.saveAll(montadas.stream()
+                .map(montada -> novoDocumento(montada.nfce(), montada.xmlAssinado()))
+                .toList());
 
-        // Salvar no banco
-        nfce = nfceRepository.save(nfce);
+        log.info("Lote de {} NFC-e gravado", nfces.size());
 
-        log.info("NFC-e criada com sucesso - ID: {}, Chave: {}", nfce.getId(), chaveAcesso);
+        return nfces.stream().map(this::mapearEntityParaResponse).toList();
+    }
 
+    /**
+     * Grava uma NFC-e montada na sua própria transação; usado quando o lote inteiro não pôde ser gravado.
+     */
+    public NfceResponseDto gravarNfce(NfceMontada montada) {
+        Nfce nfce = salvarNova(montada.nfce());
+        nfceDocumentoRepository.save(novoDocumento(nfce, montada.xmlAssinado()));
         return mapearEntityParaResponse(nfce);
     }
 
+    /**
+     * Recepção da emissão assíncrona: valida, numera, calcula os totais e grava a NFC-e em RASCUNHO, sem
+     * chave nem XML. As demais etapas ficam com o {@link EmissaoAssincronaService}.
+     */
+    public Long registrarNfce(NfceRequestDto request) {
+        Nfce nfce = salvarNova(prepararNfce(request, null));
+
+        log.info("NFC-e recebida para emissão assíncrona - ID: {}, Série: {}, Número: {}",
+                nfce.getId(), nfce.getSerie(), nfce.getNumero());
+
+        return nfce.getId();
+    }
+
+    /**
+     * Etapa assíncrona: chave de acesso e URL do QR Code de uma NFC-e registrada.
+     */
+    public void gerarChaveAcesso(Long id) {
+        Nfce nfce = nfceRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("NFC-e não encontrada com ID: " + id));
+
+        if (nfce.getChaveAcesso() == null) {
+            aplicarChaveAcessoEQrCode(nfce);
+        }
+    }
+
+    /**
+     * Etapa assíncrona: XML da NFC-e, gravado em {@code nfce_documento}.
+     */
+    public void gerarXml(Long id) {
+        Nfce nfce = nfceRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("NFC-e não encontrada com ID: " + id));
+
+        if (nfce.getChaveAcesso() == null) {
+            throw new IllegalStateException("NFC-e sem chave de acesso não pode ter o XML gerado");
+        }
+
+        NfceDocumento documento = nfceDocumentoRepository.findById(id).orElseGet(() -> {
+            NfceDocumento novo = new NfceDocumento();
+            novo.setNfce(nfce);
+            return novo;
+        });
+        documento.setXmlAssinado(xmlService.gerarXmlNfce(nfce));
+        nfceDocumentoRepository.save(documento);
+    }
+
     @Transactional(readOnly = true)
     public NfceResponseDto buscarPorId(Long id) {
         Nfce nfce = nfceRepository.findById(id)
@@ -98,6 +171,16 @@ public class NfceService {
         return mapearEntityParaResponse(nfce);
     }
 
+    /**
+     * XML da NFC-e para download: o autorizado quando existir, senão o assinado.
+     */
+    @Transactional(readOnly = true)
+    public String buscarXml(Long id) {
+        NfceDocumento documento = buscarDocumento(id);
+
+        return documento.getXmlAutorizado() != null ? documento.getXmlAutorizado() : documento.getXmlAssinado();
+    }
+
     @Transactional(readOnly = true)
     public List<NfceResponseDto> buscarPorStatus(String status) {
         Nfce.StatusNfce statusEnum = Nfce.StatusNfce.valueOf(status.toUpperCase());
@@ -118,87 +201,415 @@ public class NfceService {
     }
 
     public NfceResponseDto assinarNfce(Long id) {
-        Nfce nfce = nfceRepository.findById(id)
-                .orElseThrow(() -> new IllegalArgumentException("NFC-e não encontrada com ID: " + id));
+        // Sem certificado a NFC-e continua em RASCUNHO: nunca fica ASSINADA sem a assinatura XMLDSig
+        assinaturaDigitalService.exigirCertificado();
 
-        if (nfce.getStatus() != Nfce.StatusNfce.RASCUNHO) {
-            throw new IllegalStateException("NFC-e deve estar em status RASCUNHO para ser assinada");
-        }
+        // O UPDATE condicional vem antes da assinatura: segura a linha até o commit e, numa chamada
+        // concorrente, só uma das duas assina
+        transicionar(id, Nfce.StatusNfce.RASCUNHO, Nfce.StatusNfce.ASSINADA,
+                "NFC-e deve estar em status RASCUNHO para ser assinada");
 
-        // Aqui seria implementada a assinatura digital
-        // Por simplicidade, apenas alteramos o status
-        nfce.setStatus(Nfce.StatusNfce.ASSINADA);
-        nfce = nfceRepository.save(nfce);
+        NfceDocumento documento = buscarDocumento(id);
+        documento.setXmlAssinado(assinaturaDigitalService.assinar(documento.getXmlAssinado(), "infNFe"));
+        nfceDocumentoRepository.save(documento);
+        aplicarQrCodeOffline(Map.of(id, documento.getXmlAssinado()));
 
         log.info("NFC-e assinada - ID: {}", id);
 
-        return mapearEntityParaResponse(nfce);
+        return buscarPorId(id);
     }
 
     public NfceResponseDto enviarNfce(Long id) {
-        Nfce nfce = nfceRepository.findById(id)
-                .orElseThrow(() -> new IllegalArgumentException("NFC-e não encontrada com ID: " + id));
+        // Com nfce.transmissao.habilitada a NFC-e enviada entra na fila do TransmissaoSefazService (as de
+        // contingência, pelo journal); sem ela o envio é só a mudança de status
+        transicionar(id, Nfce.StatusNfce.ASSINADA, Nfce.StatusNfce.ENVIADA,
+                "NFC-e deve estar assinada para ser enviada");
+        registrarContingencia(List.of(id));
 
-        if (nfce.getStatus() != Nfce.StatusNfce.ASSINADA) {
-            throw new IllegalStateException("NFC-e deve estar assinada para ser enviada");
+        log.info("NFC-e enviada - ID: {}", id);
+
+        return buscarPorId(id);
+    }
+
+    public NfceResponseDto autorizarNfce(Long id) {
+        if (nfceConfiguration.getTransmissao().isHabilitada()) {
+            throw new IllegalStateException("Com a transmissão à SEFAZ habilitada a autorização vem do retorno do lote");
+        }
+        // Simular autorização (protocolo com os 15 dígitos do leiaute)
+        String protocolo = String.format("135%012d", System.currentTimeMillis() % 1_000_000_000_000L);
+        if (nfceRepository.atualizarStatusAutorizacao(id, Nfce.StatusNfce.ENVIADA, Nfce.StatusNfce.AUTORIZADA,
+                protocolo, LocalDateTime.now()) == 0) {
+            throw falhaTransicao(id, "NFC-e deve estar enviada para ser autorizada");
         }
 
-        // Aqui seria implementado o envio para a SEFAZ
-        // Por simplicidade, apenas alteramos o status
-        nfce.setStatus(Nfce.StatusNfce.ENVIADA);
-        nfce = nfceRepository.save(nfce);
+        log.info("NFC-e autorizada - ID: {}, Protocolo: {}", id, protocolo);
 
-        log.info("NFC-e enviada - ID: {}", id);
+        return buscarPorId(id);
+    }
 
-        return mapearEntityParaResponse(nfce);
+    public NfceResponseDto cancelarNfce(Long id, String justificativa) {
+        validarJustificativa(justificativa);
+
+        // Com nfce.transmissao.habilitada o cancelamento vira um evento 110111 na fila do
+        // CancelamentoSefazService e a NFC-e só muda de status quando a SEFAZ registrar o evento
+        if (nfceConfiguration.getTransmissao().isHabilitada()) {
+            String erro = solicitarCancelamento(List.of(id), justificativa).get(0).erro();
+            if (erro != null) {
+                throw nfceRepository.existsById(id) ? new IllegalStateException(erro) : new IllegalArgumentException(erro);
+            }
+            log.info("Cancelamento solicitado à SEFAZ - ID: {}, Justificativa: {}", id, justificativa);
+            return buscarPorId(id);
+        }
+
+        transicionar(id, Nfce.StatusNfce.AUTORIZADA, Nfce.StatusNfce.CANCELADA,
+                "Apenas NFC-e autorizadas podem ser canceladas");
+
+        log.info("NFC-e cancelada - ID: {}, Justificativa: {}", id, justificativa);
+
+        return buscarPorId(id);
     }
 
-    public NfceResponseDto autorizarNfce(Long id) {
-        Nfce nfce = nfceRepository.findById(id)
-                .orElseThrow(() -> new IllegalArgumentException("NFC-e não encontrada com ID: " + id));
+    @Transactional(readOnly = true)
+    public List<EventoNfce> listarEventos(Long id) {
+        if (!nfceRepository.existsById(id)) {
+            throw new IllegalArgumentException("NFC-e não encontrada com ID: " + id);
+        }
+        return eventoNfceRepository.findByNfceIdOrderByIdAsc(id);
+    }
+
+    /**
+     * Resultado de uma NFC-e numa transição em lote; {@code erro} nulo indica sucesso.
+     */
+    public record ResultadoTransicao(Long id, String erro) {
+    }
+
+    /**
+     * Assina um bloco de NFC-e numa transação: bloqueia as linhas, assina os XML em paralelo no pool de
+     * assinatura e muda o status das que deram certo num único UPDATE.
+     */
+    public List<ResultadoTransicao> assinarLote(List<Long> ids) {
+        return transicionarLote(ids, Nfce.StatusNfce.RASCUNHO, Nfce.StatusNfce.ASSINADA,
+                "NFC-e deve estar em status RASCUNHO para ser assinada", this::assinarDocumentos);
+    }
 
-        if (nfce.getStatus() != Nfce.StatusNfce.ENVIADA) {
-            throw new IllegalStateException("NFC-e deve estar enviada para ser autorizada");
+    public List<ResultadoTransicao> enviarLote(List<Long> ids) {
+        List<ResultadoTransicao> resultados = transicionarLote(ids, Nfce.StatusNfce.ASSINADA,
+                Nfce.StatusNfce.ENVIADA, "NFC-e deve estar assinada para ser enviada", null);
+        registrarContingencia(resultados.stream()
+                .filter(resultado -> resultado.erro() == null)
+                .map(ResultadoTransicao::id)
+                .toList());
+        return resultados;
+    }
+
+    public List<ResultadoTransicao> cancelarLote(List<Long> ids, String justificativa) {
+        validarJustificativa(justificativa);
+        if (nfceConfiguration.getTransmissao().isHabilitada()) {
+            return solicitarCancelamento(ids, justificativa);
         }
+        return transicionarLote(ids, Nfce.StatusNfce.AUTORIZADA, Nfce.StatusNfce.CANCELADA,
+                "Apenas NFC-e autorizadas podem ser canceladas", null);
+    }
 
-        // Simular autorização
-        nfce.setStatus(Nfce.StatusNfce.AUTORIZADA);
-        nfce.setProtocoloAutorizacao("135" + System.currentTimeMillis());
-        nfce.setDataAutorizacao(LocalDateTime.now());
-        nfce = nfceRepository.save(nfce);
+    @Transactional(readOnly = true)
+    public Integer obterProximoNumero(Integer serie) {
+        return numeracaoService.obterProximoNumero(serie);
+    }
 
-        log.info("NFC-e autorizada - ID: {}, Protocolo: {}", id, nfce.getProtocoloAutorizacao());
+    public List<NumeracaoNaoUtilizada> listarNumeracaoNaoUtilizada() {
+        return numeracaoService.listarNaoUtilizadas();
+    }
 
-        return mapearEntityParaResponse(nfce);
+    private Nfce prepararNfce(NfceRequestDto request, Integer numeroReservado) {
+        // Criar entidade NFC-e
+        Nfce nfce = new Nfce();
+        mapearRequestParaEntity(request, nfce);
+
+        // Sem número informado, usa o já reservado ou o próximo da série (a unicidade é garantida pela constraint série/número)
+        if (nfce.getNumero() == null) {
+            nfce.setNumero(numeroReservado != null ? numeroReservado : numeracaoService.reservarNumero(nfce.getSerie()));
+        } else {
+            numeracaoService.validarNumeroInformado(nfce.getNumero(), nfce.getSerie());
+        }
+
+        // ICMS, PIS e COFINS dos itens pela tabela de tributação (quando habilitada)
+        tributacaoService.aplicar(nfce);
+
+        // Calcular totais
+        calcularTotais(nfce);
+
+        // Emissão normal ou em contingência offline (tpEmis=9)
+        contingenciaService.aplicar(nfce);
+
+        // Definir status inicial
+        nfce.setStatus(Nfce.StatusNfce.RASCUNHO);
+
+        return nfce;
     }
 
-    public NfceResponseDto cancelarNfce(Long id, String justificativa) {
-        Nfce nfce = nfceRepository.findById(id)
-                .orElseThrow(() -> new IllegalArgumentException("NFC-e não encontrada com ID: " + id));
+    private void aplicarChaveAcessoEQrCode(Nfce nfce) {
+        String chaveAcesso = chaveAcessoService.gerarChaveAcessoNfce(
+                nfceConfiguration.getUf(),
+                nfce.getDataEmissao(),
+                nfce.getEmitenteCnpj(),
+                nfce.getSerie(),
+                nfce.getNumero(),
+                nfce.getTipoEmissao().getCodigo()
+        );
+        nfce.setChaveAcesso(chaveAcesso);
 
-        if (nfce.getStatus() != Nfce.StatusNfce.AUTORIZADA) {
-            throw new IllegalStateException("Apenas NFC-e autorizadas podem ser canceladas");
+        // Leiaute 2.00 quando o CSC estiver configurado
+        String urlQrCode = qrCodeService.isCscConfigurado()
+                ? qrCodeService.gerarUrlQrCodeV2(chaveAcesso, nfce.getAmbiente().getCodigo())
+                : qrCodeService.gerarUrlQrCode(
+                        chaveAcesso,
+                        nfce.getAmbiente().getCodigo(),
+                        nfce.getDataEmissao(),
+                        nfce.getValorTotalNota(),
+                        nfce.getDestinatarioCpfCnpj()
+                );
+        nfce.setUrlConsulta(urlQrCode);
+        nfce.setQrCode(urlQrCode);
+    }
+
+    private NfceMontada montar(Nfce nfce) {
+        aplicarChaveAcessoEQrCode(nfce);
+        return new NfceMontada(nfce, xmlService.gerarXmlNfce(nfce));
+    }
+
+    private static NfceDocumento novoDocumento(Nfce nfce, String xmlAssinado) {
+        NfceDocumento documento = new NfceDocumento();
+        documento.setNfce(nfce);
+        documento.setXmlAssinado(xmlAssinado);
+        return documento;
+    }
+
+    private Nfce salvarNova(Nfce nfce) {
+        try {
+            return nfceRepository.saveAndFlush(nfce);
+        } catch (DataIntegrityViolationException e) {
+            throw new IllegalArgumentException("Já existe uma NFC-e com o número " + nfce.getNumero() + " e série " + nfce.getSerie());
+        }
+    }
+
+    /**
+     * Transição de um bloco: um SELECT com bloqueio separa as NFC-e no status esperado, {@code preparacao}
+     * (se houver) faz o trabalho de cada uma e devolve os erros por id, e um único UPDATE muda o status das
+     * restantes.
+     */
+    private List<ResultadoTransicao> transicionarLote(List<Long> ids, Nfce.StatusNfce atual, Nfce.StatusNfce novo,
+                                                      String mensagem,
+                                                      Function<List<Long>, Map<Long, String>> preparacao) {
+        Map<Long, Nfce.StatusNfce> situacoes = new HashMap<>();
+        for (NfceRepository.Situacao situacao : nfceRepository.bloquearSituacoes(ids)) {
+            situacoes.put(situacao.getId(), situacao.getStatus());
+        }
+
+        Map<Long, String> erros = new HashMap<>();
+        List<Long> elegiveis = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Nfce.StatusNfce status = situacoes.get(id);
+            if (status == null) {
+                erros.put(id, "NFC-e não encontrada com ID: " + id);
+            } else if (status != atual) {
+                erros.put(id, mensagem);
+            } else {
+                elegiveis.add(id);
+            }
+        }
+
+        if (preparacao != null && !elegiveis.isEmpty()) {
+            erros.putAll(preparacao.apply(elegiveis));
+            elegiveis.removeIf(erros::containsKey);
+        }
+        if (!elegiveis.isEmpty()) {
+            nfceRepository.atualizarStatusEmLote(elegiveis, atual, novo, LocalDateTime.now());
+        }
+
+        log.info("Transição em lote {} -> {}: {} de {} NFC-e", atual, novo, elegiveis.size(), ids.size());
+
+        return ids.stream().map(id -> new ResultadoTransicao(id, erros.get(id))).toList();
+    }
+
+    /**
+     * Grava um evento de cancelamento PENDENTE para cada NFC-e autorizada do bloco, com as linhas bloqueadas
+     * como numa transição. Um evento rejeitado pela SEFAZ volta a PENDENTE com a nova justificativa; um
+     * pendente ou já registrado é erro.
+     */
+    private List<ResultadoTransicao> solicitarCancelamento(List<Long> ids, String justificativa) {
+        Map<Long, NfceRepository.Autorizacao> autorizacoes = new HashMap<>();
+        for (NfceRepository.Autorizacao autorizacao : nfceRepository.bloquearAutorizacoes(ids)) {
+            autorizacoes.put(autorizacao.getId(), autorizacao);
+        }
+        Map<Long, EventoNfce> existentes = new HashMap<>();
+        for (EventoNfce evento : eventoNfceRepository.findByNfceIdInAndTipoEvento(ids, EventoNfce.CANCELAMENTO)) {
+            existentes.put(evento.getNfceId(), evento);
         }
 
+        Map<Long, String> erros = new HashMap<>();
+        List<EventoNfce> eventos = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            NfceRepository.Autorizacao autorizacao = autorizacoes.get(id);
+            EventoNfce evento = existentes.get(id);
+            if (autorizacao == null) {
+                erros.put(id, "NFC-e não encontrada com ID: " + id);
+            } else if (autorizacao.getStatus() != Nfce.StatusNfce.AUTORIZADA) {
+                erros.put(id, "Apenas NFC-e autorizadas podem ser canceladas");
+            } else if (autorizacao.getProtocoloAutorizacao() == null) {
+                erros.put(id, "NFC-e sem protocolo de autorização não pode ser cancelada");
+            } else if (evento != null && evento.getStatus() != EventoNfce.StatusEvento.REJEITADO) {
+                erros.put(id, "Cancelamento da NFC-e já solicitado à SEFAZ");
+            } else {
+                if (evento == null) {
+                    evento = new EventoNfce();
+                    evento.setNfceId(id);
+                    evento.setChaveAcesso(autorizacao.getChaveAcesso());
+                    evento.setTipoEvento(EventoNfce.CANCELAMENTO);
+                    evento.setSequencia(1);
+                    evento.setProtocoloNfe(autorizacao.getProtocoloAutorizacao());
+                }
+                evento.setJustificativa(justificativa);
+                evento.setStatus(EventoNfce.StatusEvento.PENDENTE);
+                evento.setRetornoSefaz(null);
+                evento.setXml(null);
+                eventos.add(evento);
+            }
+        }
+        eventoNfceRepository.saveAll(eventos);
+
+        log.info("Cancelamento solicitado à SEFAZ: {} de {} NFC-e", eventos.size(), ids.size());
+
+        return ids.stream().map(id -> new ResultadoTransicao(id, erros.get(id))).toList();
+    }
+
+    /**
+     * Assina os XML das NFC-e em paralelo; as alterações vão para o banco no flush que antecede o UPDATE de status.
+     */
+    private Map<Long, String> assinarDocumentos(List<Long> ids) {
+        Map<Long, String> erros = new HashMap<>();
+        try {
+            assinaturaDigitalService.exigirCertificado();
+        } catch (IllegalStateException e) {
+            // Todas ficam em RASCUNHO com o motivo
+            for (Long id : ids) {
+                erros.put(id, e.getMessage());
+            }
+            return erros;
+        }
+
+        Map<Long, NfceDocumento> documentos = new HashMap<>();
+        for (NfceDocumento documento : nfceDocumentoRepository.findAllById(ids)) {
+            documentos.put(documento.getNfceId(), documento);
+        }
+
+        Map<Long, CompletableFuture<String>> assinaturas = new HashMap<>();
+        for (Long id : ids) {
+            NfceDocumento documento = documentos.get(id);
+            if (documento == null) {
+                erros.put(id, "XML não encontrado para a NFC-e com ID: " + id);
+            } else {
+                assinaturas.put(id, assinaturaDigitalService.assinarAsync(documento.getXmlAssinado(), "infNFe"));
+            }
+        }
+
+        Map<Long, String> assinados = new HashMap<>();
+        assinaturas.forEach((id, assinatura) -> {
+            try {
+                documentos.get(id).setXmlAssinado(assinatura.join());
+                assinados.put(id, documentos.get(id).getXmlAssinado());
+            } catch (CompletionException e) {
+                erros.put(id, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            }
+        });
+        aplicarQrCodeOffline(assinados);
+        return erros;
+    }
+
+    /**
+     * QR Code das NFC-e de contingência offline, que leva o {@code DigestValue} da assinatura e por isso
+     * substitui, depois de assinar, o gerado na criação. Sem CSC fica a URL do leiaute anterior.
+     */
+    private void aplicarQrCodeOffline(Map<Long, String> xmlsAssinados) {
+        if (xmlsAssinados.isEmpty() || !qrCodeService.isCscConfigurado()) {
+            return;
+        }
+        List<Long> offline = nfceRepository.findIdentificacoesPorTipoEmissao(xmlsAssinados.keySet(),
+                        Nfce.TipoEmissao.CONTINGENCIA_OFFLINE).stream()
+                .map(NfceRepository.Identificacao::getId)
+                .toList();
+        if (offline.isEmpty()) {
+            return;
+        }
+        for (Nfce nfce : nfceRepository.findAllById(offline)) {
+            String urlQrCode = qrCodeService.gerarUrlQrCodeV2Offline(nfce.getChaveAcesso(),
+                    nfce.getAmbiente().getCodigo(), nfce.getDataEmissao(), nfce.getValorTotalNota(),
+                    AssinaturaDigitalService.digestValue(xmlsAssinados.get(nfce.getId())));
+            nfce.setUrlConsulta(urlQrCode);
+            nfce.setQrCode(urlQrCode);
+        }
+    }
+
+    /**
+     * Grava no journal de contingência o XML das NFC-e enviadas que foram emitidas offline; as demais seguem
+     * pela fila de transmissão. Roda depois do UPDATE de status e na mesma transação, então uma falha no
+     * journal desfaz o envio.
+     */
+    private void registrarContingencia(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Map<Long, String> chaves = new HashMap<>();
+        for (NfceRepository.Identificacao identificacao
+                : nfceRepository.findIdentificacoesPorTipoEmissao(ids, Nfce.TipoEmissao.CONTINGENCIA_OFFLINE)) {
+            chaves.put(identificacao.getId(), identificacao.getChaveAcesso());
+        }
+        if (chaves.isEmpty()) {
+            return;
+        }
+
+        List<JournalContingencia.Nota> notas = new ArrayList<>(chaves.size());
+        for (NfceDocumento documento : nfceDocumentoRepository.findAllById(chaves.keySet())) {
+            notas.add(new JournalContingencia.Nota(chaves.get(documento.getNfceId()), documento.getXmlAssinado()));
+        }
+        if (notas.size() < chaves.size()) {
+            throw new IllegalStateException("XML não encontrado para NFC-e emitida em contingência");
+        }
+        contingenciaService.registrar(notas);
+
+        log.info("{} NFC-e em contingência gravadas no journal", notas.size());
+    }
+
+    private static void validarJustificativa(String justificativa) {
         if (justificativa == null || justificativa.length() < 15) {
             throw new IllegalArgumentException("Justificativa deve ter pelo menos 15 caracteres");
         }
+    }
 
-        // Aqui seria implementado o cancelamento na SEFAZ
-        nfce.setStatus(Nfce.StatusNfce.CANCELADA);
-        nfce = nfceRepository.save(nfce);
-
-        log.info("NFC-e cancelada - ID: {}, Justificativa: {}", id, justificativa);
+    /**
+     * Mudança de status num único UPDATE condicional, sem carregar a entidade.
+     */
+    private void transicionar(Long id, Nfce.StatusNfce atual, Nfce.StatusNfce novo, String mensagem) {
+        if (nfceRepository.atualizarStatus(id, atual, novo, LocalDateTime.now()) == 0) {
+            throw falhaTransicao(id, mensagem);
+        }
+    }
 
-        return mapearEntityParaResponse(nfce);
+    /**
+     * Nenhuma linha atualizada: a NFC-e não existe ou não está no status esperado.
+     */
+    private RuntimeException falhaTransicao(Long id, String mensagem) {
+        if (!nfceRepository.existsById(id)) {
+            return new IllegalArgumentException("NFC-e não encontrada com ID: " + id);
+        }
+        return new IllegalStateException(mensagem);
     }
 
-    @Transactional(readOnly = true)
-    public Integer obterProximoNumero(Integer serie) {
-        return numeracaoService.obterProximoNumero(serie);
+    private NfceDocumento buscarDocumento(Long id) {
+        return nfceDocumentoRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("XML não encontrado para a NFC-e com ID: " + id));
     }
 
-    private void mapearRequestParaEntity(NfceRequestDto request, Nfce nfce) {
+    void mapearRequestParaEntity(NfceRequestDto request, Nfce nfce) {
         // Dados básicos
         nfce.setNumero(request.getNumero());
         nfce.setSerie(request.getSerie());
@@ -300,11 +711,13 @@ public class NfceService {
         }
     }
 
-    private void calcularTotais(Nfce nfce) {
+    void calcularTotais(Nfce nfce) {
         BigDecimal valorTotalProdutos = BigDecimal.ZERO;
         BigDecimal valorDesconto = BigDecimal.ZERO;
         BigDecimal baseCalculoIcms = BigDecimal.ZERO;
         BigDecimal valorIcms = BigDecimal.ZERO;
+        BigDecimal valorPis = BigDecimal.ZERO;
+        BigDecimal valorCofins = BigDecimal.ZERO;
 
         // Calcular totais dos itens
         for (ItemNfce item : nfce.getItens()) {
@@ -321,12 +734,22 @@ public class NfceService {
             if (item.getValorIcms() != null) {
                 valorIcms = valorIcms.add(item.getValorIcms());
             }
+
+            if (item.getValorPis() != null) {
+                valorPis = valorPis.add(item.getValorPis());
+            }
+
+            if (item.getValorCofins() != null) {
+                valorCofins = valorCofins.add(item.getValorCofins());
+            }
         }
 
         nfce.setValorTotalProdutos(valorTotalProdutos);
         nfce.setValorDesconto(valorDesconto);
         nfce.setBaseCalculoIcms(baseCalculoIcms);
         nfce.setValorIcms(valorIcms);
+        nfce.setValorPis(valorPis);
+        nfce.setValorCofins(valorCofins);
 
         // Valor total da nota = valor produtos - desconto + outras despesas
         BigDecimal valorTotalNota = valorTotalProdutos.subtract(valorDesconto);
@@ -351,11 +774,9 @@ public class NfceService {
         if (nfce.getOutrasDespesas() == null) nfce.setOutrasDespesas(BigDecimal.ZERO);
         if (nfce.getBaseCalculoIcmsSt() == null) nfce.setBaseCalculoIcmsSt(BigDecimal.ZERO);
         if (nfce.getValorIcmsSt() == null) nfce.setValorIcmsSt(BigDecimal.ZERO);
-        if (nfce.getValorPis() == null) nfce.setValorPis(BigDecimal.ZERO);
-        if (nfce.getValorCofins() == null) nfce.setValorCofins(BigDecimal.ZERO);
     }
 
-    private NfceResponseDto mapearEntityParaResponse(Nfce nfce) {
+    NfceResponseDto mapearEntityParaResponse(Nfce nfce) {
         NfceResponseDto response = new NfceResponseDto();
 
         response.setId(nfce.getId());
@@ -367,6 +788,8 @@ public class NfceService {
         response.setStatus(nfce.getStatus().name());
         response.setProtocoloAutorizacao(nfce.getProtocoloAutorizacao());
         response.setDataAutorizacao(nfce.getDataAutorizacao());
+        response.setRetornoSefaz(nfce.getRetornoSefaz());
+        response.setTipoEmissao(nfce.getTipoEmissao() != null ? nfce.getTipoEmissao().name() : null);
         response.setQrCode(nfce.getQrCode());
         response.setUrlConsulta(nfce.getUrlConsulta());
         response.setCreatedAt(nfce.getCreatedAt());
@@ -1,24 +1,175 @@
 package com.github.setxpro.nfce_java.infra.services;
 
 import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.NumeracaoNaoUtilizada;
 import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceRepository;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Numeração das NFC-e por série no estilo hi/lo: cada série reserva um bloco de
+ * {@code nfce.numeracao.tamanho-bloco} números no contador persistente e o distribui em memória.
+ * O banco só é acessado quando o bloco acaba.
+ * <p>
+ * A reserva de um bloco entra na transação de quem pediu o número, sem abrir uma segunda conexão. O bloco só
+ * passa a valer no commit dessa transação; até lá as outras threads da série esperam, e se ela for desfeita
+ * o contador volta e a próxima thread reserva o mesmo bloco.
+ */
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class NumeracaoService {
 
     private final NfceRepository nfceRepository;
     private final NfceConfiguration nfceConfiguration;
+    private final ReservaNumeracaoService reservaNumeracaoService;
+
+    private final Map<Integer, BlocoSerie> blocos = new ConcurrentHashMap<>();
+
+    /**
+     * Entrega o próximo número da série. O número é consumido mesmo que a emissão falhe depois, exceto o que
+     * abriu um bloco numa transação desfeita.
+     */
+    public int reservarNumero(Integer serie) {
+        BlocoSerie bloco = blocos.computeIfAbsent(serie, s -> new BlocoSerie());
+
+        while (true) {
+            FaixaEmUso faixa = bloco.faixa;
+            if (faixa != null) {
+                int numero = faixa.tomar();
+                if (numero > 0) {
+                    return numero;
+                }
+            }
+
+            bloco.lock.lock();
+            boolean liberarNoFimDaTransacao = false;
+            try {
+                // Outra thread pode ter trocado a faixa enquanto esta aguardava
+                if (bloco.faixa != faixa) {
+                    continue;
+                }
+                ReservaNumeracaoService.Faixa reservada = reservaNumeracaoService.reservar(serie,
+                        nfceConfiguration.getNumeracao().getTamanhoBloco());
+                FaixaEmUso restante = new FaixaEmUso(reservada.inicio() + 1, reservada.fim());
+                if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public void afterCompletion(int status) {
+                            try {
+                                if (status == STATUS_COMMITTED) {
+                                    bloco.faixa = restante;
+                                }
+                            } finally {
+                                bloco.lock.unlock();
+                            }
+                        }
+                    });
+                    liberarNoFimDaTransacao = true;
+                } else {
+                    bloco.faixa = restante;
+                }
+                return reservada.inicio();
+            } finally {
+                if (!liberarNoFimDaTransacao) {
+                    bloco.lock.unlock();
+                }
+            }
+        }
+    }
 
+    /**
+     * Próximo número que será entregue para a série, sem consumi-lo.
+     */
     public Integer obterProximoNumero(Integer serie) {
-        return nfceRepository.findMaxNumeroBySerieNfce(serie)
-                .map(maxNumero -> maxNumero + 1)
-                .orElse(nfceConfiguration.getNumeroInicial());
+        BlocoSerie bloco = blocos.get(serie);
+        if (bloco != null && bloco.faixa != null) {
+            int proximo = bloco.faixa.proximo.get();
+            if (proximo <= bloco.faixa.fim) {
+                return proximo;
+            }
+        }
+        return reservaNumeracaoService.consultarProximo(serie);
     }
 
     public boolean isNumeroDisponivel(Integer numero, Integer serie) {
         return !nfceRepository.existsByNumeroAndSerie(numero, serie);
     }
+
+    /**
+     * Recusa com {@link IllegalArgumentException} um número informado na requisição que já foi emitido ou que
+     * está dentro de um bloco já reservado.
+     */
+    public void validarNumeroInformado(Integer numero, Integer serie) {
+        reservaNumeracaoService.validarNumeroInformado(serie, numero);
+    }
+
+    public List<NumeracaoNaoUtilizada> listarNaoUtilizadas() {
+        return reservaNumeracaoService.listarNaoUtilizadas();
+    }
+
+    /**
+     * Registra as sobras dos blocos em memória para inutilização; após o desligamento esses números
+     * não serão mais emitidos.
+     */
+    @PreDestroy
+    public void encerrar() {
+        blocos.forEach((serie, bloco) -> {
+            bloco.lock.lock();
+            try {
+                FaixaEmUso faixa = bloco.faixa;
+                if (faixa == null) {
+                    return;
+                }
+                int primeiroLivre = faixa.encerrar();
+                if (primeiroLivre <= faixa.fim) {
+                    reservaNumeracaoService.registrarNaoUtilizada(serie, primeiroLivre, faixa.fim);
+                }
+            } catch (RuntimeException e) {
+                log.error("Erro ao registrar numeração não utilizada da série {}", serie, e);
+            } finally {
+                bloco.lock.unlock();
+            }
+        });
+    }
+
+    private static final class BlocoSerie {
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile FaixaEmUso faixa;
+    }
+
+    private static final class FaixaEmUso {
+        private final int fim;
+        private final AtomicInteger proximo;
+
+        private FaixaEmUso(int inicio, int fim) {
+            this.fim = fim;
+            this.proximo = new AtomicInteger(inicio);
+        }
+
+        /**
+         * Número seguinte da faixa ou -1 quando ela acabou.
+         */
+        private int tomar() {
+            int numero = proximo.getAndIncrement();
+            return numero <= fim ? numero : -1;
+        }
+
+        /**
+         * Esgota a faixa e devolve o primeiro número que não chegou a ser entregue.
+         */
+        private int encerrar() {
+            return Math.min(proximo.getAndSet(fim + 1), fim + 1);
+        }
+    }
 }
@@ -1,36 +1,82 @@
 package com.github.setxpro.nfce_java.infra.services;
 
 import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.services.imagem.CacheImagemQrCode;
+import com.github.setxpro.nfce_java.infra.services.imagem.EscPosQrCode;
+import com.github.setxpro.nfce_java.infra.services.imagem.ImagemQrCode;
+import com.github.setxpro.nfce_java.infra.services.imagem.PngMonocromatico;
+import com.github.setxpro.nfce_java.infra.services.imagem.SvgQrCode;
+import com.github.setxpro.nfce_java.infra.services.qrcode.PayloadQrCodeV2;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.EncodeHintType;
 import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Base64;
-import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class QrCodeService {
+    private static final QRCodeWriter QR_CODE_WRITER = new QRCodeWriter();
+    private static final Map<EncodeHintType, Object> HINTS = Map.of(
+            EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M,
+            EncodeHintType.CHARACTER_SET, StandardCharsets.UTF_8.name(),
+            EncodeHintType.MARGIN, 1);
+    private static final DateTimeFormatter FORMATO_DATA_EMISSAO = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
     private final NfceConfiguration nfceConfiguration;
+    private final CacheImagemQrCode cacheImagens;
+    private final PayloadQrCodeV2 payloadV2;
+
+    public QrCodeService(NfceConfiguration nfceConfiguration) {
+        this.nfceConfiguration = nfceConfiguration;
+        NfceConfiguration.Qrcode.Cache cache = nfceConfiguration.getQrcode().getCache();
+        this.cacheImagens = new CacheImagemQrCode(cache.getMaximoEntradas(), cache.getMaximoBytes());
+
+        NfceConfiguration.Qrcode.Csc csc = nfceConfiguration.getQrcode().getCsc();
+        this.payloadV2 = csc.getId() != null && csc.getToken() != null && !csc.getToken().isBlank()
+                ? new PayloadQrCodeV2(nfceConfiguration.getQrcode().getUrl().getConsulta(), csc.getId(), csc.getToken())
+                : null;
+    }
+
+    public boolean isCscConfigurado() {
+        return payloadV2 != null;
+    }
+
+    /**
+     * URL do QR Code no leiaute 2.00 (emissão on-line), assinada com o CSC de {@code nfce.qrcode.csc}.
+     */
+    public String gerarUrlQrCodeV2(String chaveAcesso, Integer ambiente) {
+        if (payloadV2 == null) {
+            throw new IllegalStateException("CSC não configurado (nfce.qrcode.csc.id e nfce.qrcode.csc.token)");
+        }
+        return payloadV2.montar(chaveAcesso, ambiente);
+    }
+
+    /**
+     * URL do QR Code no leiaute 2.00 para a contingência offline ({@code tpEmis=9}), com o {@code DigestValue}
+     * da NFC-e já assinada.
+     */
+    public String gerarUrlQrCodeV2Offline(String chaveAcesso, Integer ambiente, LocalDateTime dataEmissao,
+                                          BigDecimal valorTotal, String digestValue) {
+        if (payloadV2 == null) {
+            throw new IllegalStateException("CSC não configurado (nfce.qrcode.csc.id e nfce.qrcode.csc.token)");
+        }
+        return payloadV2.montarOffline(chaveAcesso, ambiente, dataEmissao.getDayOfMonth(), valorTotal, digestValue);
+    }
 
     public String gerarUrlQrCode(String chaveAcesso, Integer ambiente, LocalDateTime dataEmissao,
                                  BigDecimal valorTotal, String cpfCnpjDestinatario) {
@@ -45,9 +91,9 @@ public class QrCodeService {
         parametros.append("|");
         parametros.append(ambiente);
         parametros.append("|");
-        parametros.append(dataEmissao.format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss")));
+        parametros.append(dataEmissao.format(FORMATO_DATA_EMISSAO));
         parametros.append("|");
-        parametros.append(valorTotal.setScale(2).toString().replace(".", ""));
+        parametros.append(valorTotal.setScale(2, RoundingMode.HALF_UP).toPlainString().replace(".", ""));
         parametros.append("|");
 
         // Hash do CPF/CNPJ do destinatário (se informado)
@@ -65,40 +111,60 @@ public class QrCodeService {
         return url.toString();
     }
 
-    public byte[] gerarImagemQrCode(String conteudo, int largura, int altura) throws WriterException, IOException {
-        Map<EncodeHintType, Object> hints = new HashMap<>();
-        hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M);
-        hints.put(EncodeHintType.CHARACTER_SET, StandardCharsets.UTF_8.name());
-        hints.put(EncodeHintType.MARGIN, 1);
+    /**
+     * Imagem PNG do QR Code em 1 bit por pixel, gerada direto da matriz do ZXing.
+     */
+    public byte[] gerarImagemQrCode(String conteudo, int largura, int altura) throws WriterException {
+        BitMatrix bitMatrix = QR_CODE_WRITER.encode(conteudo, BarcodeFormat.QR_CODE, largura, altura, HINTS);
 
-        QRCodeWriter qrCodeWriter = new QRCodeWriter();
-        BitMatrix bitMatrix = qrCodeWriter.encode(conteudo, BarcodeFormat.QR_CODE, largura, altura, hints);
+        return PngMonocromatico.codificar(bitMatrix);
+    }
 
-        BufferedImage image = new BufferedImage(largura, altura, BufferedImage.TYPE_INT_RGB);
-        image.createGraphics();
+    /**
+     * QR Code rasterizado como comando ESC/POS {@code GS v 0}, com {@code pontos} de lado
+     * (576 pontos = largura útil de uma bobina de 80 mm a 203 dpi).
+     */
+    public byte[] gerarRasterEscPos(String conteudo, int pontos) throws WriterException {
+        BitMatrix bitMatrix = QR_CODE_WRITER.encode(conteudo, BarcodeFormat.QR_CODE, pontos, pontos, HINTS);
 
-        Graphics2D graphics = (Graphics2D) image.getGraphics();
-        graphics.setColor(Color.WHITE);
-        graphics.fillRect(0, 0, largura, altura);
-        graphics.setColor(Color.BLACK);
+        return EscPosQrCode.raster(bitMatrix);
+    }
 
-        for (int i = 0; i < largura; i++) {
-            for (int j = 0; j < altura; j++) {
-                if (bitMatrix.get(i, j)) {
-                    graphics.fillRect(i, j, 1, 1);
-                }
-            }
-        }
+    /**
+     * Sequência ESC/POS {@code GS ( k} para impressoras que geram o QR Code internamente.
+     */
+    public byte[] gerarComandoQrCodeEscPos(String conteudo, int tamanhoModulo) {
+        return EscPosQrCode.comandoNativo(conteudo, tamanhoModulo);
+    }
+
+    public String gerarSvgQrCode(String conteudo, int largura, int altura) throws WriterException {
+        // Largura e altura zero: o ZXing devolve um bit por módulo, a escala fica com o SVG
+        BitMatrix modulos = QR_CODE_WRITER.encode(conteudo, BarcodeFormat.QR_CODE, 0, 0, HINTS);
+
+        return SvgQrCode.gerar(modulos, largura, altura);
+    }
 
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        ImageIO.write(image, "PNG", outputStream);
+    /**
+     * Imagem do QR Code servida pelo cache LRU; reimpressões do mesmo conteúdo e tamanho não recodificam.
+     */
+    public ImagemQrCode obterImagemQrCode(String conteudo, int largura, int altura) {
+        return cacheImagens.obter(new CacheImagemQrCode.Chave(conteudo, largura, altura), chave -> {
+            try {
+                byte[] png = gerarImagemQrCode(chave.conteudo(), chave.largura(), chave.altura());
+                return new ImagemQrCode(png, gerarEtag(png));
+            } catch (WriterException e) {
+                throw new IllegalArgumentException("Conteúdo inválido para QR Code: " + e.getMessage(), e);
+            }
+        });
+    }
 
-        return outputStream.toByteArray();
+    public CacheImagemQrCode.Estatisticas estatisticasCacheImagens() {
+        return cacheImagens.estatisticas();
     }
 
     public String gerarImagemQrCodeBase64(String conteudo, int largura, int altura) {
         try {
-            byte[] imagemBytes = gerarImagemQrCode(conteudo, largura, altura);
+            byte[] imagemBytes = obterImagemQrCode(conteudo, largura, altura).png();
             return "data:image/png;base64," + Base64.getEncoder().encodeToString(imagemBytes);
         } catch (Exception e) {
             log.error("Erro ao gerar imagem do QR Code", e);
@@ -106,6 +172,15 @@ public class QrCodeService {
         }
     }
 
+    private String gerarEtag(byte[] png) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(png);
+            return "\"" + HexFormat.of().formatHex(hash, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+
     private String gerarHashSha1(String texto) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-1");
@@ -127,24 +202,34 @@ public class QrCodeService {
         }
     }
 
+    /**
+     * Confere se a URL é de um QR Code da chave informada. No leiaute 2.00 (on-line e offline) o hash é
+     * recalculado com o CSC configurado; sem CSC uma URL 2.00 não pode ser conferida. URLs do formato anterior,
+     * com os parâmetros em Base64, só têm a chave comparada.
+     */
     public boolean validarQrCode(String urlQrCode, String chaveAcesso) {
-        try {
-            if (urlQrCode == null || !urlQrCode.contains("?p=")) {
+        if (urlQrCode == null || chaveAcesso == null || !urlQrCode.contains("?p=")) {
+            return false;
+        }
+        String parametros = urlQrCode.substring(urlQrCode.indexOf("?p=") + 3);
+
+        if (parametros.indexOf('|') >= 0) {
+            if (!parametros.startsWith(chaveAcesso + "|")) {
                 return false;
             }
+            if (payloadV2 == null) {
+                log.warn("QR Code 2.00 da chave {} não conferido: CSC não configurado", chaveAcesso);
+                return false;
+            }
+            return payloadV2.conferir(parametros);
+        }
 
-            String parametrosBase64 = urlQrCode.substring(urlQrCode.indexOf("?p=") + 3);
-            String parametrosDecodificados = new String(
-                    Base64.getDecoder().decode(parametrosBase64),
-                    StandardCharsets.UTF_8
-            );
-
+        try {
+            String parametrosDecodificados = new String(Base64.getDecoder().decode(parametros), StandardCharsets.UTF_8);
             String[] partes = parametrosDecodificados.split("\\|");
-
             return partes.length >= 4 && chaveAcesso.equals(partes[0]);
-
-        } catch (Exception e) {
-            log.error("Erro ao validar QR Code", e);
+        } catch (IllegalArgumentException e) {
+            log.debug("Parâmetros do QR Code não estão em Base64: {}", e.getMessage());
             return false;
         }
     }
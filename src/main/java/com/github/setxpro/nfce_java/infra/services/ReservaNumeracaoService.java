@@ -0,0 +1,142 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.NumeracaoNaoUtilizada;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.NumeracaoSerie;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceRepository;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NumeracaoNaoUtilizadaRepository;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NumeracaoSerieRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.List;
+
+/**
+ * Acesso transacional ao contador de numeração. A reserva entra na transação da emissão que pediu o número
+ * (ou abre uma, fora de transação): usa a mesma conexão do pool, e se a emissão for desfeita o contador
+ * volta junto. O lock na linha do contador vale até o fim dessa transação.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReservaNumeracaoService {
+
+    private final NumeracaoSerieRepository numeracaoSerieRepository;
+    private final NumeracaoNaoUtilizadaRepository numeracaoNaoUtilizadaRepository;
+    private final NfceRepository nfceRepository;
+    private final NfceConfiguration nfceConfiguration;
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Faixa fechada de números reservada para uma série.
+     */
+    public record Faixa(int inicio, int fim) {
+    }
+
+    @Transactional
+    public Faixa reservar(Integer serie, int quantidade) {
+        NumeracaoSerie contador = contadorParaAtualizacao(serie);
+
+        // Notas emitidas com número informado na requisição podem ter passado à frente do contador
+        int inicio = Math.max(contador.getProximoNumero(), maiorNumeroEmitido(serie) + 1);
+        contador.setProximoNumero(inicio + quantidade);
+        numeracaoSerieRepository.save(contador);
+
+        log.debug("Bloco de numeração reservado - Série: {}, Faixa: {} a {}", serie, inicio, inicio + quantidade - 1);
+
+        return new Faixa(inicio, inicio + quantidade - 1);
+    }
+
+    /**
+     * Confere um número informado na requisição. Números abaixo do contador já foram entregues a algum bloco
+     * (emitidos, em memória ou registrados para inutilização) e são recusados, assim como um número já
+     * emitido. O lock no contador impede que um bloco seja reservado por cima do número até a nota ser gravada.
+     */
+    @Transactional
+    public void validarNumeroInformado(Integer serie, int numero) {
+        NumeracaoSerie contador = contadorParaAtualizacao(serie);
+        if (numero < contador.getProximoNumero()) {
+            throw new IllegalArgumentException("O número " + numero + " da série " + serie
+                    + " já foi reservado para a numeração automática; informe um número a partir de "
+                    + contador.getProximoNumero() + " ou deixe o número em branco");
+        }
+        if (nfceRepository.existsByNumeroAndSerie(numero, serie)) {
+            throw new IllegalArgumentException("Já existe uma NFC-e com o número " + numero + " e série " + serie);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public int consultarProximo(Integer serie) {
+        int contador = numeracaoSerieRepository.findById(serie)
+                .map(NumeracaoSerie::getProximoNumero)
+                .orElse(nfceConfiguration.getNumeroInicial());
+
+        return Math.max(contador, maiorNumeroEmitido(serie) + 1);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void registrarNaoUtilizada(Integer serie, int numeroInicial, int numeroFinal) {
+        NumeracaoNaoUtilizada faixa = new NumeracaoNaoUtilizada();
+        faixa.setSerie(serie);
+        faixa.setNumeroInicial(numeroInicial);
+        faixa.setNumeroFinal(numeroFinal);
+        numeracaoNaoUtilizadaRepository.save(faixa);
+
+        log.warn("Numeração não utilizada registrada para inutilização - Série: {}, Faixa: {} a {}",
+                serie, numeroInicial, numeroFinal);
+    }
+
+    @Transactional(readOnly = true)
+    public List<NumeracaoNaoUtilizada> listarNaoUtilizadas() {
+        return numeracaoNaoUtilizadaRepository.findAllByOrderBySerieAscNumeroInicialAsc();
+    }
+
+    private NumeracaoSerie contadorParaAtualizacao(Integer serie) {
+        return numeracaoSerieRepository.findBySerieParaAtualizacao(serie)
+                .orElseGet(() -> {
+                    criarContador(serie);
+                    return numeracaoSerieRepository.findBySerieParaAtualizacao(serie).orElseThrow();
+                });
+    }
+
+    /**
+     * Cria o contador da série. Duas instâncias podem tentar ao mesmo tempo: a que perde desfaz só o INSERT
+     * (savepoint, para não condenar a transação da emissão) e lê o contador criado pela outra.
+     */
+    private void criarContador(Integer serie) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) conexao -> {
+            Savepoint savepoint = conexao.setSavepoint();
+            try (PreparedStatement insert = conexao.prepareStatement(
+                    "INSERT INTO numeracao_serie (serie, proximo_numero) VALUES (?, ?)")) {
+                insert.setInt(1, serie);
+                insert.setInt(2, nfceConfiguration.getNumeroInicial());
+                insert.executeUpdate();
+                conexao.releaseSavepoint(savepoint);
+            } catch (SQLException e) {
+                conexao.rollback(savepoint);
+                if (!violacaoDeChave(e)) {
+                    throw e;
+                }
+                log.debug("Contador de numeração da série {} criado por outra transação", serie);
+            }
+            return null;
+        });
+    }
+
+    private static boolean violacaoDeChave(SQLException e) {
+        // Classe 23 do SQLSTATE: violação de integridade (23505 = chave duplicada)
+        return e.getSQLState() != null && e.getSQLState().startsWith("23");
+    }
+
+    private int maiorNumeroEmitido(Integer serie) {
+        return nfceRepository.findMaxNumeroBySerieNfce(serie).orElse(0);
+    }
+}
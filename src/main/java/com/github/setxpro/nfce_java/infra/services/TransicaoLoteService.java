@@ -0,0 +1,239 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.TransicaoLoteRequestDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.TransicaoLoteRequestDto.Acao;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Transições em lote (assinar, enviar, cancelar) para o back office: após troca de certificado ou janela de
+ * contingência são milhares de NFC-e, que antes exigiam uma chamada por id.
+ * <p>
+ * Cada pedido vira um trabalho numa virtual thread, que percorre as NFC-e em blocos de
+ * {@code nfce.emissao.tamanho-bloco-transicao}; cada bloco é uma transação em {@link NfceService} com SQL por
+ * conjunto (um SELECT com bloqueio e um UPDATE). Com filtro, os ids são lidos bloco a bloco por paginação por
+ * chave, então a memória não depende de quantas notas o filtro alcança. O andamento pode ser consultado
+ * enquanto o trabalho roda; trabalhos concluídos ficam disponíveis por {@link #RETENCAO}.
+ */
+@Service
+@Slf4j
+public class TransicaoLoteService {
+
+    static final Duration RETENCAO = Duration.ofHours(1);
+
+    /**
+     * As falhas são guardadas por id até esse limite; acima dele só entram na contagem.
+     */
+    static final int MAXIMO_FALHAS_DETALHADAS = 10_000;
+
+    private final NfceService nfceService;
+    private final NfceRepository nfceRepository;
+    private final int tamanhoBloco;
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("nfce-transicao-", 1).factory());
+    private final Map<String, Trabalho> trabalhos = new ConcurrentHashMap<>();
+
+    public TransicaoLoteService(NfceService nfceService,
+                                NfceRepository nfceRepository,
+                                NfceConfiguration nfceConfiguration) {
+        this.nfceService = nfceService;
+        this.nfceRepository = nfceRepository;
+        this.tamanhoBloco = nfceConfiguration.getEmissao().getTamanhoBlocoTransicao();
+    }
+
+    public enum Estado {
+        EM_ANDAMENTO, CONCLUIDO, FALHOU
+    }
+
+    public record Falha(Long id, String erro) {
+    }
+
+    /**
+     * Retrato do trabalho no momento da consulta. {@code falhas} traz no máximo
+     * {@value #MAXIMO_FALHAS_DETALHADAS} ids; {@code quantidadeFalhas} conta todas.
+     */
+    public record Progresso(String id, Acao acao, Estado estado, long total, long processadas, long sucessos,
+                            long quantidadeFalhas, List<Falha> falhas, LocalDateTime iniciadoEm,
+                            LocalDateTime concluidoEm, String erro) {
+    }
+
+    /**
+     * Valida o pedido, registra o trabalho e começa a processá-lo em segundo plano.
+     */
+    public Progresso iniciar(TransicaoLoteRequestDto request) {
+        boolean temIds = request.getIds() != null && !request.getIds().isEmpty();
+        if (temIds == (request.getFiltro() != null)) {
+            throw new IllegalArgumentException("Informe a lista de ids ou o filtro, não os dois");
+        }
+        if (request.getAcao() == Acao.CANCELAR
+                && (request.getJustificativa() == null || request.getJustificativa().length() < 15)) {
+            throw new IllegalArgumentException("Justificativa deve ter pelo menos 15 caracteres");
+        }
+
+        Trabalho trabalho;
+        Runnable execucao;
+        if (temIds) {
+            List<Long> ids = List.copyOf(new LinkedHashSet<>(request.getIds()));
+            trabalho = new Trabalho(request.getAcao(), ids.size());
+            execucao = () -> processarIds(trabalho, ids, request.getJustificativa());
+        } else {
+            TransicaoLoteRequestDto.FiltroDto filtro = request.getFiltro();
+            Nfce.StatusNfce status = filtro.getStatus() != null
+                    ? Nfce.StatusNfce.valueOf(filtro.getStatus().toUpperCase())
+                    : statusOrigem(request.getAcao());
+            long total = nfceRepository.countPorFiltro(status, filtro.getSerie(), filtro.getDataInicio(), filtro.getDataFim());
+            trabalho = new Trabalho(request.getAcao(), total);
+            execucao = () -> processarFiltro(trabalho, status, filtro, request.getJustificativa());
+        }
+
+        removerExpirados();
+        trabalhos.put(trabalho.id, trabalho);
+        executor.execute(() -> executar(trabalho, execucao));
+
+        log.info("Transição em lote {} iniciada - Ação: {}, Total: {}", trabalho.id, trabalho.acao, trabalho.total);
+
+        return trabalho.progresso();
+    }
+
+    public Progresso consultar(String id) {
+        Trabalho trabalho = trabalhos.get(id);
+        if (trabalho == null) {
+            throw new IllegalArgumentException("Transição em lote não encontrada: " + id);
+        }
+        return trabalho.progresso();
+    }
+
+    private void executar(Trabalho trabalho, Runnable execucao) {
+        try {
+            execucao.run();
+            trabalho.concluir(Estado.CONCLUIDO, null);
+            log.info("Transição em lote {} concluída - Sucessos: {}, Falhas: {}",
+                    trabalho.id, trabalho.sucessos, trabalho.quantidadeFalhas);
+        } catch (RuntimeException e) {
+            log.error("Transição em lote {} interrompida", trabalho.id, e);
+            trabalho.concluir(Estado.FALHOU, e.getMessage());
+        }
+    }
+
+    private void processarIds(Trabalho trabalho, List<Long> ids, String justificativa) {
+        for (int inicio = 0; inicio < ids.size(); inicio += tamanhoBloco) {
+            processarBloco(trabalho, ids.subList(inicio, Math.min(inicio + tamanhoBloco, ids.size())), justificativa);
+        }
+    }
+
+    private void processarFiltro(Trabalho trabalho, Nfce.StatusNfce status, TransicaoLoteRequestDto.FiltroDto filtro,
+                                 String justificativa) {
+        long aposId = 0;
+        while (true) {
+            List<Long> ids = nfceRepository.findIdsPorFiltro(status, filtro.getSerie(), filtro.getDataInicio(),
+                    filtro.getDataFim(), aposId, Limit.of(tamanhoBloco));
+            if (ids.isEmpty()) {
+                return;
+            }
+            processarBloco(trabalho, ids, justificativa);
+            aposId = ids.get(ids.size() - 1);
+        }
+    }
+
+    private void processarBloco(Trabalho trabalho, List<Long> ids, String justificativa) {
+        List<NfceService.ResultadoTransicao> resultados;
+        try {
+            resultados = switch (trabalho.acao) {
+                case ASSINAR -> nfceService.assinarLote(ids);
+                case ENVIAR -> nfceService.enviarLote(ids);
+                case CANCELAR -> nfceService.cancelarLote(ids, justificativa);
+            };
+        } catch (RuntimeException e) {
+            // O bloco inteiro foi desfeito; os próximos ainda podem dar certo
+            log.error("Bloco de {} NFC-e da transição em lote {} não processado", ids.size(), trabalho.id, e);
+            resultados = ids.stream()
+                    .map(id -> new NfceService.ResultadoTransicao(id, "Erro interno ao processar o bloco"))
+                    .toList();
+        }
+        trabalho.registrar(resultados);
+    }
+
+    private static Nfce.StatusNfce statusOrigem(Acao acao) {
+        return switch (acao) {
+            case ASSINAR -> Nfce.StatusNfce.RASCUNHO;
+            case ENVIAR -> Nfce.StatusNfce.ASSINADA;
+            case CANCELAR -> Nfce.StatusNfce.AUTORIZADA;
+        };
+    }
+
+    private void removerExpirados() {
+        LocalDateTime limite = LocalDateTime.now().minus(RETENCAO);
+        trabalhos.values().removeIf(trabalho -> trabalho.concluidoEm != null && trabalho.concluidoEm.isBefore(limite));
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Estado mutável de um trabalho. Só a virtual thread do trabalho escreve; as consultas leem um retrato
+     * tirado sob o mesmo monitor.
+     */
+    private static final class Trabalho {
+
+        private final String id = UUID.randomUUID().toString();
+        private final Acao acao;
+        private final long total;
+        private final LocalDateTime iniciadoEm = LocalDateTime.now();
+        private final List<Falha> falhas = new ArrayList<>();
+        private Estado estado = Estado.EM_ANDAMENTO;
+        private long processadas;
+        private long sucessos;
+        private long quantidadeFalhas;
+        private volatile LocalDateTime concluidoEm;
+        private String erro;
+
+        private Trabalho(Acao acao, long total) {
+            this.acao = acao;
+            this.total = total;
+        }
+
+        private synchronized void registrar(List<NfceService.ResultadoTransicao> resultados) {
+            for (NfceService.ResultadoTransicao resultado : resultados) {
+                processadas++;
+                if (resultado.erro() == null) {
+                    sucessos++;
+                } else {
+                    quantidadeFalhas++;
+                    if (falhas.size() < MAXIMO_FALHAS_DETALHADAS) {
+                        falhas.add(new Falha(resultado.id(), resultado.erro()));
+                    }
+                }
+            }
+        }
+
+        private synchronized void concluir(Estado estado, String erro) {
+            this.estado = estado;
+            this.erro = erro;
+            this.concluidoEm = LocalDateTime.now();
+        }
+
+        private synchronized Progresso progresso() {
+            return new Progresso(id, acao, estado, total, processadas, sucessos, quantidadeFalhas,
+                    List.copyOf(falhas), iniciadoEm, concluidoEm, erro);
+        }
+    }
+}
@@ -0,0 +1,577 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.NfceDocumento;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceDocumentoRepository;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceRepository;
+import com.github.setxpro.nfce_java.infra.services.contingencia.JournalContingencia;
+import com.github.setxpro.nfce_java.infra.services.sefaz.MensagemSefaz;
+import com.github.setxpro.nfce_java.infra.services.sefaz.RetornoSefaz;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Transmissão das NFC-e enviadas à SEFAZ em lotes {@code enviNFe} (NFeAutorizacao4).
+ * <p>
+ * Com {@code nfce.transmissao.habilitada}, {@link NfceService#enviarNfce} só coloca a nota na fila: status
+ * ENVIADA sem recibo. A cada ciclo esta classe junta até {@code lotes-simultaneos} lotes de
+ * {@code tamanho-lote} notas e os posta em paralelo. Lote síncrono volta com o {@code protNFe} de cada nota;
+ * lote assíncrono volta com recibo, gravado nas notas, e o {@code retAutorizacao} é consultado depois.
+ * <p>
+ * A primeira consulta de um recibo espera o tempo médio de processamento observado nos lotes anteriores (o
+ * {@code tMed} da SEFAZ enquanto não há histórico); a cada 105 a espera dobra até {@code espera-maxima-ms}.
+ * Falha de comunicação no envio suspende os envios com a mesma progressão. Recibos pendentes são relidos do
+ * banco na subida; recibo que a SEFAZ não localiza devolve as notas à fila. Serviço paralisado (108/109) não
+ * rejeita nada: conta como falha no disjuntor e o lote ou o recibo espera como numa falha de comunicação.
+ * <p>
+ * Duplicidade (204/539) não é rejeição: a nota já chegou à SEFAZ num envio cuja resposta se perdeu, e o resultado
+ * sai da consulta pela chave (NFeConsultaProtocolo4). O mesmo vale para a nota que não tem {@code protNFe} num
+ * lote processado; se a SEFAZ não a conhece, ela volta para a fila.
+ * <p>
+ * As NFC-e emitidas em contingência offline não entram na fila do banco: saem do journal do
+ * {@link ContingenciaService}, antes das demais, e só são confirmadas nele depois que a SEFAZ responde ao lote.
+ */
+@Service
+@Slf4j
+public class TransmissaoSefazService {
+
+    private static final Nfce.StatusNfce ENVIADA = Nfce.StatusNfce.ENVIADA;
+    private static final int TAMANHO_MAXIMO_RETORNO = 255;
+
+    private final NfceRepository nfceRepository;
+    private final NfceDocumentoRepository nfceDocumentoRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final NfceConfiguration nfceConfiguration;
+    private final NfceConfiguration.Transmissao transmissao;
+    private final ComunicacaoSefazService comunicacaoSefazService;
+    private final ContingenciaService contingenciaService;
+    private final int tpAmb;
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("nfce-sefaz-", 1).factory());
+    private final Map<String, ReciboPendente> recibos = new ConcurrentHashMap<>();
+    private final AtomicLong sequenciaLote = new AtomicLong(System.currentTimeMillis());
+    private final AtomicLong processamentoMedioMs = new AtomicLong();
+    private volatile ScheduledExecutorService agendador;
+    private volatile long esperaEnvioMs;
+    private volatile long envioSuspensoAte = System.nanoTime();
+
+    public TransmissaoSefazService(NfceRepository nfceRepository,
+                                   NfceDocumentoRepository nfceDocumentoRepository,
+                                   ComunicacaoSefazService comunicacaoSefazService,
+                                   ContingenciaService contingenciaService,
+                                   PlatformTransactionManager transactionManager,
+                                   NfceConfiguration nfceConfiguration) {
+        this.nfceRepository = nfceRepository;
+        this.nfceDocumentoRepository = nfceDocumentoRepository;
+        this.comunicacaoSefazService = comunicacaoSefazService;
+        this.contingenciaService = contingenciaService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.nfceConfiguration = nfceConfiguration;
+        this.transmissao = nfceConfiguration.getTransmissao();
+        if (transmissao.getTamanhoLote() < 1 || transmissao.getTamanhoLote() > MensagemSefaz.MAXIMO_DOCUMENTOS_LOTE) {
+            throw new IllegalStateException("nfce.transmissao.tamanho-lote deve estar entre 1 e "
+                    + MensagemSefaz.MAXIMO_DOCUMENTOS_LOTE + ": " + transmissao.getTamanhoLote());
+        }
+        if (transmissao.isSincrona() && transmissao.getTamanhoLote() > 1) {
+            // A SEFAZ recusa o lote síncrono com mais de uma NFC-e (cStat 452)
+            throw new IllegalStateException("nfce.transmissao.sincrona=true exige nfce.transmissao.tamanho-lote=1: "
+                    + transmissao.getTamanhoLote());
+        }
+        this.tpAmb = "producao".equals(nfceConfiguration.getAmbiente())
+                ? Nfce.Ambiente.PRODUCAO.getCodigo()
+                : Nfce.Ambiente.HOMOLOGACAO.getCodigo();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciar() {
+        if (!transmissao.isHabilitada()) {
+            return;
+        }
+        for (String recibo : nfceRepository.findRecibosPendentes(ENVIADA)) {
+            recibos.put(recibo, new ReciboPendente(recibo, System.nanoTime(), transmissao.getEsperaMinimaMs()));
+        }
+        if (!recibos.isEmpty()) {
+            log.info("Retomando a consulta de {} recibos de lote pendentes", recibos.size());
+        }
+
+        ScheduledExecutorService novo = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("nfce-sefaz-ciclo").daemon().factory());
+        novo.scheduleWithFixedDelay(this::cicloProtegido, 0, transmissao.getIntervaloMs(), TimeUnit.MILLISECONDS);
+        agendador = novo;
+    }
+
+    /**
+     * Um ciclo: transmite os lotes da fila e consulta os recibos vencidos, em paralelo, e espera todos.
+     */
+    void ciclo() {
+        List<Future<?>> tarefas = new ArrayList<>();
+
+        if (System.nanoTime() - envioSuspensoAte >= 0) {
+            int tamanhoLote = transmissao.getTamanhoLote();
+            int vagas = tamanhoLote * transmissao.getLotesSimultaneos();
+
+            List<NotaContingencia> contingencia = notasContingencia(vagas);
+            for (int inicio = 0; inicio < contingencia.size(); inicio += tamanhoLote) {
+                List<NotaContingencia> lote =
+                        contingencia.subList(inicio, Math.min(inicio + tamanhoLote, contingencia.size()));
+                tarefas.add(executor.submit(() -> transmitirContingencia(lote)));
+                vagas -= tamanhoLote;
+            }
+
+            List<Long> ids = vagas > 0
+                    ? nfceRepository.findIdsAguardandoTransmissao(ENVIADA, Nfce.TipoEmissao.NORMAL, Limit.of(vagas))
+                    : List.of();
+            for (int inicio = 0; inicio < ids.size(); inicio += tamanhoLote) {
+                List<Long> lote = ids.subList(inicio, Math.min(inicio + tamanhoLote, ids.size()));
+                tarefas.add(executor.submit(() -> transmitirLote(lote)));
+            }
+        }
+
+        long agora = System.nanoTime();
+        for (ReciboPendente pendente : recibos.values()) {
+            if (agora - pendente.proximaConsulta >= 0) {
+                tarefas.add(executor.submit(() -> consultarRecibo(pendente)));
+            }
+        }
+
+        for (Future<?> tarefa : tarefas) {
+            try {
+                tarefa.get();
+            } catch (ExecutionException e) {
+                log.error("Falha inesperada na transmissão à SEFAZ", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    int recibosPendentes() {
+        return recibos.size();
+    }
+
+    private void cicloProtegido() {
+        try {
+            ciclo();
+        } catch (RuntimeException e) {
+            // Uma exceção cancelaria o agendamento
+            log.error("Ciclo de transmissão à SEFAZ falhou", e);
+        }
+    }
+
+    /**
+     * Nota do journal com o id dela no banco, {@code null} quando o banco não conhece a chave.
+     */
+    private record NotaContingencia(Long id, JournalContingencia.Nota nota) {
+    }
+
+    /**
+     * Notas do journal que ainda precisam ir à SEFAZ, procuradas no banco pela chave de acesso. As que o banco
+     * mostra já transmitidas ou com resultado são confirmadas sem reenvio; as que ainda não aparecem como
+     * enviadas (envio não confirmado no banco) esperam o próximo ciclo. Nota que o banco não conhece é
+     * transmitida assim mesmo: o journal vale por si.
+     */
+    private List<NotaContingencia> notasContingencia(int maximo) {
+        List<JournalContingencia.Nota> pendentes = contingenciaService.pendentes(maximo);
+        if (pendentes.isEmpty()) {
+            return List.of();
+        }
+        Map<String, NfceRepository.SituacaoTransmissao> situacoes = new HashMap<>();
+        for (NfceRepository.SituacaoTransmissao situacao : nfceRepository.findSituacoesTransmissao(
+                pendentes.stream().map(JournalContingencia.Nota::chave).toList())) {
+            situacoes.put(situacao.getChaveAcesso(), situacao);
+        }
+
+        List<NotaContingencia> transmitir = new ArrayList<>(pendentes.size());
+        List<String> jaTransmitidas = new ArrayList<>();
+        for (JournalContingencia.Nota nota : pendentes) {
+            NfceRepository.SituacaoTransmissao situacao = situacoes.get(nota.chave());
+            if (situacao == null) {
+                transmitir.add(new NotaContingencia(null, nota));
+            } else if (situacao.getStatus() == ENVIADA && situacao.getReciboLote() == null) {
+                transmitir.add(new NotaContingencia(situacao.getId(), nota));
+            } else if (situacao.getStatus() != Nfce.StatusNfce.RASCUNHO
+                    && situacao.getStatus() != Nfce.StatusNfce.ASSINADA) {
+                jaTransmitidas.add(nota.chave());
+            }
+        }
+        contingenciaService.confirmar(jaTransmitidas);
+        return transmitir;
+    }
+
+    /**
+     * Transmite um lote do journal e confirma as notas que a SEFAZ recebeu; as que voltaram para a fila
+     * continuam pendentes.
+     */
+    private void transmitirContingencia(List<NotaContingencia> notas) {
+        List<Long> ids = notas.stream().map(NotaContingencia::id).filter(Objects::nonNull).toList();
+        Set<Long> naFila = transmitir(ids, notas.stream().map(nota -> nota.nota().xml()).toList());
+        if (naFila == null) {
+            return;
+        }
+        contingenciaService.confirmar(notas.stream()
+                .filter(nota -> nota.id() == null || !naFila.contains(nota.id()))
+                .map(nota -> nota.nota().chave())
+                .toList());
+    }
+
+    private void transmitirLote(List<Long> ids) {
+        Map<Long, String> documentos = transactionTemplate.execute(status ->
+                nfceDocumentoRepository.findAllById(ids).stream()
+                        .filter(documento -> documento.getXmlAssinado() != null)
+                        .collect(Collectors.toMap(NfceDocumento::getNfceId, NfceDocumento::getXmlAssinado)));
+        List<Long> semXml = ids.stream().filter(id -> !documentos.containsKey(id)).toList();
+        if (!semXml.isEmpty()) {
+            rejeitar(semXml, "XML da NFC-e não encontrado para transmissão");
+        }
+        List<Long> transmitidas = ids.stream().filter(documentos::containsKey).toList();
+        if (!transmitidas.isEmpty()) {
+            transmitir(transmitidas, transmitidas.stream().map(documentos::get).toList());
+        }
+    }
+
+    /**
+     * Posta um lote com os XML em {@code documentos} e grava o retorno nas notas {@code transmitidas} (uma nota
+     * de contingência que o banco não conhece vai no lote sem estar entre elas). Devolve {@code null} quando a
+     * SEFAZ não respondeu; com resposta, mesmo a rejeição do lote, devolve as notas que voltaram para a fila
+     * por ela não as conhecer.
+     */
+    private Set<Long> transmitir(List<Long> transmitidas, List<String> documentos) {
+        long idLote = sequenciaLote.incrementAndGet();
+        String envelope = MensagemSefaz.enviNFe(idLote, transmissao.isSincrona(), documentos);
+
+        RetornoSefaz retorno;
+        try {
+            retorno = RetornoSefaz.ler(comunicacaoSefazService.enviar(
+                    nfceConfiguration.getWebservice().getUrl().getAutorizacao(), MensagemSefaz.ACAO_AUTORIZACAO, envelope));
+        } catch (IOException | IllegalArgumentException e) {
+            suspenderEnvio(idLote, e.getMessage());
+            return null;
+        }
+        if (retorno.servicoParalisado()) {
+            String motivo = retorno.cStat() + " - " + retorno.motivo();
+            comunicacaoSefazService.registrarIndisponibilidade(motivo);
+            suspenderEnvio(idLote, motivo);
+            return null;
+        }
+        esperaEnvioMs = 0;
+        log.info("Lote {} transmitido - NFC-e: {}, Retorno: {} - {}",
+                idLote, documentos.size(), retorno.cStat(), retorno.motivo());
+
+        String motivo = retorno.cStat() + " - " + retorno.motivo();
+        switch (retorno.cStat()) {
+            case RetornoSefaz.LOTE_RECEBIDO -> {
+                registrarRecibo(transmitidas, retorno);
+                return Set.of();
+            }
+            case RetornoSefaz.LOTE_PROCESSADO -> {
+                return aplicarProtocolos(transmitidas, retorno.protocolos(), null);
+            }
+            default -> {
+                if (RetornoSefaz.duplicidade(retorno.cStat())) {
+                    return aplicarProtocolos(transmitidas, List.of(), motivo);
+                }
+                rejeitar(transmitidas, motivo);
+                return Set.of();
+            }
+        }
+    }
+
+    private void registrarRecibo(List<Long> ids, RetornoSefaz retorno) {
+        transactionTemplate.executeWithoutResult(status ->
+                nfceRepository.registrarReciboLote(ids, ENVIADA, retorno.recibo(), LocalDateTime.now()));
+
+        long media = processamentoMedioMs.get();
+        long espera = media > 0
+                ? media
+                : retorno.tempoMedioSegundos() != null ? retorno.tempoMedioSegundos() * 1000L : 0;
+        recibos.put(retorno.recibo(), new ReciboPendente(retorno.recibo(), System.nanoTime(), limitar(espera)));
+    }
+
+    private void consultarRecibo(ReciboPendente pendente) {
+        pendente.consultas++;
+        RetornoSefaz retorno;
+        try {
+            retorno = RetornoSefaz.ler(comunicacaoSefazService.enviar(
+                    nfceConfiguration.getWebservice().getUrl().getRetornoAutorizacao(),
+                    MensagemSefaz.ACAO_RET_AUTORIZACAO, MensagemSefaz.consReciNFe(tpAmb, pendente.recibo)));
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Consulta do recibo {} falhou: {}", pendente.recibo, e.getMessage());
+            pendente.adiar(transmissao.getEsperaMaximaMs());
+            return;
+        }
+        if (retorno.servicoParalisado()) {
+            comunicacaoSefazService.registrarIndisponibilidade(retorno.cStat() + " - " + retorno.motivo());
+            pendente.adiar(transmissao.getEsperaMaximaMs());
+            return;
+        }
+
+        switch (retorno.cStat()) {
+            case RetornoSefaz.LOTE_RECEBIDO, RetornoSefaz.LOTE_EM_PROCESSAMENTO ->
+                    pendente.adiar(transmissao.getEsperaMaximaMs());
+            case RetornoSefaz.LOTE_PROCESSADO -> {
+                aplicarProtocolos(idsDoRecibo(pendente.recibo), retorno.protocolos(), null);
+                registrarProcessamento(pendente);
+                recibos.remove(pendente.recibo);
+            }
+            default -> {
+                String motivo = retorno.cStat() + " - " + retorno.motivo();
+                devolver(idsDoRecibo(pendente.recibo), motivo);
+                recibos.remove(pendente.recibo);
+                log.warn("Recibo {} recusado na consulta ({}) - NFC-e devolvidas à fila", pendente.recibo, motivo);
+            }
+        }
+    }
+
+    private List<Long> idsDoRecibo(String recibo) {
+        return transactionTemplate.execute(status -> nfceRepository.findIdsPorRecibo(recibo, ENVIADA));
+    }
+
+    /**
+     * NFC-e cuja situação sai da consulta pela chave. {@code duplicidade} é o retorno 204/539 que a motivou, ou
+     * {@code null} quando o {@code protNFe} não veio no lote.
+     */
+    private record Consulta(Long id, String chave, String duplicidade) {
+    }
+
+    /**
+     * Grava o resultado de cada NFC-e do lote: autorizada com protocolo e {@code nfeProc}, denegada ou
+     * rejeitada. Notas que já saíram de ENVIADA ficam como estão. As com duplicidade ou sem {@code protNFe}
+     * (ou todas, com a duplicidade do lote em {@code duplicidadeLote}) são consultadas pela chave depois do
+     * commit. Devolve as que voltaram para a fila.
+     */
+    private Set<Long> aplicarProtocolos(List<Long> ids, List<RetornoSefaz.Protocolo> protocolos,
+                                        String duplicidadeLote) {
+        Map<String, RetornoSefaz.Protocolo> porChave = protocolos.stream()
+                .collect(Collectors.toMap(RetornoSefaz.Protocolo::chave, Function.identity(), (a, b) -> b));
+
+        List<Consulta> consultas = new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Nfce> nfces = nfceRepository.findAllById(ids).stream()
+                    .filter(nfce -> nfce.getStatus() == ENVIADA)
+                    .toList();
+            Map<Long, NfceDocumento> documentos = new HashMap<>();
+            nfceDocumentoRepository.findAllById(nfces.stream().map(Nfce::getId).toList())
+                    .forEach(documento -> documentos.put(documento.getNfceId(), documento));
+
+            for (Nfce nfce : nfces) {
+                RetornoSefaz.Protocolo protocolo = porChave.get(nfce.getChaveAcesso());
+                if (protocolo == null) {
+                    consultas.add(new Consulta(nfce.getId(), nfce.getChaveAcesso(), duplicidadeLote));
+                } else if (protocolo.duplicidade()) {
+                    consultas.add(new Consulta(nfce.getId(), nfce.getChaveAcesso(),
+                            protocolo.cStat() + " - " + protocolo.motivo()));
+                } else {
+                    aplicar(nfce, documentos.get(nfce.getId()), protocolo);
+                }
+            }
+        });
+
+        Set<Long> devolvidas = new HashSet<>();
+        for (Consulta consulta : consultas) {
+            if (!consultarProtocolo(consulta)) {
+                devolvidas.add(consulta.id());
+            }
+        }
+        return devolvidas;
+    }
+
+    /**
+     * Consulta a NFC-e pela chave e grava o resultado. Com o {@code protNFe} de autorização ou denegação a nota
+     * fica como a SEFAZ registrou; sem ele a duplicidade vira rejeição e a nota sem resultado no lote volta para
+     * a fila, como a que não pôde ser consultada. Devolve {@code false} quando a nota voltou para a fila.
+     */
+    private boolean consultarProtocolo(Consulta consulta) {
+        RetornoSefaz retorno;
+        try {
+            retorno = RetornoSefaz.ler(comunicacaoSefazService.enviar(
+                    nfceConfiguration.getWebservice().getUrl().getConsultaProtocolo(),
+                    MensagemSefaz.ACAO_CONSULTA_PROTOCOLO, MensagemSefaz.consSitNFe(tpAmb, consulta.chave())));
+        } catch (IOException | IllegalArgumentException e) {
+            devolver(List.of(consulta.id()), "Consulta do protocolo falhou: " + e.getMessage());
+            return false;
+        }
+        String situacao = retorno.cStat() + " - " + retorno.motivo();
+        if (retorno.servicoParalisado()) {
+            comunicacaoSefazService.registrarIndisponibilidade(situacao);
+            devolver(List.of(consulta.id()), "Consulta do protocolo: " + situacao);
+            return false;
+        }
+
+        RetornoSefaz.Protocolo protocolo = retorno.protocolos().stream()
+                .filter(p -> consulta.chave().equals(p.chave()) && (p.autorizado() || p.denegado()))
+                .findFirst()
+                .orElse(null);
+        if (protocolo != null) {
+            transactionTemplate.executeWithoutResult(status -> nfceRepository.findById(consulta.id())
+                    .filter(nfce -> nfce.getStatus() == ENVIADA)
+                    .ifPresent(nfce -> aplicar(nfce, nfceDocumentoRepository.findById(nfce.getId()).orElse(null),
+                            protocolo)));
+            log.info("NFC-e {} resolvida pela consulta do protocolo: {} - {}",
+                    consulta.id(), protocolo.cStat(), protocolo.motivo());
+            return true;
+        }
+        if (consulta.duplicidade() != null) {
+            rejeitar(List.of(consulta.id()), consulta.duplicidade() + " (consulta: " + situacao + ")");
+            return true;
+        }
+        devolver(List.of(consulta.id()), "Lote processado sem o resultado da NFC-e (consulta: " + situacao + ")");
+        return false;
+    }
+
+    private void aplicar(Nfce nfce, NfceDocumento documento, RetornoSefaz.Protocolo protocolo) {
+        nfce.setRetornoSefaz(truncar(protocolo.cStat() + " - " + protocolo.motivo()));
+        if (protocolo.autorizado()) {
+            nfce.setStatus(Nfce.StatusNfce.AUTORIZADA);
+            nfce.setProtocoloAutorizacao(protocolo.numero());
+            nfce.setDataAutorizacao(dataRecebimento(protocolo.dataRecebimento()));
+            if (documento != null) {
+                documento.setXmlAutorizado(MensagemSefaz.nfeProc(documento.getXmlAssinado(), tpAmb, protocolo));
+            }
+        } else if (protocolo.denegado()) {
+            nfce.setStatus(Nfce.StatusNfce.DENEGADA);
+        } else {
+            nfce.setStatus(Nfce.StatusNfce.REJEITADA);
+        }
+    }
+
+    /**
+     * Devolve as notas à fila, sem recibo. As emitidas em contingência voltam também ao journal, que é a fila
+     * delas.
+     */
+    private void devolver(List<Long> ids, String motivo) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<JournalContingencia.Nota> contingencia = transactionTemplate.execute(status -> {
+            nfceRepository.devolverParaTransmissao(ids, ENVIADA, truncar(motivo), LocalDateTime.now());
+            List<NfceRepository.Identificacao> identificacoes =
+                    nfceRepository.findIdentificacoesPorTipoEmissao(ids, Nfce.TipoEmissao.CONTINGENCIA_OFFLINE);
+            if (identificacoes.isEmpty()) {
+                return List.<JournalContingencia.Nota>of();
+            }
+            Map<Long, String> xmls = new HashMap<>();
+            nfceDocumentoRepository.findAllById(identificacoes.stream().map(NfceRepository.Identificacao::getId).toList())
+                    .forEach(documento -> xmls.put(documento.getNfceId(), documento.getXmlAssinado()));
+            return identificacoes.stream()
+                    .filter(identificacao -> xmls.get(identificacao.getId()) != null)
+                    .map(identificacao -> new JournalContingencia.Nota(identificacao.getChaveAcesso(),
+                            xmls.get(identificacao.getId())))
+                    .toList();
+        });
+        contingenciaService.registrar(contingencia);
+        log.warn("{} NFC-e devolvidas à fila de transmissão: {}", ids.size(), motivo);
+    }
+
+    private void rejeitar(List<Long> ids, String motivo) {
+        transactionTemplate.executeWithoutResult(status -> nfceRepository.rejeitarLote(
+                ids, ENVIADA, Nfce.StatusNfce.REJEITADA, truncar(motivo), LocalDateTime.now()));
+        log.warn("{} NFC-e rejeitadas no lote: {}", ids.size(), motivo);
+    }
+
+    /**
+     * Média móvel do tempo até o lote ficar pronto. Pronto já na primeira consulta só diz que o lote levou
+     * menos que a espera, então a média recua um quarto para sondar esperas menores.
+     */
+    private void registrarProcessamento(ReciboPendente pendente) {
+        long observado = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pendente.enviadoEm);
+        processamentoMedioMs.updateAndGet(media -> {
+            if (media == 0) {
+                return observado;
+            }
+            return pendente.consultas == 1 ? media * 3 / 4 : (media * 3 + observado) / 4;
+        });
+    }
+
+    private void suspenderEnvio(long idLote, String motivo) {
+        long espera = esperaEnvioMs == 0
+                ? transmissao.getEsperaMinimaMs()
+                : Math.min(esperaEnvioMs * 2, transmissao.getEsperaMaximaMs());
+        esperaEnvioMs = espera;
+        envioSuspensoAte = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(espera);
+        log.warn("Lote {} não transmitido: {} - novos envios em {} ms", idLote, motivo, espera);
+    }
+
+    private long limitar(long esperaMs) {
+        return Math.max(transmissao.getEsperaMinimaMs(), Math.min(esperaMs, transmissao.getEsperaMaximaMs()));
+    }
+
+    private static LocalDateTime dataRecebimento(String dhRecbto) {
+        if (dhRecbto == null) {
+            return LocalDateTime.now();
+        }
+        try {
+            return OffsetDateTime.parse(dhRecbto).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        } catch (DateTimeParseException e) {
+            return LocalDateTime.now();
+        }
+    }
+
+    private static String truncar(String texto) {
+        return texto.length() <= TAMANHO_MAXIMO_RETORNO ? texto : texto.substring(0, TAMANHO_MAXIMO_RETORNO);
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        ScheduledExecutorService atual = agendador;
+        if (atual != null) {
+            atual.shutdownNow();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Recibo aguardando o {@code retAutorizacao}. Só a tarefa do ciclo que o consulta escreve nele.
+     */
+    private static final class ReciboPendente {
+
+        private final String recibo;
+        private final long enviadoEm;
+        private volatile long esperaMs;
+        private volatile long proximaConsulta;
+        private volatile int consultas;
+
+        private ReciboPendente(String recibo, long enviadoEm, long esperaMs) {
+            this.recibo = recibo;
+            this.enviadoEm = enviadoEm;
+            this.esperaMs = esperaMs;
+            this.proximaConsulta = enviadoEm + TimeUnit.MILLISECONDS.toNanos(esperaMs);
+        }
+
+        private void adiar(long esperaMaximaMs) {
+            esperaMs = Math.min(esperaMs * 2, esperaMaximaMs);
+            proximaConsulta = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(esperaMs);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.services.tributacao.LeitorRegras;
+import com.github.setxpro.nfce_java.infra.services.tributacao.TabelaTributaria;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tributação dos itens pela tabela do servidor ({@code nfce.tributacao.regras}): o CST, a base, a alíquota e o
+ * valor de ICMS, PIS e COFINS saem da regra mais específica para a UF e o regime do emitente e o NCM e o CFOP
+ * do item. Itens sem regra mantêm o que o PDV enviou.
+ * <p>
+ * A tabela é lida e compilada na inicialização (uma tabela inválida impede a subida) e trocada inteira na
+ * recarga, então uma nota nunca mistura duas versões. Uma recarga com erro mantém a tabela anterior.
+ */
+@Service
+@Slf4j
+public class TributacaoService {
+
+    private final ResourceLoader resourceLoader;
+    private final NfceConfiguration.Tributacao configuracao;
+
+    private volatile Carga carga;
+    private volatile ScheduledExecutorService agendador;
+    // Data do arquivo que falhou na última verificação, para não repetir o erro a cada intervalo
+    private volatile long modificadaComErro;
+    private final AtomicLong versoes = new AtomicLong();
+    private final LongAdder itensTributados = new LongAdder();
+    private final LongAdder itensSemRegra = new LongAdder();
+
+    private record Carga(TabelaTributaria tabela, long versao, LocalDateTime carregadaEm, long modificadaEm) {
+    }
+
+    /**
+     * Tabela em uso, com os itens tributados e sem regra desde a inicialização.
+     */
+    public record Situacao(boolean habilitada, String origem, int regras, int formatos, LocalDateTime carregadaEm,
+                           long versao, long itensTributados, long itensSemRegra) {
+    }
+
+    public TributacaoService(ResourceLoader resourceLoader, NfceConfiguration nfceConfiguration) {
+        this.resourceLoader = resourceLoader;
+        this.configuracao = nfceConfiguration.getTributacao();
+        if (configuracao.isHabilitada()) {
+            carga = carregar();
+        }
+    }
+
+    /**
+     * Aplica a tributação aos itens da nota; sem efeito se a tributação estiver desabilitada.
+     */
+    public void aplicar(Nfce nfce) {
+        Carga atual = carga;
+        if (atual == null) {
+            return;
+        }
+        int tributados = atual.tabela().tributar(nfce);
+        itensTributados.add(tributados);
+        if (tributados < nfce.getItens().size()) {
+            itensSemRegra.add(nfce.getItens().size() - tributados);
+        }
+    }
+
+    /**
+     * Lê e compila a tabela de novo. Em erro a tabela atual continua valendo e a exceção é propagada.
+     */
+    public synchronized Situacao recarregar() {
+        if (!configuracao.isHabilitada()) {
+            throw new IllegalStateException("Tributação pelo servidor desabilitada (nfce.tributacao.habilitada)");
+        }
+        carga = carregar();
+        return situacao();
+    }
+
+    public Situacao situacao() {
+        Carga atual = carga;
+        return new Situacao(configuracao.isHabilitada(), configuracao.getRegras(),
+                atual == null ? 0 : atual.tabela().regras(),
+                atual == null ? 0 : atual.tabela().formatos(),
+                atual == null ? null : atual.carregadaEm(),
+                atual == null ? 0 : atual.versao(),
+                itensTributados.sum(), itensSemRegra.sum());
+    }
+
+    private Carga carregar() {
+        Resource recurso = resourceLoader.getResource(configuracao.getRegras());
+        long modificadaEm = modificadaEm(recurso);
+        TabelaTributaria tabela;
+        try (Reader leitor = new InputStreamReader(recurso.getInputStream(), StandardCharsets.UTF_8)) {
+            tabela = TabelaTributaria.compilar(LeitorRegras.ler(leitor));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Erro ao ler a tabela de tributação " + configuracao.getRegras(), e);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Tabela de tributação " + configuracao.getRegras() + " inválida - "
+                    + e.getMessage(), e);
+        }
+        Carga nova = new Carga(tabela, versoes.incrementAndGet(), LocalDateTime.now(), modificadaEm);
+        log.info("Tabela de tributação {} carregada (versão {}): {} regras em {} formatos de chave",
+                configuracao.getRegras(), nova.versao(), tabela.regras(), tabela.formatos());
+        return nova;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciar() {
+        if (!configuracao.isHabilitada() || configuracao.getIntervaloVerificacaoMs() <= 0
+                || !resourceLoader.getResource(configuracao.getRegras()).isFile()) {
+            return;
+        }
+        ScheduledExecutorService novo = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("nfce-tributacao-recarga").daemon().factory());
+        novo.scheduleWithFixedDelay(this::verificarAlteracao, configuracao.getIntervaloVerificacaoMs(),
+                configuracao.getIntervaloVerificacaoMs(), TimeUnit.MILLISECONDS);
+        agendador = novo;
+    }
+
+    /**
+     * Recarrega a tabela se o arquivo mudou desde a última carga.
+     */
+    void verificarAlteracao() {
+        long modificadaEm = modificadaEm(resourceLoader.getResource(configuracao.getRegras()));
+        Carga atual = carga;
+        if (atual == null || modificadaEm == atual.modificadaEm() || modificadaEm == modificadaComErro) {
+            return;
+        }
+        try {
+            recarregar();
+        } catch (RuntimeException e) {
+            modificadaComErro = modificadaEm;
+            // Uma exceção cancelaria o agendamento; a tabela anterior continua valendo
+            log.error("Falha ao recarregar a tabela de tributação - mantendo a versão {}",
+                    carga == null ? 0 : carga.versao(), e);
+        }
+    }
+
+    private static long modificadaEm(Resource recurso) {
+        try {
+            return recurso.isFile() ? recurso.lastModified() : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @PreDestroy
+    public void encerrar() {
+        ScheduledExecutorService atual = agendador;
+        if (atual != null) {
+            atual.shutdownNow();
+        }
+    }
+}
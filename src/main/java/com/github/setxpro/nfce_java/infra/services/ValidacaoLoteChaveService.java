@@ -0,0 +1,204 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Validação em lote de chaves de acesso: lê uma chave por linha, valida blocos em paralelo e escreve
+ * as chaves inválidas em NDJSON, na ordem da entrada.
+ * <p>
+ * A memória usada não depende do tamanho da entrada: no máximo {@code 2 x núcleos} blocos ficam em
+ * andamento e cada linha guarda só os primeiros {@value #TAMANHO_MAXIMO_LINHA} caracteres.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ValidacaoLoteChaveService {
+
+    static final int TAMANHO_BLOCO = 8192;
+    static final int TAMANHO_MAXIMO_LINHA = 64;
+
+    private final ChaveAcessoService chaveAcessoService;
+    private final ObjectMapper objectMapper;
+
+    public record Resumo(long total, long invalidas) {
+    }
+
+    private record ChaveInvalida(long linha, String chave, ChaveAcessoService.MotivoInvalidade motivo) {
+    }
+
+    public Resumo validar(InputStream entrada, OutputStream saida) throws IOException {
+        int maximoEmAndamento = Runtime.getRuntime().availableProcessors() * 2;
+        Deque<CompletableFuture<List<ChaveInvalida>>> pendentes = new ArrayDeque<>(maximoEmAndamento);
+        LeitorLinhas leitor = new LeitorLinhas(entrada);
+        long total = 0;
+        long invalidas = 0;
+
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(saida)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.setRootValueSeparator(null);
+
+            Bloco bloco;
+            while ((bloco = leitor.proximoBloco()) != null) {
+                total += bloco.quantidade();
+                Bloco atual = bloco;
+                pendentes.addLast(CompletableFuture.supplyAsync(() -> validarBloco(atual), ForkJoinPool.commonPool()));
+
+                // Segura a leitura até o bloco mais antigo terminar, o que limita a memória em uso
+                if (pendentes.size() >= maximoEmAndamento) {
+                    invalidas += escrever(json, aguardar(pendentes.removeFirst()));
+                }
+            }
+            while (!pendentes.isEmpty()) {
+                invalidas += escrever(json, aguardar(pendentes.removeFirst()));
+            }
+
+            json.writeStartObject();
+            json.writeNumberField("total", total);
+            json.writeNumberField("invalidas", invalidas);
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+
+        return new Resumo(total, invalidas);
+    }
+
+    private List<ChaveInvalida> validarBloco(Bloco bloco) {
+        List<ChaveInvalida> invalidas = new ArrayList<>();
+        for (int i = 0; i < bloco.quantidade(); i++) {
+            ChaveAcessoService.MotivoInvalidade motivo = bloco.tamanhos()[i] != bloco.chaves()[i].length()
+                    ? ChaveAcessoService.MotivoInvalidade.TAMANHO_INVALIDO
+                    : chaveAcessoService.diagnosticarChaveAcesso(bloco.chaves()[i]);
+            if (motivo != null) {
+                invalidas.add(new ChaveInvalida(bloco.linhas()[i], bloco.chaves()[i], motivo));
+            }
+        }
+        return invalidas;
+    }
+
+    private int escrever(JsonGenerator json, List<ChaveInvalida> invalidas) throws IOException {
+        for (ChaveInvalida invalida : invalidas) {
+            json.writeStartObject();
+            json.writeNumberField("linha", invalida.linha());
+            json.writeStringField("chave", invalida.chave());
+            json.writeStringField("motivo", invalida.motivo().name());
+            json.writeStringField("descricao", invalida.motivo().getDescricao());
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+        // Entrega o progresso ao cliente a cada bloco
+        json.flush();
+        return invalidas.size();
+    }
+
+    private static <T> T aguardar(CompletableFuture<T> futuro) {
+        try {
+            return futuro.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Linhas não vazias de um trecho da entrada. {@code tamanhos} guarda o comprimento real da linha,
+     * que pode ser maior que a chave guardada.
+     */
+    private record Bloco(String[] chaves, int[] tamanhos, long[] linhas, int quantidade) {
+    }
+
+    /**
+     * Leitor de linhas sobre bytes (ISO-8859-1), sem montar uma {@code String} para linhas longas.
+     */
+    private static final class LeitorLinhas {
+
+        private final InputStream entrada;
+        private final byte[] buffer = new byte[64 * 1024];
+        private final char[] linhaAtual = new char[TAMANHO_MAXIMO_LINHA];
+        private int posicao;
+        private int limite;
+        private long numeroLinha;
+
+        private LeitorLinhas(InputStream entrada) {
+            this.entrada = entrada;
+        }
+
+        private Bloco proximoBloco() throws IOException {
+            String[] chaves = new String[TAMANHO_BLOCO];
+            int[] tamanhos = new int[TAMANHO_BLOCO];
+            long[] linhas = new long[TAMANHO_BLOCO];
+            int quantidade = 0;
+
+            while (quantidade < TAMANHO_BLOCO) {
+                int tamanho = lerLinha();
+                if (tamanho < 0) {
+                    break;
+                }
+                if (tamanho == 0) {
+                    continue;
+                }
+                chaves[quantidade] = new String(linhaAtual, 0, Math.min(tamanho, TAMANHO_MAXIMO_LINHA));
+                tamanhos[quantidade] = tamanho;
+                linhas[quantidade] = numeroLinha;
+                quantidade++;
+            }
+
+            return quantidade == 0 ? null : new Bloco(chaves, tamanhos, linhas, quantidade);
+        }
+
+        /**
+         * Lê a próxima linha para {@code linhaAtual} e devolve seu comprimento, ou -1 no fim da entrada.
+         */
+        private int lerLinha() throws IOException {
+            int tamanho = 0;
+            boolean leuAlgo = false;
+
+            while (true) {
+                if (posicao == limite) {
+                    limite = entrada.read(buffer, 0, buffer.length);
+                    posicao = 0;
+                    if (limite <= 0) {
+                        limite = 0;
+                        if (!leuAlgo) {
+                            return -1;
+                        }
+                        break;
+                    }
+                }
+
+                leuAlgo = true;
+                char c = (char) (buffer[posicao++] & 0xFF);
+                if (c == '\n') {
+                    break;
+                }
+                if (tamanho < TAMANHO_MAXIMO_LINHA) {
+                    linhaAtual[tamanho] = c;
+                }
+                tamanho++;
+            }
+
+            numeroLinha++;
+            // Quebra de linha CRLF
+            if (tamanho > 0 && tamanho <= TAMANHO_MAXIMO_LINHA && linhaAtual[tamanho - 1] == '\r') {
+                tamanho--;
+            }
+            return tamanho;
+        }
+    }
+}
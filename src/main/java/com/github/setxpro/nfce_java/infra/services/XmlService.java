@@ -1,23 +1,18 @@
 package com.github.setxpro.nfce_java.infra.services;
 
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.EventoNfce;
 import com.github.setxpro.nfce_java.infra.persistences.model.entity.ItemNfce;
 import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
 import com.github.setxpro.nfce_java.infra.persistences.model.entity.PagamentoNfce;
+import com.github.setxpro.nfce_java.infra.services.xml.EscritorXml;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.StringWriter;
+
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
 @Service
@@ -25,60 +20,79 @@ import java.time.format.DateTimeFormatter;
 public class XmlService {
 
     private static final String NAMESPACE_NFE = "http://www.portalfiscal.inf.br/nfe";
-    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssXXX");
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssxxx");
+    private static final ZoneId FUSO_HORARIO_PADRAO = ZoneId.of("America/Sao_Paulo");
+    private static final String INFORMACOES_COMPLEMENTARES = "Documento emitido por ME/EPP optante pelo Simples Nacional. "
+            + "Não gera direito a crédito fiscal de IPI. "
+            + "Não gera direito a crédito fiscal de ICMS.";
+
+    // Estimativa do tamanho do documento para evitar realocações do buffer de saída
+    private static final int CAPACIDADE_BASE = 4 * 1024;
+    private static final int CAPACIDADE_POR_ITEM = 1024;
+
+    private final NfceConfiguration nfceConfiguration;
+    // Resolvido uma vez: ZoneId.of consulta as regras de fuso a cada chamada
+    private final ZoneId fusoHorario;
+
+    public XmlService(NfceConfiguration nfceConfiguration) {
+        this.nfceConfiguration = nfceConfiguration;
+        String configurado = nfceConfiguration.getFusoHorario();
+        this.fusoHorario = configurado == null || FUSO_HORARIO_PADRAO.getId().equals(configurado)
+                ? FUSO_HORARIO_PADRAO
+                : ZoneId.of(configurado);
+    }
 
     public String gerarXmlNfce(Nfce nfce) {
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.newDocument();
+            EscritorXml xml = new EscritorXml(CAPACIDADE_BASE + CAPACIDADE_POR_ITEM * nfce.getItens().size());
+            xml.declaracao();
 
             // Elemento raiz
-            Element nfeProc = document.createElementNS(NAMESPACE_NFE, "nfeProc");
-            nfeProc.setAttribute("versao", "4.00");
-            nfeProc.setAttribute("xmlns", NAMESPACE_NFE);
-            document.appendChild(nfeProc);
+            xml.abrir("nfeProc")
+                    .atributo("xmlns", NAMESPACE_NFE)
+                    .atributo("versao", "4.00");
 
             // NFe
-            Element nfeElement = document.createElement("NFe");
-            nfeProc.appendChild(nfeElement);
+            xml.abrir("NFe");
 
             // infNFe
-            Element infNFe = document.createElement("infNFe");
-            infNFe.setAttribute("Id", "NFe" + nfce.getChaveAcesso());
-            infNFe.setAttribute("versao", "4.00");
-            nfeElement.appendChild(infNFe);
+            xml.abrir("infNFe")
+                    .atributo("Id", "NFe" + nfce.getChaveAcesso())
+                    .atributo("versao", "4.00");
 
             // ide - Identificação
-            criarElementoIde(document, infNFe, nfce);
+            criarElementoIde(xml, nfce);
 
             // emit - Emitente
-            criarElementoEmit(document, infNFe, nfce);
+            criarElementoEmit(xml, nfce);
 
             // dest - Destinatário (opcional para NFC-e)
             if (nfce.getDestinatarioCpfCnpj() != null && !nfce.getDestinatarioCpfCnpj().trim().isEmpty()) {
-                criarElementoDest(document, infNFe, nfce);
+                criarElementoDest(xml, nfce);
             }
 
             // det - Detalhamento dos produtos/serviços
             for (ItemNfce item : nfce.getItens()) {
-                criarElementoDet(document, infNFe, item);
+                criarElementoDet(xml, item);
             }
 
             // total - Totais
-            criarElementoTotal(document, infNFe, nfce);
+            criarElementoTotal(xml, nfce);
 
             // transp - Transporte
-            criarElementoTransp(document, infNFe);
+            criarElementoTransp(xml);
 
             // pag - Pagamento
-            criarElementoPag(document, infNFe, nfce);
+            criarElementoPag(xml, nfce);
 
             // infAdic - Informações adicionais
-            criarElementoInfAdic(document, infNFe, nfce);
+            criarElementoInfAdic(xml, nfce);
 
-            return documentToString(document);
+            xml.fechar(); // infNFe
+            xml.fechar(); // NFe
+            xml.fechar(); // nfeProc
+
+            return xml.paraString();
 
         } catch (Exception e) {
             log.error("Erro ao gerar XML da NFC-e", e);
@@ -86,266 +100,312 @@ public class XmlService {
         }
     }
 
-    private void criarElementoIde(Document document, Element parent, Nfce nfce) {
-        Element ide = document.createElement("ide");
-        parent.appendChild(ide);
-
-        addElement(document, ide, "cUF", nfce.getEmitenteUf());
-        addElement(document, ide, "cNF", nfce.getChaveAcesso().substring(35, 43));
-        addElement(document, ide, "natOp", nfce.getNaturezaOperacao());
-        addElement(document, ide, "mod", "65");
-        addElement(document, ide, "serie", nfce.getSerie().toString());
-        addElement(document, ide, "nNF", nfce.getNumero().toString());
-        addElement(document, ide, "dhEmi", nfce.getDataEmissao().format(DATE_TIME_FORMATTER));
-        addElement(document, ide, "tpNF", String.valueOf(nfce.getTipoOperacao().getCodigo()));
-        addElement(document, ide, "idDest", "1"); // Operação interna
-        addElement(document, ide, "cMunFG", nfce.getEmitenteCodigoMunicipio().toString());
-        addElement(document, ide, "tpImp", "4"); // DANFE NFC-e
-        addElement(document, ide, "tpEmis", "1"); // Emissão normal
-        addElement(document, ide, "cDV", nfce.getChaveAcesso().substring(43));
-        addElement(document, ide, "tpAmb", String.valueOf(nfce.getAmbiente().getCodigo()));
-        addElement(document, ide, "finNFe", String.valueOf(nfce.getFinalidadeEmissao().getCodigo()));
-        addElement(document, ide, "indFinal", "1"); // Consumidor final
-        addElement(document, ide, "indPres", "1"); // Operação presencial
-        addElement(document, ide, "indIntermed", "0"); // Sem intermediador
+    private void criarElementoIde(EscritorXml xml, Nfce nfce) {
+        xml.abrir("ide");
+
+        xml.elemento("cUF", nfce.getEmitenteUf());
+        xml.elemento("cNF", nfce.getChaveAcesso().substring(35, 43));
+        xml.elemento("natOp", nfce.getNaturezaOperacao());
+        xml.elemento("mod", "65");
+        xml.elemento("serie", nfce.getSerie().toString());
+        xml.elemento("nNF", nfce.getNumero().toString());
+        xml.elemento("dhEmi", formatDateTime(nfce.getDataEmissao()));
+        xml.elemento("tpNF", String.valueOf(nfce.getTipoOperacao().getCodigo()));
+        xml.elemento("idDest", "1"); // Operação interna
+        xml.elemento("cMunFG", nfce.getEmitenteCodigoMunicipio().toString());
+        xml.elemento("tpImp", "4"); // DANFE NFC-e
+        xml.elemento("tpEmis", String.valueOf(tipoEmissao(nfce).getCodigo()));
+        xml.elemento("cDV", nfce.getChaveAcesso().substring(43));
+        xml.elemento("tpAmb", String.valueOf(nfce.getAmbiente().getCodigo()));
+        xml.elemento("finNFe", String.valueOf(nfce.getFinalidadeEmissao().getCodigo()));
+        xml.elemento("indFinal", "1"); // Consumidor final
+        xml.elemento("indPres", "1"); // Operação presencial
+        xml.elemento("indIntermed", "0"); // Sem intermediador
+
+        // Contingência: entrada e justificativa
+        if (tipoEmissao(nfce) != Nfce.TipoEmissao.NORMAL) {
+            xml.elemento("dhCont", formatDateTime(nfce.getDataContingencia()));
+            xml.elemento("xJust", nfce.getJustificativaContingencia());
+        }
+
+        xml.fechar();
+    }
+
+    private static Nfce.TipoEmissao tipoEmissao(Nfce nfce) {
+        return nfce.getTipoEmissao() != null ? nfce.getTipoEmissao() : Nfce.TipoEmissao.NORMAL;
     }
 
-    private void criarElementoEmit(Document document, Element parent, Nfce nfce) {
-        Element emit = document.createElement("emit");
-        parent.appendChild(emit);
+    private void criarElementoEmit(EscritorXml xml, Nfce nfce) {
+        xml.abrir("emit");
 
-        addElement(document, emit, "CNPJ", nfce.getEmitenteCnpj());
-        addElement(document, emit, "xNome", nfce.getEmitenteRazaoSocial());
+        xml.elemento("CNPJ", nfce.getEmitenteCnpj());
+        xml.elemento("xNome", nfce.getEmitenteRazaoSocial());
 
         if (nfce.getEmitenteNomeFantasia() != null) {
-            addElement(document, emit, "xFant", nfce.getEmitenteNomeFantasia());
+            xml.elemento("xFant", nfce.getEmitenteNomeFantasia());
         }
 
-        Element enderEmit = document.createElement("enderEmit");
-        emit.appendChild(enderEmit);
+        xml.abrir("enderEmit");
 
-        addElement(document, enderEmit, "xLgr", nfce.getEmitenteLogradouro());
-        addElement(document, enderEmit, "nro", nfce.getEmitenteNumero());
-        addElement(document, enderEmit, "xBairro", nfce.getEmitenteBairro());
-        addElement(document, enderEmit, "cMun", nfce.getEmitenteCodigoMunicipio().toString());
-        addElement(document, enderEmit, "xMun", nfce.getEmitenteMunicipio());
-        addElement(document, enderEmit, "UF", nfce.getEmitenteUf());
-        addElement(document, enderEmit, "CEP", nfce.getEmitenteCep());
+        xml.elemento("xLgr", nfce.getEmitenteLogradouro());
+        xml.elemento("nro", nfce.getEmitenteNumero());
+        xml.elemento("xBairro", nfce.getEmitenteBairro());
+        xml.elemento("cMun", nfce.getEmitenteCodigoMunicipio().toString());
+        xml.elemento("xMun", nfce.getEmitenteMunicipio());
+        xml.elemento("UF", nfce.getEmitenteUf());
+        xml.elemento("CEP", nfce.getEmitenteCep());
+
+        xml.fechar(); // enderEmit
 
         if (nfce.getEmitenteInscricaoEstadual() != null) {
-            addElement(document, emit, "IE", nfce.getEmitenteInscricaoEstadual());
+            xml.elemento("IE", nfce.getEmitenteInscricaoEstadual());
         }
 
-        addElement(document, emit, "CRT", String.valueOf(nfce.getEmitenteRegimeTributario().getCodigo()));
+        xml.elemento("CRT", String.valueOf(nfce.getEmitenteRegimeTributario().getCodigo()));
+
+        xml.fechar();
     }
 
-    private void criarElementoDest(Document document, Element parent, Nfce nfce) {
-        Element dest = document.createElement("dest");
-        parent.appendChild(dest);
+    private void criarElementoDest(EscritorXml xml, Nfce nfce) {
+        xml.abrir("dest");
 
         if (nfce.getDestinatarioCpfCnpj().length() == 11) {
-            addElement(document, dest, "CPF", nfce.getDestinatarioCpfCnpj());
+            xml.elemento("CPF", nfce.getDestinatarioCpfCnpj());
         } else {
-            addElement(document, dest, "CNPJ", nfce.getDestinatarioCpfCnpj());
+            xml.elemento("CNPJ", nfce.getDestinatarioCpfCnpj());
         }
 
         if (nfce.getDestinatarioNome() != null) {
-            addElement(document, dest, "xNome", nfce.getDestinatarioNome());
+            xml.elemento("xNome", nfce.getDestinatarioNome());
         }
 
-        addElement(document, dest, "indIEDest", "9"); // Não contribuinte
+        xml.elemento("indIEDest", "9"); // Não contribuinte
+
+        xml.fechar();
     }
 
-    private void criarElementoDet(Document document, Element parent, ItemNfce item) {
-        Element det = document.createElement("det");
-        det.setAttribute("nItem", item.getNumeroItem().toString());
-        parent.appendChild(det);
+    private void criarElementoDet(EscritorXml xml, ItemNfce item) {
+        xml.abrir("det").atributo("nItem", item.getNumeroItem().toString());
 
         // prod - Produto
-        Element prod = document.createElement("prod");
-        det.appendChild(prod);
-
-        addElement(document, prod, "cProd", item.getCodigoProduto());
-        addElement(document, prod, "cEAN", "");
-        addElement(document, prod, "xProd", item.getDescricao());
-        addElement(document, prod, "NCM", item.getNcm());
-        addElement(document, prod, "CFOP", item.getCfop());
-        addElement(document, prod, "uCom", item.getUnidadeComercial());
-        addElement(document, prod, "qCom", formatDecimal(item.getQuantidadeComercial(), 4));
-        addElement(document, prod, "vUnCom", formatDecimal(item.getValorUnitarioComercial(), 10));
-        addElement(document, prod, "vProd", formatDecimal(item.getValorTotalBruto(), 2));
-        addElement(document, prod, "cEANTrib", "");
-        addElement(document, prod, "uTrib", item.getUnidadeTributavel());
-        addElement(document, prod, "qTrib", formatDecimal(item.getQuantidadeTributavel(), 4));
-        addElement(document, prod, "vUnTrib", formatDecimal(item.getValorUnitarioTributavel(), 10));
+        xml.abrir("prod");
+
+        xml.elemento("cProd", item.getCodigoProduto());
+        xml.elemento("cEAN", "");
+        xml.elemento("xProd", item.getDescricao());
+        xml.elemento("NCM", item.getNcm());
+        xml.elemento("CFOP", item.getCfop());
+        xml.elemento("uCom", item.getUnidadeComercial());
+        xml.elemento("qCom", formatDecimal(item.getQuantidadeComercial(), 4));
+        xml.elemento("vUnCom", formatDecimal(item.getValorUnitarioComercial(), 10));
+        xml.elemento("vProd", formatDecimal(item.getValorTotalBruto(), 2));
+        xml.elemento("cEANTrib", "");
+        xml.elemento("uTrib", item.getUnidadeTributavel());
+        xml.elemento("qTrib", formatDecimal(item.getQuantidadeTributavel(), 4));
+        xml.elemento("vUnTrib", formatDecimal(item.getValorUnitarioTributavel(), 10));
 
         if (item.getValorDesconto() != null && item.getValorDesconto().compareTo(BigDecimal.ZERO) > 0) {
-            addElement(document, prod, "vDesc", formatDecimal(item.getValorDesconto(), 2));
+            xml.elemento("vDesc", formatDecimal(item.getValorDesconto(), 2));
         }
 
-        addElement(document, prod, "indTot", String.valueOf(item.getIncluiNoTotal().getCodigo()));
+        xml.elemento("indTot", String.valueOf(item.getIncluiNoTotal().getCodigo()));
+
+        xml.fechar(); // prod
 
         // imposto - Impostos
-        Element imposto = document.createElement("imposto");
-        det.appendChild(imposto);
+        xml.abrir("imposto");
 
         // ICMS
-        criarElementoIcms(document, imposto, item);
+        criarElementoIcms(xml, item);
 
         // PIS
         if (item.getCstPis() != null) {
-            criarElementoPis(document, imposto, item);
+            criarElementoPis(xml, item);
         }
 
         // COFINS
         if (item.getCstCofins() != null) {
-            criarElementoCofins(document, imposto, item);
+            criarElementoCofins(xml, item);
         }
+
+        xml.fechar(); // imposto
+        xml.fechar(); // det
     }
 
-    private void criarElementoIcms(Document document, Element parent, ItemNfce item) {
-        Element icms = document.createElement("ICMS");
-        parent.appendChild(icms);
+    private void criarElementoIcms(EscritorXml xml, ItemNfce item) {
+        xml.abrir("ICMS");
 
         String cstIcms = item.getCstIcms();
-        Element icmsElement = document.createElement("ICMS" + cstIcms);
-        icms.appendChild(icmsElement);
+        xml.abrir("ICMS" + cstIcms);
 
-        addElement(document, icmsElement, "orig", String.valueOf(item.getOrigemMercadoria().getCodigo()));
-        addElement(document, icmsElement, "CST", cstIcms);
+        xml.elemento("orig", String.valueOf(item.getOrigemMercadoria().getCodigo()));
+        xml.elemento("CST", cstIcms);
 
         if (item.getModalidadeBcIcms() != null) {
-            addElement(document, icmsElement, "modBC", item.getModalidadeBcIcms().toString());
+            xml.elemento("modBC", item.getModalidadeBcIcms().toString());
         }
 
         if (item.getBaseCalculoIcms() != null) {
-            addElement(document, icmsElement, "vBC", formatDecimal(item.getBaseCalculoIcms(), 2));
+            xml.elemento("vBC", formatDecimal(item.getBaseCalculoIcms(), 2));
         }
 
         if (item.getAliquotaIcms() != null) {
-            addElement(document, icmsElement, "pICMS", formatDecimal(item.getAliquotaIcms(), 2));
+            xml.elemento("pICMS", formatDecimal(item.getAliquotaIcms(), 2));
         }
 
         if (item.getValorIcms() != null) {
-            addElement(document, icmsElement, "vICMS", formatDecimal(item.getValorIcms(), 2));
+            xml.elemento("vICMS", formatDecimal(item.getValorIcms(), 2));
         }
+
+        xml.fechar(); // ICMSxx
+        xml.fechar(); // ICMS
     }
 
-    private void criarElementoPis(Document document, Element parent, ItemNfce item) {
-        Element pis = document.createElement("PIS");
-        parent.appendChild(pis);
+    private void criarElementoPis(EscritorXml xml, ItemNfce item) {
+        xml.abrir("PIS");
 
         String cstPis = item.getCstPis();
-        Element pisElement = document.createElement("PIS" + cstPis);
-        pis.appendChild(pisElement);
+        xml.abrir("PIS" + cstPis);
 
-        addElement(document, pisElement, "CST", cstPis);
+        xml.elemento("CST", cstPis);
 
         if (item.getBaseCalculoPis() != null) {
-            addElement(document, pisElement, "vBC", formatDecimal(item.getBaseCalculoPis(), 2));
-            addElement(document, pisElement, "pPIS", formatDecimal(item.getAliquotaPis(), 4));
-            addElement(document, pisElement, "vPIS", formatDecimal(item.getValorPis(), 2));
+            xml.elemento("vBC", formatDecimal(item.getBaseCalculoPis(), 2));
+            xml.elemento("pPIS", formatDecimal(item.getAliquotaPis(), 4));
+            xml.elemento("vPIS", formatDecimal(item.getValorPis(), 2));
         }
+
+        xml.fechar(); // PISxx
+        xml.fechar(); // PIS
     }
 
-    private void criarElementoCofins(Document document, Element parent, ItemNfce item) {
-        Element cofins = document.createElement("COFINS");
-        parent.appendChild(cofins);
+    private void criarElementoCofins(EscritorXml xml, ItemNfce item) {
+        xml.abrir("COFINS");
 
         String cstCofins = item.getCstCofins();
-        Element cofinsElement = document.createElement("COFINS" + cstCofins);
-        cofins.appendChild(cofinsElement);
+        xml.abrir("COFINS" + cstCofins);
 
-        addElement(document, cofinsElement, "CST", cstCofins);
+        xml.elemento("CST", cstCofins);
 
         if (item.getBaseCalculoCofins() != null) {
-            addElement(document, cofinsElement, "vBC", formatDecimal(item.getBaseCalculoCofins(), 2));
-            addElement(document, cofinsElement, "pCOFINS", formatDecimal(item.getAliquotaCofins(), 4));
-            addElement(document, cofinsElement, "vCOFINS", formatDecimal(item.getValorCofins(), 2));
+            xml.elemento("vBC", formatDecimal(item.getBaseCalculoCofins(), 2));
+            xml.elemento("pCOFINS", formatDecimal(item.getAliquotaCofins(), 4));
+            xml.elemento("vCOFINS", formatDecimal(item.getValorCofins(), 2));
         }
+
+        xml.fechar(); // COFINSxx
+        xml.fechar(); // COFINS
     }
 
-    private void criarElementoTotal(Document document, Element parent, Nfce nfce) {
-        Element total = document.createElement("total");
-        parent.appendChild(total);
-
-        Element icmsTot = document.createElement("ICMSTot");
-        total.appendChild(icmsTot);
-
-        addElement(document, icmsTot, "vBC", formatDecimal(nfce.getBaseCalculoIcms(), 2));
-        addElement(document, icmsTot, "vICMS", formatDecimal(nfce.getValorIcms(), 2));
-        addElement(document, icmsTot, "vICMSDeson", "0.00");
-        addElement(document, icmsTot, "vFCP", "0.00");
-        addElement(document, icmsTot, "vBCST", formatDecimal(nfce.getBaseCalculoIcmsSt(), 2));
-        addElement(document, icmsTot, "vST", formatDecimal(nfce.getValorIcmsSt(), 2));
-        addElement(document, icmsTot, "vFCPST", "0.00");
-        addElement(document, icmsTot, "vFCPSTRet", "0.00");
-        addElement(document, icmsTot, "vProd", formatDecimal(nfce.getValorTotalProdutos(), 2));
-        addElement(document, icmsTot, "vFrete", formatDecimal(nfce.getValorFrete(), 2));
-        addElement(document, icmsTot, "vSeg", formatDecimal(nfce.getValorSeguro(), 2));
-        addElement(document, icmsTot, "vDesc", formatDecimal(nfce.getValorDesconto(), 2));
-        addElement(document, icmsTot, "vII", "0.00");
-        addElement(document, icmsTot, "vIPI", "0.00");
-        addElement(document, icmsTot, "vIPIDevol", "0.00");
-        addElement(document, icmsTot, "vPIS", formatDecimal(nfce.getValorPis(), 2));
-        addElement(document, icmsTot, "vCOFINS", formatDecimal(nfce.getValorCofins(), 2));
-        addElement(document, icmsTot, "vOutro", formatDecimal(nfce.getOutrasDespesas(), 2));
-        addElement(document, icmsTot, "vNF", formatDecimal(nfce.getValorTotalNota(), 2));
+    private void criarElementoTotal(EscritorXml xml, Nfce nfce) {
+        xml.abrir("total");
+        xml.abrir("ICMSTot");
+
+        xml.elemento("vBC", formatDecimal(nfce.getBaseCalculoIcms(), 2));
+        xml.elemento("vICMS", formatDecimal(nfce.getValorIcms(), 2));
+        xml.elemento("vICMSDeson", "0.00");
+        xml.elemento("vFCP", "0.00");
+        xml.elemento("vBCST", formatDecimal(nfce.getBaseCalculoIcmsSt(), 2));
+        xml.elemento("vST", formatDecimal(nfce.getValorIcmsSt(), 2));
+        xml.elemento("vFCPST", "0.00");
+        xml.elemento("vFCPSTRet", "0.00");
+        xml.elemento("vProd", formatDecimal(nfce.getValorTotalProdutos(), 2));
+        xml.elemento("vFrete", formatDecimal(nfce.getValorFrete(), 2));
+        xml.elemento("vSeg", formatDecimal(nfce.getValorSeguro(), 2));
+        xml.elemento("vDesc", formatDecimal(nfce.getValorDesconto(), 2));
+        xml.elemento("vII", "0.00");
+        xml.elemento("vIPI", "0.00");
+        xml.elemento("vIPIDevol", "0.00");
+        xml.elemento("vPIS", formatDecimal(nfce.getValorPis(), 2));
+        xml.elemento("vCOFINS", formatDecimal(nfce.getValorCofins(), 2));
+        xml.elemento("vOutro", formatDecimal(nfce.getOutrasDespesas(), 2));
+        xml.elemento("vNF", formatDecimal(nfce.getValorTotalNota(), 2));
+
+        xml.fechar(); // ICMSTot
+        xml.fechar(); // total
     }
 
-    private void criarElementoTransp(Document document, Element parent) {
-        Element transp = document.createElement("transp");
-        parent.appendChild(transp);
+    private void criarElementoTransp(EscritorXml xml) {
+        xml.abrir("transp");
 
-        addElement(document, transp, "modFrete", "9"); // Sem frete
+        xml.elemento("modFrete", "9"); // Sem frete
+
+        xml.fechar();
     }
 
-    private void criarElementoPag(Document document, Element parent, Nfce nfce) {
-        Element pag = document.createElement("pag");
-        parent.appendChild(pag);
+    private void criarElementoPag(EscritorXml xml, Nfce nfce) {
+        xml.abrir("pag");
 
         for (PagamentoNfce pagamento : nfce.getPagamentos()) {
-            Element detPag = document.createElement("detPag");
-            pag.appendChild(detPag);
+            xml.abrir("detPag");
 
-            addElement(document, detPag, "tPag", pagamento.getMeioPagamento().getCodigo());
-            addElement(document, detPag, "vPag", formatDecimal(pagamento.getValor(), 2));
+            xml.elemento("tPag", pagamento.getMeioPagamento().getCodigo());
+            xml.elemento("vPag", formatDecimal(pagamento.getValor(), 2));
 
             if (pagamento.getCnpjCredenciadora() != null) {
-                Element card = document.createElement("card");
-                detPag.appendChild(card);
+                xml.abrir("card");
 
-                addElement(document, card, "CNPJ", pagamento.getCnpjCredenciadora());
+                xml.elemento("CNPJ", pagamento.getCnpjCredenciadora());
 
                 if (pagamento.getBandeiraOperadora() != null) {
-                    addElement(document, card, "tBand", pagamento.getBandeiraOperadora());
+                    xml.elemento("tBand", pagamento.getBandeiraOperadora());
                 }
 
                 if (pagamento.getNumeroAutorizacao() != null) {
-                    addElement(document, card, "cAut", pagamento.getNumeroAutorizacao());
+                    xml.elemento("cAut", pagamento.getNumeroAutorizacao());
                 }
+
+                xml.fechar(); // card
             }
+
+            xml.fechar(); // detPag
         }
+
+        xml.fechar();
     }
 
-    private void criarElementoInfAdic(Document document, Element parent, Nfce nfce) {
-        Element infAdic = document.createElement("infAdic");
-        parent.appendChild(infAdic);
+    private void criarElementoInfAdic(EscritorXml xml, Nfce nfce) {
+        xml.abrir("infAdic");
 
-        StringBuilder infCpl = new StringBuilder();
-        infCpl.append("Documento emitido por ME/EPP optante pelo Simples Nacional. ");
-        infCpl.append("Não gera direito a crédito fiscal de IPI. ");
-        infCpl.append("Não gera direito a crédito fiscal de ICMS.");
+        xml.elemento("infCpl", INFORMACOES_COMPLEMENTARES);
 
-        addElement(document, infAdic, "infCpl", infCpl.toString());
+        xml.fechar();
     }
 
-    private void addElement(Document document, Element parent, String tagName, String textContent) {
-        Element element = document.createElement(tagName);
-        if (textContent != null) {
-            element.setTextContent(textContent);
-        }
-        parent.appendChild(element);
+    /**
+     * {@code <evento>} de cancelamento (110111) pronto para assinar em {@code infEvento}, sem declaração XML:
+     * vai byte a byte para dentro do {@code envEvento}.
+     */
+    public String gerarXmlEventoCancelamento(EventoNfce evento, int tpAmb, LocalDateTime dataEvento) {
+        String chave = evento.getChaveAcesso();
+        EscritorXml xml = new EscritorXml(1024);
+        xml.abrir("evento")
+                .atributo("xmlns", NAMESPACE_NFE)
+                .atributo("versao", "1.00");
+        xml.abrir("infEvento")
+                .atributo("Id", "ID" + evento.getTipoEvento() + chave + String.format("%02d", evento.getSequencia()));
+        xml.elemento("cOrgao", String.valueOf(nfceConfiguration.getUf()));
+        xml.elemento("tpAmb", String.valueOf(tpAmb));
+        // CNPJ do emitente: posições 7 a 20 da chave de acesso
+        xml.elemento("CNPJ", chave.substring(6, 20));
+        xml.elemento("chNFe", chave);
+        xml.elemento("dhEvento", formatDateTime(dataEvento));
+        xml.elemento("tpEvento", evento.getTipoEvento());
+        xml.elemento("nSeqEvento", String.valueOf(evento.getSequencia()));
+        xml.elemento("verEvento", "1.00");
+        xml.abrir("detEvento")
+                .atributo("versao", "1.00");
+        xml.elemento("descEvento", "Cancelamento");
+        xml.elemento("nProt", evento.getProtocoloNfe());
+        xml.elemento("xJust", evento.getJustificativa());
+        xml.fechar();
+        xml.fechar();
+        xml.fechar();
+        return xml.paraString();
+    }
+
+    private String formatDateTime(LocalDateTime dataHora) {
+        return dataHora.atZone(fusoHorario).format(DATE_TIME_FORMATTER);
     }
 
     private String formatDecimal(BigDecimal value, int scale) {
@@ -354,17 +414,4 @@ public class XmlService {
         }
         return value.setScale(scale, RoundingMode.HALF_UP).toString();
     }
-
-    private String documentToString(Document document) throws Exception {
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        Transformer transformer = transformerFactory.newTransformer();
-        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-
-        StringWriter writer = new StringWriter();
-        transformer.transform(new DOMSource(document), new StreamResult(writer));
-
-        return writer.toString();
-    }
 }
@@ -0,0 +1,434 @@
+package com.github.setxpro.nfce_java.infra.services.contingencia;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Journal local, só de acréscimo, das NFC-e emitidas em contingência offline ({@code tpEmis=9}).
+ * <p>
+ * O arquivo começa com {@link #MAGICO} e segue com registros {@code [tamanho][crc32c][tipo][dados]}, o CRC
+ * cobrindo tipo e dados. Um registro NOTA guarda chave de acesso e XML assinado; um registro TRANSMITIDAS
+ * guarda as chaves que já chegaram à SEFAZ. Nada é reescrito: quando não sobra nota pendente o arquivo volta a
+ * ter só o cabeçalho.
+ * <p>
+ * As notas são identificadas pela chave de acesso, que é a identidade fiscal delas: o id é do banco e não
+ * identifica a mesma nota depois de uma restauração ou numa base recriada. Gravar de novo uma chave pendente
+ * substitui a nota.
+ * <p>
+ * {@link #anexar} só retorna depois do fsync. Quem grava enquanto outro fsync está em andamento espera e é
+ * coberto pelo seguinte, então gravações concorrentes dividem o mesmo fsync.
+ * <p>
+ * Na abertura os registros são relidos. O primeiro registro incompleto ou com CRC errado marca o ponto em que
+ * uma queda interrompeu a escrita: ele e o que vier depois são descartados e o arquivo é truncado ali.
+ */
+public final class JournalContingencia implements Closeable {
+
+    public static final long MAGICO = 0x4E4643452D4A3032L; // "NFCE-J02"
+
+    private static final int CABECALHO = Long.BYTES;
+    private static final int MOLDURA = 2 * Integer.BYTES;
+    private static final int TAMANHO_MAXIMO_REGISTRO = 16 * 1024 * 1024;
+    private static final byte NOTA = 1;
+    private static final byte TRANSMITIDAS = 2;
+
+    /**
+     * NFC-e guardada no journal: o XML é o assinado, como vai no lote {@code enviNFe}.
+     */
+    public record Nota(String chave, String xml) {
+    }
+
+    private final Path arquivo;
+    private final FileChannel canal;
+    private final long bytesDescartados;
+
+    private final ReentrantLock trava = new ReentrantLock();
+    private final Condition sincronizado = trava.newCondition();
+    // Protegidos pela trava. pendentes guarda a posição do registro de cada nota, na ordem de gravação
+    private final Map<String, Long> pendentes = new LinkedHashMap<>();
+    private long fim;
+    private long duravelAte;
+    private boolean sincronizando;
+    private int gravacoesEmAndamento;
+    private long fsyncs;
+
+    public JournalContingencia(Path arquivo) throws IOException {
+        this.arquivo = arquivo;
+        Path diretorio = arquivo.toAbsolutePath().getParent();
+        if (diretorio != null) {
+            Files.createDirectories(diretorio);
+        }
+        this.canal = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            this.bytesDescartados = recuperar();
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Grava as notas e espera o fsync. Só depois disso elas passam a constar em {@link #pendentes}.
+     */
+    public void anexar(List<Nota> notas) throws IOException {
+        if (notas.isEmpty()) {
+            return;
+        }
+        ByteBuffer[] registros = new ByteBuffer[notas.size()];
+        for (int i = 0; i < registros.length; i++) {
+            registros[i] = registroNota(notas.get(i));
+        }
+
+        long[] posicoes = new long[registros.length];
+        long ate;
+        trava.lock();
+        try {
+            long posicao = fim;
+            for (int i = 0; i < registros.length; i++) {
+                posicoes[i] = posicao;
+                posicao += registros[i].remaining();
+            }
+            escrever(registros);
+            ate = fim;
+            gravacoesEmAndamento++;
+        } finally {
+            trava.unlock();
+        }
+
+        boolean duravel = false;
+        try {
+            sincronizar(ate);
+            duravel = true;
+        } finally {
+            trava.lock();
+            try {
+                gravacoesEmAndamento--;
+                if (duravel) {
+                    for (int i = 0; i < posicoes.length; i++) {
+                        pendentes.put(notas.get(i).chave(), posicoes[i]);
+                    }
+                }
+            } finally {
+                trava.unlock();
+            }
+        }
+    }
+
+    /**
+     * Até {@code maximo} notas pendentes, das mais antigas para as mais novas.
+     */
+    public List<Nota> pendentes(int maximo) throws IOException {
+        trava.lock();
+        try {
+            List<Nota> notas = new ArrayList<>(Math.min(maximo, pendentes.size()));
+            for (long posicao : pendentes.values()) {
+                if (notas.size() == maximo) {
+                    break;
+                }
+                notas.add(lerNota(posicao));
+            }
+            return notas;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Registra que as notas chegaram à SEFAZ. Quando não sobra nenhuma pendente nem gravação em andamento, o
+     * arquivo é truncado no cabeçalho, no lugar do registro ou logo depois dele.
+     */
+    public void confirmar(Collection<String> chaves) throws IOException {
+        List<String> confirmadas = new ArrayList<>(chaves.size());
+        long ate;
+        trava.lock();
+        try {
+            for (String chave : chaves) {
+                if (pendentes.remove(chave) != null) {
+                    confirmadas.add(chave);
+                }
+            }
+            if (confirmadas.isEmpty()) {
+                return;
+            }
+            if (compactarSeVazio()) {
+                return;
+            }
+            escrever(registroTransmitidas(confirmadas));
+            ate = fim;
+            gravacoesEmAndamento++;
+        } finally {
+            trava.unlock();
+        }
+
+        boolean duravel = false;
+        try {
+            sincronizar(ate);
+            duravel = true;
+        } finally {
+            trava.lock();
+            try {
+                gravacoesEmAndamento--;
+                if (duravel) {
+                    compactarSeVazio();
+                }
+            } finally {
+                trava.unlock();
+            }
+        }
+    }
+
+    public int quantidadePendentes() {
+        trava.lock();
+        try {
+            return pendentes.size();
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    public long tamanho() {
+        trava.lock();
+        try {
+            return fim;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    public long fsyncs() {
+        trava.lock();
+        try {
+            return fsyncs;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    /**
+     * Bytes de registro incompleto ou corrompido descartados na abertura.
+     */
+    public long bytesDescartados() {
+        return bytesDescartados;
+    }
+
+    public Path arquivo() {
+        return arquivo;
+    }
+
+    @Override
+    public void close() throws IOException {
+        trava.lock();
+        try {
+            canal.close();
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    private long recuperar() throws IOException {
+        long tamanho = canal.size();
+        if (tamanho < CABECALHO) {
+            // Arquivo novo, ou queda antes de o cabeçalho chegar ao disco
+            canal.truncate(0);
+            canal.write(ByteBuffer.allocate(CABECALHO).putLong(0, MAGICO), 0);
+            canal.force(true);
+            fim = CABECALHO;
+            duravelAte = CABECALHO;
+            return tamanho;
+        }
+        if (ler(0, CABECALHO).getLong() != MAGICO) {
+            throw new IOException("Arquivo não é um journal de contingência: " + arquivo);
+        }
+
+        long posicao = CABECALHO;
+        while (tamanho - posicao >= MOLDURA) {
+            ByteBuffer moldura = ler(posicao, MOLDURA);
+            int comprimento = moldura.getInt();
+            int crc = moldura.getInt();
+            if (comprimento < 1 || comprimento > TAMANHO_MAXIMO_REGISTRO
+                    || tamanho - posicao - MOLDURA < comprimento) {
+                break;
+            }
+            ByteBuffer dados = ler(posicao + MOLDURA, comprimento);
+            if (crc(dados) != crc) {
+                break;
+            }
+            aplicar(dados, posicao);
+            posicao += MOLDURA + comprimento;
+        }
+
+        if (posicao < tamanho) {
+            canal.truncate(posicao);
+            canal.force(true);
+        }
+        fim = posicao;
+        duravelAte = posicao;
+        return tamanho - posicao;
+    }
+
+    /**
+     * Chamado com a trava. Sem gravação em andamento ninguém espera fsync de posição além do cabeçalho.
+     */
+    private boolean compactarSeVazio() throws IOException {
+        if (!pendentes.isEmpty() || gravacoesEmAndamento > 0 || fim == CABECALHO) {
+            return false;
+        }
+        canal.truncate(CABECALHO);
+        canal.force(true);
+        fim = CABECALHO;
+        duravelAte = CABECALHO;
+        return true;
+    }
+
+    private void aplicar(ByteBuffer dados, long posicao) throws IOException {
+        byte tipo = dados.get();
+        switch (tipo) {
+            case NOTA -> pendentes.put(lerChave(dados), posicao);
+            case TRANSMITIDAS -> {
+                int quantidade = dados.getInt();
+                for (int i = 0; i < quantidade; i++) {
+                    pendentes.remove(lerChave(dados));
+                }
+            }
+            default -> throw new IOException("Registro de tipo " + tipo + " desconhecido em " + arquivo
+                    + " (posição " + posicao + ")");
+        }
+    }
+
+    /**
+     * Grava no fim do arquivo. Chamado com a trava; se a escrita falhar no meio, o que foi escrito é cortado
+     * para a próxima gravação não deixar lixo entre registros.
+     */
+    private void escrever(ByteBuffer... registros) throws IOException {
+        long total = 0;
+        for (ByteBuffer registro : registros) {
+            total += registro.remaining();
+        }
+        try {
+            canal.position(fim);
+            long escritos = 0;
+            while (escritos < total) {
+                escritos += canal.write(registros);
+            }
+        } catch (IOException e) {
+            try {
+                canal.truncate(fim);
+            } catch (IOException suprimida) {
+                e.addSuppressed(suprimida);
+            }
+            throw e;
+        }
+        fim += total;
+    }
+
+    /**
+     * Espera o arquivo estar no disco até {@code ate}. Sem fsync em andamento, quem chega faz um cobrindo tudo
+     * o que já foi escrito; os demais esperam por ele. {@code force(false)} também grava o tamanho do arquivo,
+     * que é necessário para ler os registros acrescentados.
+     */
+    private void sincronizar(long ate) throws IOException {
+        trava.lock();
+        try {
+            while (duravelAte < ate) {
+                if (sincronizando) {
+                    sincronizado.awaitUninterruptibly();
+                    continue;
+                }
+                sincronizando = true;
+                long alvo = fim;
+                boolean concluido = false;
+                trava.unlock();
+                try {
+                    canal.force(false);
+                    concluido = true;
+                } finally {
+                    trava.lock();
+                    sincronizando = false;
+                    if (concluido) {
+                        duravelAte = Math.max(duravelAte, alvo);
+                        fsyncs++;
+                    }
+                    sincronizado.signalAll();
+                }
+            }
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    private Nota lerNota(long posicao) throws IOException {
+        int comprimento = ler(posicao, Integer.BYTES).getInt();
+        ByteBuffer dados = ler(posicao + MOLDURA, comprimento);
+        if (dados.get() != NOTA) {
+            throw new IOException("Registro em " + posicao + " não é uma nota: " + arquivo);
+        }
+        String chave = lerChave(dados);
+        byte[] xml = new byte[dados.getInt()];
+        dados.get(xml);
+        return new Nota(chave, new String(xml, StandardCharsets.UTF_8));
+    }
+
+    private static String lerChave(ByteBuffer dados) {
+        byte[] chave = new byte[dados.getShort()];
+        dados.get(chave);
+        return new String(chave, StandardCharsets.US_ASCII);
+    }
+
+    private ByteBuffer ler(long posicao, int tamanho) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(tamanho);
+        while (buffer.hasRemaining()) {
+            if (canal.read(buffer, posicao + buffer.position()) < 0) {
+                throw new EOFException("Fim inesperado de " + arquivo + " na posição " + posicao);
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static ByteBuffer registroNota(Nota nota) {
+        byte[] chave = nota.chave().getBytes(StandardCharsets.US_ASCII);
+        byte[] xml = nota.xml().getBytes(StandardCharsets.UTF_8);
+        int comprimento = 1 + Short.BYTES + chave.length + Integer.BYTES + xml.length;
+        if (comprimento > TAMANHO_MAXIMO_REGISTRO) {
+            throw new IllegalArgumentException("XML da NFC-e " + nota.chave() + " excede o tamanho máximo do journal");
+        }
+        ByteBuffer registro = ByteBuffer.allocate(MOLDURA + comprimento).position(MOLDURA);
+        registro.put(NOTA).putShort((short) chave.length).put(chave).putInt(xml.length).put(xml);
+        return moldar(registro);
+    }
+
+    private static ByteBuffer registroTransmitidas(List<String> chaves) {
+        List<byte[]> bytes = chaves.stream().map(chave -> chave.getBytes(StandardCharsets.US_ASCII)).toList();
+        int comprimento = 1 + Integer.BYTES + bytes.stream().mapToInt(chave -> Short.BYTES + chave.length).sum();
+        ByteBuffer registro = ByteBuffer.allocate(MOLDURA + comprimento).position(MOLDURA);
+        registro.put(TRANSMITIDAS).putInt(bytes.size());
+        bytes.forEach(chave -> registro.putShort((short) chave.length).put(chave));
+        return moldar(registro);
+    }
+
+    private static ByteBuffer moldar(ByteBuffer registro) {
+        int comprimento = registro.capacity() - MOLDURA;
+        registro.putInt(0, comprimento).putInt(Integer.BYTES, crc(registro.slice(MOLDURA, comprimento)));
+        return registro.clear();
+    }
+
+    private static int crc(ByteBuffer dados) {
+        CRC32C crc = new CRC32C();
+        crc.update(dados.duplicate());
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.setxpro.nfce_java.infra.services.idempotencia;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache LRU das respostas mais recentes por {@code Idempotency-Key}, limitado em quantidade de entradas. Guarda
+ * a resposta já desserializada, então uma repetição recente não lê o banco nem refaz o JSON.
+ */
+public class CacheRespostas {
+
+    private final int maximoEntradas;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Resposta> entradas = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder acertos = new LongAdder();
+    private final LongAdder faltas = new LongAdder();
+    private final LongAdder remocoes = new LongAdder();
+
+    /**
+     * Resposta gravada de uma chave: o hash da requisição que a gerou, o corpo e até quando vale.
+     */
+    public record Resposta(String hashRequisicao, Object corpo, LocalDateTime expiraEm) {
+    }
+
+    public record Estatisticas(long acertos, long faltas, long remocoes, int entradas) {
+    }
+
+    public CacheRespostas(int maximoEntradas) {
+        this.maximoEntradas = maximoEntradas;
+    }
+
+    /**
+     * Resposta ainda válida da chave ou {@code null}; uma entrada vencida é descartada.
+     */
+    public Resposta obter(String chave, LocalDateTime agora) {
+        lock.lock();
+        try {
+            Resposta resposta = entradas.get(chave);
+            if (resposta != null && resposta.expiraEm().isAfter(agora)) {
+                acertos.increment();
+                return resposta;
+            }
+            if (resposta != null) {
+                entradas.remove(chave);
+                remocoes.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+        faltas.increment();
+        return null;
+    }
+
+    public void guardar(String chave, Resposta resposta) {
+        if (maximoEntradas <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            entradas.put(chave, resposta);
+            Iterator<Map.Entry<String, Resposta>> iterador = entradas.entrySet().iterator();
+            while (entradas.size() > maximoEntradas && iterador.hasNext()) {
+                iterador.next();
+                iterador.remove();
+                remocoes.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Estatisticas estatisticas() {
+        lock.lock();
+        try {
+            return new Estatisticas(acertos.sum(), faltas.sum(), remocoes.sum(), entradas.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+}
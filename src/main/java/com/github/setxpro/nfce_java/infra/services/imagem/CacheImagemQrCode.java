@@ -0,0 +1,98 @@
+package com.github.setxpro.nfce_java.infra.services.imagem;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Cache LRU de imagens de QR Code limitado em quantidade de entradas e em bytes.
+ * <p>
+ * A geração roda fora do lock: duas requisições simultâneas para a mesma chave podem gerar a imagem
+ * duas vezes, mas nenhuma espera pela codificação da outra.
+ */
+public class CacheImagemQrCode {
+
+    private final int maximoEntradas;
+    private final long maximoBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Chave, ImagemQrCode> entradas = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final LongAdder acertos = new LongAdder();
+    private final LongAdder faltas = new LongAdder();
+    private final LongAdder remocoes = new LongAdder();
+
+    public record Chave(String conteudo, int largura, int altura) {
+    }
+
+    public record Estatisticas(long acertos, long faltas, long remocoes, int entradas, long bytes) {
+    }
+
+    public CacheImagemQrCode(int maximoEntradas, long maximoBytes) {
+        this.maximoEntradas = maximoEntradas;
+        this.maximoBytes = maximoBytes;
+    }
+
+    public ImagemQrCode obter(Chave chave, Function<Chave, ImagemQrCode> gerador) {
+        lock.lock();
+        try {
+            ImagemQrCode existente = entradas.get(chave);
+            if (existente != null) {
+                acertos.increment();
+                return existente;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        faltas.increment();
+        ImagemQrCode gerada = gerador.apply(chave);
+        int tamanho = tamanho(chave, gerada);
+        if (maximoEntradas <= 0 || tamanho > maximoBytes) {
+            return gerada;
+        }
+
+        lock.lock();
+        try {
+            ImagemQrCode anterior = entradas.put(chave, gerada);
+            if (anterior != null) {
+                bytes -= tamanho(chave, anterior);
+            }
+            bytes += tamanho;
+            removerExcedentes();
+        } finally {
+            lock.unlock();
+        }
+        return gerada;
+    }
+
+    public Estatisticas estatisticas() {
+        lock.lock();
+        try {
+            return new Estatisticas(acertos.sum(), faltas.sum(), remocoes.sum(), entradas.size(), bytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void removerExcedentes() {
+        Iterator<Map.Entry<Chave, ImagemQrCode>> iterador = entradas.entrySet().iterator();
+        while ((entradas.size() > maximoEntradas || bytes > maximoBytes) && iterador.hasNext()) {
+            Map.Entry<Chave, ImagemQrCode> maisAntiga = iterador.next();
+            bytes -= tamanho(maisAntiga.getKey(), maisAntiga.getValue());
+            iterador.remove();
+            remocoes.increment();
+        }
+    }
+
+    /**
+     * Bytes contabilizados por entrada: a imagem e o conteúdo (chars em UTF-16).
+     */
+    private static int tamanho(Chave chave, ImagemQrCode imagem) {
+        return imagem.png().length + chave.conteudo().length() * 2;
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.setxpro.nfce_java.infra.services.imagem;
+
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Comandos ESC/POS para impressoras térmicas: o QR Code já rasterizado ({@code GS v 0}) ou a sequência
+ * {@code GS ( k} para a impressora montar o símbolo com o gerador próprio.
+ */
+public final class EscPosQrCode {
+
+    private static final byte GS = 0x1D;
+
+    /** Limite do modelo 2 em bytes (versão 40, correção L); a maioria das impressoras aceita menos. */
+    public static final int TAMANHO_MAXIMO_CONTEUDO = 7089;
+    public static final int TAMANHO_MINIMO_MODULO = 1;
+    public static final int TAMANHO_MAXIMO_MODULO = 16;
+
+    private static final byte CORRECAO_M = 0x31;
+
+    private EscPosQrCode() {
+    }
+
+    /**
+     * {@code GS v 0} em modo normal: bit 1 = ponto impresso, 8 pontos por byte, o mais à esquerda no
+     * bit mais significativo. A linha é empacotada direto dos bits da matriz.
+     */
+    public static byte[] raster(BitMatrix matriz) {
+        int largura = matriz.getWidth();
+        int altura = matriz.getHeight();
+        int bytesPorLinha = (largura + 7) >>> 3;
+
+        byte[] comando = new byte[8 + bytesPorLinha * altura];
+        comando[0] = GS;
+        comando[1] = 'v';
+        comando[2] = '0';
+        comando[3] = 0; // densidade normal
+        comando[4] = (byte) bytesPorLinha;
+        comando[5] = (byte) (bytesPorLinha >>> 8);
+        comando[6] = (byte) altura;
+        comando[7] = (byte) (altura >>> 8);
+
+        BitArray linha = new BitArray(largura);
+        int posicao = 8;
+        for (int y = 0; y < altura; y++) {
+            int[] bits = matriz.getRow(y, linha).getBitArray();
+            for (int x = 0; x < bytesPorLinha; x++) {
+                // Mesmo empacotamento do PngMonocromatico, mas sem complemento: aqui preto = 1
+                int oitoPontos = (bits[x >>> 2] >>> ((x & 3) << 3)) & 0xFF;
+                comando[posicao++] = (byte) (Integer.reverse(oitoPontos) >>> 24);
+            }
+        }
+        return comando;
+    }
+
+    /**
+     * Sequência {@code GS ( k} (funções 165, 167, 169, 180 e 181): modelo 2, tamanho do módulo em pontos,
+     * correção M, armazenamento do conteúdo e impressão.
+     */
+    public static byte[] comandoNativo(String conteudo, int tamanhoModulo) {
+        if (tamanhoModulo < TAMANHO_MINIMO_MODULO || tamanhoModulo > TAMANHO_MAXIMO_MODULO) {
+            throw new IllegalArgumentException("Tamanho do módulo deve estar entre " + TAMANHO_MINIMO_MODULO
+                    + " e " + TAMANHO_MAXIMO_MODULO + ": " + tamanhoModulo);
+        }
+        byte[] dados = conteudo.getBytes(StandardCharsets.UTF_8);
+        if (dados.length == 0 || dados.length > TAMANHO_MAXIMO_CONTEUDO) {
+            throw new IllegalArgumentException("Conteúdo do QR Code deve ter entre 1 e " + TAMANHO_MAXIMO_CONTEUDO
+                    + " bytes: " + dados.length);
+        }
+
+        int tamanhoArmazenamento = dados.length + 3;
+        byte[] comando = new byte[9 + 8 + 8 + 8 + dados.length + 8];
+        int posicao = 0;
+
+        posicao = funcao(comando, posicao, 4, 'A', '2', 0);               // 165: modelo 2
+        posicao = funcao(comando, posicao, 3, 'C', tamanhoModulo);        // 167: tamanho do módulo
+        posicao = funcao(comando, posicao, 3, 'E', CORRECAO_M);           // 169: nível de correção
+
+        comando[posicao++] = GS;                                          // 180: armazena o conteúdo
+        comando[posicao++] = '(';
+        comando[posicao++] = 'k';
+        comando[posicao++] = (byte) tamanhoArmazenamento;
+        comando[posicao++] = (byte) (tamanhoArmazenamento >>> 8);
+        comando[posicao++] = '1';
+        comando[posicao++] = 'P';
+        comando[posicao++] = '0';
+        System.arraycopy(dados, 0, comando, posicao, dados.length);
+        posicao += dados.length;
+
+        funcao(comando, posicao, 3, 'Q', '0');                            // 181: imprime o símbolo
+        return comando;
+    }
+
+    private static int funcao(byte[] comando, int posicao, int tamanho, int funcao, int... parametros) {
+        comando[posicao++] = GS;
+        comando[posicao++] = '(';
+        comando[posicao++] = 'k';
+        comando[posicao++] = (byte) tamanho;
+        comando[posicao++] = 0;
+        comando[posicao++] = '1';
+        comando[posicao++] = (byte) funcao;
+        for (int parametro : parametros) {
+            comando[posicao++] = (byte) parametro;
+        }
+        return posicao;
+    }
+}
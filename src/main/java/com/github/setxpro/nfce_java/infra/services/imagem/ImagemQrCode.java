@@ -0,0 +1,7 @@
+package com.github.setxpro.nfce_java.infra.services.imagem;
+
+/**
+ * PNG do QR Code com seu ETag forte (hash do conteúdo da imagem, entre aspas).
+ */
+public record ImagemQrCode(byte[] png, String etag) {
+}
@@ -0,0 +1,149 @@
+package com.github.setxpro.nfce_java.infra.services.imagem;
+
+import com.github.setxpro.nfce_java.infra.util.PoolRecursos;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Codifica um {@link BitMatrix} como PNG em tons de cinza de 1 bit (preto = 0, branco = 1).
+ * <p>
+ * Cada linha é empacotada direto dos bits da matriz, 8 pixels por byte, sem passar por
+ * {@code BufferedImage}/{@code ImageIO}. O {@link Deflater}, o {@link CRC32} e os buffers de trabalho
+ * são reaproveitados num {@link PoolRecursos}.
+ */
+public final class PngMonocromatico {
+
+    private static final byte[] ASSINATURA = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] IHDR = {'I', 'H', 'D', 'R'};
+    private static final byte[] IDAT = {'I', 'D', 'A', 'T'};
+    private static final byte[] IEND = {'I', 'E', 'N', 'D'};
+
+    private static final int TAMANHO_IHDR = 13;
+    private static final int PROFUNDIDADE_1_BIT = 1;
+    private static final int TIPO_COR_CINZA = 0;
+    private static final int FILTRO_NENHUM = 0;
+
+    private static final PoolRecursos<Recursos> RECURSOS = new PoolRecursos<>(Recursos::new,
+            recursos -> recursos.deflater.end());
+
+    private PngMonocromatico() {
+    }
+
+    public static byte[] codificar(BitMatrix matriz) {
+        int largura = matriz.getWidth();
+        int altura = matriz.getHeight();
+        int bytesPorLinha = (largura + 7) >>> 3;
+
+        Recursos recursos = RECURSOS.obter();
+        try {
+            byte[] bruto = recursos.bruto(altura * (bytesPorLinha + 1));
+            BitArray linha = recursos.linha(largura);
+
+            int posicao = 0;
+            for (int y = 0; y < altura; y++) {
+                bruto[posicao++] = FILTRO_NENHUM;
+                int[] bits = matriz.getRow(y, linha).getBitArray();
+                for (int x = 0; x < bytesPorLinha; x++) {
+                    // BitArray guarda o pixel 0 no bit menos significativo; o PNG quer o primeiro pixel no mais
+                    // significativo e branco = 1, por isso os bits são invertidos e complementados
+                    int oitoPixels = (bits[x >>> 2] >>> ((x & 3) << 3)) & 0xFF;
+                    bruto[posicao++] = (byte) ~(Integer.reverse(oitoPixels) >>> 24);
+                }
+            }
+
+            Deflater deflater = recursos.deflater;
+            deflater.reset();
+            deflater.setInput(bruto, 0, posicao);
+            deflater.finish();
+            byte[] compactado = recursos.compactado(posicao / 4 + 64);
+            int tamanhoCompactado = 0;
+            while (!deflater.finished()) {
+                if (tamanhoCompactado == compactado.length) {
+                    compactado = recursos.ampliarCompactado();
+                }
+                tamanhoCompactado += deflater.deflate(compactado, tamanhoCompactado,
+                        compactado.length - tamanhoCompactado);
+            }
+
+            byte[] png = new byte[ASSINATURA.length + (12 + TAMANHO_IHDR) + (12 + tamanhoCompactado) + 12];
+            System.arraycopy(ASSINATURA, 0, png, 0, ASSINATURA.length);
+            int saida = ASSINATURA.length;
+
+            byte[] cabecalho = recursos.cabecalho;
+            escreverInt(cabecalho, 0, largura);
+            escreverInt(cabecalho, 4, altura);
+            cabecalho[8] = PROFUNDIDADE_1_BIT;
+            cabecalho[9] = TIPO_COR_CINZA;
+            cabecalho[10] = 0; // compressão deflate
+            cabecalho[11] = 0; // filtro adaptativo
+            cabecalho[12] = 0; // sem entrelaçamento
+
+            saida = escreverChunk(png, saida, IHDR, cabecalho, TAMANHO_IHDR, recursos.crc);
+            saida = escreverChunk(png, saida, IDAT, compactado, tamanhoCompactado, recursos.crc);
+            escreverChunk(png, saida, IEND, cabecalho, 0, recursos.crc);
+
+            return png;
+        } finally {
+            RECURSOS.devolver(recursos);
+        }
+    }
+
+    private static int escreverChunk(byte[] png, int posicao, byte[] tipo, byte[] dados, int tamanho, CRC32 crc) {
+        escreverInt(png, posicao, tamanho);
+        System.arraycopy(tipo, 0, png, posicao + 4, 4);
+        System.arraycopy(dados, 0, png, posicao + 8, tamanho);
+
+        // O CRC cobre o tipo e os dados do chunk
+        crc.reset();
+        crc.update(png, posicao + 4, 4 + tamanho);
+        escreverInt(png, posicao + 8 + tamanho, (int) crc.getValue());
+
+        return posicao + 12 + tamanho;
+    }
+
+    private static void escreverInt(byte[] destino, int posicao, int valor) {
+        destino[posicao] = (byte) (valor >>> 24);
+        destino[posicao + 1] = (byte) (valor >>> 16);
+        destino[posicao + 2] = (byte) (valor >>> 8);
+        destino[posicao + 3] = (byte) valor;
+    }
+
+    private static final class Recursos {
+        private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        private final CRC32 crc = new CRC32();
+        private final byte[] cabecalho = new byte[TAMANHO_IHDR];
+        private byte[] bruto = new byte[0];
+        private byte[] compactado = new byte[0];
+        private BitArray linha = new BitArray(0);
+
+        private byte[] bruto(int tamanho) {
+            if (bruto.length < tamanho) {
+                bruto = new byte[tamanho];
+            }
+            return bruto;
+        }
+
+        private byte[] compactado(int tamanhoMinimo) {
+            if (compactado.length < tamanhoMinimo) {
+                compactado = new byte[tamanhoMinimo];
+            }
+            return compactado;
+        }
+
+        private byte[] ampliarCompactado() {
+            compactado = Arrays.copyOf(compactado, compactado.length * 2);
+            return compactado;
+        }
+
+        private BitArray linha(int largura) {
+            if (linha.getSize() != largura) {
+                linha = new BitArray(largura);
+            }
+            return linha;
+        }
+    }
+}
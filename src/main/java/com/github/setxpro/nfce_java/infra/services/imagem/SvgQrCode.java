@@ -0,0 +1,49 @@
+package com.github.setxpro.nfce_java.infra.services.imagem;
+
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * SVG do QR Code com um único {@code path}: cada sequência horizontal de módulos pretos vira um retângulo
+ * de altura 1, em coordenadas de módulo. O tamanho final fica por conta de {@code width}/{@code height}.
+ */
+public final class SvgQrCode {
+
+    private SvgQrCode() {
+    }
+
+    /**
+     * @param modulos matriz com um bit por módulo (incluindo a margem), como a devolvida pelo ZXing
+     *                quando a largura e a altura pedidas são zero
+     */
+    public static String gerar(BitMatrix modulos, int largura, int altura) {
+        int lado = modulos.getWidth();
+        int linhas = modulos.getHeight();
+
+        StringBuilder svg = new StringBuilder(256 + lado * linhas * 3);
+        svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(largura)
+                .append("\" height=\"").append(altura)
+                .append("\" viewBox=\"0 0 ").append(lado).append(' ').append(linhas)
+                .append("\" shape-rendering=\"crispEdges\">")
+                .append("<rect width=\"").append(lado).append("\" height=\"").append(linhas).append("\" fill=\"#fff\"/>")
+                .append("<path fill=\"#000\" d=\"");
+
+        for (int y = 0; y < linhas; y++) {
+            int x = 0;
+            while (x < lado) {
+                if (!modulos.get(x, y)) {
+                    x++;
+                    continue;
+                }
+                int inicio = x;
+                while (x < lado && modulos.get(x, y)) {
+                    x++;
+                }
+                int comprimento = x - inicio;
+                svg.append('M').append(inicio).append(' ').append(y)
+                        .append('h').append(comprimento).append("v1h-").append(comprimento).append('z');
+            }
+        }
+
+        return svg.append("\"/></svg>").toString();
+    }
+}
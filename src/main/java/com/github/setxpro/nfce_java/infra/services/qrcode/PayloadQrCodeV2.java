@@ -0,0 +1,203 @@
+package com.github.setxpro.nfce_java.infra.services.qrcode;
+
+import com.github.setxpro.nfce_java.infra.util.PoolRecursos;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * URL do QR Code da NFC-e na versão 2.00, emissão on-line:
+ * {@code <urlConsulta>?p=chave|2|tpAmb|idCSC|cHashQRCode}, com o hash SHA-1 (hexadecimal maiúsculo)
+ * calculado sobre {@code chave|2|tpAmb|idCSC} seguido do CSC.
+ * <p>
+ * Na contingência offline ({@code tpEmis=9}) a URL é {@code chave|2|tpAmb|diaEmi|vNF|digVal|idCSC|cHashQRCode}
+ * e só sai depois da assinatura: {@code digVal} é o {@code DigestValue} dela, em hexadecimal.
+ * <p>
+ * A URL é escrita num único buffer de bytes já dimensionado, que volta a um {@link PoolRecursos} junto com o
+ * {@link MessageDigest}; o hexadecimal sai de uma tabela.
+ */
+public final class PayloadQrCodeV2 {
+
+    public static final char VERSAO = '2';
+
+    private static final int TAMANHO_CHAVE = 44;
+    private static final int TAMANHO_HASH_HEX = 40;
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final char[] HEX_MINUSCULO = "0123456789abcdef".toCharArray();
+
+    private final byte[] prefixo;
+    private final byte[] idCsc;
+    private final byte[] csc;
+    private final PoolRecursos<Recursos> recursos;
+
+    private record Recursos(MessageDigest sha1, byte[] url) {
+    }
+
+    public PayloadQrCodeV2(String urlConsulta, int idCsc, String csc) {
+        if (idCsc <= 0 || idCsc > 999_999) {
+            throw new IllegalArgumentException("Identificador do CSC inválido: " + idCsc);
+        }
+        if (csc == null || csc.isBlank()) {
+            throw new IllegalArgumentException("CSC não informado");
+        }
+        this.prefixo = (urlConsulta + "?p=").getBytes(StandardCharsets.US_ASCII);
+        // Sem zeros à esquerda, como pede o leiaute 2.00
+        this.idCsc = Integer.toString(idCsc).getBytes(StandardCharsets.US_ASCII);
+        this.csc = csc.getBytes(StandardCharsets.US_ASCII);
+
+        // prefixo + chave|2|tpAmb|idCSC| + hash
+        int tamanho = prefixo.length + TAMANHO_CHAVE + 5 + this.idCsc.length + 1 + TAMANHO_HASH_HEX;
+        this.recursos = new PoolRecursos<>(() -> {
+            byte[] url = new byte[tamanho];
+            System.arraycopy(prefixo, 0, url, 0, prefixo.length);
+            return new Recursos(sha1(), url);
+        });
+    }
+
+    public String montar(String chaveAcesso, int ambiente) {
+        validar(chaveAcesso, ambiente);
+
+        Recursos uso = recursos.obter();
+        try {
+            byte[] url = uso.url();
+            int posicao = prefixo.length;
+            int inicioParametros = posicao;
+
+            for (int i = 0; i < TAMANHO_CHAVE; i++) {
+                char c = chaveAcesso.charAt(i);
+                if (c < '0' || c > '9') {
+                    throw new IllegalArgumentException("Chave de acesso deve conter apenas dígitos");
+                }
+                url[posicao++] = (byte) c;
+            }
+            url[posicao++] = '|';
+            url[posicao++] = VERSAO;
+            url[posicao++] = '|';
+            url[posicao++] = (byte) ('0' + ambiente);
+            url[posicao++] = '|';
+            System.arraycopy(idCsc, 0, url, posicao, idCsc.length);
+            posicao += idCsc.length;
+
+            MessageDigest sha1 = uso.sha1();
+            sha1.update(url, inicioParametros, posicao - inicioParametros);
+            byte[] hash = sha1.digest(csc);
+
+            url[posicao++] = '|';
+            for (byte b : hash) {
+                url[posicao++] = HEX[(b >>> 4) & 0x0F];
+                url[posicao++] = HEX[b & 0x0F];
+            }
+
+            return new String(url, 0, posicao, StandardCharsets.ISO_8859_1);
+        } finally {
+            // Uma exceção no meio do hash deixaria dados pendentes no MessageDigest
+            uso.sha1().reset();
+            recursos.devolver(uso);
+        }
+    }
+
+    /**
+     * URL da contingência offline. {@code vNF} vai com duas casas e ponto; {@code digVal} é o
+     * {@code DigestValue} (Base64) da assinatura da NFC-e com cada caractere em hexadecimal.
+     */
+    public String montarOffline(String chaveAcesso, int ambiente, int diaEmissao, BigDecimal valorTotal,
+                                String digestValue) {
+        validar(chaveAcesso, ambiente);
+        for (int i = 0; i < TAMANHO_CHAVE; i++) {
+            char c = chaveAcesso.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Chave de acesso deve conter apenas dígitos");
+            }
+        }
+        if (diaEmissao < 1 || diaEmissao > 31) {
+            throw new IllegalArgumentException("Dia de emissão inválido: " + diaEmissao);
+        }
+        if (valorTotal == null || valorTotal.signum() < 0) {
+            throw new IllegalArgumentException("Valor total da NFC-e inválido: " + valorTotal);
+        }
+        if (digestValue == null || digestValue.isBlank()) {
+            throw new IllegalArgumentException("DigestValue da assinatura não informado");
+        }
+
+        StringBuilder parametros = new StringBuilder(TAMANHO_CHAVE + 24 + 2 * digestValue.length() + idCsc.length)
+                .append(chaveAcesso).append('|').append(VERSAO).append('|').append(ambiente).append('|')
+                .append(diaEmissao < 10 ? "0" : "").append(diaEmissao).append('|')
+                .append(valorTotal.setScale(2, RoundingMode.HALF_UP).toPlainString()).append('|');
+        for (int i = 0; i < digestValue.length(); i++) {
+            char c = digestValue.charAt(i);
+            parametros.append(HEX_MINUSCULO[(c >>> 4) & 0x0F]).append(HEX_MINUSCULO[c & 0x0F]);
+        }
+        parametros.append('|').append(new String(idCsc, StandardCharsets.US_ASCII));
+
+        Recursos uso = recursos.obter();
+        try {
+            MessageDigest sha1 = uso.sha1();
+            sha1.update(parametros.toString().getBytes(StandardCharsets.US_ASCII));
+            byte[] hash = sha1.digest(csc);
+
+            StringBuilder url = new StringBuilder(prefixo.length + parametros.length() + 1 + TAMANHO_HASH_HEX)
+                    .append(new String(prefixo, StandardCharsets.US_ASCII)).append(parametros).append('|');
+            for (byte b : hash) {
+                url.append((char) HEX[(b >>> 4) & 0x0F]).append((char) HEX[b & 0x0F]);
+            }
+            return url.toString();
+        } finally {
+            uso.sha1().reset();
+            recursos.devolver(uso);
+        }
+    }
+
+    /**
+     * Confere os parâmetros {@code p} de uma URL 2.00, on-line ou offline: versão, identificador do CSC e o hash
+     * recalculado com o CSC deste emissor.
+     */
+    public boolean conferir(String parametros) {
+        int fimDados = parametros.lastIndexOf('|');
+        if (fimDados < 0 || parametros.length() - fimDados - 1 != TAMANHO_HASH_HEX) {
+            return false;
+        }
+        String[] partes = parametros.substring(0, fimDados).split("\\|", -1);
+        if ((partes.length != 4 && partes.length != 7) || !partes[1].equals(String.valueOf(VERSAO))
+                || !partes[partes.length - 1].equals(new String(idCsc, StandardCharsets.US_ASCII))) {
+            return false;
+        }
+
+        Recursos uso = recursos.obter();
+        try {
+            MessageDigest sha1 = uso.sha1();
+            sha1.update(parametros.substring(0, fimDados).getBytes(StandardCharsets.US_ASCII));
+            byte[] hash = sha1.digest(csc);
+            for (int i = 0; i < hash.length; i++) {
+                char alto = Character.toUpperCase(parametros.charAt(fimDados + 1 + 2 * i));
+                char baixo = Character.toUpperCase(parametros.charAt(fimDados + 2 + 2 * i));
+                if (alto != HEX[(hash[i] >>> 4) & 0x0F] || baixo != HEX[hash[i] & 0x0F]) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            uso.sha1().reset();
+            recursos.devolver(uso);
+        }
+    }
+
+    private static void validar(String chaveAcesso, int ambiente) {
+        if (chaveAcesso == null || chaveAcesso.length() != TAMANHO_CHAVE) {
+            throw new IllegalArgumentException("Chave de acesso deve ter 44 dígitos");
+        }
+        if (ambiente != 1 && ambiente != 2) {
+            throw new IllegalArgumentException("Ambiente inválido: " + ambiente);
+        }
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 indisponível", e);
+        }
+    }
+}
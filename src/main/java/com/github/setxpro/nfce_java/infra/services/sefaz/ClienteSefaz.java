@@ -0,0 +1,153 @@
+package com.github.setxpro.nfce_java.infra.services.sefaz;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cliente SOAP 1.2 dos webservices da SEFAZ sobre um pool de conexões HTTP persistentes.
+ * <p>
+ * O {@link SSLContext} (com o certificado A1 do cliente) é montado uma vez por quem cria o cliente e todas as
+ * conexões o compartilham, então o custo do handshake mútuo só aparece quando o pool abre uma conexão nova.
+ * Resposta HTTP fora da faixa 2xx (inclusive o 500 de um SOAP Fault) é {@link IOException}: para quem chama,
+ * falha de comunicação a repetir.
+ */
+public final class ClienteSefaz implements Closeable {
+
+    private static final String[] PROTOCOLOS_TLS = {"TLSv1.3", "TLSv1.2"};
+
+    // Conexão parada há mais que isso é testada antes de ser reaproveitada (a SEFAZ fecha as ociosas)
+    private static final int VALIDAR_APOS_INATIVIDADE_MS = 2_000;
+
+    private final PoolingHttpClientConnectionManager conexoes;
+    private final CloseableHttpClient http;
+    private final LongAdder conexoesAbertas = new LongAdder();
+    private final LongAdder requisicoes = new LongAdder();
+    private final LongAdder falhas = new LongAdder();
+
+    /**
+     * @param maxConexoes        limite do pool inteiro
+     * @param maxConexoesPorRota limite por webservice (host e porta)
+     * @param keepAliveMs        tempo máximo de reuso de uma conexão ociosa, quando o servidor não informa um menor
+     */
+    public record Parametros(int maxConexoes, int maxConexoesPorRota, int timeoutConexaoMs, int timeoutLeituraMs,
+                             long keepAliveMs) {
+    }
+
+    /**
+     * Estado do pool. {@code conexoesAbertas} conta todas as conexões (e handshakes TLS) desde a criação; com
+     * reuso funcionando ela fica perto de {@code maximoPorRota} enquanto {@code requisicoes} cresce.
+     */
+    public record Metricas(int alugadas, int disponiveis, int aguardando, int maximo, int maximoPorRota,
+                           long conexoesAbertas, long requisicoes, long falhas) {
+    }
+
+    public ClienteSefaz(SSLContext contextoSsl, Parametros parametros) {
+        Registry<ConnectionSocketFactory> fabricas = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", new PlainConnectionSocketFactory() {
+                    @Override
+                    public Socket connectSocket(int timeout, Socket socket, HttpHost host, InetSocketAddress remoto,
+                                                InetSocketAddress local, HttpContext contexto) throws IOException {
+                        conexoesAbertas.increment();
+                        return super.connectSocket(timeout, socket, host, remoto, local, contexto);
+                    }
+                })
+                .register("https", new SSLConnectionSocketFactory(contextoSsl, PROTOCOLOS_TLS, null,
+                        SSLConnectionSocketFactory.getDefaultHostnameVerifier()) {
+                    @Override
+                    public Socket connectSocket(int timeout, Socket socket, HttpHost host, InetSocketAddress remoto,
+                                                InetSocketAddress local, HttpContext contexto) throws IOException {
+                        conexoesAbertas.increment();
+                        return super.connectSocket(timeout, socket, host, remoto, local, contexto);
+                    }
+                })
+                .build();
+
+        this.conexoes = new PoolingHttpClientConnectionManager(fabricas);
+        this.conexoes.setMaxTotal(parametros.maxConexoes());
+        this.conexoes.setDefaultMaxPerRoute(parametros.maxConexoesPorRota());
+        this.conexoes.setValidateAfterInactivity(VALIDAR_APOS_INATIVIDADE_MS);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(parametros.timeoutConexaoMs())
+                .setConnectionRequestTimeout(parametros.timeoutConexaoMs())
+                .setSocketTimeout(parametros.timeoutLeituraMs())
+                .build();
+
+        long keepAliveMs = parametros.keepAliveMs();
+        ConnectionKeepAliveStrategy keepAlive = (resposta, contexto) -> {
+            long informado = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(resposta, contexto);
+            return informado > 0 ? Math.min(informado, keepAliveMs) : keepAliveMs;
+        };
+
+        this.http = HttpClients.custom()
+                .setConnectionManager(conexoes)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAlive)
+                // Com certificado de cliente o HttpClient marca a conexão com o titular e só a devolve a quem
+                // informar o mesmo titular no contexto; sem isso nenhuma conexão mTLS seria reaproveitada.
+                // Aqui há um único titular, então o estado da conexão não distingue nada.
+                .disableConnectionState()
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveMs, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public String enviar(String url, String acao, String envelope) throws IOException {
+        HttpPost post = new HttpPost(url);
+        post.setEntity(new StringEntity(envelope, ContentType.create("application/soap+xml", StandardCharsets.UTF_8)));
+        post.setHeader("Content-Type", "application/soap+xml; charset=utf-8; action=\"" + acao + "\"");
+
+        requisicoes.increment();
+        try (CloseableHttpResponse resposta = http.execute(post)) {
+            int status = resposta.getStatusLine().getStatusCode();
+            // Consumir o corpo inteiro é o que devolve a conexão ao pool
+            String corpo = resposta.getEntity() != null
+                    ? EntityUtils.toString(resposta.getEntity(), StandardCharsets.UTF_8)
+                    : "";
+            if (status / 100 != 2) {
+                throw new IOException("SEFAZ respondeu HTTP " + status + " em " + url);
+            }
+            return corpo;
+        } catch (IOException e) {
+            falhas.increment();
+            throw e;
+        }
+    }
+
+    public Metricas metricas() {
+        PoolStats total = conexoes.getTotalStats();
+        return new Metricas(total.getLeased(), total.getAvailable(), total.getPending(), total.getMax(),
+                conexoes.getDefaultMaxPerRoute(), conexoesAbertas.sum(), requisicoes.sum(), falhas.sum());
+    }
+
+    @Override
+    public void close() throws IOException {
+        http.close();
+    }
+}
@@ -0,0 +1,192 @@
+package com.github.setxpro.nfce_java.infra.services.sefaz;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Disjuntor das chamadas à SEFAZ.
+ * <p>
+ * FECHADO deixa tudo passar e conta falhas seguidas; com {@code falhasParaAbrir} delas abre. ABERTO recusa na
+ * hora, sem ocupar conexão nem esperar timeout, até passar {@code tempoAbertoMs}; aí uma única chamada passa
+ * como sonda (MEIO_ABERTO). Se ela der certo o disjuntor fecha; se falhar volta a abrir com o dobro do tempo,
+ * até {@code tempoAbertoMaximoMs}. {@link #abrir} e {@link #fechar} deixam o monitor de status forçar o estado.
+ * <p>
+ * Os ouvintes são chamados fora da trava, na thread que provocou a mudança.
+ */
+public final class DisjuntorSefaz {
+
+    public enum Estado {
+        FECHADO, ABERTO, MEIO_ABERTO
+    }
+
+    public record Parametros(int falhasParaAbrir, long tempoAbertoMs, long tempoAbertoMaximoMs) {
+
+        public Parametros {
+            if (falhasParaAbrir < 1 || tempoAbertoMs < 1 || tempoAbertoMaximoMs < tempoAbertoMs) {
+                throw new IllegalArgumentException("Parâmetros do disjuntor inválidos: falhas=" + falhasParaAbrir
+                        + ", tempo aberto=" + tempoAbertoMs + ", tempo aberto máximo=" + tempoAbertoMaximoMs);
+            }
+        }
+    }
+
+    /**
+     * Estado atual e contadores; {@code transicoes} é indexado por {@code "ANTERIOR->NOVO"}.
+     */
+    public record Metricas(Estado estado, String motivo, LocalDateTime desde, int falhasConsecutivas,
+                           long tempoAbertoMs, long chamadasRecusadas, Map<String, Long> transicoes) {
+    }
+
+    @FunctionalInterface
+    public interface Ouvinte {
+        void aoMudar(Estado anterior, Estado novo, String motivo);
+    }
+
+    private record Transicao(Estado anterior, Estado novo, String motivo) {
+    }
+
+    private final Parametros parametros;
+    private final List<Ouvinte> ouvintes = new CopyOnWriteArrayList<>();
+
+    // Protegidos por this
+    private Estado estado = Estado.FECHADO;
+    private String motivo;
+    private LocalDateTime desde = LocalDateTime.now();
+    private int falhasConsecutivas;
+    private long tempoAbertoMs;
+    private long reabrirEm;
+    private boolean sondaEmAndamento;
+    private long chamadasRecusadas;
+    private final Map<String, Long> transicoes = new TreeMap<>();
+
+    public DisjuntorSefaz(Parametros parametros) {
+        this.parametros = parametros;
+        this.tempoAbertoMs = parametros.tempoAbertoMs();
+    }
+
+    public void observar(Ouvinte ouvinte) {
+        ouvintes.add(ouvinte);
+    }
+
+    /**
+     * Se a chamada pode seguir. Quem recebe {@code true} precisa informar o resultado em
+     * {@link #registrarSucesso} ou {@link #registrarFalha}.
+     */
+    public boolean permitir() {
+        Transicao transicao = null;
+        boolean permitido;
+        synchronized (this) {
+            switch (estado) {
+                case FECHADO -> permitido = true;
+                case ABERTO -> {
+                    permitido = System.nanoTime() - reabrirEm >= 0;
+                    if (permitido) {
+                        transicao = mudar(Estado.MEIO_ABERTO, motivo);
+                        sondaEmAndamento = true;
+                    }
+                }
+                default -> {
+                    permitido = !sondaEmAndamento;
+                    sondaEmAndamento = true;
+                }
+            }
+            if (!permitido) {
+                chamadasRecusadas++;
+            }
+        }
+        notificar(transicao);
+        return permitido;
+    }
+
+    public void registrarSucesso() {
+        Transicao transicao = null;
+        synchronized (this) {
+            falhasConsecutivas = 0;
+            if (estado == Estado.MEIO_ABERTO) {
+                sondaEmAndamento = false;
+                tempoAbertoMs = parametros.tempoAbertoMs();
+                transicao = mudar(Estado.FECHADO, null);
+            }
+        }
+        notificar(transicao);
+    }
+
+    public void registrarFalha(String motivoFalha) {
+        Transicao transicao = null;
+        synchronized (this) {
+            falhasConsecutivas++;
+            if (estado == Estado.MEIO_ABERTO) {
+                sondaEmAndamento = false;
+                tempoAbertoMs = Math.min(tempoAbertoMs * 2, parametros.tempoAbertoMaximoMs());
+                transicao = abrirComTrava(motivoFalha);
+            } else if (estado == Estado.FECHADO && falhasConsecutivas >= parametros.falhasParaAbrir()) {
+                transicao = abrirComTrava(motivoFalha);
+            }
+        }
+        notificar(transicao);
+    }
+
+    /**
+     * Abre na hora, sem esperar as falhas; já aberto, só renova o prazo.
+     */
+    public void abrir(String motivoAbertura) {
+        Transicao transicao;
+        synchronized (this) {
+            sondaEmAndamento = false;
+            transicao = abrirComTrava(motivoAbertura);
+        }
+        notificar(transicao);
+    }
+
+    public void fechar() {
+        Transicao transicao = null;
+        synchronized (this) {
+            falhasConsecutivas = 0;
+            sondaEmAndamento = false;
+            tempoAbertoMs = parametros.tempoAbertoMs();
+            if (estado != Estado.FECHADO) {
+                transicao = mudar(Estado.FECHADO, null);
+            }
+        }
+        notificar(transicao);
+    }
+
+    public synchronized Estado estado() {
+        return estado;
+    }
+
+    public synchronized Metricas metricas() {
+        return new Metricas(estado, motivo, desde, falhasConsecutivas, tempoAbertoMs, chamadasRecusadas,
+                Map.copyOf(transicoes));
+    }
+
+    private Transicao abrirComTrava(String motivoAbertura) {
+        reabrirEm = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(tempoAbertoMs);
+        if (estado == Estado.ABERTO) {
+            motivo = motivoAbertura;
+            return null;
+        }
+        return mudar(Estado.ABERTO, motivoAbertura);
+    }
+
+    private Transicao mudar(Estado novo, String motivoMudanca) {
+        Transicao transicao = new Transicao(estado, novo, motivoMudanca);
+        transicoes.merge(estado + "->" + novo, 1L, Long::sum);
+        estado = novo;
+        motivo = motivoMudanca;
+        desde = LocalDateTime.now();
+        return transicao;
+    }
+
+    private void notificar(Transicao transicao) {
+        if (transicao == null) {
+            return;
+        }
+        for (Ouvinte ouvinte : ouvintes) {
+            ouvinte.aoMudar(transicao.anterior(), transicao.novo(), transicao.motivo());
+        }
+    }
+}
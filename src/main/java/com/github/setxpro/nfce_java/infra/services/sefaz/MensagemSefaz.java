@@ -0,0 +1,204 @@
+package com.github.setxpro.nfce_java.infra.services.sefaz;
+
+import com.github.setxpro.nfce_java.infra.services.xml.EscritorXml;
+
+import java.util.List;
+
+/**
+ * Mensagens SOAP 1.2 dos webservices de autorização (NFeAutorizacao4 e NFeRetAutorizacao4), de consulta do
+ * protocolo (NFeConsultaProtocolo4), de eventos (NFeRecepcaoEvento4) e de status do serviço (NFeStatusServico4).
+ * <p>
+ * Os {@code <NFe>} entram no {@code enviNFe} como foram gravados, sem reprocessar o XML: qualquer mudança de
+ * espaços ou de namespaces dentro de {@code infNFe} invalidaria a assinatura. O mesmo vale para os {@code <evento>}
+ * do {@code envEvento}.
+ */
+public final class MensagemSefaz {
+
+    public static final String NAMESPACE_NFE = "http://www.portalfiscal.inf.br/nfe";
+    public static final String NAMESPACE_SOAP = "http://www.w3.org/2003/05/soap-envelope";
+    public static final String WSDL_AUTORIZACAO = "http://www.portalfiscal.inf.br/nfe/wsdl/NFeAutorizacao4";
+    public static final String WSDL_RET_AUTORIZACAO = "http://www.portalfiscal.inf.br/nfe/wsdl/NFeRetAutorizacao4";
+    public static final String ACAO_AUTORIZACAO = WSDL_AUTORIZACAO + "/nfeAutorizacaoLote";
+    public static final String ACAO_RET_AUTORIZACAO = WSDL_RET_AUTORIZACAO + "/nfeRetAutorizacaoLote";
+    public static final String WSDL_CONSULTA_PROTOCOLO = "http://www.portalfiscal.inf.br/nfe/wsdl/NFeConsultaProtocolo4";
+    public static final String ACAO_CONSULTA_PROTOCOLO = WSDL_CONSULTA_PROTOCOLO + "/nfeConsultaNF";
+    public static final String WSDL_STATUS_SERVICO = "http://www.portalfiscal.inf.br/nfe/wsdl/NFeStatusServico4";
+    public static final String ACAO_STATUS_SERVICO = WSDL_STATUS_SERVICO + "/nfeStatusServicoNF";
+    public static final String WSDL_RECEPCAO_EVENTO = "http://www.portalfiscal.inf.br/nfe/wsdl/NFeRecepcaoEvento4";
+    public static final String ACAO_RECEPCAO_EVENTO = WSDL_RECEPCAO_EVENTO + "/nfeRecepcaoEvento";
+    public static final String VERSAO_EVENTO = "1.00";
+
+    // Limite do leiaute para um enviNFe
+    public static final int MAXIMO_DOCUMENTOS_LOTE = 50;
+    // Limite do leiaute para um envEvento
+    public static final int MAXIMO_EVENTOS_LOTE = 20;
+
+    private static final String VERSAO = "4.00";
+
+    private MensagemSefaz() {
+    }
+
+    /**
+     * Envelope do {@code enviNFe}. {@code documentos} são os XML gravados (com ou sem {@code nfeProc}); de cada
+     * um vai só o elemento {@code <NFe>}.
+     */
+    public static String enviNFe(long idLote, boolean sincrono, List<String> documentos) {
+        if (documentos.isEmpty() || documentos.size() > MAXIMO_DOCUMENTOS_LOTE) {
+            throw new IllegalArgumentException("Lote deve ter de 1 a " + MAXIMO_DOCUMENTOS_LOTE
+                    + " documentos: " + documentos.size());
+        }
+        StringBuilder corpo = new StringBuilder(documentos.stream().mapToInt(String::length).sum() + 256);
+        corpo.append("<enviNFe xmlns=\"").append(NAMESPACE_NFE).append("\" versao=\"").append(VERSAO).append("\">")
+                .append("<idLote>").append(idLote).append("</idLote>")
+                .append("<indSinc>").append(sincrono ? 1 : 0).append("</indSinc>");
+        for (String documento : documentos) {
+            corpo.append(extrairNFe(documento));
+        }
+        corpo.append("</enviNFe>");
+        return envelope(WSDL_AUTORIZACAO, corpo);
+    }
+
+    /**
+     * Envelope do {@code consReciNFe}, a consulta do resultado de um lote assíncrono.
+     */
+    public static String consReciNFe(int tpAmb, String recibo) {
+        StringBuilder corpo = new StringBuilder(192);
+        corpo.append("<consReciNFe xmlns=\"").append(NAMESPACE_NFE).append("\" versao=\"").append(VERSAO).append("\">")
+                .append("<tpAmb>").append(tpAmb).append("</tpAmb>")
+                .append("<nRec>").append(recibo).append("</nRec>")
+                .append("</consReciNFe>");
+        return envelope(WSDL_RET_AUTORIZACAO, corpo);
+    }
+
+    /**
+     * Envelope do {@code consSitNFe}, a consulta da situação e do protocolo de uma NFC-e pela chave de acesso.
+     */
+    public static String consSitNFe(int tpAmb, String chave) {
+        StringBuilder corpo = new StringBuilder(224);
+        corpo.append("<consSitNFe xmlns=\"").append(NAMESPACE_NFE).append("\" versao=\"").append(VERSAO).append("\">")
+                .append("<tpAmb>").append(tpAmb).append("</tpAmb>")
+                .append("<xServ>CONSULTAR</xServ>")
+                .append("<chNFe>").append(chave).append("</chNFe>")
+                .append("</consSitNFe>");
+        return envelope(WSDL_CONSULTA_PROTOCOLO, corpo);
+    }
+
+    /**
+     * Envelope do {@code envEvento}. {@code eventos} são os {@code <evento>} assinados, como foram gravados.
+     */
+    public static String envEvento(long idLote, List<String> eventos) {
+        if (eventos.isEmpty() || eventos.size() > MAXIMO_EVENTOS_LOTE) {
+            throw new IllegalArgumentException("Lote de eventos deve ter de 1 a " + MAXIMO_EVENTOS_LOTE
+                    + " eventos: " + eventos.size());
+        }
+        StringBuilder corpo = new StringBuilder(eventos.stream().mapToInt(String::length).sum() + 192);
+        corpo.append("<envEvento xmlns=\"").append(NAMESPACE_NFE).append("\" versao=\"").append(VERSAO_EVENTO)
+                .append("\">")
+                .append("<idLote>").append(idLote).append("</idLote>");
+        for (String evento : eventos) {
+            corpo.append(extrairEvento(evento));
+        }
+        corpo.append("</envEvento>");
+        return envelope(WSDL_RECEPCAO_EVENTO, corpo);
+    }
+
+    /**
+     * O elemento {@code <evento>...</evento>} de um evento gravado, byte a byte.
+     */
+    public static String extrairEvento(String documento) {
+        int inicio = documento.indexOf("<evento ");
+        int fim = documento.lastIndexOf("</evento>");
+        if (inicio < 0 || fim < inicio) {
+            throw new IllegalArgumentException("XML sem elemento evento");
+        }
+        return documento.substring(inicio, fim + "</evento>".length());
+    }
+
+    /**
+     * XML de distribuição do evento: o {@code <evento>} assinado seguido do {@code retEvento} da SEFAZ.
+     */
+    public static String procEventoNFe(String evento, int tpAmb, RetornoEvento.Registro registro) {
+        EscritorXml ret = new EscritorXml(512);
+        ret.abrir("retEvento").atributo("versao", VERSAO_EVENTO)
+                .abrir("infEvento")
+                .elemento("tpAmb", String.valueOf(tpAmb))
+                .elemento("verAplic", registro.versaoAplicativo())
+                .elemento("cOrgao", registro.orgao())
+                .elemento("cStat", registro.cStat())
+                .elemento("xMotivo", registro.motivo())
+                .elemento("chNFe", registro.chave())
+                .elemento("tpEvento", registro.tipoEvento())
+                .elemento("nSeqEvento", registro.sequencia())
+                .elemento("dhRegEvento", registro.dataRegistro())
+                .elemento("nProt", registro.protocolo())
+                .fechar()
+                .fechar();
+        return "<procEventoNFe xmlns=\"" + NAMESPACE_NFE + "\" versao=\"" + VERSAO_EVENTO + "\">"
+                + extrairEvento(evento) + ret.paraString() + "</procEventoNFe>";
+    }
+
+    /**
+     * Envelope do {@code consStatServ}, a consulta de disponibilidade do serviço na UF.
+     */
+    public static String consStatServ(int tpAmb, int cUF) {
+        StringBuilder corpo = new StringBuilder(192);
+        corpo.append("<consStatServ xmlns=\"").append(NAMESPACE_NFE).append("\" versao=\"").append(VERSAO).append("\">")
+                .append("<tpAmb>").append(tpAmb).append("</tpAmb>")
+                .append("<cUF>").append(cUF).append("</cUF>")
+                .append("<xServ>STATUS</xServ>")
+                .append("</consStatServ>");
+        return envelope(WSDL_STATUS_SERVICO, corpo);
+    }
+
+    /**
+     * O elemento {@code <NFe>...</NFe>} de um XML gravado, byte a byte.
+     */
+    public static String extrairNFe(String documento) {
+        int inicio = documento.indexOf("<NFe");
+        int fim = documento.lastIndexOf("</NFe>");
+        if (inicio < 0 || fim < inicio) {
+            throw new IllegalArgumentException("XML sem elemento NFe");
+        }
+        String nfe = documento.substring(inicio, fim + "</NFe>".length());
+        // Fora do nfeProc o NFe precisa declarar o namespace que antes herdava
+        return nfe.startsWith("<NFe xmlns=") ? nfe : "<NFe xmlns=\"" + NAMESPACE_NFE + "\"" + nfe.substring(4);
+    }
+
+    /**
+     * XML de distribuição: o {@code nfeProc} gravado com o {@code protNFe} da SEFAZ depois do {@code NFe}.
+     */
+    public static String nfeProc(String documento, int tpAmb, RetornoSefaz.Protocolo protocolo) {
+        EscritorXml prot = new EscritorXml(512);
+        prot.abrir("protNFe").atributo("versao", VERSAO)
+                .abrir("infProt")
+                .elemento("tpAmb", String.valueOf(tpAmb))
+                .elemento("verAplic", protocolo.versaoAplicativo())
+                .elemento("chNFe", protocolo.chave())
+                .elemento("dhRecbto", protocolo.dataRecebimento())
+                .elemento("nProt", protocolo.numero());
+        if (protocolo.digestValue() != null) {
+            prot.elemento("digVal", protocolo.digestValue());
+        }
+        prot.elemento("cStat", protocolo.cStat())
+                .elemento("xMotivo", protocolo.motivo())
+                .fechar()
+                .fechar();
+
+        int fim = documento.lastIndexOf("</nfeProc>");
+        if (fim >= 0) {
+            return documento.substring(0, fim) + prot.paraString() + documento.substring(fim);
+        }
+        return "<nfeProc xmlns=\"" + NAMESPACE_NFE + "\" versao=\"" + VERSAO + "\">"
+                + extrairNFe(documento) + prot.paraString() + "</nfeProc>";
+    }
+
+    private static String envelope(String wsdl, CharSequence corpo) {
+        return new StringBuilder(corpo.length() + 256)
+                .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<soap12:Envelope xmlns:soap12=\"").append(NAMESPACE_SOAP).append("\">")
+                .append("<soap12:Body><nfeDadosMsg xmlns=\"").append(wsdl).append("\">")
+                .append(corpo)
+                .append("</nfeDadosMsg></soap12:Body></soap12:Envelope>")
+                .toString();
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.setxpro.nfce_java.infra.services.sefaz;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Retorno do {@code retEnvEvento}, lido em fluxo com StAX.
+ * <p>
+ * {@code cStat} é o status do lote: 128 (processado, resultado de cada evento em {@code registros}), 108 e 109
+ * (serviço paralisado, lote não recebido) ou rejeição do lote inteiro.
+ */
+public record RetornoEvento(String cStat, String motivo, List<Registro> registros) {
+
+    public static final String LOTE_PROCESSADO = "128";
+
+    /**
+     * Resultado de um evento do lote ({@code retEvento/infEvento}).
+     */
+    public record Registro(String chave, String tipoEvento, String sequencia, String cStat, String motivo,
+                           String protocolo, String dataRegistro, String versaoAplicativo, String orgao) {
+
+        // 135 (registrado e vinculado à NF-e), 136 (registrado sem vinculação) e 155 (cancelamento homologado
+        // fora de prazo)
+        public boolean registrado() {
+            return "135".equals(cStat) || "136".equals(cStat) || "155".equals(cStat);
+        }
+
+        // 573: o mesmo evento já foi registrado, numa tentativa anterior cuja resposta se perdeu
+        public boolean duplicado() {
+            return "573".equals(cStat);
+        }
+    }
+
+    public boolean servicoParalisado() {
+        return RetornoSefaz.SERVICO_PARALISADO.equals(cStat)
+                || RetornoSefaz.SERVICO_PARALISADO_SEM_PREVISAO.equals(cStat);
+    }
+
+    /**
+     * Lê o retorno de dentro do envelope SOAP. Envelope sem {@code cStat} é erro de comunicação e gera
+     * {@link IllegalArgumentException}, como em {@link RetornoSefaz#ler}.
+     */
+    public static RetornoEvento ler(String resposta) {
+        try {
+            XMLStreamReader reader = RetornoSefaz.FACTORY.createXMLStreamReader(new StringReader(resposta));
+            try {
+                return ler(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("Resposta da SEFAZ não é um XML válido: " + e.getMessage(), e);
+        }
+    }
+
+    private static RetornoEvento ler(XMLStreamReader reader) throws XMLStreamException {
+        String cStat = null;
+        String motivo = null;
+        List<Registro> registros = new ArrayList<>();
+
+        // Campos do infEvento corrente; fora dele cStat e xMotivo são do lote
+        boolean emEvento = false;
+        String[] registro = new String[9];
+
+        while (reader.hasNext()) {
+            int evento = reader.next();
+            if (evento == XMLStreamConstants.END_ELEMENT && "infEvento".equals(reader.getLocalName())) {
+                registros.add(new Registro(registro[0], registro[1], registro[2], registro[3], registro[4],
+                        registro[5], registro[6], registro[7], registro[8]));
+                emEvento = false;
+                continue;
+            }
+            if (evento != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String nome = reader.getLocalName();
+            if ("infEvento".equals(nome)) {
+                emEvento = true;
+                registro = new String[9];
+                continue;
+            }
+            if (emEvento) {
+                int campo = switch (nome) {
+                    case "chNFe" -> 0;
+                    case "tpEvento" -> 1;
+                    case "nSeqEvento" -> 2;
+                    case "cStat" -> 3;
+                    case "xMotivo" -> 4;
+                    case "nProt" -> 5;
+                    case "dhRegEvento" -> 6;
+                    case "verAplic" -> 7;
+                    case "cOrgao" -> 8;
+                    default -> -1;
+                };
+                if (campo >= 0) {
+                    registro[campo] = reader.getElementText().trim();
+                }
+                continue;
+            }
+            switch (nome) {
+                case "cStat" -> cStat = reader.getElementText().trim();
+                case "xMotivo" -> motivo = reader.getElementText().trim();
+                default -> {
+                }
+            }
+        }
+
+        if (cStat == null) {
+            throw new IllegalArgumentException("Resposta da SEFAZ sem cStat");
+        }
+        return new RetornoEvento(cStat, motivo, List.copyOf(registros));
+    }
+}
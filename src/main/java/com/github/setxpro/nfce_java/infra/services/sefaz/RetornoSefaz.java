@@ -0,0 +1,161 @@
+package com.github.setxpro.nfce_java.infra.services.sefaz;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Retorno do {@code retEnviNFe}, do {@code retConsReciNFe}, do {@code retConsSitNFe} ou do {@code retConsStatServ},
+ * lido em fluxo com StAX.
+ * <p>
+ * {@code cStat} é o status do lote: 103 (recebido, consultar {@code recibo} depois de {@code tempoMedioSegundos}),
+ * 104 (processado, resultado de cada NFC-e em {@code protocolos}) ou 105 (ainda em processamento). Qualquer outro
+ * valor é rejeição do lote inteiro, exceto 108 e 109 (serviço paralisado), em que o lote não chegou a ser
+ * recebido. No status do serviço, 107 é serviço em operação. Na consulta pela chave, {@code cStat} é a situação
+ * da NFC-e e o {@code protNFe} dela, quando existe, vem em {@code protocolos}; vale o primeiro {@code cStat} fora
+ * do {@code infProt}, não o dos eventos que a consulta também traz.
+ */
+public record RetornoSefaz(String cStat, String motivo, String recibo, Integer tempoMedioSegundos,
+                           List<Protocolo> protocolos) {
+
+    public static final String LOTE_RECEBIDO = "103";
+    public static final String LOTE_PROCESSADO = "104";
+    public static final String LOTE_EM_PROCESSAMENTO = "105";
+    public static final String AUTORIZADO = "100";
+    public static final String SERVICO_EM_OPERACAO = "107";
+    public static final String SERVICO_PARALISADO = "108";
+    public static final String SERVICO_PARALISADO_SEM_PREVISAO = "109";
+    public static final String NAO_CONSTA = "217";
+    public static final String DUPLICIDADE = "204";
+    public static final String DUPLICIDADE_CHAVE_DIFERENTE = "539";
+
+    static final XMLInputFactory FACTORY = criarFactory();
+
+    public boolean servicoParalisado() {
+        return SERVICO_PARALISADO.equals(cStat) || SERVICO_PARALISADO_SEM_PREVISAO.equals(cStat);
+    }
+
+    /**
+     * A NFC-e já foi recebida antes (204, ou 539 com diferença na chave): a situação dela sai da consulta pela
+     * chave, não deste retorno.
+     */
+    public static boolean duplicidade(String cStat) {
+        return DUPLICIDADE.equals(cStat) || DUPLICIDADE_CHAVE_DIFERENTE.equals(cStat);
+    }
+
+    /**
+     * Resultado de uma NFC-e do lote ({@code infProt}).
+     */
+    public record Protocolo(String chave, String cStat, String motivo, String numero, String dataRecebimento,
+                            String digestValue, String versaoAplicativo) {
+
+        public boolean autorizado() {
+            return AUTORIZADO.equals(cStat);
+        }
+
+        public boolean duplicidade() {
+            return RetornoSefaz.duplicidade(cStat);
+        }
+
+        // 110 (uso denegado), 301 e 302 (irregularidade fiscal do emitente ou do destinatário)
+        public boolean denegado() {
+            return "110".equals(cStat) || "301".equals(cStat) || "302".equals(cStat);
+        }
+    }
+
+    /**
+     * Lê o retorno de dentro do envelope SOAP. Envelope sem {@code cStat} (um SOAP Fault, por exemplo) é erro de
+     * comunicação, não rejeição, e gera {@link IllegalArgumentException}.
+     */
+    public static RetornoSefaz ler(String resposta) {
+        try {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(new StringReader(resposta));
+            try {
+                return ler(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("Resposta da SEFAZ não é um XML válido: " + e.getMessage(), e);
+        }
+    }
+
+    private static RetornoSefaz ler(XMLStreamReader reader) throws XMLStreamException {
+        String cStat = null;
+        String motivo = null;
+        String recibo = null;
+        Integer tempoMedio = null;
+        List<Protocolo> protocolos = new ArrayList<>();
+
+        // Campos do infProt corrente; fora dele os mesmos nomes são do lote
+        boolean emProtocolo = false;
+        String[] protocolo = new String[7];
+
+        while (reader.hasNext()) {
+            int evento = reader.next();
+            if (evento == XMLStreamConstants.END_ELEMENT && "infProt".equals(reader.getLocalName())) {
+                protocolos.add(new Protocolo(protocolo[0], protocolo[1], protocolo[2], protocolo[3], protocolo[4],
+                        protocolo[5], protocolo[6]));
+                emProtocolo = false;
+                continue;
+            }
+            if (evento != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String nome = reader.getLocalName();
+            if ("infProt".equals(nome)) {
+                emProtocolo = true;
+                protocolo = new String[7];
+                continue;
+            }
+            if (emProtocolo) {
+                int campo = switch (nome) {
+                    case "chNFe" -> 0;
+                    case "cStat" -> 1;
+                    case "xMotivo" -> 2;
+                    case "nProt" -> 3;
+                    case "dhRecbto" -> 4;
+                    case "digVal" -> 5;
+                    case "verAplic" -> 6;
+                    default -> -1;
+                };
+                if (campo >= 0) {
+                    protocolo[campo] = reader.getElementText().trim();
+                }
+                continue;
+            }
+            switch (nome) {
+                case "cStat" -> {
+                    String valor = reader.getElementText().trim();
+                    cStat = cStat == null ? valor : cStat;
+                }
+                case "xMotivo" -> {
+                    String valor = reader.getElementText().trim();
+                    motivo = motivo == null ? valor : motivo;
+                }
+                case "nRec" -> recibo = reader.getElementText().trim();
+                case "tMed" -> tempoMedio = Integer.valueOf(reader.getElementText().trim());
+                default -> {
+                }
+            }
+        }
+
+        if (cStat == null) {
+            throw new IllegalArgumentException("Resposta da SEFAZ sem cStat");
+        }
+        return new RetornoSefaz(cStat, motivo, recibo, tempoMedio, List.copyOf(protocolos));
+    }
+
+    private static XMLInputFactory criarFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
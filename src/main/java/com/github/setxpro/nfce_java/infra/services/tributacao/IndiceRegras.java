@@ -0,0 +1,61 @@
+package com.github.setxpro.nfce_java.infra.services.tributacao;
+
+import java.util.Arrays;
+
+/**
+ * Mapa de chave {@code long} para a posição da regra, com endereçamento aberto em dois arrays primitivos: sem
+ * objetos por entrada e sem boxing na busca. Montado uma vez na compilação da tabela e só lido depois.
+ */
+final class IndiceRegras {
+
+    private static final int VAZIO = -1;
+
+    private final long[] chaves;
+    private final int[] posicoes;
+    private final int mascara;
+
+    IndiceRegras(int quantidade) {
+        // Ocupação de no máximo 50%: sondagens curtas mesmo com chaves parecidas
+        int capacidade = Integer.highestOneBit(Math.max(4, quantidade * 2 - 1)) << 1;
+        this.chaves = new long[capacidade];
+        this.posicoes = new int[capacidade];
+        this.mascara = capacidade - 1;
+        Arrays.fill(posicoes, VAZIO);
+    }
+
+    /**
+     * Grava a posição da chave e devolve a posição que já estava nela, ou -1.
+     */
+    int colocar(long chave, int posicao) {
+        int i = indice(chave);
+        while (posicoes[i] != VAZIO) {
+            if (chaves[i] == chave) {
+                return posicoes[i];
+            }
+            i = (i + 1) & mascara;
+        }
+        chaves[i] = chave;
+        posicoes[i] = posicao;
+        return VAZIO;
+    }
+
+    /**
+     * Posição da regra com a chave, ou -1.
+     */
+    int buscar(long chave) {
+        int i = indice(chave);
+        int posicao;
+        while ((posicao = posicoes[i]) != VAZIO) {
+            if (chaves[i] == chave) {
+                return posicao;
+            }
+            i = (i + 1) & mascara;
+        }
+        return VAZIO;
+    }
+
+    private int indice(long chave) {
+        long h = chave * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mascara;
+    }
+}
@@ -0,0 +1,153 @@
+package com.github.setxpro.nfce_java.infra.services.tributacao;
+
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Lê a tabela de tributação em texto separado por {@code ;}, com uma linha de cabeçalho:
+ * <pre>
+ * uf;regime;ncm;cfop;cst_icms;modalidade_bc_icms;aliquota_icms;cst_pis;aliquota_pis;cst_cofins;aliquota_cofins
+ * SP;REGIME_NORMAL;1905;5102;000;3;7.00;01;1.65;01;7.60
+ * </pre>
+ * Linhas em branco e as iniciadas por {@code #} são ignoradas. Qualquer erro gera
+ * {@link IllegalArgumentException} com o número da linha.
+ */
+public final class LeitorRegras {
+
+    public static final String CABECALHO = "uf;regime;ncm;cfop;cst_icms;modalidade_bc_icms;aliquota_icms;"
+            + "cst_pis;aliquota_pis;cst_cofins;aliquota_cofins";
+
+    private static final int COLUNAS = 11;
+    private static final String CURINGA = "*";
+    private static final Pattern UF = Pattern.compile("[A-Z]{2}");
+    private static final Pattern NCM = Pattern.compile("\\d{2}|\\d{4}|\\d{6}|\\d{8}");
+    private static final Pattern CFOP = Pattern.compile("\\d{4}");
+    private static final Pattern CST_ICMS = Pattern.compile("\\d{2,3}");
+    private static final Pattern CST = Pattern.compile("\\d{2}");
+    private static final BigDecimal CEM = BigDecimal.valueOf(100);
+    // aliquota_pis e aliquota_cofins são NUMERIC(5,4)
+    private static final BigDecimal MAXIMO_PIS_COFINS = new BigDecimal("9.9999");
+
+    private LeitorRegras() {
+    }
+
+    public static List<RegraTributaria> ler(Reader origem) throws IOException {
+        BufferedReader leitor = new BufferedReader(origem);
+        List<RegraTributaria> regras = new ArrayList<>();
+        boolean cabecalho = false;
+        int numero = 0;
+        String linha;
+        while ((linha = leitor.readLine()) != null) {
+            numero++;
+            String conteudo = linha.strip();
+            if (conteudo.isEmpty() || conteudo.startsWith("#")) {
+                continue;
+            }
+            if (!cabecalho) {
+                if (!CABECALHO.equalsIgnoreCase(conteudo)) {
+                    throw new IllegalArgumentException("Linha " + numero + ": cabeçalho esperado '" + CABECALHO + "'");
+                }
+                cabecalho = true;
+                continue;
+            }
+            regras.add(regra(conteudo, numero));
+        }
+        if (!cabecalho) {
+            throw new IllegalArgumentException("Tabela de tributação vazia");
+        }
+        return regras;
+    }
+
+    private static RegraTributaria regra(String conteudo, int numero) {
+        String[] campos = conteudo.split(";", -1);
+        if (campos.length != COLUNAS) {
+            throw new IllegalArgumentException("Linha " + numero + ": " + COLUNAS + " colunas esperadas, "
+                    + campos.length + " encontradas");
+        }
+        for (int i = 0; i < campos.length; i++) {
+            campos[i] = campos[i].strip();
+        }
+
+        String uf = criterio(campos[0], UF, "UF", numero);
+        Nfce.RegimeTributario regime = null;
+        if (!CURINGA.equals(campos[1])) {
+            try {
+                regime = Nfce.RegimeTributario.valueOf(campos[1]);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Linha " + numero + ": regime tributário inválido: " + campos[1]);
+            }
+        }
+        String ncm = criterio(campos[2], NCM, "NCM", numero);
+        String cfop = criterio(campos[3], CFOP, "CFOP", numero);
+
+        String cstIcms = codigo(campos[4], CST_ICMS, "CST ICMS", numero, true);
+        Integer modalidadeBcIcms = null;
+        if (!campos[5].isEmpty()) {
+            try {
+                modalidadeBcIcms = Integer.valueOf(campos[5]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Linha " + numero + ": modalidade da BC do ICMS inválida: " + campos[5]);
+            }
+        }
+        BigDecimal aliquotaIcms = aliquota(campos[6], 2, CEM, "ICMS", numero);
+
+        String cstPis = codigo(campos[7], CST, "CST PIS", numero, false);
+        BigDecimal aliquotaPis = aliquota(campos[8], 4, MAXIMO_PIS_COFINS, "PIS", numero);
+        String cstCofins = codigo(campos[9], CST, "CST COFINS", numero, false);
+        BigDecimal aliquotaCofins = aliquota(campos[10], 4, MAXIMO_PIS_COFINS, "COFINS", numero);
+        if ((aliquotaPis != null && cstPis == null) || (aliquotaCofins != null && cstCofins == null)) {
+            throw new IllegalArgumentException("Linha " + numero + ": alíquota de PIS/COFINS sem CST");
+        }
+
+        return new RegraTributaria(uf, regime, ncm, cfop, cstIcms, modalidadeBcIcms, aliquotaIcms,
+                cstPis, aliquotaPis, cstCofins, aliquotaCofins, numero);
+    }
+
+    private static String criterio(String valor, Pattern formato, String nome, int numero) {
+        if (CURINGA.equals(valor)) {
+            return null;
+        }
+        if (!formato.matcher(valor).matches()) {
+            throw new IllegalArgumentException("Linha " + numero + ": " + nome + " inválido: '" + valor + "'");
+        }
+        return valor;
+    }
+
+    private static String codigo(String valor, Pattern formato, String nome, int numero, boolean obrigatorio) {
+        if (valor.isEmpty()) {
+            if (obrigatorio) {
+                throw new IllegalArgumentException("Linha " + numero + ": " + nome + " é obrigatório");
+            }
+            return null;
+        }
+        if (!formato.matcher(valor).matches()) {
+            throw new IllegalArgumentException("Linha " + numero + ": " + nome + " inválido: '" + valor + "'");
+        }
+        return valor;
+    }
+
+    private static BigDecimal aliquota(String valor, int casas, BigDecimal maximo, String imposto, int numero) {
+        if (valor.isEmpty()) {
+            return null;
+        }
+        BigDecimal aliquota;
+        try {
+            aliquota = new BigDecimal(valor).setScale(casas);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Linha " + numero + ": alíquota de " + imposto
+                    + " inválida (até " + casas + " casas decimais): " + valor);
+        }
+        if (aliquota.signum() < 0 || aliquota.compareTo(maximo) > 0) {
+            throw new IllegalArgumentException("Linha " + numero + ": alíquota de " + imposto
+                    + " deve estar entre 0 e " + maximo.toPlainString() + ": " + valor);
+        }
+        return aliquota;
+    }
+}
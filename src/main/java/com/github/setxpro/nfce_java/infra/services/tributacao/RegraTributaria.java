@@ -0,0 +1,18 @@
+package com.github.setxpro.nfce_java.infra.services.tributacao;
+
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+
+import java.math.BigDecimal;
+
+/**
+ * Uma linha da tabela de tributação: para quais UF, regime tributário, NCM e CFOP vale e qual a tributação de
+ * ICMS, PIS e COFINS do item. {@code null} nos critérios é curinga ({@code *} no arquivo); {@code ncm} pode ser o
+ * código completo ou um prefixo de 2, 4 ou 6 dígitos (capítulo, posição, subposição). Sem alíquota o imposto sai
+ * só com o CST, sem base nem valor.
+ */
+public record RegraTributaria(String uf, Nfce.RegimeTributario regime, String ncm, String cfop,
+                              String cstIcms, Integer modalidadeBcIcms, BigDecimal aliquotaIcms,
+                              String cstPis, BigDecimal aliquotaPis,
+                              String cstCofins, BigDecimal aliquotaCofins,
+                              int linha) {
+}
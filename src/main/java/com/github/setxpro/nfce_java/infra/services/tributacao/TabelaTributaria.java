@@ -0,0 +1,253 @@
+package com.github.setxpro.nfce_java.infra.services.tributacao;
+
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.ItemNfce;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tabela de tributação compilada e imutável. Cada regra vira uma chave {@code long} com UF, regime, nível do NCM
+ * (0 = curinga, 1 a 4 = 2, 4, 6 ou 8 dígitos), prefixo do NCM e CFOP, guardada num {@link IndiceRegras}.
+ * <p>
+ * A busca de um item testa só os formatos de chave que existem na tabela (quais critérios são curinga e até
+ * que nível vai o NCM), do mais específico para o mais genérico: NCM mais longo, depois CFOP exato, UF exata e
+ * regime exato. São no máximo 40 formatos, então cada item custa um número fixo de consultas ao índice,
+ * independente do tamanho da tabela. Os impostos são calculados em centavos com {@code long}, arredondando
+ * meio centavo para cima como o BigDecimal {@link RoundingMode#HALF_UP}.
+ */
+public final class TabelaTributaria {
+
+    private static final String[] UFS = {"AC", "AL", "AM", "AP", "BA", "CE", "DF", "ES", "GO", "MA", "MG", "MS",
+            "MT", "PA", "PB", "PE", "PI", "PR", "RJ", "RN", "RO", "RR", "RS", "SC", "SE", "SP", "TO"};
+    // Código (1 a 27) de cada par de letras; 0 = não é UF
+    private static final byte[] CODIGO_UF = new byte[26 * 26];
+    private static final int[] DIVISOR_NCM = {0, 1_000_000, 10_000, 100, 1};
+    private static final int NIVEL_NCM_COMPLETO = 4;
+    private static final int SEM_CODIGO = -1;
+    // Alíquotas em décimos de milésimo de ponto percentual: imposto em centavos = base * alíquota / 10^6
+    private static final long ESCALA_ALIQUOTA = 1_000_000L;
+
+    static {
+        for (int i = 0; i < UFS.length; i++) {
+            CODIGO_UF[(UFS[i].charAt(0) - 'A') * 26 + UFS[i].charAt(1) - 'A'] = (byte) (i + 1);
+        }
+    }
+
+    private final RegraCompilada[] regras;
+    private final IndiceRegras indice;
+    private final int[] formatos;
+
+    private record RegraCompilada(RegraTributaria regra, long aliquotaIcms, long aliquotaPis, long aliquotaCofins) {
+    }
+
+    private TabelaTributaria(RegraCompilada[] regras, IndiceRegras indice, int[] formatos) {
+        this.regras = regras;
+        this.indice = indice;
+        this.formatos = formatos;
+    }
+
+    /**
+     * Compila as regras; duas regras com os mesmos critérios geram {@link IllegalArgumentException}.
+     */
+    public static TabelaTributaria compilar(List<RegraTributaria> regras) {
+        RegraCompilada[] compiladas = new RegraCompilada[regras.size()];
+        IndiceRegras indice = new IndiceRegras(regras.size());
+        boolean[] presentes = new boolean[(NIVEL_NCM_COMPLETO + 1) << 3];
+
+        for (int i = 0; i < compiladas.length; i++) {
+            RegraTributaria regra = regras.get(i);
+            int uf = regra.uf() == null ? 0 : codigoUf(regra.uf());
+            if (uf <= 0 && regra.uf() != null) {
+                throw new IllegalArgumentException("Linha " + regra.linha() + ": UF desconhecida: " + regra.uf());
+            }
+            int regime = regra.regime() == null ? 0 : regra.regime().ordinal() + 1;
+            int nivel = regra.ncm() == null ? 0 : regra.ncm().length() / 2;
+            int ncm = regra.ncm() == null ? 0 : Integer.parseInt(regra.ncm());
+            int cfop = regra.cfop() == null ? 0 : Integer.parseInt(regra.cfop());
+
+            int anterior = indice.colocar(chave(uf, regime, nivel, ncm, cfop), i);
+            if (anterior >= 0) {
+                throw new IllegalArgumentException("Linha " + regra.linha() + ": mesmos critérios da linha "
+                        + regras.get(anterior).linha());
+            }
+            compiladas[i] = new RegraCompilada(regra, escala(regra.aliquotaIcms()), escala(regra.aliquotaPis()),
+                    escala(regra.aliquotaCofins()));
+            presentes[formato(nivel, regra.cfop() != null, uf != 0, regime != 0)] = true;
+        }
+
+        // O índice do formato já está na ordem de precedência: nível do NCM, CFOP, UF e regime
+        int[] formatos = new int[presentes.length];
+        int quantidade = 0;
+        for (int formato = presentes.length - 1; formato >= 0; formato--) {
+            if (presentes[formato]) {
+                formatos[quantidade++] = formato;
+            }
+        }
+        return new TabelaTributaria(compiladas, indice, Arrays.copyOf(formatos, quantidade));
+    }
+
+    /**
+     * Regra mais específica para o item, ou {@code null}.
+     */
+    public RegraTributaria buscar(String uf, Nfce.RegimeTributario regime, String ncm, String cfop) {
+        int posicao = posicao(codigoUf(uf), regime == null ? 0 : regime.ordinal() + 1, digitos(ncm, 8),
+                digitos(cfop, 4));
+        return posicao < 0 ? null : regras[posicao].regra();
+    }
+
+    /**
+     * Aplica a tributação a todos os itens da nota e devolve quantos tinham regra; os demais ficam como vieram.
+     */
+    public int tributar(Nfce nfce) {
+        int uf = codigoUf(nfce.getEmitenteUf());
+        int regime = nfce.getEmitenteRegimeTributario() == null ? 0 : nfce.getEmitenteRegimeTributario().ordinal() + 1;
+        int tributados = 0;
+        for (ItemNfce item : nfce.getItens()) {
+            int posicao = posicao(uf, regime, digitos(item.getNcm(), 8), digitos(item.getCfop(), 4));
+            if (posicao >= 0) {
+                aplicar(regras[posicao], item);
+                tributados++;
+            }
+        }
+        return tributados;
+    }
+
+    public int regras() {
+        return regras.length;
+    }
+
+    public int formatos() {
+        return formatos.length;
+    }
+
+    private int posicao(int uf, int regime, int ncm, int cfop) {
+        for (int formato : formatos) {
+            int nivel = formato >>> 3;
+            boolean cfopExato = (formato & 4) != 0;
+            boolean ufExata = (formato & 2) != 0;
+            boolean regimeExato = (formato & 1) != 0;
+            if ((nivel > 0 && ncm == SEM_CODIGO) || (cfopExato && cfop == SEM_CODIGO)
+                    || (ufExata && uf <= 0) || (regimeExato && regime == 0)) {
+                continue;
+            }
+            int posicao = indice.buscar(chave(ufExata ? uf : 0, regimeExato ? regime : 0, nivel,
+                    nivel == 0 ? 0 : ncm / DIVISOR_NCM[nivel], cfopExato ? cfop : 0));
+            if (posicao >= 0) {
+                return posicao;
+            }
+        }
+        return SEM_CODIGO;
+    }
+
+    private static void aplicar(RegraCompilada compilada, ItemNfce item) {
+        RegraTributaria regra = compilada.regra();
+        long base = baseCalculo(item);
+
+        item.setCstIcms(regra.cstIcms());
+        item.setModalidadeBcIcms(regra.modalidadeBcIcms());
+        if (regra.aliquotaIcms() != null) {
+            item.setBaseCalculoIcms(BigDecimal.valueOf(base, 2));
+            item.setAliquotaIcms(regra.aliquotaIcms());
+            item.setValorIcms(BigDecimal.valueOf(imposto(base, compilada.aliquotaIcms()), 2));
+        } else {
+            item.setBaseCalculoIcms(null);
+            item.setAliquotaIcms(null);
+            item.setValorIcms(null);
+        }
+
+        item.setCstPis(regra.cstPis());
+        if (regra.aliquotaPis() != null) {
+            item.setBaseCalculoPis(BigDecimal.valueOf(base, 2));
+            item.setAliquotaPis(regra.aliquotaPis());
+            item.setValorPis(BigDecimal.valueOf(imposto(base, compilada.aliquotaPis()), 2));
+        } else {
+            item.setBaseCalculoPis(null);
+            item.setAliquotaPis(null);
+            item.setValorPis(null);
+        }
+
+        item.setCstCofins(regra.cstCofins());
+        if (regra.aliquotaCofins() != null) {
+            item.setBaseCalculoCofins(BigDecimal.valueOf(base, 2));
+            item.setAliquotaCofins(regra.aliquotaCofins());
+            item.setValorCofins(BigDecimal.valueOf(imposto(base, compilada.aliquotaCofins()), 2));
+        } else {
+            item.setBaseCalculoCofins(null);
+            item.setAliquotaCofins(null);
+            item.setValorCofins(null);
+        }
+    }
+
+    /**
+     * Valor do produto menos o desconto, em centavos.
+     */
+    private static long baseCalculo(ItemNfce item) {
+        long base = centavos(item.getValorTotalBruto());
+        if (item.getValorDesconto() != null) {
+            base -= centavos(item.getValorDesconto());
+        }
+        return Math.max(0, base);
+    }
+
+    private static long centavos(BigDecimal valor) {
+        return valor.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static long imposto(long base, long aliquota) {
+        try {
+            return Math.addExact(Math.multiplyExact(base, aliquota), ESCALA_ALIQUOTA / 2) / ESCALA_ALIQUOTA;
+        } catch (ArithmeticException e) {
+            return BigDecimal.valueOf(base).multiply(BigDecimal.valueOf(aliquota))
+                    .divide(BigDecimal.valueOf(ESCALA_ALIQUOTA), 0, RoundingMode.HALF_UP).longValueExact();
+        }
+    }
+
+    private static long escala(BigDecimal aliquota) {
+        return aliquota == null ? 0 : aliquota.movePointRight(4).longValueExact();
+    }
+
+    private static int formato(int nivel, boolean cfop, boolean uf, boolean regime) {
+        return nivel << 3 | (cfop ? 4 : 0) | (uf ? 2 : 0) | (regime ? 1 : 0);
+    }
+
+    // uf: 5 bits | regime: 2 bits | nível do NCM: 3 bits | prefixo do NCM: 27 bits | CFOP: 14 bits
+    private static long chave(int uf, int regime, int nivel, int ncm, int cfop) {
+        return (long) uf << 46 | (long) regime << 44 | (long) nivel << 41 | (long) ncm << 14 | cfop;
+    }
+
+    /**
+     * Código da UF (1 a 27), 0 para uma sigla que não é UF e -1 sem sigla.
+     */
+    private static int codigoUf(String uf) {
+        if (uf == null || uf.length() != 2) {
+            return SEM_CODIGO;
+        }
+        int primeira = uf.charAt(0) - 'A';
+        int segunda = uf.charAt(1) - 'A';
+        if (primeira < 0 || primeira >= 26 || segunda < 0 || segunda >= 26) {
+            return 0;
+        }
+        return CODIGO_UF[primeira * 26 + segunda];
+    }
+
+    /**
+     * Valor de um código com exatamente {@code tamanho} dígitos, ou -1.
+     */
+    private static int digitos(String codigo, int tamanho) {
+        if (codigo == null || codigo.length() != tamanho) {
+            return SEM_CODIGO;
+        }
+        int valor = 0;
+        for (int i = 0; i < tamanho; i++) {
+            int digito = codigo.charAt(i) - '0';
+            if (digito < 0 || digito > 9) {
+                return SEM_CODIGO;
+            }
+            valor = valor * 10 + digito;
+        }
+        return valor;
+    }
+}
@@ -0,0 +1,225 @@
+package com.github.setxpro.nfce_java.infra.services.xml;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Canonicalização XML 1.0 inclusiva, sem comentários
+ * (http://www.w3.org/TR/2001/REC-xml-c14n-20010315), aplicada a um único elemento do documento.
+ * <p>
+ * Percorre o documento com StAX, sem montar DOM: declarações de namespace herdadas são emitidas no
+ * elemento raiz da subárvore, atributos são ordenados e elementos vazios expandidos, como exige a
+ * assinatura de {@code infNFe} e {@code infEvento}.
+ */
+public final class CanonicalizadorXml {
+
+    private static final XMLInputFactory FACTORY = criarFactory();
+
+    private static final Comparator<Atributo> ORDEM_ATRIBUTOS = Comparator
+            .comparing(Atributo::namespace)
+            .thenComparing(Atributo::nomeLocal);
+
+    private CanonicalizadorXml() {
+    }
+
+    /**
+     * Resultado da canonicalização: bytes UTF-8 da subárvore e o valor do atributo {@code Id} do elemento.
+     */
+    public record Resultado(byte[] bytes, String id) {
+    }
+
+    public static Resultado canonicalizar(String xml, String nomeElemento) {
+        try {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(new StringReader(xml));
+            try {
+                return canonicalizar(reader, nomeElemento);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("XML inválido para canonicalização: " + e.getMessage(), e);
+        }
+    }
+
+    private static Resultado canonicalizar(XMLStreamReader reader, String nomeElemento) throws XMLStreamException {
+        // Namespaces em escopo (prefixo "" = namespace padrão) e namespaces já emitidos na saída
+        Deque<Map<String, String>> escopo = new ArrayDeque<>();
+        Deque<Map<String, String>> emitidos = new ArrayDeque<>();
+        escopo.push(Map.of());
+
+        StringBuilder saida = null;
+        String id = null;
+        int profundidade = 0;
+
+        while (reader.hasNext()) {
+            int evento = reader.next();
+
+            switch (evento) {
+                case XMLStreamConstants.START_ELEMENT -> {
+                    Map<String, String> escopoAtual = escopoDoElemento(reader, escopo.peek());
+                    escopo.push(escopoAtual);
+
+                    if (saida == null && nomeElemento.equals(reader.getLocalName())) {
+                        saida = new StringBuilder(8 * 1024);
+                        id = reader.getAttributeValue(null, "Id");
+                        emitidos.push(Map.of());
+                    }
+
+                    if (saida != null) {
+                        profundidade++;
+                        escreverAbertura(reader, saida, escopoAtual, emitidos.peek());
+                        emitidos.push(escopoAtual);
+                    }
+                }
+                case XMLStreamConstants.END_ELEMENT -> {
+                    escopo.pop();
+                    if (saida != null) {
+                        emitidos.pop();
+                        saida.append("</").append(nomeQualificado(reader.getPrefix(), reader.getLocalName())).append('>');
+                        if (--profundidade == 0) {
+                            return new Resultado(saida.toString().getBytes(StandardCharsets.UTF_8), id);
+                        }
+                    }
+                }
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.SPACE, XMLStreamConstants.CDATA -> {
+                    if (saida != null) {
+                        escaparTexto(saida, reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                }
+                case XMLStreamConstants.PROCESSING_INSTRUCTION -> {
+                    if (saida != null) {
+                        saida.append("<?").append(reader.getPITarget());
+                        String dados = reader.getPIData();
+                        if (dados != null && !dados.isEmpty()) {
+                            saida.append(' ').append(dados);
+                        }
+                        saida.append("?>");
+                    }
+                }
+                default -> {
+                    // Comentários, DTD e demais eventos não fazem parte da forma canônica
+                }
+            }
+        }
+
+        throw new IllegalArgumentException("Elemento <" + nomeElemento + "> não encontrado no XML");
+    }
+
+    private static Map<String, String> escopoDoElemento(XMLStreamReader reader, Map<String, String> escopoPai) {
+        int declaracoes = reader.getNamespaceCount();
+        if (declaracoes == 0) {
+            return escopoPai;
+        }
+        Map<String, String> escopo = new HashMap<>(escopoPai);
+        for (int i = 0; i < declaracoes; i++) {
+            String prefixo = reader.getNamespacePrefix(i);
+            String uri = reader.getNamespaceURI(i);
+            escopo.put(prefixo == null ? "" : prefixo, uri == null ? "" : uri);
+        }
+        return escopo;
+    }
+
+    private static void escreverAbertura(XMLStreamReader reader, StringBuilder saida,
+                                         Map<String, String> escopo, Map<String, String> emitidosPai) {
+        saida.append('<').append(nomeQualificado(reader.getPrefix(), reader.getLocalName()));
+
+        // Declarações de namespace: apenas as que diferem do ancestral já emitido, ordenadas pelo prefixo.
+        // Sem declarações próprias o escopo é a mesma instância do pai e nada precisa ser comparado.
+        if (escopo != emitidosPai) {
+            Map<String, String> novas = new TreeMap<>();
+            for (Map.Entry<String, String> entrada : escopo.entrySet()) {
+                String prefixo = entrada.getKey();
+                String uri = entrada.getValue();
+                String emitido = emitidosPai.get(prefixo);
+                if (prefixo.isEmpty() && uri.isEmpty()) {
+                    if (emitido != null && !emitido.isEmpty()) {
+                        novas.put(prefixo, uri);
+                    }
+                } else if (!uri.equals(emitido)) {
+                    novas.put(prefixo, uri);
+                }
+            }
+            for (Map.Entry<String, String> entrada : novas.entrySet()) {
+                saida.append(entrada.getKey().isEmpty() ? " xmlns" : " xmlns:" + entrada.getKey()).append("=\"");
+                escaparAtributo(saida, entrada.getValue());
+                saida.append('"');
+            }
+        }
+
+        int quantidade = reader.getAttributeCount();
+        if (quantidade > 0) {
+            Atributo[] atributos = new Atributo[quantidade];
+            for (int i = 0; i < quantidade; i++) {
+                String namespace = reader.getAttributeNamespace(i);
+                atributos[i] = new Atributo(namespace == null ? "" : namespace, reader.getAttributeLocalName(i),
+                        nomeQualificado(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                        reader.getAttributeValue(i));
+            }
+            if (quantidade > 1) {
+                Arrays.sort(atributos, ORDEM_ATRIBUTOS);
+            }
+            for (Atributo atributo : atributos) {
+                saida.append(' ').append(atributo.nomeQualificado()).append("=\"");
+                escaparAtributo(saida, atributo.valor());
+                saida.append('"');
+            }
+        }
+
+        saida.append('>');
+    }
+
+    private static String nomeQualificado(String prefixo, String nomeLocal) {
+        return prefixo == null || prefixo.isEmpty() ? nomeLocal : prefixo + ':' + nomeLocal;
+    }
+
+    private static void escaparTexto(StringBuilder saida, char[] texto, int inicio, int tamanho) {
+        for (int i = inicio, fim = inicio + tamanho; i < fim; i++) {
+            char c = texto[i];
+            switch (c) {
+                case '&' -> saida.append("&amp;");
+                case '<' -> saida.append("&lt;");
+                case '>' -> saida.append("&gt;");
+                case '\r' -> saida.append("&#xD;");
+                default -> saida.append(c);
+            }
+        }
+    }
+
+    private static void escaparAtributo(StringBuilder saida, String valor) {
+        for (int i = 0, n = valor.length(); i < n; i++) {
+            char c = valor.charAt(i);
+            switch (c) {
+                case '&' -> saida.append("&amp;");
+                case '<' -> saida.append("&lt;");
+                case '"' -> saida.append("&quot;");
+                case '\t' -> saida.append("&#x9;");
+                case '\n' -> saida.append("&#xA;");
+                case '\r' -> saida.append("&#xD;");
+                default -> saida.append(c);
+            }
+        }
+    }
+
+    private static XMLInputFactory criarFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private record Atributo(String namespace, String nomeLocal, String nomeQualificado, String valor) {
+    }
+}
@@ -0,0 +1,145 @@
+package com.github.setxpro.nfce_java.infra.services.xml;
+
+/**
+ * Escritor de XML em fluxo, sem árvore DOM intermediária.
+ * <p>
+ * Reproduz o layout que o {@code Transformer} do JDK gerava com indentação de 2 espaços:
+ * declaração em linha própria, um elemento por linha, elementos folha com o texto na mesma
+ * linha e elementos sem conteúdo no formato {@code <tag/>}.
+ */
+public final class EscritorXml {
+
+    private static final String DECLARACAO = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+    private static final String QUEBRA_LINHA = "\n";
+    private static final int INDENTACAO = 2;
+
+    private final StringBuilder saida;
+    private String[] pilha = new String[16];
+    private int profundidade;
+    private boolean tagAberta;
+
+    public EscritorXml(int capacidadeInicial) {
+        this.saida = new StringBuilder(capacidadeInicial);
+    }
+
+    public EscritorXml declaracao() {
+        saida.append(DECLARACAO).append(QUEBRA_LINHA);
+        return this;
+    }
+
+    public EscritorXml abrir(String nome) {
+        fecharTagAberta();
+        novaLinha();
+        saida.append('<').append(nome);
+        empilhar(nome);
+        tagAberta = true;
+        return this;
+    }
+
+    public EscritorXml atributo(String nome, String valor) {
+        if (!tagAberta) {
+            throw new IllegalStateException("Atributo " + nome + " fora de uma tag de abertura");
+        }
+        saida.append(' ').append(nome).append("=\"");
+        escaparAtributo(valor);
+        saida.append('"');
+        return this;
+    }
+
+    public EscritorXml fechar() {
+        String nome = pilha[--profundidade];
+        pilha[profundidade] = null;
+        if (tagAberta) {
+            saida.append("/>");
+            tagAberta = false;
+        } else {
+            novaLinha();
+            saida.append("</").append(nome).append('>');
+        }
+        if (profundidade == 0) {
+            saida.append(QUEBRA_LINHA);
+        }
+        return this;
+    }
+
+    /**
+     * Elemento folha; texto nulo ou vazio gera {@code <nome/>}.
+     */
+    public EscritorXml elemento(String nome, String texto) {
+        fecharTagAberta();
+        novaLinha();
+        saida.append('<').append(nome);
+        if (texto == null || texto.isEmpty()) {
+            saida.append("/>");
+        } else {
+            saida.append('>');
+            escaparTexto(texto);
+            saida.append("</").append(nome).append('>');
+        }
+        return this;
+    }
+
+    public String paraString() {
+        if (profundidade != 0) {
+            throw new IllegalStateException("Elemento <" + pilha[profundidade - 1] + "> não foi fechado");
+        }
+        return saida.toString();
+    }
+
+    private void fecharTagAberta() {
+        if (tagAberta) {
+            saida.append('>');
+            tagAberta = false;
+        }
+    }
+
+    private void novaLinha() {
+        if (saida.isEmpty()) {
+            return;
+        }
+        if (saida.charAt(saida.length() - 1) != '\n') {
+            saida.append(QUEBRA_LINHA);
+        }
+        for (int i = 0, n = profundidade * INDENTACAO; i < n; i++) {
+            saida.append(' ');
+        }
+    }
+
+    private void empilhar(String nome) {
+        if (profundidade == pilha.length) {
+            String[] maior = new String[pilha.length * 2];
+            System.arraycopy(pilha, 0, maior, 0, pilha.length);
+            pilha = maior;
+        }
+        pilha[profundidade++] = nome;
+    }
+
+    private void escaparTexto(String texto) {
+        for (int i = 0, n = texto.length(); i < n; i++) {
+            char c = texto.charAt(i);
+            switch (c) {
+                case '&' -> saida.append("&amp;");
+                case '<' -> saida.append("&lt;");
+                case '>' -> saida.append("&gt;");
+                case '\r' -> saida.append("&#13;");
+                default -> saida.append(c);
+            }
+        }
+    }
+
+    private void escaparAtributo(String valor) {
+        for (int i = 0, n = valor.length(); i < n; i++) {
+            char c = valor.charAt(i);
+            switch (c) {
+                case '&' -> saida.append("&amp;");
+                case '<' -> saida.append("&lt;");
+                case '>' -> saida.append("&gt;");
+                case '"' -> saida.append("&quot;");
+                case '\n' -> saida.append("&#10;");
+                case '\r' -> saida.append("&#13;");
+                case '\t' -> saida.append("&#9;");
+                default -> saida.append(c);
+            }
+        }
+    }
+}
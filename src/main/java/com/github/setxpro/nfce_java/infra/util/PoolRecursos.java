@@ -0,0 +1,52 @@
+package com.github.setxpro.nfce_java.infra.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Pool limitado de objetos caros de criar ({@code Deflater}, {@code MessageDigest}, buffers de trabalho).
+ * <p>
+ * Substitui o {@link ThreadLocal}, que não serve para threads virtuais: cada uma criaria e abandonaria o seu
+ * objeto, e {@code Deflater}/{@code Inflater} ainda seguram memória nativa até o GC. Aqui o número de objetos
+ * parados fica limitado à capacidade; quando o pool está vazio um objeto novo é criado, e o que volta com o
+ * pool cheio é descartado na hora.
+ */
+public final class PoolRecursos<T> {
+
+    private final ArrayBlockingQueue<T> livres;
+    private final Supplier<T> fabrica;
+    private final Consumer<T> descarte;
+
+    public PoolRecursos(Supplier<T> fabrica) {
+        this(fabrica, recurso -> {
+        });
+    }
+
+    /**
+     * Pool com capacidade igual ao número de processadores, o máximo de usos simultâneos de um trecho de CPU.
+     */
+    public PoolRecursos(Supplier<T> fabrica, Consumer<T> descarte) {
+        this(Runtime.getRuntime().availableProcessors(), fabrica, descarte);
+    }
+
+    public PoolRecursos(int capacidade, Supplier<T> fabrica, Consumer<T> descarte) {
+        this.livres = new ArrayBlockingQueue<>(capacidade);
+        this.fabrica = fabrica;
+        this.descarte = descarte;
+    }
+
+    /**
+     * Objeto livre do pool ou um novo; deve voltar com {@link #devolver} num {@code finally}.
+     */
+    public T obter() {
+        T recurso = livres.poll();
+        return recurso != null ? recurso : fabrica.get();
+    }
+
+    public void devolver(T recurso) {
+        if (!livres.offer(recurso)) {
+            descarte.accept(recurso);
+        }
+    }
+}
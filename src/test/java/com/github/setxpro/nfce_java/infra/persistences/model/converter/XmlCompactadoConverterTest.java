@@ -0,0 +1,54 @@
+package com.github.setxpro.nfce_java.infra.persistences.model.converter;
+
+import com.github.setxpro.nfce_java.infra.services.NfceFixtures;
+import com.github.setxpro.nfce_java.infra.services.XmlService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class XmlCompactadoConverterTest {
+
+    private final XmlCompactadoConverter converter = new XmlCompactadoConverter();
+    private final XmlService xmlService = new XmlService(NfceFixtures.configuracao());
+
+    @ParameterizedTest
+    @CsvSource({
+            "1, 2",
+            "20, 4",
+            "990, 8"
+    })
+    void deveRecuperarOXmlOriginalCompactado(int itens, int razaoMinima) {
+        String xml = xmlService.gerarXmlNfce(NfceFixtures.nota(itens));
+
+        byte[] compactado = converter.convertToDatabaseColumn(xml);
+
+        assertEquals(xml, converter.convertToEntityAttribute(compactado));
+        int original = xml.getBytes(StandardCharsets.UTF_8).length;
+        assertTrue(compactado.length * razaoMinima < original,
+                "Compactação insuficiente: " + compactado.length + " de " + original + " bytes");
+    }
+
+    @Test
+    void devePreservarNuloEVazio() {
+        assertNull(converter.convertToDatabaseColumn(null));
+        assertNull(converter.convertToEntityAttribute(null));
+        assertEquals("", converter.convertToEntityAttribute(converter.convertToDatabaseColumn("")));
+    }
+
+    @Test
+    void deveRejeitarDadosCorrompidos() {
+        byte[] compactado = converter.convertToDatabaseColumn(xmlService.gerarXmlNfce(NfceFixtures.nota(3)));
+
+        byte[] truncado = Arrays.copyOf(compactado, compactado.length / 2);
+
+        assertThrows(IllegalStateException.class, () -> converter.convertToEntityAttribute(truncado));
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.setxpro.nfce_java.infra.persistences.repositories;
+
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.NfceDocumento;
+import com.github.setxpro.nfce_java.infra.services.NfceFixtures;
+import com.github.setxpro.nfce_java.infra.services.XmlService;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class NfceDocumentoRepositoryTest {
+
+    @Autowired
+    private NfceRepository nfceRepository;
+
+    @Autowired
+    private NfceDocumentoRepository nfceDocumentoRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setup() {
+        statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void listagemNaoDeveCarregarOsXmls() {
+        String xml = salvarNotaComDocumento(20);
+        statistics.clear();
+
+        List<Nfce> rascunhos = nfceRepository.findByStatus(Nfce.StatusNfce.RASCUNHO);
+
+        assertEquals(1, rascunhos.size());
+        assertEquals(0, statistics.getEntityStatistics(NfceDocumento.class.getName()).getLoadCount());
+
+        NfceDocumento documento = nfceDocumentoRepository.findById(rascunhos.get(0).getId()).orElseThrow();
+
+        assertEquals(xml, documento.getXmlAssinado());
+        assertEquals(1, statistics.getEntityStatistics(NfceDocumento.class.getName()).getLoadCount());
+    }
+
+    private String salvarNotaComDocumento(int itens) {
+        Nfce nfce = NfceFixtures.nota(itens);
+        String xml = new XmlService(NfceFixtures.configuracao()).gerarXmlNfce(nfce);
+        nfce.setId(null);
+        nfce = nfceRepository.save(nfce);
+
+        NfceDocumento documento = new NfceDocumento();
+        documento.setNfce(nfce);
+        documento.setXmlAssinado(xml);
+        nfceDocumentoRepository.save(documento);
+
+        entityManager.flush();
+        entityManager.clear();
+        return xml;
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.setxpro.nfce_java.infra.persistences.repositories;
+
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.ItemNfce;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.services.NfceFixtures;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class NfceRepositoryTest {
+
+    @Autowired
+    private NfceRepository nfceRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setup() {
+        statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /**
+     * Com ids de sequence os INSERTs de itens e pagamentos saem em lotes JDBC: o número de comandos
+     * preparados cresce com o número de lotes (e de blocos de ids da sequence), não com o de itens.
+     */
+    @ParameterizedTest
+    @CsvSource({
+            "1, 6",
+            "50, 8",
+            "500, 18"
+    })
+    void deveGravarItensEPagamentosEmLote(int itens, int maximoComandos) {
+        // A primeira nota inicializa as sequences; o otimizador pooled ainda pode buscar o segundo valor depois
+        Nfce inicial = NfceFixtures.nota(1);
+        inicial.setId(null);
+        inicial.setNumero(1);
+        nfceRepository.saveAndFlush(inicial);
+
+        Nfce nfce = NfceFixtures.nota(itens);
+        nfce.setId(null);
+        nfce.setChaveAcesso(null);
+        statistics.clear();
+
+        nfceRepository.saveAndFlush(nfce);
+
+        assertNotNull(nfce.getId());
+        assertEquals(itens, nfce.getItens().stream().map(ItemNfce::getId).distinct().count());
+        assertTrue(statistics.getPrepareStatementCount() <= maximoComandos,
+                statistics.getPrepareStatementCount() + " comandos para " + itens + " itens");
+
+        entityManager.clear();
+        assertEquals(itens, nfceRepository.findById(nfce.getId()).orElseThrow().getItens().size());
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+import javax.xml.crypto.KeySelector;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Valida as assinaturas geradas com a implementação de referência do JDK (javax.xml.crypto.dsig).
+ */
+class AssinaturaDigitalServiceTest {
+
+    private final NfceConfiguration configuracao = NfceFixtures.configuracao();
+    private final CertificadoDigitalService certificadoDigitalService = CertificadoTesteFactory.servico(configuracao);
+    private final AssinaturaDigitalService assinaturaDigitalService = new AssinaturaDigitalService(certificadoDigitalService);
+    private final XmlService xmlService = new XmlService(configuracao);
+
+    @AfterEach
+    void encerrar() {
+        assinaturaDigitalService.encerrar();
+    }
+
+    @Test
+    void deveGerarAssinaturaValidaParaInfNFe() throws Exception {
+        String xml = xmlService.gerarXmlNfce(NfceFixtures.nota(3));
+
+        String assinado = assinaturaDigitalService.assinar(xml, "infNFe");
+
+        assertTrue(assinado.contains("</infNFe>\n    <Signature xmlns=\"http://www.w3.org/2000/09/xmldsig#\">"));
+        assertTrue(validar(assinado));
+    }
+
+    @Test
+    void deveDetectarAlteracaoAposAssinatura() throws Exception {
+        String assinado = assinaturaDigitalService.assinar(xmlService.gerarXmlNfce(NfceFixtures.nota(1)), "infNFe");
+
+        String adulterado = assinado.replace("<natOp>Venda de mercadoria</natOp>", "<natOp>Venda</natOp>");
+
+        assertFalse(assinado.equals(adulterado));
+        assertFalse(validar(adulterado));
+    }
+
+    @Test
+    void deveAssinarLotePreservandoOrdem() throws Exception {
+        List<String> xmls = new ArrayList<>();
+        for (int itens = 1; itens <= 12; itens++) {
+            xmls.add(xmlService.gerarXmlNfce(NfceFixtures.nota(itens)));
+        }
+
+        List<String> assinados = assinaturaDigitalService.assinarLote(xmls, "infNFe");
+
+        assertEquals(xmls.size(), assinados.size());
+        for (int i = 0; i < xmls.size(); i++) {
+            String original = xmls.get(i);
+            String idOriginal = original.substring(original.indexOf("Id=\""), original.indexOf('"', original.indexOf("Id=\"") + 4));
+            assertTrue(assinados.get(i).contains(idOriginal));
+            assertTrue(validar(assinados.get(i)), "Assinatura inválida na posição " + i);
+        }
+    }
+
+    @Test
+    void deveFalharSemCertificadoConfigurado() {
+        NfceConfiguration semCertificado = NfceFixtures.configuracao();
+        AssinaturaDigitalService servico = new AssinaturaDigitalService(
+                new CertificadoDigitalService(semCertificado, new DefaultResourceLoader()));
+        try {
+            assertFalse(servico.isCertificadoDisponivel());
+            String xml = xmlService.gerarXmlNfce(NfceFixtures.nota(1));
+            assertThrows(IllegalStateException.class, () -> servico.assinar(xml, "infNFe"));
+        } finally {
+            servico.encerrar();
+        }
+    }
+
+    @Test
+    void deveRejeitarElementoInexistente() {
+        String xml = xmlService.gerarXmlNfce(NfceFixtures.nota(1));
+
+        assertThrows(IllegalArgumentException.class, () -> assinaturaDigitalService.assinar(xml, "infEvento"));
+    }
+
+    private boolean validar(String xml) throws Exception {
+        DocumentBuilderFactory fabrica = DocumentBuilderFactory.newInstance();
+        fabrica.setNamespaceAware(true);
+        Document documento = fabrica.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+
+        Element infNFe = (Element) documento.getElementsByTagNameNS("*", "infNFe").item(0);
+        infNFe.setIdAttribute("Id", true);
+        Element assinatura = (Element) documento.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature").item(0);
+
+        PublicKey chavePublica = certificadoDigitalService.getCertificado().titular().getPublicKey();
+        DOMValidateContext contexto = new DOMValidateContext(KeySelector.singletonKeySelector(chavePublica), assinatura);
+        // RSA-SHA1 é o algoritmo exigido pelo layout da NF-e, mas é bloqueado pela validação segura do JDK
+        contexto.setProperty("org.jcp.xml.dsig.secureValidation", Boolean.FALSE);
+
+        XMLSignature xmlSignature = XMLSignatureFactory.getInstance("DOM").unmarshalXMLSignature(contexto);
+        return xmlSignature.validate(contexto);
+    }
+}
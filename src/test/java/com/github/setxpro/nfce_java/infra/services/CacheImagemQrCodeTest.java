@@ -0,0 +1,90 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.services.imagem.CacheImagemQrCode;
+import com.github.setxpro.nfce_java.infra.services.imagem.ImagemQrCode;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheImagemQrCodeTest {
+
+    @Test
+    void deveReutilizarImagemParaMesmoConteudoETamanho() {
+        QrCodeService qrCodeService = new QrCodeService(NfceFixtures.configuracao());
+        String url = "https://www.fazenda.sp.gov.br/nfce/qrcode?p=abc";
+
+        ImagemQrCode primeira = qrCodeService.obterImagemQrCode(url, 300, 300);
+        ImagemQrCode segunda = qrCodeService.obterImagemQrCode(url, 300, 300);
+        ImagemQrCode outroTamanho = qrCodeService.obterImagemQrCode(url, 150, 150);
+
+        assertSame(primeira, segunda);
+        assertNotEquals(primeira.etag(), outroTamanho.etag());
+        assertTrue(primeira.etag().startsWith("\"") && primeira.etag().endsWith("\""), primeira.etag());
+
+        CacheImagemQrCode.Estatisticas estatisticas = qrCodeService.estatisticasCacheImagens();
+        assertEquals(1, estatisticas.acertos());
+        assertEquals(2, estatisticas.faltas());
+        assertEquals(2, estatisticas.entradas());
+    }
+
+    @Test
+    void deveRemoverMenosRecentementeUsadaAoExcederQuantidade() {
+        CacheImagemQrCode cache = new CacheImagemQrCode(2, Long.MAX_VALUE);
+        AtomicInteger geracoes = new AtomicInteger();
+
+        obter(cache, "a", geracoes);
+        obter(cache, "b", geracoes);
+        obter(cache, "a", geracoes);
+        obter(cache, "c", geracoes);
+        obter(cache, "a", geracoes);
+        obter(cache, "b", geracoes);
+
+        // "b" era a menos recente quando "c" entrou; voltar a pedi-la gera de novo
+        assertEquals(4, geracoes.get());
+        CacheImagemQrCode.Estatisticas estatisticas = cache.estatisticas();
+        assertEquals(2, estatisticas.acertos());
+        assertEquals(4, estatisticas.faltas());
+        assertEquals(2, estatisticas.remocoes());
+        assertEquals(2, estatisticas.entradas());
+    }
+
+    @Test
+    void deveRespeitarLimiteDeBytes() {
+        // Cada entrada ocupa 100 bytes de imagem + 2 de conteúdo
+        CacheImagemQrCode cache = new CacheImagemQrCode(100, 250);
+        AtomicInteger geracoes = new AtomicInteger();
+
+        for (String conteudo : new String[]{"a", "b", "c", "d"}) {
+            obter(cache, conteudo, geracoes);
+        }
+
+        CacheImagemQrCode.Estatisticas estatisticas = cache.estatisticas();
+        assertEquals(2, estatisticas.entradas());
+        assertEquals(204, estatisticas.bytes());
+        assertEquals(2, estatisticas.remocoes());
+    }
+
+    @Test
+    void naoDeveGuardarImagemMaiorQueOLimite() {
+        CacheImagemQrCode cache = new CacheImagemQrCode(100, 50);
+        AtomicInteger geracoes = new AtomicInteger();
+
+        obter(cache, "a", geracoes);
+        obter(cache, "a", geracoes);
+
+        assertEquals(2, geracoes.get());
+        assertEquals(0, cache.estatisticas().entradas());
+    }
+
+    private static ImagemQrCode obter(CacheImagemQrCode cache, String conteudo, AtomicInteger geracoes) {
+        return cache.obter(new CacheImagemQrCode.Chave(conteudo, 10, 10), chave -> {
+            geracoes.incrementAndGet();
+            return new ImagemQrCode(new byte[100], "\"" + chave.conteudo() + "\"");
+        });
+    }
+}
@@ -0,0 +1,273 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceRequestDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.EventoNfce;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceRepository;
+import com.github.setxpro.nfce_java.infra.services.sefaz.SefazSimulada;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+import javax.xml.crypto.KeySelector;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cancelamento como evento 110111 contra a {@link SefazSimulada}. As notas são autorizadas com a transmissão
+ * desabilitada (autorização simulada) e a transmissão é ligada só para pedir o cancelamento; o teste chama
+ * {@link CancelamentoSefazService#ciclo()} diretamente.
+ */
+@DataJpaTest(properties = {"nfce.transmissao.espera-minima-ms=20", "nfce.transmissao.espera-maxima-ms=400"})
+@Import({CancelamentoSefazService.class, ComunicacaoSefazService.class, NfceService.class, NumeracaoService.class,
+        ReservaNumeracaoService.class, ChaveAcessoService.class, QrCodeService.class, XmlService.class,
+        AssinaturaDigitalService.class, CertificadoDigitalService.class, ContingenciaService.class,
+        TributacaoService.class, NfceConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CancelamentoSefazServiceTest {
+
+    private static final String JUSTIFICATIVA = "Cliente desistiu da compra no caixa";
+
+    private static final SefazSimulada SEFAZ = iniciarSefaz();
+    private static final Path JOURNAL = journalTemporario();
+    private static final Path CERTIFICADO =
+            CertificadoTesteFactory.gerarPkcs12("EMPRESA EXEMPLO LTDA:" + NfceFixtures.CNPJ_EMITENTE);
+
+    @DynamicPropertySource
+    static void sefaz(DynamicPropertyRegistry registry) {
+        registry.add("nfce.webservice.url.recepcao-evento", () -> SEFAZ.url("/ws/nfcerecepcaoevento.asmx"));
+        registry.add("nfce.contingencia.journal", JOURNAL::toString);
+        registry.add("nfce.certificado.path", () -> CERTIFICADO.toUri().toString());
+        registry.add("nfce.certificado.senha", () -> CertificadoTesteFactory.SENHA);
+    }
+
+    @AfterAll
+    static void pararSefaz() {
+        SEFAZ.close();
+    }
+
+    @Autowired
+    private CancelamentoSefazService cancelamentoSefazService;
+
+    @Autowired
+    private NfceService nfceService;
+
+    @Autowired
+    private NfceConfiguration nfceConfiguration;
+
+    @Autowired
+    private NfceRepository nfceRepository;
+
+    @Autowired
+    private CertificadoDigitalService certificadoDigitalService;
+
+    @Test
+    void deveRegistrarOsCancelamentosEmLotesDeVinteEventos() throws Exception {
+        SEFAZ.configurar(new SefazSimulada.Parametros(Duration.ofMillis(10), Duration.ZERO, 0));
+        List<Long> ids = criarAutorizadas(45);
+
+        List<NfceService.ResultadoTransicao> resultados = comTransmissao(() -> nfceService.cancelarLote(ids, JUSTIFICATIVA));
+        assertTrue(resultados.stream().allMatch(resultado -> resultado.erro() == null), resultados.toString());
+        for (Long id : ids) {
+            assertEquals(Nfce.StatusNfce.AUTORIZADA, nfceRepository.findById(id).orElseThrow().getStatus());
+            assertEquals(EventoNfce.StatusEvento.PENDENTE, nfceService.listarEventos(id).get(0).getStatus());
+        }
+
+        int requisicoes = SEFAZ.requisicoesEvento();
+        int eventos = SEFAZ.eventosRecebidos();
+        cancelamentoSefazService.ciclo();
+
+        assertEquals(3, SEFAZ.requisicoesEvento() - requisicoes);
+        assertEquals(45, SEFAZ.eventosRecebidos() - eventos);
+        assertEquals(0, cancelamentoSefazService.pendentes());
+        PublicKey chavePublica = certificadoDigitalService.getCertificado().titular().getPublicKey();
+        for (Long id : ids) {
+            Nfce nfce = nfceRepository.findById(id).orElseThrow();
+            assertEquals(Nfce.StatusNfce.CANCELADA, nfce.getStatus());
+
+            List<EventoNfce> eventosNota = nfceService.listarEventos(id);
+            assertEquals(1, eventosNota.size());
+            EventoNfce evento = eventosNota.get(0);
+            assertEquals(EventoNfce.StatusEvento.REGISTRADO, evento.getStatus());
+            assertEquals(nfce.getProtocoloAutorizacao(), evento.getProtocoloNfe());
+            assertNotNull(evento.getProtocolo());
+            assertNotNull(evento.getDataRegistro());
+            assertTrue(evento.getXml().contains("<procEventoNFe"));
+            assertTrue(evento.getXml().contains("<nProt>" + evento.getProtocolo() + "</nProt>"));
+            assertTrue(evento.getXml().contains("Id=\"ID110111" + nfce.getChaveAcesso() + "01\""));
+            assertTrue(evento.getXml().contains("<xJust>" + JUSTIFICATIVA + "</xJust>"));
+            assertTrue(validarAssinatura(evento.getXml(), chavePublica), "Assinatura inválida no evento da NFC-e " + id);
+        }
+    }
+
+    @Test
+    void deveManterANotaAutorizadaQuandoOEventoForRejeitadoEPermitirNovoPedido() throws Exception {
+        List<Long> ids = criarAutorizadas(3);
+        comTransmissao(() -> nfceService.cancelarLote(ids, JUSTIFICATIVA));
+
+        SEFAZ.configurar(new SefazSimulada.Parametros(Duration.ZERO, Duration.ZERO, 1));
+        cancelamentoSefazService.ciclo();
+
+        for (Long id : ids) {
+            assertEquals(Nfce.StatusNfce.AUTORIZADA, nfceRepository.findById(id).orElseThrow().getStatus());
+            EventoNfce evento = nfceService.listarEventos(id).get(0);
+            assertEquals(EventoNfce.StatusEvento.REJEITADO, evento.getStatus());
+            assertTrue(evento.getRetornoSefaz().startsWith(SefazSimulada.REJEICAO_SIMULADA + " - "));
+            assertNull(evento.getProtocolo());
+        }
+
+        Long id = ids.get(0);
+        String novaJustificativa = "Valor do item digitado errado no caixa";
+        comTransmissao(() -> nfceService.cancelarNfce(id, novaJustificativa));
+        EventoNfce reaberto = nfceService.listarEventos(id).get(0);
+        assertEquals(EventoNfce.StatusEvento.PENDENTE, reaberto.getStatus());
+        assertEquals(novaJustificativa, reaberto.getJustificativa());
+        assertNull(reaberto.getRetornoSefaz());
+
+        SEFAZ.configurar(new SefazSimulada.Parametros(Duration.ZERO, Duration.ZERO, 0));
+        cancelamentoSefazService.ciclo();
+
+        assertEquals(Nfce.StatusNfce.CANCELADA, nfceRepository.findById(id).orElseThrow().getStatus());
+        EventoNfce registrado = nfceService.listarEventos(id).get(0);
+        assertEquals(EventoNfce.StatusEvento.REGISTRADO, registrado.getStatus());
+        assertTrue(registrado.getXml().contains("<xJust>" + novaJustificativa + "</xJust>"));
+        assertEquals(Nfce.StatusNfce.AUTORIZADA, nfceRepository.findById(ids.get(1)).orElseThrow().getStatus());
+    }
+
+    @Test
+    void deveManterOsEventosPendentesEnquantoNaoHouverCertificado() {
+        SEFAZ.configurar(new SefazSimulada.Parametros(Duration.ZERO, Duration.ZERO, 0));
+        List<Long> ids = criarAutorizadas(2);
+        comTransmissao(() -> nfceService.cancelarLote(ids, JUSTIFICATIVA));
+
+        NfceConfiguration.Certificado certificado = nfceConfiguration.getCertificado();
+        String path = certificado.getPath();
+        certificado.setPath("");
+        certificadoDigitalService.recarregar();
+        int requisicoes = SEFAZ.requisicoesEvento();
+        try {
+            cancelamentoSefazService.ciclo();
+
+            assertEquals(requisicoes, SEFAZ.requisicoesEvento());
+            for (Long id : ids) {
+                EventoNfce evento = nfceService.listarEventos(id).get(0);
+                assertEquals(EventoNfce.StatusEvento.PENDENTE, evento.getStatus());
+                assertNull(evento.getXml());
+            }
+        } finally {
+            certificado.setPath(path);
+            certificadoDigitalService.recarregar();
+        }
+
+        cancelamentoSefazService.ciclo();
+        for (Long id : ids) {
+            assertEquals(Nfce.StatusNfce.CANCELADA, nfceRepository.findById(id).orElseThrow().getStatus());
+        }
+    }
+
+    @Test
+    void deveRecusarCancelamentoRepetidoOuDeNotaNaoAutorizada() {
+        SEFAZ.configurar(new SefazSimulada.Parametros(Duration.ZERO, Duration.ZERO, 0));
+        Long autorizada = criarAutorizadas(1).get(0);
+        NfceRequestDto request = NfceFixtures.requisicao(1);
+        request.setNumero(null);
+        Long rascunho = nfceService.criarNfce(request).getId();
+
+        comTransmissao(() -> nfceService.cancelarNfce(autorizada, JUSTIFICATIVA));
+
+        assertThrows(IllegalStateException.class,
+                () -> comTransmissao(() -> nfceService.cancelarNfce(autorizada, JUSTIFICATIVA)));
+        assertThrows(IllegalStateException.class,
+                () -> comTransmissao(() -> nfceService.cancelarNfce(rascunho, JUSTIFICATIVA)));
+        assertThrows(IllegalArgumentException.class,
+                () -> comTransmissao(() -> nfceService.cancelarNfce(Long.MAX_VALUE, JUSTIFICATIVA)));
+        assertEquals(1, nfceService.listarEventos(autorizada).size());
+        assertTrue(nfceService.listarEventos(rascunho).isEmpty());
+
+        cancelamentoSefazService.ciclo();
+        assertEquals(Nfce.StatusNfce.CANCELADA, nfceRepository.findById(autorizada).orElseThrow().getStatus());
+        assertThrows(IllegalStateException.class,
+                () -> comTransmissao(() -> nfceService.cancelarNfce(autorizada, JUSTIFICATIVA)));
+    }
+
+    private List<Long> criarAutorizadas(int quantidade) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < quantidade; i++) {
+            NfceRequestDto request = NfceFixtures.requisicao(1);
+            request.setNumero(null);
+            ids.add(nfceService.criarNfce(request).getId());
+        }
+        nfceService.assinarLote(ids);
+        nfceService.enviarLote(ids);
+        ids.forEach(nfceService::autorizarNfce);
+        return ids;
+    }
+
+    private <T> T comTransmissao(Supplier<T> acao) {
+        nfceConfiguration.getTransmissao().setHabilitada(true);
+        try {
+            return acao.get();
+        } finally {
+            nfceConfiguration.getTransmissao().setHabilitada(false);
+        }
+    }
+
+    private static boolean validarAssinatura(String xml, PublicKey chavePublica) throws Exception {
+        DocumentBuilderFactory fabrica = DocumentBuilderFactory.newInstance();
+        fabrica.setNamespaceAware(true);
+        Document documento = fabrica.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+
+        // O primeiro infEvento é o do evento assinado; o segundo é o do retEvento
+        Element infEvento = (Element) documento.getElementsByTagNameNS("*", "infEvento").item(0);
+        infEvento.setIdAttribute("Id", true);
+        Element assinatura = (Element) documento.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature").item(0);
+
+        DOMValidateContext contexto = new DOMValidateContext(KeySelector.singletonKeySelector(chavePublica), assinatura);
+        contexto.setProperty("org.jcp.xml.dsig.secureValidation", Boolean.FALSE);
+        return XMLSignatureFactory.getInstance("DOM").unmarshalXMLSignature(contexto).validate(contexto);
+    }
+
+    private static Path journalTemporario() {
+        try {
+            return Files.createTempDirectory("nfce-contingencia").resolve("contingencia.journal");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static SefazSimulada iniciarSefaz() {
+        try {
+            return new SefazSimulada(0, new SefazSimulada.Parametros(Duration.ZERO, Duration.ZERO, 0));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
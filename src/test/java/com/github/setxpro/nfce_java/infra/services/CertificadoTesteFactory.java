@@ -0,0 +1,84 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.test.context.DynamicPropertyRegistry;
+
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+
+/**
+ * Gera um certificado A1 autoassinado (RSA 2048) em um PKCS#12 temporário para testes e benchmarks.
+ */
+public final class CertificadoTesteFactory {
+
+    public static final String SENHA = "123456";
+
+    private CertificadoTesteFactory() {
+    }
+
+    public static Path gerarPkcs12(String titular) {
+        try {
+            KeyPairGenerator gerador = KeyPairGenerator.getInstance("RSA");
+            gerador.initialize(2048);
+            KeyPair par = gerador.generateKeyPair();
+
+            Instant agora = Instant.now();
+            X500Name nome = new X500Name("CN=" + titular + ", O=ICP-Brasil, C=BR");
+            X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(nome,
+                    BigInteger.valueOf(agora.toEpochMilli()),
+                    Date.from(agora.minus(1, ChronoUnit.DAYS)),
+                    Date.from(agora.plus(365, ChronoUnit.DAYS)),
+                    nome, par.getPublic());
+            X509Certificate certificado = new JcaX509CertificateConverter()
+                    .getCertificate(builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(par.getPrivate())));
+
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(null, null);
+            keyStore.setKeyEntry("nfce", par.getPrivate(), SENHA.toCharArray(), new Certificate[]{certificado});
+
+            Path arquivo = Files.createTempFile("nfce-certificado-", ".pfx");
+            arquivo.toFile().deleteOnExit();
+            try (OutputStream saida = Files.newOutputStream(arquivo)) {
+                keyStore.store(saida, SENHA.toCharArray());
+            }
+            return arquivo;
+        } catch (Exception e) {
+            throw new IllegalStateException("Erro ao gerar certificado de teste", e);
+        }
+    }
+
+    /**
+     * Serviço de certificado apontando para um PKCS#12 recém-gerado.
+     */
+    public static CertificadoDigitalService servico(NfceConfiguration configuracao) {
+        Path arquivo = gerarPkcs12("EMPRESA EXEMPLO LTDA:" + NfceFixtures.CNPJ_EMITENTE);
+        configuracao.getCertificado().setPath(arquivo.toUri().toString());
+        configuracao.getCertificado().setSenha(SENHA);
+        return new CertificadoDigitalService(configuracao, new DefaultResourceLoader());
+    }
+
+    /**
+     * Aponta {@code nfce.certificado} para um PKCS#12 recém-gerado, para os testes com contexto Spring.
+     */
+    public static void registrar(DynamicPropertyRegistry registry) {
+        String arquivo = gerarPkcs12("EMPRESA EXEMPLO LTDA:" + NfceFixtures.CNPJ_EMITENTE).toUri().toString();
+        registry.add("nfce.certificado.path", () -> arquivo);
+        registry.add("nfce.certificado.senha", () -> SENHA);
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Implementação anterior do ChaveAcessoService (String.format + StringBuilder), mantida como
+ * referência para os testes de equivalência e para o benchmark comparativo.
+ */
+final class ChaveAcessoLegado {
+    private static final int[] PESOS = {4, 3, 2, 9, 8, 7, 6, 5, 4, 3, 2, 9, 8, 7, 6, 5, 4, 3, 2, 9, 8, 7, 6, 5, 4, 3, 2, 9, 8, 7, 6, 5, 4, 3, 2, 9, 8, 7, 6, 5, 4, 3, 2};
+
+    private ChaveAcessoLegado() {
+    }
+
+    static String gerarChaveAcesso(Integer uf, LocalDateTime dataEmissao, String cnpj,
+                                   String modelo, Integer serie, Integer numero,
+                                   Integer tipoEmissao, Integer codigoNumerico) {
+
+        StringBuilder chave = new StringBuilder();
+        chave.append(String.format("%02d", uf));
+        chave.append(dataEmissao.format(DateTimeFormatter.ofPattern("yyMM")));
+        chave.append(cnpj);
+        chave.append(modelo);
+        chave.append(String.format("%03d", serie));
+        chave.append(String.format("%09d", numero));
+        chave.append(tipoEmissao);
+        chave.append(String.format("%08d", codigoNumerico));
+
+        int digitoVerificador = calcularDigitoVerificador(chave.toString());
+        chave.append(digitoVerificador);
+
+        return chave.toString();
+    }
+
+    /**
+     * Validação anterior com a verificação de dígitos corrigida: {@code Long.parseLong} nunca aceitava
+     * 44 dígitos e a chave era sempre considerada inválida.
+     */
+    static boolean validarChaveAcesso(String chaveAcesso) {
+        if (chaveAcesso == null || chaveAcesso.length() != 44 || !chaveAcesso.chars().allMatch(c -> c >= '0' && c <= '9')) {
+            return false;
+        }
+        String chaveSemDv = chaveAcesso.substring(0, 43);
+        int digitoInformado = Character.getNumericValue(chaveAcesso.charAt(43));
+        return digitoInformado == calcularDigitoVerificador(chaveSemDv);
+    }
+
+    static String formatarChaveAcesso(String chaveAcesso) {
+        if (chaveAcesso == null || chaveAcesso.length() != 44) {
+            return chaveAcesso;
+        }
+        StringBuilder chaveFormatada = new StringBuilder();
+        for (int i = 0; i < chaveAcesso.length(); i++) {
+            if (i > 0 && i % 4 == 0) {
+                chaveFormatada.append(" ");
+            }
+            chaveFormatada.append(chaveAcesso.charAt(i));
+        }
+        return chaveFormatada.toString();
+    }
+
+    private static int calcularDigitoVerificador(String chave) {
+        int soma = 0;
+        for (int i = 0; i < chave.length(); i++) {
+            soma += Character.getNumericValue(chave.charAt(i)) * PESOS[i];
+        }
+        int resto = soma % 11;
+        return resto < 2 ? 0 : 11 - resto;
+    }
+}
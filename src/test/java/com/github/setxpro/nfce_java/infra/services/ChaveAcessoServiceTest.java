@@ -0,0 +1,97 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Equivalência com a implementação anterior ({@link ChaveAcessoLegado}) sobre entradas aleatórias
+ * com semente fixa.
+ */
+class ChaveAcessoServiceTest {
+
+    private static final int CASOS = 20_000;
+
+    private final ChaveAcessoService chaveAcessoService = new ChaveAcessoService();
+
+    @Test
+    void deveGerarAMesmaChaveQueOAlgoritmoAnterior() {
+        Random random = new Random(20240115L);
+
+        for (int i = 0; i < CASOS; i++) {
+            int uf = random.nextInt(100);
+            LocalDateTime data = LocalDateTime.of(2000 + random.nextInt(100), 1 + random.nextInt(12), 1, 0, 0);
+            String cnpj = digitos(random, 14);
+            String modelo = random.nextBoolean() ? "65" : "55";
+            int serie = random.nextInt(1000);
+            int numero = random.nextInt(1_000_000_000);
+            int tipoEmissao = random.nextInt(10);
+            int codigoNumerico = random.nextInt(100_000_000);
+
+            String esperada = ChaveAcessoLegado.gerarChaveAcesso(uf, data, cnpj, modelo, serie, numero, tipoEmissao, codigoNumerico);
+            String gerada = chaveAcessoService.gerarChaveAcesso(uf, data, cnpj, modelo, serie, numero, tipoEmissao, codigoNumerico);
+
+            assertEquals(esperada, gerada);
+            assertTrue(chaveAcessoService.validarChaveAcesso(gerada), gerada);
+            assertEquals(ChaveAcessoLegado.formatarChaveAcesso(gerada), chaveAcessoService.formatarChaveAcesso(gerada));
+        }
+    }
+
+    @Test
+    void deveValidarComoOAlgoritmoAnterior() {
+        Random random = new Random(7L);
+        String caracteres = "0123456789A -";
+
+        for (int i = 0; i < CASOS; i++) {
+            char[] chave = chaveAcessoService.gerarChaveAcessoNfce(35, NfceFixtures.DATA_EMISSAO,
+                    NfceFixtures.CNPJ_EMITENTE, 1, random.nextInt(1_000_000), 1).toCharArray();
+            chave[random.nextInt(44)] = caracteres.charAt(random.nextInt(caracteres.length()));
+            String alterada = new String(chave);
+
+            assertEquals(ChaveAcessoLegado.validarChaveAcesso(alterada), chaveAcessoService.validarChaveAcesso(alterada), alterada);
+        }
+    }
+
+    @Test
+    void deveRejeitarChavesMalFormadas() {
+        String valida = chaveAcessoService.gerarChaveAcesso(35, NfceFixtures.DATA_EMISSAO, NfceFixtures.CNPJ_EMITENTE,
+                "65", 1, 123, 1, 12345678);
+
+        assertTrue(chaveAcessoService.validarChaveAcesso(valida));
+        assertFalse(chaveAcessoService.validarChaveAcesso(null));
+        assertFalse(chaveAcessoService.validarChaveAcesso(valida.substring(1)));
+        assertFalse(chaveAcessoService.validarChaveAcesso(valida.substring(0, 43) + "X"));
+        assertFalse(chaveAcessoService.validarChaveAcesso("-" + valida.substring(1)));
+    }
+
+    @Test
+    void deveRejeitarCamposQueNaoCabemNaChave() {
+        LocalDateTime data = NfceFixtures.DATA_EMISSAO;
+        String cnpj = NfceFixtures.CNPJ_EMITENTE;
+
+        assertThrows(IllegalArgumentException.class,
+                () -> chaveAcessoService.gerarChaveAcesso(350, data, cnpj, "65", 1, 1, 1, 12345678));
+        assertThrows(IllegalArgumentException.class,
+                () -> chaveAcessoService.gerarChaveAcesso(35, data, cnpj, "65", 1, 1_000_000_000, 1, 12345678));
+        assertThrows(IllegalArgumentException.class,
+                () -> chaveAcessoService.gerarChaveAcesso(35, data, "1234567800019", "65", 1, 1, 1, 12345678));
+        assertThrows(IllegalArgumentException.class,
+                () -> chaveAcessoService.gerarChaveAcesso(35, data, "12.345.678/0001", "65", 1, 1, 1, 12345678));
+        assertThrows(IllegalArgumentException.class,
+                () -> chaveAcessoService.gerarChaveAcesso(35, data, cnpj, "65", -1, 1, 1, 12345678));
+    }
+
+    private static String digitos(Random random, int quantidade) {
+        char[] digitos = new char[quantidade];
+        for (int i = 0; i < quantidade; i++) {
+            digitos[i] = (char) ('0' + random.nextInt(10));
+        }
+        return new String(digitos);
+    }
+}
@@ -0,0 +1,164 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.services.sefaz.ClienteSefaz;
+import com.github.setxpro.nfce_java.infra.services.sefaz.MensagemSefaz;
+import com.github.setxpro.nfce_java.infra.services.sefaz.RetornoSefaz;
+import com.github.setxpro.nfce_java.infra.services.sefaz.SefazSimulada;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cliente contra a {@link SefazSimulada} em HTTPS com autenticação do cliente obrigatória. O servidor usa um
+ * certificado de {@code localhost} e confia só no certificado A1 gerado para o emitente.
+ */
+class ComunicacaoSefazServiceTest {
+
+    private static final Path CERTIFICADO_SERVIDOR = CertificadoTesteFactory.gerarPkcs12("localhost");
+    private static final String CONSULTA = MensagemSefaz.consReciNFe(2, "351000000000001");
+
+    private NfceConfiguration configuracao;
+    private CertificadoDigitalService certificadoDigitalService;
+    private SefazSimulada sefaz;
+    private ComunicacaoSefazService comunicacaoSefazService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        configuracao = NfceFixtures.configuracao();
+        certificadoDigitalService = CertificadoTesteFactory.servico(configuracao);
+        configuracao.getWebservice().setTruststore(CERTIFICADO_SERVIDOR.toUri().toString());
+        configuracao.getWebservice().setTruststoreSenha(CertificadoTesteFactory.SENHA);
+
+        sefaz = new SefazSimulada(0, new SefazSimulada.Parametros(Duration.ZERO, Duration.ZERO, 0),
+                contextoServidor(Path.of(URI.create(configuracao.getCertificado().getPath()))));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (comunicacaoSefazService != null) {
+            comunicacaoSefazService.encerrar();
+        }
+        sefaz.close();
+    }
+
+    @Test
+    void deveReaproveitarAMesmaConexaoTlsComCertificadoDoCliente() throws Exception {
+        comunicacaoSefazService = criarServico();
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("106", consultar().cStat());
+        }
+
+        ClienteSefaz.Metricas metricas = comunicacaoSefazService.metricas();
+        assertEquals(20, metricas.requisicoes());
+        assertEquals(1, metricas.conexoesAbertas());
+        assertEquals(0, metricas.alugadas());
+        assertEquals(1, metricas.disponiveis());
+        assertTrue(sefaz.titularesTls().stream().allMatch(titular -> titular.contains(NfceFixtures.CNPJ_EMITENTE)));
+        assertEquals(1, sefaz.titularesTls().size());
+    }
+
+    @Test
+    void deveRespeitarOLimiteDeConexoesPorRota() throws Exception {
+        configuracao.getWebservice().setMaxConexoesPorRota(2);
+        sefaz.configurar(new SefazSimulada.Parametros(Duration.ofMillis(50), Duration.ZERO, 0));
+        comunicacaoSefazService = criarServico();
+
+        List<Future<RetornoSefaz>> consultas = new ArrayList<>();
+        // Threads de plataforma: as virtuais que ficam na fila do pool prendem o único carrier nos blocos
+        // synchronized do handshake TLS em máquinas com um núcleo.
+        try (ExecutorService executor = Executors.newFixedThreadPool(12)) {
+            for (int i = 0; i < 12; i++) {
+                consultas.add(executor.submit(this::consultar));
+            }
+        }
+        for (Future<RetornoSefaz> consulta : consultas) {
+            assertEquals("106", consulta.get().cStat());
+        }
+
+        ClienteSefaz.Metricas metricas = comunicacaoSefazService.metricas();
+        assertEquals(12, metricas.requisicoes());
+        assertTrue(metricas.conexoesAbertas() <= 2, "conexões abertas: " + metricas.conexoesAbertas());
+        assertEquals(0, metricas.aguardando());
+    }
+
+    @Test
+    void deveSerRecusadoPelaSefazSemCertificadoDeCliente() {
+        configuracao.getCertificado().setPath("");
+        configuracao.getWebservice().setSemAutenticacaoCliente(true);
+        certificadoDigitalService = new CertificadoDigitalService(configuracao, new DefaultResourceLoader());
+        comunicacaoSefazService = criarServico();
+
+        assertThrows(IOException.class, this::consultar);
+        assertEquals(1, comunicacaoSefazService.metricas().falhas());
+    }
+
+    @Test
+    void naoDeveMontarOClienteEnquantoNaoHouverCertificado() throws Exception {
+        String certificado = configuracao.getCertificado().getPath();
+        configuracao.getCertificado().setPath("");
+        certificadoDigitalService = new CertificadoDigitalService(configuracao, new DefaultResourceLoader());
+        comunicacaoSefazService = criarServico();
+
+        assertThrows(IOException.class, this::consultar);
+        assertEquals(0, comunicacaoSefazService.metricas().requisicoes());
+        assertEquals(0, comunicacaoSefazService.disjuntor().metricas().falhasConsecutivas());
+
+        // Corrigido o certificado, a próxima chamada monta o pool com autenticação do cliente
+        configuracao.getCertificado().setPath(certificado);
+        assertEquals("106", consultar().cStat());
+        assertEquals(1, comunicacaoSefazService.metricas().requisicoes());
+    }
+
+    private ComunicacaoSefazService criarServico() {
+        return new ComunicacaoSefazService(configuracao, certificadoDigitalService, new DefaultResourceLoader());
+    }
+
+    private RetornoSefaz consultar() throws IOException {
+        return RetornoSefaz.ler(comunicacaoSefazService.enviar(sefaz.url("/ws/nfceretautorizacao.asmx"),
+                MensagemSefaz.ACAO_RET_AUTORIZACAO, CONSULTA));
+    }
+
+    private static SSLContext contextoServidor(Path certificadoCliente) throws Exception {
+        char[] senha = CertificadoTesteFactory.SENHA.toCharArray();
+
+        KeyManagerFactory chaves = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        chaves.init(carregar(CERTIFICADO_SERVIDOR, senha), senha);
+        TrustManagerFactory confianca = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        confianca.init(carregar(certificadoCliente, senha));
+
+        SSLContext contexto = SSLContext.getInstance("TLS");
+        contexto.init(chaves.getKeyManagers(), confianca.getTrustManagers(), null);
+        return contexto;
+    }
+
+    private static KeyStore carregar(Path arquivo, char[] senha) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream entrada = Files.newInputStream(arquivo)) {
+            keyStore.load(entrada, senha);
+        }
+        return keyStore;
+    }
+}
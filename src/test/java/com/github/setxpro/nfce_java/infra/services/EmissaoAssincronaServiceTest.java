@@ -0,0 +1,116 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceRequestDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.ProcessamentoNfce;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.ProcessamentoNfce.Etapa;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceDocumentoRepository;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceRepository;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.ProcessamentoNfceRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * As etapas rodam em virtual threads com transações próprias, por isso o teste não abre transação.
+ */
+@DataJpaTest
+@Import({NfceService.class, EmissaoAssincronaService.class, NumeracaoService.class, ReservaNumeracaoService.class,
+        ChaveAcessoService.class, QrCodeService.class, XmlService.class, AssinaturaDigitalService.class,
+        CertificadoDigitalService.class, ContingenciaService.class, TributacaoService.class, NfceConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EmissaoAssincronaServiceTest {
+
+    private static final long TIMEOUT_MS = 20_000;
+
+    @DynamicPropertySource
+    static void certificado(DynamicPropertyRegistry registry) {
+        CertificadoTesteFactory.registrar(registry);
+    }
+
+    @Autowired
+    private EmissaoAssincronaService emissaoAssincronaService;
+
+    @Autowired
+    private NfceService nfceService;
+
+    @Autowired
+    private NfceRepository nfceRepository;
+
+    @Autowired
+    private NfceDocumentoRepository nfceDocumentoRepository;
+
+    @Autowired
+    private ProcessamentoNfceRepository processamentoNfceRepository;
+
+    @Test
+    void deveReceberSemChaveEConcluirTodasAsEtapas() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ProcessamentoNfce recebido = emissaoAssincronaService.receber(requisicaoSemNumero(3));
+            assertEquals(Etapa.RECEBIDA, recebido.getEtapa());
+            ids.add(recebido.getNfceId());
+        }
+
+        for (Long id : ids) {
+            ProcessamentoNfce processamento = aguardarFim(id);
+            assertEquals(Etapa.TRANSMITIDA, processamento.getEtapa(), processamento.getMensagemErro());
+
+            Nfce nfce = nfceRepository.findById(id).orElseThrow();
+            assertEquals(Nfce.StatusNfce.ENVIADA, nfce.getStatus());
+            assertEquals(44, nfce.getChaveAcesso().length());
+            assertNotNull(nfce.getQrCode());
+            assertTrue(nfceDocumentoRepository.findById(id).orElseThrow().getXmlAssinado().contains(nfce.getChaveAcesso()));
+        }
+    }
+
+    @Test
+    void deveRegistrarErroDaEtapaEInterromperAsSeguintes() {
+        // Nota registrada sem chave: a etapa de XML falha e o andamento fica em ERRO com a mensagem
+        Long semChave = nfceService.registrarNfce(requisicaoSemNumero(1));
+        ProcessamentoNfce processamento = new ProcessamentoNfce();
+        processamento.setNfceId(semChave);
+        processamento.setEtapa(Etapa.CHAVE_GERADA);
+        processamentoNfceRepository.save(processamento);
+
+        emissaoAssincronaService.processar(semChave, Etapa.CHAVE_GERADA);
+
+        ProcessamentoNfce resultado = emissaoAssincronaService.consultar(semChave);
+        assertEquals(Etapa.ERRO, resultado.getEtapa());
+        assertTrue(resultado.getMensagemErro().contains("chave de acesso"), resultado.getMensagemErro());
+        assertEquals(Nfce.StatusNfce.RASCUNHO, nfceRepository.findById(semChave).orElseThrow().getStatus());
+        assertNull(nfceRepository.findById(semChave).orElseThrow().getChaveAcesso());
+    }
+
+    private static NfceRequestDto requisicaoSemNumero(int quantidadeItens) {
+        NfceRequestDto request = NfceFixtures.requisicao(quantidadeItens);
+        request.setNumero(null);
+        return request;
+    }
+
+    private ProcessamentoNfce aguardarFim(Long id) throws InterruptedException {
+        long limite = System.currentTimeMillis() + TIMEOUT_MS;
+        while (System.currentTimeMillis() < limite) {
+            ProcessamentoNfce processamento = emissaoAssincronaService.consultar(id);
+            if (processamento.getEtapa().isFinal()) {
+                return processamento;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Emissão " + id + " não terminou em " + TIMEOUT_MS + " ms");
+    }
+}
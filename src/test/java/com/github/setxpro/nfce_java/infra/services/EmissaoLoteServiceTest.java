@@ -0,0 +1,124 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceRequestDto;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cada bloco é emitido numa virtual thread com transação própria, por isso o teste não abre transação.
+ */
+@DataJpaTest(properties = {"nfce.certificado.path=", "nfce.emissao.concorrencia-lote=3",
+        "nfce.emissao.tamanho-bloco-lote=4"})
+@ImportAutoConfiguration({JacksonAutoConfiguration.class, ValidationAutoConfiguration.class})
+@Import({EmissaoLoteService.class, EmissaoParalelaService.class, NfceService.class, NumeracaoService.class,
+        ReservaNumeracaoService.class, ChaveAcessoService.class, QrCodeService.class, XmlService.class,
+        AssinaturaDigitalService.class, CertificadoDigitalService.class, ContingenciaService.class,
+        TributacaoService.class, NfceConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EmissaoLoteServiceTest {
+
+    @Autowired
+    private EmissaoLoteService emissaoLoteService;
+
+    @Autowired
+    private NfceRepository nfceRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void deveEmitirNotasValidasEDevolverOResultadoDeCadaLinhaNaOrdem() throws Exception {
+        NfceRequestDto semSerie = requisicaoSemNumero();
+        semSerie.setSerie(null);
+
+        StringBuilder entrada = new StringBuilder();
+        for (int i = 1; i <= 25; i++) {
+            String linha = switch (i) {
+                case 5 -> objectMapper.writeValueAsString(semSerie);
+                case 9 -> "{\"serie\": \"um\"}";
+                case 13 -> "[1, 2]";
+                default -> objectMapper.writeValueAsString(requisicaoSemNumero());
+            };
+            entrada.append(linha).append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+        long notasAntes = nfceRepository.count();
+
+        List<JsonNode> saida = emitir(entrada.toString());
+
+        assertEquals(26, saida.size());
+        for (int i = 1; i <= 25; i++) {
+            JsonNode resultado = saida.get(i - 1);
+            assertEquals(i, resultado.get("linha").asInt());
+            if (i == 5 || i == 9 || i == 13) {
+                assertTrue(resultado.has("erro"), resultado.toString());
+                assertFalse(resultado.has("id"));
+            } else {
+                assertEquals(44, resultado.get("chave_acesso").asText().length());
+                assertTrue(nfceRepository.existsById(resultado.get("id").asLong()));
+            }
+        }
+        assertTrue(saida.get(4).get("erro").asText().startsWith("serie:"), saida.get(4).toString());
+
+        JsonNode resumo = saida.get(25);
+        assertEquals(25, resumo.get("total").asInt());
+        assertEquals(22, resumo.get("emitidas").asInt());
+        assertEquals(3, resumo.get("rejeitadas").asInt());
+        assertNull(resumo.get("erro"));
+        assertEquals(notasAntes + 22, nfceRepository.count());
+    }
+
+    @Test
+    void devePararNaPrimeiraLinhaComJsonMalFormadoMantendoAsAnteriores() throws Exception {
+        String valida = objectMapper.writeValueAsString(requisicaoSemNumero());
+        String entrada = valida + "\n" + valida + "\n{\"serie\": 1,\n" + valida + "\n";
+
+        List<JsonNode> saida = emitir(entrada);
+
+        assertEquals(3, saida.size());
+        assertTrue(saida.get(0).has("id"));
+        assertTrue(saida.get(1).has("id"));
+        JsonNode resumo = saida.get(2);
+        assertEquals(2, resumo.get("total").asInt());
+        assertEquals(2, resumo.get("emitidas").asInt());
+        assertTrue(resumo.get("erro").asText().startsWith("Linha 3"), resumo.toString());
+    }
+
+    private List<JsonNode> emitir(String entrada) throws Exception {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        emissaoLoteService.emitir(new ByteArrayInputStream(entrada.getBytes(StandardCharsets.UTF_8)), saida);
+
+        List<JsonNode> linhas = new ArrayList<>();
+        for (String linha : saida.toString(StandardCharsets.UTF_8).split("\n")) {
+            linhas.add(objectMapper.readTree(linha));
+        }
+        return linhas;
+    }
+
+    private static NfceRequestDto requisicaoSemNumero() {
+        NfceRequestDto request = NfceFixtures.requisicao(2);
+        request.setNumero(null);
+        return request;
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceRequestDto;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceDocumentoRepository;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A montagem roda no pool do fork-join e a gravação na sua própria transação, por isso o teste não abre transação.
+ */
+@DataJpaTest(properties = {"nfce.certificado.path=", "nfce.emissao.paralelismo-cpu=4",
+        "spring.jpa.properties.hibernate.generate_statistics=true"})
+@Import({EmissaoParalelaService.class, NfceService.class, NumeracaoService.class, ReservaNumeracaoService.class,
+        ChaveAcessoService.class, QrCodeService.class, XmlService.class, AssinaturaDigitalService.class,
+        CertificadoDigitalService.class, ContingenciaService.class, TributacaoService.class, NfceConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EmissaoParalelaServiceTest {
+
+    @Autowired
+    private EmissaoParalelaService emissaoParalelaService;
+
+    @Autowired
+    private NfceRepository nfceRepository;
+
+    @Autowired
+    private NfceDocumentoRepository nfceDocumentoRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void deveMontarEmParaleloEGravarOBlocoEmBatch() {
+        // Inicializa as sequences e o bloco de numeração da série
+        emissaoParalelaService.emitir(List.of(requisicaoSemNumero()));
+
+        List<NfceRequestDto> requests = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            requests.add(requisicaoSemNumero());
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<EmissaoParalelaService.Resultado> resultados = emissaoParalelaService.emitir(requests);
+        long comandos = statistics.getPrepareStatementCount();
+
+        // Uma nota por vez seriam ao menos 5 INSERTs por nota (nota, 2 itens, pagamento e XML)
+        assertTrue(comandos < 15, "comandos preparados: " + comandos);
+        assertEquals(30, resultados.size());
+        Set<String> chaves = new HashSet<>();
+        int numeroAnterior = 0;
+        for (EmissaoParalelaService.Resultado resultado : resultados) {
+            assertNull(resultado.erro());
+            assertTrue(resultado.nota().getNumero() > numeroAnterior, "números devem seguir a ordem de entrada");
+            numeroAnterior = resultado.nota().getNumero();
+            assertTrue(chaves.add(resultado.nota().getChaveAcesso()));
+
+            Long id = resultado.nota().getId();
+            assertTrue(nfceRepository.existsById(id));
+            assertTrue(nfceDocumentoRepository.findById(id).orElseThrow().getXmlAssinado()
+                    .contains(resultado.nota().getChaveAcesso()));
+        }
+    }
+
+    @Test
+    void deveGravarUmaAUmaQuandoOBlocoNaoPodeSerGravado() {
+        NfceRequestDto existente = requisicaoSemNumero();
+        existente.setNumero(900_000);
+        assertNull(emissaoParalelaService.emitir(List.of(existente)).get(0).erro());
+
+        long notasAntes = nfceRepository.count();
+        List<EmissaoParalelaService.Resultado> resultados =
+                emissaoParalelaService.emitir(List.of(requisicaoSemNumero(), existente, requisicaoSemNumero()));
+
+        assertNotNull(resultados.get(0).nota());
+        assertTrue(resultados.get(1).erro().contains("900000"), resultados.get(1).erro());
+        assertNotNull(resultados.get(2).nota());
+        assertEquals(notasAntes + 2, nfceRepository.count());
+    }
+
+    private static NfceRequestDto requisicaoSemNumero() {
+        NfceRequestDto request = NfceFixtures.requisicao(2);
+        request.setNumero(null);
+        return request;
+    }
+}
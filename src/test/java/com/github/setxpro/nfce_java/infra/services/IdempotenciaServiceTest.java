@@ -0,0 +1,315 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceRequestDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceResponseDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.ProcessamentoNfce;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.RequisicaoIdempotente;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceRepository;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.RequisicaoIdempotenteRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Idempotency-Key com a emissão real: a reserva e a resposta vão para o banco em transações próprias, por isso o
+ * teste não abre transação.
+ */
+@DataJpaTest
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({IdempotenciaService.class, NfceService.class, EmissaoAssincronaService.class, NumeracaoService.class,
+        ReservaNumeracaoService.class, ChaveAcessoService.class, QrCodeService.class, XmlService.class,
+        AssinaturaDigitalService.class, CertificadoDigitalService.class, ContingenciaService.class,
+        TributacaoService.class, NfceConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class IdempotenciaServiceTest {
+
+    private static final long TIMEOUT_MS = 20_000;
+
+    @DynamicPropertySource
+    static void certificado(DynamicPropertyRegistry registry) {
+        CertificadoTesteFactory.registrar(registry);
+    }
+
+    @Autowired
+    private IdempotenciaService idempotenciaService;
+
+    @Autowired
+    private NfceService nfceService;
+
+    @Autowired
+    private EmissaoAssincronaService emissaoAssincronaService;
+
+    @Autowired
+    private NfceRepository nfceRepository;
+
+    @Autowired
+    private RequisicaoIdempotenteRepository requisicaoIdempotenteRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private NfceConfiguration nfceConfiguration;
+
+    @Test
+    void deveDevolverARespostaOriginalSemEmitirDeNovo() {
+        String chave = UUID.randomUUID().toString();
+        NfceRequestDto request = requisicaoSemNumero(3);
+        AtomicInteger execucoes = new AtomicInteger();
+        long notas = nfceRepository.count();
+
+        IdempotenciaService.Resultado<NfceResponseDto> original = criar(idempotenciaService, chave, request, execucoes);
+        IdempotenciaService.Resultado<NfceResponseDto> repetida = criar(idempotenciaService, chave, request, execucoes);
+
+        assertFalse(original.repetida());
+        assertTrue(repetida.repetida());
+        assertSame(original.corpo(), repetida.corpo());
+        assertEquals(1, execucoes.get());
+        assertEquals(notas + 1, nfceRepository.count());
+        assertTrue(idempotenciaService.estatisticasCache().acertos() >= 1);
+
+        RequisicaoIdempotente gravada = requisicaoIdempotenteRepository.findById(chave).orElseThrow();
+        assertEquals(RequisicaoIdempotente.Situacao.CONCLUIDA, gravada.getSituacao());
+        assertTrue(gravada.getResposta().contains(original.corpo().getChaveAcesso()));
+
+        // Outra instância (ou a mesma depois de um reinício) não tem o cache: lê a resposta gravada
+        IdempotenciaService semCache = novaInstancia();
+        IdempotenciaService.Resultado<NfceResponseDto> lida = criar(semCache, chave, request, execucoes);
+        assertTrue(lida.repetida());
+        assertEquals(1, execucoes.get());
+        assertEquals(original.corpo().getId(), lida.corpo().getId());
+        assertEquals(original.corpo().getChaveAcesso(), lida.corpo().getChaveAcesso());
+        assertEquals(original.corpo().getQrCode(), lida.corpo().getQrCode());
+        assertEquals(original.corpo().getItens().size(), lida.corpo().getItens().size());
+        assertEquals(0, original.corpo().getTotais().getValorTotalNota()
+                .compareTo(lida.corpo().getTotais().getValorTotalNota()));
+    }
+
+    @Test
+    void deveRecusarAMesmaChaveComOutraRequisicao() {
+        String chave = UUID.randomUUID().toString();
+        AtomicInteger execucoes = new AtomicInteger();
+        criar(idempotenciaService, chave, requisicaoSemNumero(1), execucoes);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> criar(idempotenciaService, chave, requisicaoSemNumero(2), execucoes));
+        assertThrows(IllegalArgumentException.class,
+                () -> criar(novaInstancia(), chave, requisicaoSemNumero(2), execucoes));
+        assertThrows(IllegalArgumentException.class,
+                () -> criar(idempotenciaService, " ", requisicaoSemNumero(1), execucoes));
+        assertEquals(1, execucoes.get());
+    }
+
+    @Test
+    void deveExecutarUmaUnicaVezAsDuplicatasSimultaneas() throws Exception {
+        String chave = UUID.randomUUID().toString();
+        NfceRequestDto request = requisicaoSemNumero(2);
+        AtomicInteger execucoes = new AtomicInteger();
+        CountDownLatch liberar = new CountDownLatch(1);
+        long notas = nfceRepository.count();
+
+        List<Future<IdempotenciaService.Resultado<NfceResponseDto>>> tentativas = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int i = 0; i < 8; i++) {
+                tentativas.add(executor.submit(() -> idempotenciaService.executar(chave, List.of(false, request),
+                        NfceResponseDto.class, () -> {
+                            execucoes.incrementAndGet();
+                            aguardar(liberar);
+                            return nfceService.criarNfce(request);
+                        })));
+            }
+            // Deixa as duplicatas chegarem enquanto a primeira está presa na emissão
+            Thread.sleep(200);
+            liberar.countDown();
+
+            Long id = null;
+            int repetidas = 0;
+            for (Future<IdempotenciaService.Resultado<NfceResponseDto>> tentativa : tentativas) {
+                IdempotenciaService.Resultado<NfceResponseDto> resultado = tentativa.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (id == null) {
+                    id = resultado.corpo().getId();
+                }
+                assertEquals(id, resultado.corpo().getId());
+                repetidas += resultado.repetida() ? 1 : 0;
+            }
+            assertEquals(7, repetidas);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, execucoes.get());
+        assertEquals(notas + 1, nfceRepository.count());
+    }
+
+    @Test
+    void deveRecusarAChaveEmProcessamentoEmOutraInstancia() throws Exception {
+        String chave = UUID.randomUUID().toString();
+        NfceRequestDto request = requisicaoSemNumero(1);
+        CountDownLatch reservada = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<IdempotenciaService.Resultado<NfceResponseDto>> primeira = executor.submit(() ->
+                    idempotenciaService.executar(chave, List.of(false, request), NfceResponseDto.class, () -> {
+                        reservada.countDown();
+                        aguardar(liberar);
+                        return nfceService.criarNfce(request);
+                    }));
+            assertTrue(reservada.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+            AtomicInteger execucoes = new AtomicInteger();
+            assertThrows(IllegalStateException.class, () -> criar(novaInstancia(), chave, request, execucoes));
+            assertEquals(0, execucoes.get());
+
+            liberar.countDown();
+            assertFalse(primeira.get(TIMEOUT_MS, TimeUnit.MILLISECONDS).repetida());
+            assertTrue(criar(novaInstancia(), chave, request, execucoes).repetida());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void deveGravarSoARespostaDeQuemAssumiuAChaveAbandonada() throws Exception {
+        String chave = UUID.randomUUID().toString();
+        NfceRequestDto request = requisicaoSemNumero(1);
+        CountDownLatch reservada = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        long notas = nfceRepository.count();
+        NfceConfiguration.Idempotencia idempotencia = nfceConfiguration.getIdempotencia();
+        long tempoMaximo = idempotencia.getTempoMaximoProcessamentoMs();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<IdempotenciaService.Resultado<NfceResponseDto>> abandonada = executor.submit(() ->
+                    idempotenciaService.executar(chave, List.of(false, request), NfceResponseDto.class, () -> {
+                        reservada.countDown();
+                        aguardar(liberar);
+                        return nfceService.criarNfce(request);
+                    }));
+            assertTrue(reservada.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+            idempotencia.setTempoMaximoProcessamentoMs(0);
+            AtomicInteger execucoes = new AtomicInteger();
+            IdempotenciaService.Resultado<NfceResponseDto> assumida = criar(novaInstancia(), chave, request, execucoes);
+            assertFalse(assumida.repetida());
+            idempotencia.setTempoMaximoProcessamentoMs(tempoMaximo);
+
+            liberar.countDown();
+            ExecutionException recusa = assertThrows(ExecutionException.class,
+                    () -> abandonada.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            assertInstanceOf(IllegalStateException.class, recusa.getCause());
+
+            // A emissão de quem perdeu a chave foi desfeita e a resposta gravada é a de quem a assumiu
+            assertEquals(notas + 1, nfceRepository.count());
+            IdempotenciaService.Resultado<NfceResponseDto> repetida = criar(novaInstancia(), chave, request, execucoes);
+            assertTrue(repetida.repetida());
+            assertEquals(assumida.corpo().getId(), repetida.corpo().getId());
+            assertEquals(1, execucoes.get());
+        } finally {
+            idempotencia.setTempoMaximoProcessamentoMs(tempoMaximo);
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void deveLiberarAChaveQuandoAEmissaoFalha() {
+        String chave = UUID.randomUUID().toString();
+        NfceRequestDto request = requisicaoSemNumero(1);
+
+        assertThrows(IllegalArgumentException.class, () -> idempotenciaService.executar(chave,
+                List.of(false, request), NfceResponseDto.class, () -> {
+                    throw new IllegalArgumentException("Série inválida");
+                }));
+        assertTrue(requisicaoIdempotenteRepository.findById(chave).isEmpty());
+
+        AtomicInteger execucoes = new AtomicInteger();
+        assertFalse(criar(idempotenciaService, chave, request, execucoes).repetida());
+        assertEquals(1, execucoes.get());
+    }
+
+    @Test
+    void deveAgendarAEmissaoAssincronaSoDepoisDoCommit() throws Exception {
+        String chave = UUID.randomUUID().toString();
+        NfceRequestDto request = requisicaoSemNumero(2);
+
+        IdempotenciaService.Resultado<ProcessamentoNfce> recebida = idempotenciaService.executar(chave,
+                List.of(true, request), ProcessamentoNfce.class, () -> emissaoAssincronaService.receber(request));
+        IdempotenciaService.Resultado<ProcessamentoNfce> repetida = idempotenciaService.executar(chave,
+                List.of(true, request), ProcessamentoNfce.class, () -> emissaoAssincronaService.receber(request));
+
+        assertTrue(repetida.repetida());
+        assertEquals(recebida.corpo().getNfceId(), repetida.corpo().getNfceId());
+        long limite = System.currentTimeMillis() + TIMEOUT_MS;
+        ProcessamentoNfce processamento = emissaoAssincronaService.consultar(recebida.corpo().getNfceId());
+        while (!processamento.getEtapa().isFinal() && System.currentTimeMillis() < limite) {
+            Thread.sleep(20);
+            processamento = emissaoAssincronaService.consultar(recebida.corpo().getNfceId());
+        }
+        assertEquals(ProcessamentoNfce.Etapa.TRANSMITIDA, processamento.getEtapa(), processamento.getMensagemErro());
+        assertNull(processamento.getMensagemErro());
+    }
+
+    private IdempotenciaService.Resultado<NfceResponseDto> criar(IdempotenciaService servico, String chave,
+                                                                 NfceRequestDto request, AtomicInteger execucoes) {
+        return servico.executar(chave, List.of(false, request), NfceResponseDto.class, () -> {
+            execucoes.incrementAndGet();
+            return nfceService.criarNfce(request);
+        });
+    }
+
+    private IdempotenciaService novaInstancia() {
+        return new IdempotenciaService(requisicaoIdempotenteRepository, transactionManager, objectMapper,
+                nfceConfiguration);
+    }
+
+    private static void aguardar(CountDownLatch liberar) {
+        try {
+            if (!liberar.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Emissão não liberada");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static NfceRequestDto requisicaoSemNumero(int quantidadeItens) {
+        NfceRequestDto request = NfceFixtures.requisicao(quantidadeItens);
+        request.setNumero(null);
+        return request;
+    }
+}
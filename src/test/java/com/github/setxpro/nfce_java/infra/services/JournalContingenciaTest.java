@@ -0,0 +1,194 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.services.contingencia.JournalContingencia;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Journal de contingência: releitura, confirmação e recuperação depois de uma queda no meio da escrita,
+ * simulada truncando ou corrompendo uma cópia do arquivo.
+ */
+class JournalContingenciaTest {
+
+    @TempDir
+    Path diretorio;
+
+    @Test
+    void deveReabrirComAsNotasNaoConfirmadasNaOrdemDeGravacao() throws IOException {
+        Path arquivo = diretorio.resolve("contingencia.journal");
+        try (JournalContingencia journal = new JournalContingencia(arquivo)) {
+            journal.anexar(List.of(nota(1), nota(2)));
+            journal.anexar(List.of(nota(3)));
+            journal.confirmar(List.of(chave(2)));
+        }
+
+        try (JournalContingencia journal = new JournalContingencia(arquivo)) {
+            assertEquals(0, journal.bytesDescartados());
+            assertEquals(List.of(nota(1), nota(3)), journal.pendentes(10));
+            assertEquals(List.of(nota(1)), journal.pendentes(1));
+        }
+    }
+
+    @Test
+    void deveIdentificarAsNotasPelaChaveDeAcesso() throws IOException {
+        Path arquivo = diretorio.resolve("contingencia.journal");
+        JournalContingencia.Nota regravada = new JournalContingencia.Nota(chave(1), nota(1).xml() + "<!-- 2 -->");
+        try (JournalContingencia journal = new JournalContingencia(arquivo)) {
+            journal.anexar(List.of(nota(1), nota(2)));
+            journal.anexar(List.of(regravada));
+            assertEquals(2, journal.quantidadePendentes());
+        }
+
+        try (JournalContingencia journal = new JournalContingencia(arquivo)) {
+            assertEquals(List.of(regravada, nota(2)), journal.pendentes(10));
+            journal.confirmar(List.of(chave(2), chave(3)));
+        }
+        try (JournalContingencia journal = new JournalContingencia(arquivo)) {
+            assertEquals(List.of(regravada), journal.pendentes(10));
+        }
+    }
+
+    @Test
+    void deveDescartarORegistroInterrompidoEmQualquerPontoDaEscrita() throws IOException {
+        Path arquivo = diretorio.resolve("contingencia.journal");
+        long fimDaSegunda;
+        long fimDaTerceira;
+        try (JournalContingencia journal = new JournalContingencia(arquivo)) {
+            journal.anexar(List.of(nota(1), nota(2)));
+            fimDaSegunda = journal.tamanho();
+            journal.anexar(List.of(nota(3)));
+            fimDaTerceira = journal.tamanho();
+        }
+
+        Path copia = diretorio.resolve("queda.journal");
+        for (long corte = fimDaSegunda + 1; corte < fimDaTerceira; corte++) {
+            Files.copy(arquivo, copia, StandardCopyOption.REPLACE_EXISTING);
+            truncar(copia, corte);
+
+            try (JournalContingencia journal = new JournalContingencia(copia)) {
+                assertEquals(List.of(nota(1), nota(2)), journal.pendentes(10), "corte em " + corte);
+                assertEquals(corte - fimDaSegunda, journal.bytesDescartados());
+                assertEquals(fimDaSegunda, Files.size(copia));
+
+                journal.anexar(List.of(nota(4)));
+            }
+            try (JournalContingencia journal = new JournalContingencia(copia)) {
+                assertEquals(List.of(nota(1), nota(2), nota(4)), journal.pendentes(10), "corte em " + corte);
+            }
+        }
+    }
+
+    @Test
+    void deveDescartarORegistroFinalComCrcInvalido() throws IOException {
+        Path arquivo = diretorio.resolve("contingencia.journal");
+        long fimDaPrimeira;
+        try (JournalContingencia journal = new JournalContingencia(arquivo)) {
+            journal.anexar(List.of(nota(1)));
+            fimDaPrimeira = journal.tamanho();
+            journal.anexar(List.of(nota(2)));
+        }
+
+        try (RandomAccessFile acesso = new RandomAccessFile(arquivo.toFile(), "rw")) {
+            long posicao = acesso.length() - 3;
+            acesso.seek(posicao);
+            int original = acesso.read();
+            acesso.seek(posicao);
+            acesso.write(original ^ 0x01);
+        }
+
+        try (JournalContingencia journal = new JournalContingencia(arquivo)) {
+            assertEquals(List.of(nota(1)), journal.pendentes(10));
+            assertEquals(fimDaPrimeira, Files.size(arquivo));
+        }
+    }
+
+    @Test
+    void deveRecriarOCabecalhoInterrompidoERecusarArquivoDesconhecido() throws IOException {
+        Path cabecalhoIncompleto = diretorio.resolve("novo.journal");
+        Files.write(cabecalhoIncompleto, new byte[]{0x4E, 0x46, 0x43});
+        try (JournalContingencia journal = new JournalContingencia(cabecalhoIncompleto)) {
+            assertEquals(3, journal.bytesDescartados());
+            journal.anexar(List.of(nota(1)));
+        }
+        try (JournalContingencia journal = new JournalContingencia(cabecalhoIncompleto)) {
+            assertEquals(List.of(nota(1)), journal.pendentes(10));
+        }
+
+        Path outro = diretorio.resolve("outro.journal");
+        Files.writeString(outro, "não é um journal");
+        assertThrows(IOException.class, () -> new JournalContingencia(outro));
+    }
+
+    @Test
+    void deveVoltarAoCabecalhoQuandoTodasAsNotasForemConfirmadas() throws IOException {
+        Path arquivo = diretorio.resolve("contingencia.journal");
+        try (JournalContingencia journal = new JournalContingencia(arquivo)) {
+            journal.anexar(List.of(nota(1), nota(2), nota(3)));
+            journal.confirmar(List.of(chave(1), chave(2)));
+            journal.confirmar(List.of(chave(3)));
+
+            assertEquals(0, journal.quantidadePendentes());
+            assertEquals(Long.BYTES, Files.size(arquivo));
+        }
+    }
+
+    @Test
+    void deveGravarUmBlocoComUmFsyncEManterEscritasConcorrentes() throws Exception {
+        Path arquivo = diretorio.resolve("contingencia.journal");
+        try (JournalContingencia journal = new JournalContingencia(arquivo)) {
+            journal.anexar(IntStream.rangeClosed(1, 50).mapToObj(JournalContingenciaTest::nota).toList());
+            assertEquals(1, journal.fsyncs());
+
+            List<Future<?>> gravacoes = new ArrayList<>();
+            try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+                for (int i = 51; i <= 450; i++) {
+                    JournalContingencia.Nota nota = nota(i);
+                    gravacoes.add(executor.submit(() -> {
+                        journal.anexar(List.of(nota));
+                        return null;
+                    }));
+                }
+            }
+            for (Future<?> gravacao : gravacoes) {
+                gravacao.get();
+            }
+            assertEquals(450, journal.quantidadePendentes());
+        }
+
+        try (JournalContingencia journal = new JournalContingencia(arquivo)) {
+            assertEquals(0, journal.bytesDescartados());
+            assertEquals(450, journal.pendentes(1000).size());
+        }
+    }
+
+    private static JournalContingencia.Nota nota(int numero) {
+        String chave = chave(numero);
+        return new JournalContingencia.Nota(chave, "<NFe><infNFe Id=\"NFe" + chave + "\">"
+                + "<xJust>SEFAZ indisponível - contingência</xJust></infNFe></NFe>");
+    }
+
+    private static String chave(int numero) {
+        return String.format("3524011234567800019565001%09d9%08d0", numero, numero);
+    }
+
+    private static void truncar(Path arquivo, long tamanho) throws IOException {
+        try (RandomAccessFile acesso = new RandomAccessFile(arquivo.toFile(), "rw")) {
+            acesso.setLength(tamanho);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.services.sefaz.DisjuntorSefaz;
+import com.github.setxpro.nfce_java.infra.services.sefaz.MensagemSefaz;
+import com.github.setxpro.nfce_java.infra.services.sefaz.RetornoSefaz;
+import com.github.setxpro.nfce_java.infra.services.sefaz.SefazSimulada;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Disjuntor, monitor de status e contingência automática contra a {@link SefazSimulada} caindo, paralisada e
+ * oscilando.
+ */
+class MonitorSefazServiceTest {
+
+    private static final String CONSULTA = MensagemSefaz.consReciNFe(2, "351000000000001");
+
+    @TempDir
+    Path diretorio;
+
+    private NfceConfiguration configuracao;
+    private SefazSimulada sefaz;
+    private ComunicacaoSefazService comunicacaoSefazService;
+    private ContingenciaService contingenciaService;
+    private MonitorSefazService monitorSefazService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        sefaz = new SefazSimulada(0, new SefazSimulada.Parametros(Duration.ZERO, Duration.ZERO, 0));
+
+        configuracao = NfceFixtures.configuracao();
+        configuracao.getCertificado().setPath("");
+        configuracao.getWebservice().setSemAutenticacaoCliente(true);
+        configuracao.getWebservice().getUrl().setStatusServico(sefaz.url("/ws/nfcestatusservico.asmx"));
+        configuracao.getWebservice().getDisjuntor().setFalhasParaAbrir(3);
+        configuracao.getWebservice().getDisjuntor().setTempoAbertoMs(5_000);
+        configuracao.getWebservice().getDisjuntor().setTempoAbertoMaximoMs(20_000);
+        configuracao.getMonitor().setIntervaloMinimoMs(50);
+        configuracao.getMonitor().setIntervaloMaximoMs(400);
+        configuracao.getContingencia().setJournal(diretorio.resolve("contingencia.journal").toString());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (monitorSefazService != null) {
+            monitorSefazService.encerrar();
+        }
+        if (comunicacaoSefazService != null) {
+            comunicacaoSefazService.encerrar();
+        }
+        if (contingenciaService != null) {
+            contingenciaService.encerrar();
+        }
+        sefaz.close();
+    }
+
+    @Test
+    void deveGuardarOStatusDoServicoConsultado() {
+        criarServicos();
+        assertNull(monitorSefazService.statusServico());
+
+        MonitorSefazService.StatusServico status = monitorSefazService.verificar();
+
+        assertTrue(status.disponivel());
+        assertEquals(RetornoSefaz.SERVICO_EM_OPERACAO, status.cStat());
+        assertEquals(1, status.tempoMedioSegundos());
+        assertSame(status, monitorSefazService.statusServico());
+        assertSame(status, monitorSefazService.situacao().statusServico());
+        assertEquals(1, sefaz.requisicoesStatus());
+        assertEquals(DisjuntorSefaz.Estado.FECHADO, comunicacaoSefazService.disjuntor().estado());
+        assertEquals(400, monitorSefazService.situacao().intervaloConsultaMs());
+    }
+
+    @Test
+    void deveAbrirODisjuntorERecusarNaHoraComAContingenciaLigada() throws IOException {
+        configuracao.getMonitor().setHabilitado(true);
+        criarServicos();
+        sefaz.disponibilidade(SefazSimulada.Disponibilidade.FORA_DO_AR);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IOException.class, this::consultar);
+        }
+        DisjuntorSefaz.Metricas aberto = comunicacaoSefazService.disjuntor().metricas();
+        assertEquals(DisjuntorSefaz.Estado.ABERTO, aberto.estado());
+        assertTrue(contingenciaService.isAtiva());
+        assertTrue(monitorSefazService.situacao().contingenciaAutomatica());
+
+        IOException recusa = assertThrows(IOException.class, this::consultar);
+        assertTrue(recusa.getMessage().contains("disjuntor ABERTO"), recusa.getMessage());
+        assertEquals(3, sefaz.requisicoesRecusadas());
+        assertEquals(1, comunicacaoSefazService.disjuntor().metricas().chamadasRecusadas());
+
+        // O monitor passa por fora do disjuntor aberto e o mantém aberto enquanto a SEFAZ não volta
+        assertFalse(monitorSefazService.verificar().disponivel());
+        assertEquals(50, monitorSefazService.situacao().intervaloConsultaMs());
+        assertFalse(monitorSefazService.verificar().disponivel());
+        assertEquals(100, monitorSefazService.situacao().intervaloConsultaMs());
+        assertEquals(5, sefaz.requisicoesRecusadas());
+
+        sefaz.disponibilidade(SefazSimulada.Disponibilidade.OPERANDO);
+        assertTrue(monitorSefazService.verificar().disponivel());
+
+        assertEquals(DisjuntorSefaz.Estado.FECHADO, comunicacaoSefazService.disjuntor().estado());
+        assertFalse(contingenciaService.isAtiva());
+        assertFalse(monitorSefazService.situacao().contingenciaAutomatica());
+        assertEquals("106", consultar().cStat());
+        assertEquals(Map.of("FECHADO->ABERTO", 1L, "ABERTO->FECHADO", 1L),
+                comunicacaoSefazService.disjuntor().metricas().transicoes());
+    }
+
+    @Test
+    void naoDeveLigarAContingenciaComOMonitorDesabilitado() {
+        configuracao.getMonitor().setHabilitado(false);
+        criarServicos();
+        sefaz.disponibilidade(SefazSimulada.Disponibilidade.FORA_DO_AR);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IOException.class, this::consultar);
+        }
+
+        assertEquals(DisjuntorSefaz.Estado.ABERTO, comunicacaoSefazService.disjuntor().estado());
+        assertFalse(contingenciaService.isAtiva());
+        assertFalse(monitorSefazService.situacao().contingenciaAutomatica());
+    }
+
+    @Test
+    void deveSondarComUmaChamadaEDobrarOTempoAbertoQuandoElaFalha() throws Exception {
+        configuracao.getWebservice().getDisjuntor().setTempoAbertoMs(100);
+        criarServicos();
+        sefaz.disponibilidade(SefazSimulada.Disponibilidade.FORA_DO_AR);
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IOException.class, this::consultar);
+        }
+
+        Thread.sleep(150);
+        assertThrows(IOException.class, this::consultar);
+        assertEquals(4, sefaz.requisicoesRecusadas());
+        DisjuntorSefaz.Metricas reaberto = comunicacaoSefazService.disjuntor().metricas();
+        assertEquals(DisjuntorSefaz.Estado.ABERTO, reaberto.estado());
+        assertEquals(200, reaberto.tempoAbertoMs());
+
+        sefaz.disponibilidade(SefazSimulada.Disponibilidade.OPERANDO);
+        Thread.sleep(250);
+        assertEquals("106", consultar().cStat());
+
+        DisjuntorSefaz.Metricas fechado = comunicacaoSefazService.disjuntor().metricas();
+        assertEquals(DisjuntorSefaz.Estado.FECHADO, fechado.estado());
+        assertEquals(100, fechado.tempoAbertoMs());
+        assertEquals(Map.of("FECHADO->ABERTO", 1L, "ABERTO->MEIO_ABERTO", 2L, "MEIO_ABERTO->ABERTO", 1L,
+                "MEIO_ABERTO->FECHADO", 1L), fechado.transicoes());
+        assertFalse(contingenciaService.isAtiva());
+    }
+
+    @Test
+    void deveTratarServicoParalisadoComoIndisponivelEManterAContingenciaDaApi() {
+        criarServicos();
+        contingenciaService.ativar("Contingência ligada pelo operador da loja");
+        sefaz.disponibilidade(SefazSimulada.Disponibilidade.PARALISADA);
+
+        MonitorSefazService.StatusServico status = monitorSefazService.verificar();
+        assertFalse(status.disponivel());
+        assertEquals(RetornoSefaz.SERVICO_PARALISADO, status.cStat());
+        assertEquals(DisjuntorSefaz.Estado.ABERTO, comunicacaoSefazService.disjuntor().estado());
+        assertFalse(monitorSefazService.situacao().contingenciaAutomatica());
+
+        sefaz.disponibilidade(SefazSimulada.Disponibilidade.OPERANDO);
+        monitorSefazService.verificar();
+
+        assertEquals(DisjuntorSefaz.Estado.FECHADO, comunicacaoSefazService.disjuntor().estado());
+        assertTrue(contingenciaService.isAtiva());
+        assertEquals("Contingência ligada pelo operador da loja", contingenciaService.situacao().justificativa());
+    }
+
+    @Test
+    void deveAcompanharUmaSefazOscilando() throws Exception {
+        configuracao.getMonitor().setHabilitado(true);
+        configuracao.getWebservice().getDisjuntor().setTempoAbertoMs(50);
+        configuracao.getWebservice().getDisjuntor().setTempoAbertoMaximoMs(200);
+        criarServicos();
+        monitorSefazService.iniciar();
+        aguardar(() -> sefaz.requisicoesStatus() > 0);
+
+        sefaz.oscilar(Duration.ofMillis(150));
+        int chamadas = 0;
+        long fim = System.nanoTime() + Duration.ofMillis(1_500).toNanos();
+        while (System.nanoTime() < fim) {
+            try {
+                consultar();
+            } catch (IOException e) {
+                // SEFAZ fora do ar ou disjuntor aberto
+            }
+            chamadas++;
+            Thread.sleep(5);
+        }
+        sefaz.disponibilidade(SefazSimulada.Disponibilidade.OPERANDO);
+        aguardar(() -> comunicacaoSefazService.disjuntor().estado() == DisjuntorSefaz.Estado.FECHADO
+                && monitorSefazService.statusServico().disponivel());
+
+        DisjuntorSefaz.Metricas metricas = comunicacaoSefazService.disjuntor().metricas();
+        assertTrue(metricas.transicoes().getOrDefault("FECHADO->ABERTO", 0L) >= 1, metricas.toString());
+        assertTrue(metricas.chamadasRecusadas() > 0, metricas.toString());
+        assertTrue(sefaz.requisicoesRecusadas() < chamadas,
+                "503: " + sefaz.requisicoesRecusadas() + ", chamadas: " + chamadas);
+        assertTrue(monitorSefazService.situacao().consultas() > 1);
+        assertFalse(contingenciaService.isAtiva());
+        assertFalse(monitorSefazService.situacao().contingenciaAutomatica());
+    }
+
+    private void criarServicos() {
+        CertificadoDigitalService certificadoDigitalService =
+                new CertificadoDigitalService(configuracao, new DefaultResourceLoader());
+        comunicacaoSefazService =
+                new ComunicacaoSefazService(configuracao, certificadoDigitalService, new DefaultResourceLoader());
+        contingenciaService = new ContingenciaService(configuracao);
+        monitorSefazService = new MonitorSefazService(comunicacaoSefazService, contingenciaService, configuracao);
+    }
+
+    private RetornoSefaz consultar() throws IOException {
+        return RetornoSefaz.ler(comunicacaoSefazService.enviar(sefaz.url("/ws/nfceretautorizacao.asmx"),
+                MensagemSefaz.ACAO_RET_AUTORIZACAO, CONSULTA));
+    }
+
+    private static void aguardar(BooleanSupplier condicao) throws InterruptedException {
+        long limite = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condicao.getAsBoolean()) {
+            if (System.nanoTime() > limite) {
+                throw new AssertionError("Condição não atingida em 10 s");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
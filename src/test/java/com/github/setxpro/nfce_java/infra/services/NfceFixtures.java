@@ -0,0 +1,273 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceRequestDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.ItemNfce;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.PagamentoNfce;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Notas determinísticas usadas pelos testes e benchmarks.
+ */
+public final class NfceFixtures {
+
+    public static final LocalDateTime DATA_EMISSAO = LocalDateTime.of(2024, 1, 15, 10, 30, 0);
+    public static final String CNPJ_EMITENTE = "12345678000195";
+
+    private NfceFixtures() {
+    }
+
+    public static NfceConfiguration configuracao() {
+        NfceConfiguration configuracao = new NfceConfiguration();
+        configuracao.setAmbiente("homologacao");
+        configuracao.setUf(35);
+        configuracao.setSerie(1);
+        configuracao.setNumeroInicial(1);
+        configuracao.setFusoHorario("America/Sao_Paulo");
+        configuracao.getQrcode().getUrl().setConsulta("https://www.fazenda.sp.gov.br/nfce/qrcode");
+        return configuracao;
+    }
+
+    /**
+     * Monta uma NFC-e com a quantidade de itens informada. Itens pares recebem desconto, a cada
+     * cinco itens um deles tem PIS/COFINS e notas com mais de um item têm destinatário e cartão.
+     */
+    public static Nfce nota(int quantidadeItens) {
+        Nfce nfce = new Nfce();
+        nfce.setId((long) quantidadeItens);
+        nfce.setNumero(1000 + quantidadeItens);
+        nfce.setSerie(1);
+        nfce.setDataEmissao(DATA_EMISSAO);
+        nfce.setNaturezaOperacao("Venda de mercadoria");
+        nfce.setTipoOperacao(Nfce.TipoOperacao.SAIDA);
+        nfce.setFinalidadeEmissao(Nfce.FinalidadeEmissao.NORMAL);
+        nfce.setFormaPagamento(Nfce.FormaPagamento.PAGAMENTO_A_VISTA);
+        nfce.setAmbiente(Nfce.Ambiente.HOMOLOGACAO);
+        nfce.setStatus(Nfce.StatusNfce.RASCUNHO);
+
+        nfce.setEmitenteCnpj(CNPJ_EMITENTE);
+        nfce.setEmitenteRazaoSocial("EMPRESA EXEMPLO & FILHOS LTDA");
+        nfce.setEmitenteNomeFantasia("Loja <Exemplo>");
+        nfce.setEmitenteLogradouro("Rua das Flores");
+        nfce.setEmitenteNumero("123");
+        nfce.setEmitenteBairro("Centro");
+        nfce.setEmitenteMunicipio("São Paulo");
+        nfce.setEmitenteUf("SP");
+        nfce.setEmitenteCep("01234567");
+        nfce.setEmitenteCodigoMunicipio(3550308);
+        nfce.setEmitenteInscricaoEstadual("123456789012");
+        nfce.setEmitenteRegimeTributario(Nfce.RegimeTributario.SIMPLES_NACIONAL);
+
+        if (quantidadeItens > 1) {
+            nfce.setDestinatarioCpfCnpj(quantidadeItens % 2 == 0 ? "12345678901" : "98765432000198");
+            nfce.setDestinatarioNome("JOÃO D'ÁVILA \"JR\"");
+        }
+
+        BigDecimal totalProdutos = BigDecimal.ZERO;
+        BigDecimal totalDesconto = BigDecimal.ZERO;
+        BigDecimal totalBaseIcms = BigDecimal.ZERO;
+        BigDecimal totalIcms = BigDecimal.ZERO;
+        BigDecimal totalPis = BigDecimal.ZERO;
+        BigDecimal totalCofins = BigDecimal.ZERO;
+
+        for (int i = 1; i <= quantidadeItens; i++) {
+            ItemNfce item = item(nfce, i);
+            nfce.getItens().add(item);
+
+            totalProdutos = totalProdutos.add(item.getValorTotalBruto());
+            if (item.getValorDesconto() != null) {
+                totalDesconto = totalDesconto.add(item.getValorDesconto());
+            }
+            if (item.getBaseCalculoIcms() != null) {
+                totalBaseIcms = totalBaseIcms.add(item.getBaseCalculoIcms());
+            }
+            if (item.getValorIcms() != null) {
+                totalIcms = totalIcms.add(item.getValorIcms());
+            }
+            if (item.getValorPis() != null) {
+                totalPis = totalPis.add(item.getValorPis());
+                totalCofins = totalCofins.add(item.getValorCofins());
+            }
+        }
+
+        BigDecimal totalNota = totalProdutos.subtract(totalDesconto);
+        nfce.setValorTotalProdutos(totalProdutos);
+        nfce.setValorDesconto(totalDesconto);
+        nfce.setBaseCalculoIcms(totalBaseIcms);
+        nfce.setValorIcms(totalIcms);
+        nfce.setValorTotalNota(totalNota);
+        nfce.setValorFrete(BigDecimal.ZERO);
+        nfce.setValorSeguro(BigDecimal.ZERO);
+        nfce.setOutrasDespesas(BigDecimal.ZERO);
+        nfce.setBaseCalculoIcmsSt(BigDecimal.ZERO);
+        nfce.setValorIcmsSt(BigDecimal.ZERO);
+        nfce.setValorPis(totalPis);
+        nfce.setValorCofins(totalCofins);
+
+        if (quantidadeItens > 1) {
+            BigDecimal valorCartao = totalNota.divide(BigDecimal.valueOf(2), 2, RoundingMode.DOWN);
+            nfce.getPagamentos().add(pagamento(nfce, PagamentoNfce.MeioPagamento.CARTAO_CREDITO, valorCartao, true));
+            nfce.getPagamentos().add(pagamento(nfce, PagamentoNfce.MeioPagamento.DINHEIRO,
+                    totalNota.subtract(valorCartao), false));
+        } else {
+            nfce.getPagamentos().add(pagamento(nfce, PagamentoNfce.MeioPagamento.DINHEIRO, totalNota, false));
+        }
+
+        nfce.setChaveAcesso(new ChaveAcessoService().gerarChaveAcesso(35, DATA_EMISSAO, CNPJ_EMITENTE, "65",
+                nfce.getSerie(), nfce.getNumero(), 1, 12345678));
+        nfce.setUrlConsulta("https://www.fazenda.sp.gov.br/nfce/qrcode?p=" + nfce.getChaveAcesso());
+        nfce.setQrCode(nfce.getUrlConsulta());
+
+        return nfce;
+    }
+
+    /**
+     * Requisição equivalente à recebida pelo endpoint de criação, com a quantidade de itens informada.
+     */
+    public static NfceRequestDto requisicao(int quantidadeItens) {
+        NfceRequestDto request = new NfceRequestDto();
+        request.setNumero(1000 + quantidadeItens);
+        request.setSerie(1);
+        request.setNaturezaOperacao("Venda de mercadoria");
+
+        NfceRequestDto.EmitenteDto emitente = new NfceRequestDto.EmitenteDto();
+        emitente.setCnpj(CNPJ_EMITENTE);
+        emitente.setRazaoSocial("EMPRESA EXEMPLO LTDA");
+        emitente.setNomeFantasia("Loja Exemplo");
+        emitente.setLogradouro("Rua das Flores");
+        emitente.setNumero("123");
+        emitente.setBairro("Centro");
+        emitente.setMunicipio("São Paulo");
+        emitente.setUf("SP");
+        emitente.setCep("01234567");
+        emitente.setCodigoMunicipio(3550308);
+        emitente.setInscricaoEstadual("123456789012");
+        emitente.setRegimeTributario(NfceRequestDto.RegimeTributarioDto.SIMPLES_NACIONAL);
+        request.setEmitente(emitente);
+
+        if (quantidadeItens > 1) {
+            NfceRequestDto.DestinatarioDto destinatario = new NfceRequestDto.DestinatarioDto();
+            destinatario.setCpfCnpj("12345678901");
+            destinatario.setNome("JOAO DA SILVA");
+            request.setDestinatario(destinatario);
+        }
+
+        List<NfceRequestDto.ItemDto> itens = new ArrayList<>(quantidadeItens);
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 1; i <= quantidadeItens; i++) {
+            NfceRequestDto.ItemDto item = new NfceRequestDto.ItemDto();
+            item.setNumeroItem(i);
+            item.setCodigoProduto("PROD" + String.format("%05d", i));
+            item.setDescricao("Produto de Exemplo " + i);
+            item.setNcm(i % 3 == 0 ? "21069090" : "19059090");
+            item.setCfop("5102");
+            item.setUnidadeComercial("UN");
+            item.setQuantidadeComercial(BigDecimal.valueOf(1 + i % 3));
+            item.setValorUnitarioComercial(new BigDecimal("3.99").add(BigDecimal.valueOf(i % 50, 1)));
+            item.setOrigemMercadoria(NfceRequestDto.OrigemMercadoriaDto.NACIONAL);
+            BigDecimal bruto = item.getQuantidadeComercial().multiply(item.getValorUnitarioComercial());
+            if (i % 2 == 0) {
+                item.setValorDesconto(new BigDecimal("0.50"));
+                bruto = bruto.subtract(item.getValorDesconto());
+            }
+            if (i % 3 == 0) {
+                item.setCstIcms("102");
+            } else {
+                item.setCstIcms("000");
+                item.setModalidadeBcIcms(3);
+                item.setBaseCalculoIcms(item.getQuantidadeComercial().multiply(item.getValorUnitarioComercial()));
+                item.setAliquotaIcms(new BigDecimal("18.00"));
+            }
+            total = total.add(bruto);
+            itens.add(item);
+        }
+        request.setItens(itens);
+
+        NfceRequestDto.PagamentoDto pagamento = new NfceRequestDto.PagamentoDto();
+        pagamento.setMeioPagamento(NfceRequestDto.MeioPagamentoDto.DINHEIRO);
+        pagamento.setValor(total);
+        request.setPagamentos(List.of(pagamento));
+
+        return request;
+    }
+
+    private static ItemNfce item(Nfce nfce, int numero) {
+        ItemNfce item = new ItemNfce();
+        item.setNfce(nfce);
+        item.setNumeroItem(numero);
+        item.setCodigoProduto("PROD" + String.format("%05d", numero));
+        item.setDescricao(numero % 7 == 0 ? "Café & Pão <promoção>" : "Produto de Exemplo " + numero);
+        item.setNcm(numero % 3 == 0 ? "21069090" : "19059090");
+        item.setCfop("5102");
+        item.setUnidadeComercial(numero % 4 == 0 ? "KG" : "UN");
+
+        BigDecimal quantidade = numero % 4 == 0
+                ? new BigDecimal("1.375")
+                : BigDecimal.valueOf(1 + numero % 3);
+        BigDecimal valorUnitario = new BigDecimal("3.99").add(BigDecimal.valueOf(numero % 50, 1));
+        BigDecimal valorBruto = quantidade.multiply(valorUnitario);
+
+        item.setQuantidadeComercial(quantidade);
+        item.setValorUnitarioComercial(valorUnitario);
+        item.setValorTotalBruto(valorBruto);
+        item.setUnidadeTributavel(item.getUnidadeComercial());
+        item.setQuantidadeTributavel(quantidade);
+        item.setValorUnitarioTributavel(valorUnitario);
+        item.setIncluiNoTotal(ItemNfce.IncluiNoTotal.SIM);
+        item.setOrigemMercadoria(ItemNfce.OrigemMercadoria.NACIONAL);
+
+        if (numero % 2 == 0) {
+            item.setValorDesconto(new BigDecimal("0.50"));
+        }
+
+        if (numero % 3 == 0) {
+            item.setCstIcms("102");
+        } else {
+            item.setCstIcms("00");
+            item.setModalidadeBcIcms(3);
+            item.setBaseCalculoIcms(valorBruto.setScale(2, RoundingMode.HALF_UP));
+            item.setAliquotaIcms(new BigDecimal("18.00"));
+            item.setValorIcms(item.getBaseCalculoIcms().multiply(item.getAliquotaIcms())
+                    .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP));
+        }
+
+        if (numero % 5 == 0) {
+            BigDecimal base = valorBruto.setScale(2, RoundingMode.HALF_UP);
+            item.setCstPis("01");
+            item.setBaseCalculoPis(base);
+            item.setAliquotaPis(new BigDecimal("1.6500"));
+            item.setValorPis(base.multiply(item.getAliquotaPis())
+                    .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP));
+            item.setCstCofins("01");
+            item.setBaseCalculoCofins(base);
+            item.setAliquotaCofins(new BigDecimal("7.6000"));
+            item.setValorCofins(base.multiply(item.getAliquotaCofins())
+                    .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP));
+        } else if (numero % 5 == 1) {
+            item.setCstPis("07");
+            item.setCstCofins("07");
+        }
+
+        return item;
+    }
+
+    private static PagamentoNfce pagamento(Nfce nfce, PagamentoNfce.MeioPagamento meio, BigDecimal valor,
+                                           boolean cartao) {
+        PagamentoNfce pagamento = new PagamentoNfce();
+        pagamento.setNfce(nfce);
+        pagamento.setMeioPagamento(meio);
+        pagamento.setValor(valor);
+        if (cartao) {
+            pagamento.setCnpjCredenciadora("01425787000104");
+            pagamento.setBandeiraOperadora("01");
+            pagamento.setNumeroAutorizacao("A1B2C3");
+        }
+        return pagamento;
+    }
+}
@@ -0,0 +1,152 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceRequestDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * As transições rodam em transações próprias, inclusive concorrentes, por isso o teste não abre transação.
+ */
+@DataJpaTest
+@Import({NfceService.class, NumeracaoService.class, ReservaNumeracaoService.class, ChaveAcessoService.class,
+        QrCodeService.class, XmlService.class, AssinaturaDigitalService.class, CertificadoDigitalService.class,
+        ContingenciaService.class, TributacaoService.class, NfceConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class NfceServiceTest {
+
+    @DynamicPropertySource
+    static void certificado(DynamicPropertyRegistry registry) {
+        CertificadoTesteFactory.registrar(registry);
+    }
+
+    @Autowired
+    private NfceService nfceService;
+
+    @Autowired
+    private NfceRepository nfceRepository;
+
+    @Autowired
+    private NfceConfiguration nfceConfiguration;
+
+    @Autowired
+    private CertificadoDigitalService certificadoDigitalService;
+
+    @Test
+    void devePercorrerAsTransicoesIncrementandoAVersao() {
+        Long id = nfceService.criarNfce(requisicaoSemNumero()).getId();
+        long versaoInicial = nfceRepository.findById(id).orElseThrow().getVersao();
+
+        assertEquals("ASSINADA", nfceService.assinarNfce(id).getStatus());
+        assertEquals("ENVIADA", nfceService.enviarNfce(id).getStatus());
+        assertNotNull(nfceService.autorizarNfce(id).getProtocoloAutorizacao());
+        assertEquals("CANCELADA", nfceService.cancelarNfce(id, "Cancelamento solicitado pelo cliente").getStatus());
+
+        assertEquals(versaoInicial + 4, nfceRepository.findById(id).orElseThrow().getVersao());
+    }
+
+    @Test
+    void deveRecusarTransicaoForaDeOrdemOuDeNotaInexistente() {
+        Long id = nfceService.criarNfce(requisicaoSemNumero()).getId();
+
+        assertThrows(IllegalStateException.class, () -> nfceService.enviarNfce(id));
+        assertThrows(IllegalStateException.class, () -> nfceService.autorizarNfce(id));
+        assertThrows(IllegalArgumentException.class, () -> nfceService.cancelarNfce(id, "curta"));
+        assertThrows(IllegalArgumentException.class, () -> nfceService.enviarNfce(Long.MAX_VALUE));
+        assertEquals(Nfce.StatusNfce.RASCUNHO, nfceRepository.findById(id).orElseThrow().getStatus());
+    }
+
+    @Test
+    void deveDeixarApenasUmaTransicaoConcorrenteVencer() throws Exception {
+        Long id = nfceService.criarNfce(requisicaoSemNumero()).getId();
+        nfceService.assinarNfce(id);
+
+        int chamadas = 8;
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<?>> resultados = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(chamadas)) {
+            for (int i = 0; i < chamadas; i++) {
+                resultados.add(executor.submit((Callable<?>) () -> {
+                    largada.await();
+                    return nfceService.enviarNfce(id);
+                }));
+            }
+            largada.countDown();
+        }
+
+        int sucessos = 0;
+        for (Future<?> resultado : resultados) {
+            try {
+                resultado.get();
+                sucessos++;
+            } catch (ExecutionException e) {
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+            }
+        }
+        assertEquals(1, sucessos);
+        assertEquals(Nfce.StatusNfce.ENVIADA, nfceRepository.findById(id).orElseThrow().getStatus());
+    }
+
+    @Test
+    void deveRecusarAtualizacaoDaEntidadeComVersaoDesatualizada() {
+        Long id = nfceService.criarNfce(requisicaoSemNumero()).getId();
+        Nfce copia = nfceRepository.findById(id).orElseThrow();
+
+        nfceService.assinarNfce(id);
+
+        copia.setNaturezaOperacao("ALTERADA");
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> nfceRepository.saveAndFlush(copia));
+    }
+
+    @Test
+    void deveManterEmRascunhoSemCertificadoEAssinarQuandoEleForCorrigido() {
+        Long id = nfceService.criarNfce(requisicaoSemNumero()).getId();
+        String path = nfceConfiguration.getCertificado().getPath();
+        try {
+            nfceConfiguration.getCertificado().setPath("file:/nao/existe/certificado.pfx");
+            certificadoDigitalService.recarregar();
+
+            assertThrows(IllegalStateException.class, () -> nfceService.assinarNfce(id));
+            assertEquals(Nfce.StatusNfce.RASCUNHO, nfceRepository.findById(id).orElseThrow().getStatus());
+            assertEquals("Certificado digital não encontrado em file:/nao/existe/certificado.pfx",
+                    nfceService.assinarLote(List.of(id)).get(0).erro());
+            assertEquals(Nfce.StatusNfce.RASCUNHO, nfceRepository.findById(id).orElseThrow().getStatus());
+        } finally {
+            nfceConfiguration.getCertificado().setPath(path);
+        }
+
+        // A falha não fica guardada: com o arquivo de volta a próxima chamada carrega o certificado
+        assertEquals("ASSINADA", nfceService.assinarNfce(id).getStatus());
+        assertTrue(nfceService.buscarXml(id).contains("<SignatureValue>"));
+    }
+
+    private static NfceRequestDto requisicaoSemNumero() {
+        NfceRequestDto request = NfceFixtures.requisicao(2);
+        request.setNumero(null);
+        return request;
+    }
+}
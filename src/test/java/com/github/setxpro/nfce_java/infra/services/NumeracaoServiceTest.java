@@ -0,0 +1,179 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.NumeracaoNaoUtilizada;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Fora de transação cada reserva abre a sua, por isso o teste não abre transação (exceto onde confere a
+ * reserva dentro da transação da emissão).
+ */
+@DataJpaTest(properties = "nfce.numeracao.tamanho-bloco=" + NumeracaoServiceTest.TAMANHO_BLOCO)
+@Import({ReservaNumeracaoService.class, NfceConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class NumeracaoServiceTest {
+
+    static final int TAMANHO_BLOCO = 10;
+
+    @Autowired
+    private NfceRepository nfceRepository;
+
+    @Autowired
+    private NfceConfiguration nfceConfiguration;
+
+    @Autowired
+    private ReservaNumeracaoService reservaNumeracaoService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void naoDeveRepetirNumerosEntreThreadsESeries() throws Exception {
+        NumeracaoService numeracaoService = novoServico();
+        List<Integer> series = List.of(11, 12, 13, 14);
+        int threads = 16;
+        int numerosPorThread = 125;
+
+        Map<Integer, Set<Integer>> emitidos = new ConcurrentHashMap<>();
+        series.forEach(serie -> emitidos.put(serie, ConcurrentHashMap.newKeySet()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<Integer>> duplicados = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                Integer serie = series.get(t % series.size());
+                duplicados.add(executor.submit(() -> {
+                    largada.await();
+                    int repetidos = 0;
+                    for (int i = 0; i < numerosPorThread; i++) {
+                        if (!emitidos.get(serie).add(numeracaoService.reservarNumero(serie))) {
+                            repetidos++;
+                        }
+                    }
+                    return repetidos;
+                }));
+            }
+            largada.countDown();
+
+            for (Future<Integer> futuro : duplicados) {
+                assertEquals(0, futuro.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int porSerie = threads / series.size() * numerosPorThread;
+        Set<Integer> esperados = IntStream.rangeClosed(1, porSerie).boxed().collect(Collectors.toSet());
+        for (Integer serie : series) {
+            assertEquals(esperados, emitidos.get(serie), "Numeração da série " + serie + " com falhas");
+        }
+    }
+
+    @Test
+    void deveRegistrarSobraDoBlocoNoEncerramento() {
+        Integer serie = 21;
+        NumeracaoService numeracaoService = novoServico();
+        assertEquals(1, numeracaoService.reservarNumero(serie));
+        assertEquals(2, numeracaoService.reservarNumero(serie));
+        assertEquals(3, numeracaoService.reservarNumero(serie));
+
+        numeracaoService.encerrar();
+
+        NumeracaoNaoUtilizada sobra = numeracaoService.listarNaoUtilizadas().stream()
+                .filter(faixa -> faixa.getSerie().equals(serie))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(4, sobra.getNumeroInicial());
+        assertEquals(TAMANHO_BLOCO, sobra.getNumeroFinal());
+
+        // Um novo processo continua depois do bloco já reservado
+        NumeracaoService reiniciado = novoServico();
+        assertEquals(TAMANHO_BLOCO + 1, reiniciado.obterProximoNumero(serie));
+        assertEquals(TAMANHO_BLOCO + 1, reiniciado.reservarNumero(serie));
+    }
+
+    @Test
+    void deveConsultarProximoNumeroSemConsumir() {
+        Integer serie = 31;
+        NumeracaoService numeracaoService = novoServico();
+
+        assertEquals(1, numeracaoService.obterProximoNumero(serie));
+        assertEquals(1, numeracaoService.obterProximoNumero(serie));
+        assertEquals(1, numeracaoService.reservarNumero(serie));
+        assertEquals(2, numeracaoService.obterProximoNumero(serie));
+        assertTrue(numeracaoService.isNumeroDisponivel(2, serie));
+    }
+
+    @Test
+    void deveDevolverOBlocoQuandoATransacaoDaEmissaoForDesfeita() {
+        Integer serie = 41;
+        NumeracaoService numeracaoService = novoServico();
+        TransactionTemplate transacao = new TransactionTemplate(transactionManager);
+
+        assertEquals(Integer.valueOf(1), transacao.execute(status -> {
+            int numero = numeracaoService.reservarNumero(serie);
+            status.setRollbackOnly();
+            return numero;
+        }));
+
+        // O contador voltou com a emissão desfeita: o mesmo bloco é reservado de novo, sem lacuna
+        assertEquals(1, reservaNumeracaoService.consultarProximo(serie));
+        assertEquals(Integer.valueOf(1), transacao.execute(status -> numeracaoService.reservarNumero(serie)));
+        assertEquals(2, numeracaoService.reservarNumero(serie));
+        assertEquals(TAMANHO_BLOCO + 1, reservaNumeracaoService.consultarProximo(serie));
+    }
+
+    @Test
+    void deveRecusarNumeroInformadoJaReservadoOuEmitido() {
+        Integer serie = 51;
+        NumeracaoService numeracaoService = novoServico();
+        assertEquals(1, numeracaoService.reservarNumero(serie));
+
+        // O número 5 está no bloco em memória e seria entregue a outra nota
+        assertThrows(IllegalArgumentException.class, () -> numeracaoService.validarNumeroInformado(5, serie));
+        numeracaoService.validarNumeroInformado(TAMANHO_BLOCO + 5, serie);
+
+        Nfce emitida = NfceFixtures.nota(1);
+        emitida.setId(null);
+        emitida.setSerie(serie);
+        emitida.setNumero(TAMANHO_BLOCO + 5);
+        nfceRepository.save(emitida);
+        assertThrows(IllegalArgumentException.class,
+                () -> numeracaoService.validarNumeroInformado(TAMANHO_BLOCO + 5, serie));
+        numeracaoService.validarNumeroInformado(TAMANHO_BLOCO + 6, serie);
+
+        // Série sem contador: o primeiro número informado cria o contador em vez de falhar
+        numeracaoService.validarNumeroInformado(7, 52);
+        assertEquals(1, reservaNumeracaoService.consultarProximo(52));
+    }
+
+    private NumeracaoService novoServico() {
+        return new NumeracaoService(nfceRepository, nfceConfiguration, reservaNumeracaoService);
+    }
+}
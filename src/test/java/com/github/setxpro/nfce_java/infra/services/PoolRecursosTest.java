@@ -0,0 +1,58 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.persistences.model.converter.XmlCompactadoConverter;
+import com.github.setxpro.nfce_java.infra.util.PoolRecursos;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Pool que substitui os {@code ThreadLocal} de {@code Deflater}/{@code MessageDigest} nas etapas que rodam em
+ * threads virtuais.
+ */
+class PoolRecursosTest {
+
+    @Test
+    void deveReaproveitarAteACapacidadeEDescartarOExcedente() {
+        AtomicInteger criados = new AtomicInteger();
+        AtomicInteger descartados = new AtomicInteger();
+        PoolRecursos<Object> pool = new PoolRecursos<>(2, () -> {
+            criados.incrementAndGet();
+            return new Object();
+        }, recurso -> descartados.incrementAndGet());
+
+        Object primeiro = pool.obter();
+        pool.devolver(primeiro);
+        assertSame(primeiro, pool.obter());
+
+        List<Object> emUso = List.of(primeiro, pool.obter(), pool.obter());
+        emUso.forEach(pool::devolver);
+
+        assertEquals(3, criados.get());
+        assertEquals(1, descartados.get());
+    }
+
+    @Test
+    void deveCompactarEmMilharesDeThreadsVirtuais() throws Exception {
+        String xml = "<NFe>" + "<det><prod><xProd>PRODUTO</xProd></prod></det>".repeat(200) + "</NFe>";
+        List<Future<String>> futuros = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 5_000; i++) {
+                String documento = xml + i;
+                futuros.add(executor.submit(() -> XmlCompactadoConverter.descompactar(
+                        XmlCompactadoConverter.compactar(documento))));
+            }
+            for (int i = 0; i < futuros.size(); i++) {
+                assertEquals(xml + i, futuros.get(i).get());
+            }
+        }
+    }
+}
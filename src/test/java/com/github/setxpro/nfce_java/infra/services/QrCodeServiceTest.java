@@ -0,0 +1,234 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QrCodeServiceTest {
+
+    private final QrCodeService qrCodeService = new QrCodeService(NfceFixtures.configuracao());
+
+    @ParameterizedTest
+    @CsvSource({
+            "300, 300",
+            "150, 150",
+            "301, 257",
+            "120, 90"
+    })
+    void deveGerarOsMesmosPixelsDaImagemAnteriorEmPngMenor(int largura, int altura) throws Exception {
+        Nfce nfce = NfceFixtures.nota(20);
+        String url = qrCodeService.gerarUrlQrCode(nfce.getChaveAcesso(), nfce.getAmbiente().getCodigo(),
+                nfce.getDataEmissao(), nfce.getValorTotalNota().setScale(2, RoundingMode.HALF_UP), nfce.getDestinatarioCpfCnpj());
+
+        byte[] png = qrCodeService.gerarImagemQrCode(url, largura, altura);
+        byte[] anterior = QrCodeImagemLegado.gerarImagemQrCode(url, largura, altura);
+
+        BufferedImage imagem = ler(png);
+        BufferedImage imagemAnterior = ler(anterior);
+        assertEquals(imagemAnterior.getWidth(), imagem.getWidth());
+        assertEquals(imagemAnterior.getHeight(), imagem.getHeight());
+        for (int y = 0; y < imagem.getHeight(); y++) {
+            for (int x = 0; x < imagem.getWidth(); x++) {
+                assertEquals(imagemAnterior.getRGB(x, y), imagem.getRGB(x, y), "Pixel divergente em " + x + "," + y);
+            }
+        }
+        assertTrue(png.length < anterior.length, png.length + " bytes, anterior " + anterior.length);
+    }
+
+    @Test
+    void deveGerarRasterEscPosComOsPontosDaImagemPng() throws Exception {
+        String url = url();
+
+        byte[] raster = qrCodeService.gerarRasterEscPos(url, 256);
+        BufferedImage imagem = ler(qrCodeService.gerarImagemQrCode(url, 256, 256));
+
+        int bytesPorLinha = (raster[4] & 0xFF) | (raster[5] & 0xFF) << 8;
+        int altura = (raster[6] & 0xFF) | (raster[7] & 0xFF) << 8;
+        assertArrayEquals(new byte[]{0x1D, 'v', '0', 0}, Arrays.copyOf(raster, 4));
+        assertEquals(32, bytesPorLinha);
+        assertEquals(imagem.getHeight(), altura);
+        assertEquals(8 + bytesPorLinha * altura, raster.length);
+        for (int y = 0; y < altura; y++) {
+            for (int x = 0; x < imagem.getWidth(); x++) {
+                boolean impresso = (raster[8 + y * bytesPorLinha + (x >>> 3)] & (0x80 >>> (x & 7))) != 0;
+                boolean preto = (imagem.getRGB(x, y) & 0xFFFFFF) == 0;
+                assertEquals(preto, impresso, "Ponto divergente em " + x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    void deveGerarSvgComOsModulosDaImagemPng() throws Exception {
+        String url = url();
+
+        String svg = qrCodeService.gerarSvgQrCode(url, 300, 300);
+
+        Matcher viewBox = Pattern.compile("viewBox=\"0 0 (\\d+) (\\d+)\"").matcher(svg);
+        assertTrue(viewBox.find(), svg);
+        int lado = Integer.parseInt(viewBox.group(1));
+        boolean[][] modulos = new boolean[lado][lado];
+        Matcher retangulo = Pattern.compile("M(\\d+) (\\d+)h(\\d+)v1h-\\3z").matcher(svg);
+        while (retangulo.find()) {
+            int x = Integer.parseInt(retangulo.group(1));
+            int y = Integer.parseInt(retangulo.group(2));
+            for (int i = 0; i < Integer.parseInt(retangulo.group(3)); i++) {
+                modulos[y][x + i] = true;
+            }
+        }
+
+        // PNG com um pixel por módulo: mesmo tamanho pedido ao ZXing que a matriz do SVG
+        BufferedImage imagem = ler(qrCodeService.gerarImagemQrCode(url, lado, lado));
+        assertEquals(lado, imagem.getWidth());
+        for (int y = 0; y < lado; y++) {
+            for (int x = 0; x < lado; x++) {
+                assertEquals((imagem.getRGB(x, y) & 0xFFFFFF) == 0, modulos[y][x], "Módulo divergente em " + x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    void deveMontarSequenciaNativaEscPos() {
+        String url = url();
+        byte[] dados = url.getBytes(StandardCharsets.UTF_8);
+
+        byte[] comando = qrCodeService.gerarComandoQrCodeEscPos(url, 6);
+
+        byte[] esperadoInicio = {
+                0x1D, '(', 'k', 4, 0, '1', 'A', '2', 0,
+                0x1D, '(', 'k', 3, 0, '1', 'C', 6,
+                0x1D, '(', 'k', 3, 0, '1', 'E', '1',
+                0x1D, '(', 'k', (byte) (dados.length + 3), (byte) ((dados.length + 3) >>> 8), '1', 'P', '0'};
+        byte[] esperadoFim = {0x1D, '(', 'k', 3, 0, '1', 'Q', '0'};
+
+        assertEquals(esperadoInicio.length + dados.length + esperadoFim.length, comando.length);
+        assertArrayEquals(esperadoInicio, Arrays.copyOf(comando, esperadoInicio.length));
+        assertArrayEquals(dados, Arrays.copyOfRange(comando, esperadoInicio.length, esperadoInicio.length + dados.length));
+        assertArrayEquals(esperadoFim, Arrays.copyOfRange(comando, comando.length - esperadoFim.length, comando.length));
+        assertThrows(IllegalArgumentException.class, () -> qrCodeService.gerarComandoQrCodeEscPos(url, 17));
+    }
+
+    @Test
+    void deveGerarUrlV2ComHashDoCsc() throws Exception {
+        NfceConfiguration configuracao = NfceFixtures.configuracao();
+        configuracao.getQrcode().getCsc().setId(1);
+        configuracao.getQrcode().getCsc().setToken("0123456789ABCDEF0123456789ABCDEF01234567");
+        QrCodeService servico = new QrCodeService(configuracao);
+        Random random = new Random(12);
+
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder chave = new StringBuilder();
+            for (int d = 0; d < 44; d++) {
+                chave.append((char) ('0' + random.nextInt(10)));
+            }
+            int ambiente = 1 + random.nextInt(2);
+
+            String parametros = chave + "|2|" + ambiente + "|1";
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(
+                    (parametros + "0123456789ABCDEF0123456789ABCDEF01234567").getBytes(StandardCharsets.UTF_8));
+            String esperado = "https://www.fazenda.sp.gov.br/nfce/qrcode?p=" + parametros + "|"
+                    + HexFormat.of().withUpperCase().formatHex(hash);
+
+            assertEquals(esperado, servico.gerarUrlQrCodeV2(chave.toString(), ambiente));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> servico.gerarUrlQrCodeV2("123", 1));
+        assertThrows(IllegalArgumentException.class, () -> servico.gerarUrlQrCodeV2("1".repeat(44), 3));
+        assertThrows(IllegalStateException.class, () -> qrCodeService.gerarUrlQrCodeV2("1".repeat(44), 1));
+    }
+
+    @Test
+    void deveGerarUrlV2OfflineComODigestValueEmHexadecimal() {
+        NfceConfiguration configuracao = NfceFixtures.configuracao();
+        configuracao.getQrcode().getCsc().setId(1);
+        configuracao.getQrcode().getCsc().setToken("0123456789ABCDEF0123456789ABCDEF01234567");
+        QrCodeService servico = new QrCodeService(configuracao);
+        String chave = "35170800156225000131650110000151341562040824";
+
+        String url = servico.gerarUrlQrCodeV2Offline(chave, 2, LocalDateTime.of(2017, 8, 5, 14, 30),
+                new BigDecimal("10"), "NvbO5CBBeajrpbBYzjyULEH1J10=");
+
+        assertEquals("https://www.fazenda.sp.gov.br/nfce/qrcode?p=" + chave + "|2|2|05|10.00|"
+                + "4e76624f3543424265616a72706242597a6a79554c4548314a31303d|1|"
+                + "57608C590C940BE1D8CC9209FDB32F6CEC0C6701", url);
+        assertThrows(IllegalArgumentException.class, () -> servico.gerarUrlQrCodeV2Offline(chave, 2,
+                LocalDateTime.of(2017, 8, 5, 14, 30), new BigDecimal("10"), ""));
+        assertThrows(IllegalStateException.class, () -> qrCodeService.gerarUrlQrCodeV2Offline(chave, 2,
+                LocalDateTime.of(2017, 8, 5, 14, 30), new BigDecimal("10"), "NvbO5CBBeajrpbBYzjyULEH1J10="));
+    }
+
+    @Test
+    void deveValidarAsUrlsV2GeradasPeloServico() {
+        NfceConfiguration configuracao = NfceFixtures.configuracao();
+        configuracao.getQrcode().getCsc().setId(1);
+        configuracao.getQrcode().getCsc().setToken("0123456789ABCDEF0123456789ABCDEF01234567");
+        QrCodeService servico = new QrCodeService(configuracao);
+        String chave = "35170800156225000131650110000151341562040824";
+        String outraChave = "35170800156225000131650110000151351562040820";
+
+        String online = servico.gerarUrlQrCodeV2(chave, 1);
+        String offline = servico.gerarUrlQrCodeV2Offline(chave, 2, LocalDateTime.of(2017, 8, 5, 14, 30),
+                new BigDecimal("10"), "NvbO5CBBeajrpbBYzjyULEH1J10=");
+
+        assertTrue(servico.validarQrCode(online, chave));
+        assertTrue(servico.validarQrCode(offline, chave));
+        assertFalse(servico.validarQrCode(online, outraChave));
+        // Hash de outro CSC, ambiente trocado e sem CSC para conferir
+        char ultimo = online.charAt(online.length() - 1);
+        assertFalse(servico.validarQrCode(online.substring(0, online.length() - 1) + (ultimo == '0' ? '1' : '0'), chave));
+        assertFalse(servico.validarQrCode(online.replace("|2|1|1|", "|2|2|1|"), chave));
+        assertFalse(servico.validarQrCode(offline.replace("|10.00|", "|11.00|"), chave));
+        assertFalse(qrCodeService.validarQrCode(online, chave));
+
+        // O formato anterior continua valendo
+        String anterior = url();
+        assertTrue(servico.validarQrCode(anterior, NfceFixtures.nota(20).getChaveAcesso()));
+        assertFalse(servico.validarQrCode(anterior, outraChave));
+        assertFalse(servico.validarQrCode("https://www.fazenda.sp.gov.br/nfce/qrcode?p=%%%", chave));
+    }
+
+    @Test
+    void deveArredondarValorComMaisDeDuasCasasNaUrlAnterior() {
+        Nfce nfce = NfceFixtures.nota(1);
+
+        String url = qrCodeService.gerarUrlQrCode(nfce.getChaveAcesso(), 2, nfce.getDataEmissao(),
+                new BigDecimal("10.005"), null);
+
+        String parametros = new String(Base64.getDecoder().decode(url.substring(url.indexOf("?p=") + 3)),
+                StandardCharsets.UTF_8);
+        assertEquals("1001", parametros.split("\\|")[3]);
+    }
+
+    private String url() {
+        Nfce nfce = NfceFixtures.nota(20);
+        return qrCodeService.gerarUrlQrCode(nfce.getChaveAcesso(), nfce.getAmbiente().getCodigo(),
+                nfce.getDataEmissao(), nfce.getValorTotalNota().setScale(2, RoundingMode.HALF_UP), nfce.getDestinatarioCpfCnpj());
+    }
+
+    private static BufferedImage ler(byte[] png) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(png));
+    }
+}
@@ -0,0 +1,144 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceRequestDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.TransicaoLoteRequestDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.TransicaoLoteRequestDto.Acao;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceDocumentoRepository;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * O trabalho roda numa virtual thread e cada bloco na sua transação, por isso o teste não abre transação.
+ */
+@DataJpaTest(properties = "nfce.emissao.tamanho-bloco-transicao=3")
+@Import({TransicaoLoteService.class, NfceService.class, NumeracaoService.class, ReservaNumeracaoService.class,
+        ChaveAcessoService.class, QrCodeService.class, XmlService.class, AssinaturaDigitalService.class,
+        CertificadoDigitalService.class, ContingenciaService.class, TributacaoService.class, NfceConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TransicaoLoteServiceTest {
+
+    private static final long TIMEOUT_MS = 20_000;
+
+    @DynamicPropertySource
+    static void certificado(DynamicPropertyRegistry registry) {
+        CertificadoTesteFactory.registrar(registry);
+    }
+
+    @Autowired
+    private TransicaoLoteService transicaoLoteService;
+
+    @Autowired
+    private NfceService nfceService;
+
+    @Autowired
+    private NfceRepository nfceRepository;
+
+    @Autowired
+    private NfceDocumentoRepository nfceDocumentoRepository;
+
+    @Test
+    void deveAssinarPorIdsEmBlocosInformandoAFalhaDeCadaId() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            ids.add(criar(1));
+        }
+        Long jaAssinada = criar(1);
+        nfceService.assinarNfce(jaAssinada);
+        ids.add(jaAssinada);
+        ids.add(Long.MAX_VALUE);
+
+        TransicaoLoteService.Progresso progresso = aguardarFim(transicaoLoteService.iniciar(requisicao(Acao.ASSINAR, ids)));
+
+        assertEquals(TransicaoLoteService.Estado.CONCLUIDO, progresso.estado());
+        assertEquals(9, progresso.total());
+        assertEquals(9, progresso.processadas());
+        assertEquals(7, progresso.sucessos());
+        assertEquals(List.of(jaAssinada, Long.MAX_VALUE),
+                progresso.falhas().stream().map(TransicaoLoteService.Falha::id).toList());
+        for (Long id : ids.subList(0, 7)) {
+            assertEquals(Nfce.StatusNfce.ASSINADA, nfceRepository.findById(id).orElseThrow().getStatus());
+            assertTrue(nfceDocumentoRepository.findById(id).orElseThrow().getXmlAssinado().contains("<SignatureValue>"));
+        }
+    }
+
+    @Test
+    void deveEnviarAsNotasDoFiltroSemAlcancarOutrasSeries() throws Exception {
+        List<Long> daSerie = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            daSerie.add(criar(7));
+        }
+        Long outraSerie = criar(8);
+        nfceService.assinarLote(daSerie);
+        nfceService.assinarLote(List.of(outraSerie));
+
+        TransicaoLoteRequestDto request = new TransicaoLoteRequestDto();
+        request.setAcao(Acao.ENVIAR);
+        TransicaoLoteRequestDto.FiltroDto filtro = new TransicaoLoteRequestDto.FiltroDto();
+        filtro.setSerie(7);
+        request.setFiltro(filtro);
+
+        TransicaoLoteService.Progresso progresso = aguardarFim(transicaoLoteService.iniciar(request));
+
+        assertEquals(5, progresso.total());
+        assertEquals(5, progresso.sucessos());
+        for (Long id : daSerie) {
+            assertEquals(Nfce.StatusNfce.ENVIADA, nfceRepository.findById(id).orElseThrow().getStatus());
+        }
+        assertEquals(Nfce.StatusNfce.ASSINADA, nfceRepository.findById(outraSerie).orElseThrow().getStatus());
+    }
+
+    @Test
+    void deveRecusarPedidoSemAlvoUnicoOuCancelamentoSemJustificativa() {
+        TransicaoLoteRequestDto semAlvo = requisicao(Acao.ENVIAR, List.of());
+        assertThrows(IllegalArgumentException.class, () -> transicaoLoteService.iniciar(semAlvo));
+
+        TransicaoLoteRequestDto doisAlvos = requisicao(Acao.ENVIAR, List.of(1L));
+        doisAlvos.setFiltro(new TransicaoLoteRequestDto.FiltroDto());
+        assertThrows(IllegalArgumentException.class, () -> transicaoLoteService.iniciar(doisAlvos));
+
+        TransicaoLoteRequestDto semJustificativa = requisicao(Acao.CANCELAR, List.of(1L));
+        assertThrows(IllegalArgumentException.class, () -> transicaoLoteService.iniciar(semJustificativa));
+    }
+
+    private Long criar(int serie) {
+        NfceRequestDto request = NfceFixtures.requisicao(2);
+        request.setNumero(null);
+        request.setSerie(serie);
+        return nfceService.criarNfce(request).getId();
+    }
+
+    private static TransicaoLoteRequestDto requisicao(Acao acao, List<Long> ids) {
+        TransicaoLoteRequestDto request = new TransicaoLoteRequestDto();
+        request.setAcao(acao);
+        request.setIds(ids);
+        return request;
+    }
+
+    private TransicaoLoteService.Progresso aguardarFim(TransicaoLoteService.Progresso inicial) throws InterruptedException {
+        long limite = System.currentTimeMillis() + TIMEOUT_MS;
+        while (System.currentTimeMillis() < limite) {
+            TransicaoLoteService.Progresso progresso = transicaoLoteService.consultar(inicial.id());
+            if (progresso.estado() != TransicaoLoteService.Estado.EM_ANDAMENTO) {
+                return progresso;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Transição em lote " + inicial.id() + " não terminou em " + TIMEOUT_MS + " ms");
+    }
+}
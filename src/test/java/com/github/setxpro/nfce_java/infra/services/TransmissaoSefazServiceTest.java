@@ -0,0 +1,258 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.dto.NfceRequestDto;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceDocumentoRepository;
+import com.github.setxpro.nfce_java.infra.persistences.repositories.NfceRepository;
+import com.github.setxpro.nfce_java.infra.services.sefaz.SefazSimulada;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Transmissão contra a {@link SefazSimulada}. O agendador não sobe (não há {@code ApplicationReadyEvent}); o
+ * teste chama {@link TransmissaoSefazService#ciclo()} até as notas saírem de ENVIADA.
+ */
+@DataJpaTest(properties = {"nfce.transmissao.espera-minima-ms=20", "nfce.transmissao.espera-maxima-ms=400",
+        "nfce.qrcode.csc.id=1", "nfce.qrcode.csc.token=0123456789ABCDEF0123456789ABCDEF01234567"})
+@Import({TransmissaoSefazService.class, ComunicacaoSefazService.class, NfceService.class, NumeracaoService.class,
+        ReservaNumeracaoService.class, ChaveAcessoService.class, QrCodeService.class, XmlService.class,
+        AssinaturaDigitalService.class, CertificadoDigitalService.class, ContingenciaService.class,
+        TributacaoService.class, NfceConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TransmissaoSefazServiceTest {
+
+    private static final long TIMEOUT_MS = 20_000;
+
+    private static final SefazSimulada SEFAZ = iniciarSefaz();
+    private static final Path JOURNAL = journalTemporario();
+
+    @DynamicPropertySource
+    static void sefaz(DynamicPropertyRegistry registry) {
+        CertificadoTesteFactory.registrar(registry);
+        registry.add("nfce.webservice.url.autorizacao", () -> SEFAZ.url("/ws/nfceautorizacao.asmx"));
+        registry.add("nfce.webservice.url.retorno-autorizacao", () -> SEFAZ.url("/ws/nfceretautorizacao.asmx"));
+        registry.add("nfce.webservice.url.consulta-protocolo", () -> SEFAZ.url("/ws/nfceconsulta.asmx"));
+        registry.add("nfce.contingencia.journal", JOURNAL::toString);
+    }
+
+    @AfterAll
+    static void pararSefaz() {
+        SEFAZ.close();
+    }
+
+    @Autowired
+    private TransmissaoSefazService transmissaoSefazService;
+
+    @Autowired
+    private NfceService nfceService;
+
+    @Autowired
+    private NfceConfiguration nfceConfiguration;
+
+    @Autowired
+    private NfceRepository nfceRepository;
+
+    @Autowired
+    private NfceDocumentoRepository nfceDocumentoRepository;
+
+    @Autowired
+    private ContingenciaService contingenciaService;
+
+    @Autowired
+    private QrCodeService qrCodeService;
+
+    @Test
+    void deveTransmitirEmLotesDeCinquentaEConsultarORecibo() throws Exception {
+        SEFAZ.configurar(new SefazSimulada.Parametros(Duration.ofMillis(10), Duration.ofMillis(150), 0));
+        List<Long> ids = criarEnviadas(120);
+        int envios = SEFAZ.requisicoesAutorizacao();
+
+        aguardarRetorno(ids);
+
+        assertEquals(3, SEFAZ.requisicoesAutorizacao() - envios);
+        assertEquals(0, transmissaoSefazService.recibosPendentes());
+        for (Long id : ids) {
+            Nfce nfce = nfceRepository.findById(id).orElseThrow();
+            assertEquals(Nfce.StatusNfce.AUTORIZADA, nfce.getStatus());
+            assertNotNull(nfce.getReciboLote());
+            assertNotNull(nfce.getDataAutorizacao());
+            String xmlAutorizado = nfceDocumentoRepository.findById(id).orElseThrow().getXmlAutorizado();
+            assertTrue(xmlAutorizado.contains("<nProt>" + nfce.getProtocoloAutorizacao() + "</nProt>"));
+            assertTrue(xmlAutorizado.indexOf("</NFe>") < xmlAutorizado.indexOf("<protNFe"));
+        }
+    }
+
+    @Test
+    void deveGravarARejeicaoDeCadaNotaNoModoSincrono() throws Exception {
+        SEFAZ.configurar(new SefazSimulada.Parametros(Duration.ZERO, Duration.ZERO, 1));
+        nfceConfiguration.getTransmissao().setSincrona(true);
+        nfceConfiguration.getTransmissao().setTamanhoLote(1);
+        try {
+            List<Long> ids = criarEnviadas(5);
+            int consultas = SEFAZ.requisicoesConsulta();
+
+            aguardarRetorno(ids);
+
+            assertEquals(consultas, SEFAZ.requisicoesConsulta());
+            for (Long id : ids) {
+                Nfce nfce = nfceRepository.findById(id).orElseThrow();
+                assertEquals(Nfce.StatusNfce.REJEITADA, nfce.getStatus());
+                assertTrue(nfce.getRetornoSefaz().startsWith(SefazSimulada.REJEICAO_SIMULADA + " - "));
+            }
+        } finally {
+            nfceConfiguration.getTransmissao().setSincrona(false);
+            nfceConfiguration.getTransmissao().setTamanhoLote(50);
+        }
+    }
+
+    @Test
+    void deveConsultarOProtocoloQuandoOReenvioDerDuplicidade() throws Exception {
+        SEFAZ.configurar(new SefazSimulada.Parametros(Duration.ZERO, Duration.ofMillis(20), 0));
+        SEFAZ.perderRespostas(1);
+        int consultas = SEFAZ.requisicoesConsultaProtocolo();
+        List<Long> ids = criarEnviadas(3);
+
+        aguardarRetorno(ids);
+
+        assertEquals(3, SEFAZ.requisicoesConsultaProtocolo() - consultas);
+        for (Long id : ids) {
+            Nfce nfce = nfceRepository.findById(id).orElseThrow();
+            assertEquals(Nfce.StatusNfce.AUTORIZADA, nfce.getStatus());
+            assertTrue(nfce.getRetornoSefaz().startsWith("100 - "), nfce.getRetornoSefaz());
+            assertNotNull(nfce.getProtocoloAutorizacao());
+            String xmlAutorizado = nfceDocumentoRepository.findById(id).orElseThrow().getXmlAutorizado();
+            assertTrue(xmlAutorizado.contains("<nProt>" + nfce.getProtocoloAutorizacao() + "</nProt>"));
+        }
+    }
+
+    @Test
+    void deveConsultarAsNotasSemProtNFeNoLoteProcessado() throws Exception {
+        SEFAZ.configurar(new SefazSimulada.Parametros(Duration.ZERO, Duration.ofMillis(20), 0));
+        SEFAZ.omitirProtocolos(2);
+        int consultas = SEFAZ.requisicoesConsultaProtocolo();
+        int envios = SEFAZ.requisicoesAutorizacao();
+        List<Long> ids = criarEnviadas(4);
+
+        aguardarRetorno(ids);
+
+        assertEquals(2, SEFAZ.requisicoesConsultaProtocolo() - consultas);
+        assertEquals(1, SEFAZ.requisicoesAutorizacao() - envios);
+        for (Long id : ids) {
+            assertEquals(Nfce.StatusNfce.AUTORIZADA, nfceRepository.findById(id).orElseThrow().getStatus());
+        }
+    }
+
+    @Test
+    void deveRecusarModoSincronoComLoteDeMaisDeUmaNota() {
+        NfceConfiguration configuracao = NfceFixtures.configuracao();
+        configuracao.getTransmissao().setSincrona(true);
+        configuracao.getTransmissao().setTamanhoLote(2);
+
+        assertThrows(IllegalStateException.class,
+                () -> new TransmissaoSefazService(null, null, null, null, null, configuracao));
+    }
+
+    @Test
+    void deveTransmitirPeloJournalAsNotasEmitidasEmContingencia() throws Exception {
+        SEFAZ.configurar(new SefazSimulada.Parametros(Duration.ZERO, Duration.ofMillis(50), 0));
+        NfceConfiguration.Webservice.Url url = nfceConfiguration.getWebservice().getUrl();
+        String autorizacao = url.getAutorizacao();
+        contingenciaService.ativar("SEFAZ fora do ar - teste de contingencia");
+        url.setAutorizacao("http://localhost:1/ws/nfceautorizacao.asmx");
+        List<Long> ids;
+        try {
+            ids = criarEnviadas(60);
+            assertEquals(60, contingenciaService.notasPendentes());
+
+            int documentos = SEFAZ.documentosRecebidos();
+            transmissaoSefazService.ciclo();
+            assertEquals(60, contingenciaService.notasPendentes());
+            assertEquals(documentos, SEFAZ.documentosRecebidos());
+        } finally {
+            url.setAutorizacao(autorizacao);
+            contingenciaService.desativar();
+        }
+
+        int documentos = SEFAZ.documentosRecebidos();
+        aguardarRetorno(ids);
+
+        assertEquals(60, SEFAZ.documentosRecebidos() - documentos);
+        assertEquals(0, contingenciaService.notasPendentes());
+        assertEquals(Long.BYTES, Files.size(JOURNAL));
+        for (Long id : ids) {
+            Nfce nfce = nfceRepository.findById(id).orElseThrow();
+            assertEquals(Nfce.StatusNfce.AUTORIZADA, nfce.getStatus());
+            assertEquals(Nfce.TipoEmissao.CONTINGENCIA_OFFLINE, nfce.getTipoEmissao());
+            assertEquals('9', nfce.getChaveAcesso().charAt(34));
+            String xml = nfceDocumentoRepository.findById(id).orElseThrow().getXmlAutorizado();
+            assertTrue(xml.contains("<tpEmis>9</tpEmis>"));
+            assertTrue(xml.contains("<xJust>SEFAZ fora do ar - teste de contingencia</xJust>"));
+            assertTrue(xml.contains("<dhCont>"));
+            // QR Code offline, com o DigestValue da assinatura
+            assertEquals(qrCodeService.gerarUrlQrCodeV2Offline(nfce.getChaveAcesso(), nfce.getAmbiente().getCodigo(),
+                    nfce.getDataEmissao(), nfce.getValorTotalNota(), AssinaturaDigitalService.digestValue(xml)),
+                    nfce.getQrCode());
+        }
+    }
+
+    private List<Long> criarEnviadas(int quantidade) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < quantidade; i++) {
+            NfceRequestDto request = NfceFixtures.requisicao(1);
+            request.setNumero(null);
+            ids.add(nfceService.criarNfce(request).getId());
+        }
+        nfceService.assinarLote(ids);
+        nfceService.enviarLote(ids);
+        return ids;
+    }
+
+    private void aguardarRetorno(List<Long> ids) throws InterruptedException {
+        long limite = System.currentTimeMillis() + TIMEOUT_MS;
+        while (System.currentTimeMillis() < limite) {
+            transmissaoSefazService.ciclo();
+            if (nfceRepository.findAllById(ids).stream().noneMatch(nfce -> nfce.getStatus() == Nfce.StatusNfce.ENVIADA)) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("NFC-e ainda enviadas depois de " + TIMEOUT_MS + " ms");
+    }
+
+    private static Path journalTemporario() {
+        try {
+            return Files.createTempDirectory("nfce-contingencia").resolve("contingencia.journal");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static SefazSimulada iniciarSefaz() {
+        try {
+            return new SefazSimulada(0, new SefazSimulada.Parametros(Duration.ZERO, Duration.ZERO, 0));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.github.setxpro.nfce_java.infra.configs.NfceConfiguration;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.ItemNfce;
+import com.github.setxpro.nfce_java.infra.persistences.model.entity.Nfce;
+import com.github.setxpro.nfce_java.infra.services.tributacao.LeitorRegras;
+import com.github.setxpro.nfce_java.infra.services.tributacao.TabelaTributaria;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tabela de tributação: precedência das regras, cálculo em centavos conferido com BigDecimal e recarga do
+ * arquivo, inclusive com um arquivo inválido.
+ */
+class TributacaoServiceTest {
+
+    private static final String CABECALHO = LeitorRegras.CABECALHO + "\n";
+
+    @TempDir
+    Path diretorio;
+
+    @Test
+    void deveEscolherARegraMaisEspecifica() throws IOException {
+        TabelaTributaria tabela = TabelaTributaria.compilar(LeitorRegras.ler(new StringReader(CABECALHO + """
+                # linha 2 é este comentário
+                *;*;*;*;090;;;99;;99;
+                *;REGIME_NORMAL;*;*;000;3;12.00;01;1.65;01;7.60
+                SP;REGIME_NORMAL;*;*;000;3;18.00;01;1.65;01;7.60
+                *;REGIME_NORMAL;*;5102;000;3;17.00;01;1.65;01;7.60
+                SP;REGIME_NORMAL;19;*;000;3;12.00;01;1.65;01;7.60
+                SP;REGIME_NORMAL;1905;*;000;3;7.00;01;1.65;01;7.60
+                *;*;19059090;*;040;;;07;;07;
+                """)));
+        Nfce.RegimeTributario normal = Nfce.RegimeTributario.REGIME_NORMAL;
+
+        assertEquals(3, tabela.buscar("RJ", Nfce.RegimeTributario.SIMPLES_NACIONAL, "21069090", "5102").linha());
+        assertEquals(4, tabela.buscar("RJ", normal, "21069090", "5405").linha());
+        assertEquals(5, tabela.buscar("SP", normal, "21069090", "5405").linha());
+        // CFOP exato vence a UF exata no mesmo nível de NCM
+        assertEquals(6, tabela.buscar("SP", normal, "21069090", "5102").linha());
+        assertEquals(7, tabela.buscar("SP", normal, "19012000", "5102").linha());
+        assertEquals(8, tabela.buscar("SP", normal, "19053100", "5102").linha());
+        // NCM completo vence qualquer prefixo, mesmo com UF e regime curinga
+        assertEquals(9, tabela.buscar("SP", normal, "19059090", "5102").linha());
+        // Sem NCM, CFOP ou UF válidos só valem as regras com curinga no critério
+        assertEquals(4, tabela.buscar("XX", normal, "1905", "51O2").linha());
+        assertEquals(7, tabela.formatos());
+    }
+
+    @Test
+    void deveRecusarTabelaInvalidaComONumeroDaLinha() {
+        IllegalArgumentException repetida = assertThrows(IllegalArgumentException.class,
+                () -> TabelaTributaria.compilar(LeitorRegras.ler(new StringReader(CABECALHO + """
+                        SP;REGIME_NORMAL;1905;5102;000;3;7.00;01;1.65;01;7.60
+
+                        SP;REGIME_NORMAL;1905;5102;000;3;12.00;01;1.65;01;7.60
+                        """))));
+        assertEquals("Linha 4: mesmos critérios da linha 2", repetida.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> LeitorRegras.ler(new StringReader(CABECALHO
+                + "SP;REGIME_NORMAL;190;5102;000;3;7.00;01;1.65;01;7.60\n")));
+        assertThrows(IllegalArgumentException.class, () -> LeitorRegras.ler(new StringReader(CABECALHO
+                + "SP;REGIME_NORMAL;*;5102;000;3;7.001;01;1.65;01;7.60\n")));
+        assertThrows(IllegalArgumentException.class, () -> LeitorRegras.ler(new StringReader(CABECALHO
+                + "SP;LUCRO_REAL;*;5102;000;3;7.00;01;1.65;01;7.60\n")));
+        assertThrows(IllegalArgumentException.class, () -> LeitorRegras.ler(new StringReader(CABECALHO
+                + "SP;REGIME_NORMAL;*;5102;000;3;7.00;;1.65;01;7.60\n")));
+        assertThrows(IllegalArgumentException.class, () -> TabelaTributaria.compilar(LeitorRegras.ler(
+                new StringReader(CABECALHO + "ZZ;REGIME_NORMAL;*;5102;000;3;7.00;01;1.65;01;7.60\n"))));
+        assertThrows(IllegalArgumentException.class, () -> LeitorRegras.ler(new StringReader("# vazia\n")));
+    }
+
+    @Test
+    void deveCalcularOsImpostosComoOBigDecimalArredondandoMeioCentavoParaCima() throws IOException {
+        TributacaoService servico = servico(escrever(CABECALHO + """
+                SP;REGIME_NORMAL;*;5102;000;3;18.00;01;1.65;01;7.60
+                SP;REGIME_NORMAL;21;5102;020;3;7.00;01;0.65;01;3.00
+                """));
+        Nfce nfce = NfceFixtures.nota(990);
+        nfce.setEmitenteRegimeTributario(Nfce.RegimeTributario.REGIME_NORMAL);
+        ItemNfce semRegra = nfce.getItens().get(0);
+        semRegra.setCfop("5405");
+        semRegra.setCstIcms("102");
+
+        servico.aplicar(nfce);
+
+        BigDecimal pis = BigDecimal.ZERO;
+        BigDecimal cofins = BigDecimal.ZERO;
+        for (ItemNfce item : nfce.getItens().subList(1, nfce.getItens().size())) {
+            BigDecimal base = item.getValorTotalBruto().setScale(2, RoundingMode.HALF_UP)
+                    .subtract(item.getValorDesconto() == null ? BigDecimal.ZERO : item.getValorDesconto());
+            boolean capitulo21 = item.getNcm().startsWith("21");
+            assertEquals(capitulo21 ? "020" : "000", item.getCstIcms());
+            assertEquals(base, item.getBaseCalculoIcms());
+            assertEquals(percentual(base, capitulo21 ? "7.00" : "18.00"), item.getValorIcms());
+            assertEquals(percentual(base, capitulo21 ? "0.65" : "1.65"), item.getValorPis());
+            assertEquals(percentual(base, capitulo21 ? "3.00" : "7.60"), item.getValorCofins());
+            assertEquals("01", item.getCstPis());
+            pis = pis.add(item.getValorPis());
+            cofins = cofins.add(item.getValorCofins());
+        }
+        assertEquals("102", semRegra.getCstIcms());
+        assertEquals(989, servico.situacao().itensTributados());
+        assertEquals(1, servico.situacao().itensSemRegra());
+
+        // Os totais da nota passam a somar PIS e COFINS dos itens
+        NfceService nfceService = new NfceService(null, null, null, null, null, null, null, null, null, null, servico);
+        nfceService.calcularTotais(nfce);
+        BigDecimal pisSemRegra = semRegra.getValorPis() == null ? BigDecimal.ZERO : semRegra.getValorPis();
+        BigDecimal cofinsSemRegra = semRegra.getValorCofins() == null ? BigDecimal.ZERO : semRegra.getValorCofins();
+        assertEquals(pis.add(pisSemRegra), nfce.getValorPis());
+        assertEquals(cofins.add(cofinsSemRegra), nfce.getValorCofins());
+
+        // Meio centavo sobe: 0,50 * 7% = 0,035
+        ItemNfce item = nfce.getItens().get(2);
+        item.setValorTotalBruto(new BigDecimal("0.50"));
+        item.setValorDesconto(null);
+        servico.aplicar(nfce);
+        assertEquals(new BigDecimal("0.04"), item.getValorIcms());
+    }
+
+    @Test
+    void deveTrocarATabelaNaRecargaEManterAAnteriorSeONovoArquivoForInvalido() throws IOException {
+        Path arquivo = escrever(CABECALHO + "*;SIMPLES_NACIONAL;*;*;102;;;49;;49;\n");
+        TributacaoService servico = servico(arquivo);
+        assertEquals(1, servico.situacao().versao());
+        assertEquals(1, servico.situacao().regras());
+
+        Files.writeString(arquivo, CABECALHO + """
+                *;SIMPLES_NACIONAL;*;*;102;;;49;;49;
+                *;SIMPLES_NACIONAL;*;5405;500;;;49;;49;
+                """);
+        Files.setLastModifiedTime(arquivo, FileTime.fromMillis(Files.getLastModifiedTime(arquivo).toMillis() + 2_000));
+        servico.verificarAlteracao();
+        assertEquals(2, servico.situacao().versao());
+        assertEquals(2, servico.situacao().regras());
+
+        Files.writeString(arquivo, CABECALHO + "*;SIMPLES_NACIONAL;*;*;102;;;49;;49\n");
+        Files.setLastModifiedTime(arquivo, FileTime.fromMillis(Files.getLastModifiedTime(arquivo).toMillis() + 4_000));
+        servico.verificarAlteracao();
+        IllegalArgumentException erro = assertThrows(IllegalArgumentException.class, servico::recarregar);
+        assertTrue(erro.getMessage().contains("Linha 2"), erro.getMessage());
+        assertEquals(2, servico.situacao().versao());
+
+        Nfce nfce = NfceFixtures.nota(1);
+        nfce.getItens().get(0).setCfop("5405");
+        servico.aplicar(nfce);
+        assertEquals("500", nfce.getItens().get(0).getCstIcms());
+        assertNull(nfce.getItens().get(0).getValorIcms());
+        assertNull(nfce.getItens().get(0).getBaseCalculoPis());
+    }
+
+    @Test
+    void naoDeveAlterarOsItensComATributacaoDesabilitada() {
+        NfceConfiguration configuracao = NfceFixtures.configuracao();
+        TributacaoService servico = new TributacaoService(new DefaultResourceLoader(), configuracao);
+        Nfce nfce = NfceFixtures.nota(3);
+        String cst = nfce.getItens().get(0).getCstIcms();
+
+        servico.aplicar(nfce);
+
+        assertEquals(cst, nfce.getItens().get(0).getCstIcms());
+        assertEquals(0, servico.situacao().versao());
+        assertThrows(IllegalStateException.class, servico::recarregar);
+    }
+
+    private Path escrever(String conteudo) throws IOException {
+        Path arquivo = diretorio.resolve("regras.csv");
+        Files.writeString(arquivo, conteudo);
+        return arquivo;
+    }
+
+    private static TributacaoService servico(Path arquivo) {
+        NfceConfiguration configuracao = NfceFixtures.configuracao();
+        configuracao.getTributacao().setHabilitada(true);
+        configuracao.getTributacao().setRegras(arquivo.toUri().toString());
+        return new TributacaoService(new DefaultResourceLoader(), configuracao);
+    }
+
+    private static BigDecimal percentual(BigDecimal base, String aliquota) {
+        return base.multiply(new BigDecimal(aliquota)).divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ValidacaoLoteChaveServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ChaveAcessoService chaveAcessoService = new ChaveAcessoService();
+    private final ValidacaoLoteChaveService validacaoLoteChaveService =
+            new ValidacaoLoteChaveService(chaveAcessoService, objectMapper);
+
+    @Test
+    void deveListarChavesInvalidasNaOrdemDaEntradaComOMotivo() throws Exception {
+        // Várias chaves por bloco para exercitar o processamento paralelo e a ordem da saída
+        int quantidade = ValidacaoLoteChaveService.TAMANHO_BLOCO * 5 + 17;
+        StringBuilder entrada = new StringBuilder();
+        List<String> esperadas = new ArrayList<>();
+
+        for (int i = 1; i <= quantidade; i++) {
+            String chave = chaveAcessoService.gerarChaveAcesso(35, NfceFixtures.DATA_EMISSAO,
+                    NfceFixtures.CNPJ_EMITENTE, "65", 1, i, 1, 12345678);
+            String linha = switch (i % 1000) {
+                case 1 -> chave.substring(1);
+                case 2 -> chave.substring(0, 10) + "X" + chave.substring(11);
+                case 3 -> chave.substring(0, 43) + ((chave.charAt(43) - '0' + 1) % 10);
+                case 4 -> comDigitoVerificador(chaveAcessoService, "99" + chave.substring(2, 43));
+                case 5 -> comDigitoVerificador(chaveAcessoService, chave.substring(0, 4) + "13" + chave.substring(6, 43));
+                default -> chave;
+            };
+            String motivo = switch (i % 1000) {
+                case 1 -> "TAMANHO_INVALIDO";
+                case 2 -> "CARACTERE_NAO_NUMERICO";
+                case 3 -> "DIGITO_VERIFICADOR_INVALIDO";
+                case 4 -> "UF_DESCONHECIDA";
+                case 5 -> "MES_INVALIDO";
+                default -> null;
+            };
+            if (motivo != null) {
+                esperadas.add(i + ":" + motivo);
+            }
+            entrada.append(linha).append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+
+        List<JsonNode> saida = validar(entrada.toString());
+
+        JsonNode resumo = saida.remove(saida.size() - 1);
+        assertEquals(quantidade, resumo.get("total").asLong());
+        assertEquals(esperadas.size(), resumo.get("invalidas").asLong());
+        assertEquals(esperadas, saida.stream().map(no -> no.get("linha").asLong() + ":" + no.get("motivo").asText()).toList());
+    }
+
+    @Test
+    void deveIgnorarLinhasEmBrancoETruncarLinhasLongas() throws Exception {
+        String valida = chaveAcessoService.gerarChaveAcesso(35, NfceFixtures.DATA_EMISSAO,
+                NfceFixtures.CNPJ_EMITENTE, "65", 1, 1, 1, 12345678);
+        String longa = "1".repeat(10_000);
+
+        List<JsonNode> saida = validar("\n" + valida + "\n\n" + longa + "\n" + valida);
+
+        assertEquals(2, saida.size());
+        assertEquals(4, saida.get(0).get("linha").asLong());
+        assertEquals("TAMANHO_INVALIDO", saida.get(0).get("motivo").asText());
+        assertEquals(ValidacaoLoteChaveService.TAMANHO_MAXIMO_LINHA, saida.get(0).get("chave").asText().length());
+        assertEquals(3, saida.get(1).get("total").asLong());
+        assertEquals(1, saida.get(1).get("invalidas").asLong());
+    }
+
+    private List<JsonNode> validar(String entrada) throws Exception {
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        validacaoLoteChaveService.validar(new ByteArrayInputStream(entrada.getBytes(StandardCharsets.ISO_8859_1)), saida);
+
+        List<JsonNode> linhas = new ArrayList<>();
+        for (String linha : saida.toString(StandardCharsets.UTF_8).split("\n")) {
+            linhas.add(objectMapper.readTree(linha));
+        }
+        return linhas;
+    }
+
+    private static String comDigitoVerificador(ChaveAcessoService servico, String chaveSemDv) {
+        for (int dv = 0; dv <= 9; dv++) {
+            if (servico.validarChaveAcesso(chaveSemDv + dv)) {
+                return chaveSemDv + dv;
+            }
+        }
+        throw new IllegalStateException("Sem dígito verificador para " + chaveSemDv);
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.setxpro.nfce_java.infra.services;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Compara a saída do XmlService com arquivos gerados pela implementação DOM + Transformer anterior.
+ */
+class XmlServiceTest {
+
+    private final XmlService xmlService = new XmlService(NfceFixtures.configuracao());
+
+    @ParameterizedTest
+    @CsvSource({
+            "1, xml/nfce-1-item.xml",
+            "3, xml/nfce-3-itens.xml",
+            "20, xml/nfce-20-itens.xml"
+    })
+    void deveGerarXmlIdenticoAoLayoutDeReferencia(int quantidadeItens, String arquivo) throws IOException {
+        byte[] esperado = lerRecurso(arquivo);
+
+        byte[] gerado = xmlService.gerarXmlNfce(NfceFixtures.nota(quantidadeItens)).getBytes(StandardCharsets.UTF_8);
+
+        assertArrayEquals(esperado, gerado, "XML divergente de " + arquivo);
+    }
+
+    private byte[] lerRecurso(String caminho) throws IOException {
+        try (InputStream entrada = getClass().getClassLoader().getResourceAsStream(caminho)) {
+            assertNotNull(entrada, "Recurso não encontrado: " + caminho);
+            return entrada.readAllBytes();
+        }
+    }
+}
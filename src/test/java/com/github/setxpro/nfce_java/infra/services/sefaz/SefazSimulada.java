@@ -0,0 +1,511 @@
+package com.github.setxpro.nfce_java.infra.services.sefaz;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsExchange;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SEFAZ local para testes e cargas: responde {@code nfeAutorizacaoLote}, {@code nfeRetAutorizacaoLote},
+ * {@code nfeConsultaNF}, {@code nfeRecepcaoEvento} e {@code nfeStatusServicoNF} em qualquer caminho, sem validar
+ * esquema nem assinatura.
+ * <p>
+ * Cada requisição espera {@code latencia}. Lotes síncronos ({@code indSinc=1}) voltam processados (104); os
+ * assíncronos recebem recibo (103) e a consulta devolve 105 até passar {@code tempoProcessamento}. Cada NFC-e é
+ * rejeitada com probabilidade {@code taxaRejeicao}. Com um {@link SSLContext} o servidor sobe em HTTPS e exige
+ * certificado do cliente, como a SEFAZ. Lotes de eventos voltam processados (128) com um {@code retEvento} por
+ * evento: registrado (135) ou rejeitado com a mesma {@code taxaRejeicao}.
+ * <p>
+ * As NFC-e autorizadas ficam guardadas: reenviadas voltam com duplicidade (204) e a consulta pela chave devolve o
+ * {@code protNFe} (100) ou "não consta" (217). Lote síncrono com mais de uma NFC-e é rejeitado (452).
+ * {@link #perderRespostas} e {@link #omitirProtocolos} simulam o retorno que não chega ao emissor.
+ * <p>
+ * A {@link Disponibilidade} simula as quedas: PARALISADA responde 108 a tudo, FORA_DO_AR responde HTTP 503.
+ * {@link #oscilar} alterna entre OPERANDO e FORA_DO_AR num período fixo. Para uma carga fora dos testes:
+ * <pre>
+ * java -cp target/test-classes:target/classes com.github.setxpro.nfce_java.infra.services.sefaz.SefazSimulada \
+ *     --porta=8089 --latencia-ms=150 --processamento-ms=1000 --taxa-rejeicao=0.02 --oscilacao-ms=20000
+ * </pre>
+ */
+public final class SefazSimulada implements AutoCloseable {
+
+    public static final String REJEICAO_SIMULADA = "999";
+
+    private static final Pattern CHAVE = Pattern.compile("Id=\"NFe(\\d{44})\"");
+    private static final Pattern EVENTO = Pattern.compile("Id=\"ID(\\d{6})(\\d{44})(\\d{2})\"");
+    private static final Pattern RECIBO = Pattern.compile("<nRec>(\\d+)</nRec>");
+    private static final Pattern CHAVE_CONSULTA = Pattern.compile("<chNFe>(\\d{44})</chNFe>");
+    private static final Pattern NUMERO_PROTOCOLO = Pattern.compile("<nProt>(\\d+)</nProt>");
+    private static final DateTimeFormatter DATA_HORA = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssXXX");
+    private static final ZoneOffset FUSO = ZoneOffset.ofHours(-3);
+
+    private final HttpServer servidor;
+    // Threads de plataforma: o HttpsServer do JDK lê e escreve dentro de blocos synchronized, o que prende a
+    // thread portadora de uma virtual thread e, com poucos núcleos, trava o próprio cliente no mesmo processo
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, Lote> lotes = new ConcurrentHashMap<>();
+    // protNFe de cada chave autorizada
+    private final Map<String, String> autorizadas = new ConcurrentHashMap<>();
+    private final AtomicLong sequenciaRecibo = new AtomicLong();
+    private final AtomicLong sequenciaProtocolo = new AtomicLong();
+    private final AtomicInteger requisicoesAutorizacao = new AtomicInteger();
+    private final AtomicInteger requisicoesConsulta = new AtomicInteger();
+    private final AtomicInteger requisicoesStatus = new AtomicInteger();
+    private final AtomicInteger requisicoesEvento = new AtomicInteger();
+    private final AtomicInteger requisicoesConsultaProtocolo = new AtomicInteger();
+    private final AtomicInteger respostasAPerder = new AtomicInteger();
+    private final AtomicInteger protocolosAOmitir = new AtomicInteger();
+    private final AtomicInteger requisicoesRecusadas = new AtomicInteger();
+    private final AtomicInteger documentosRecebidos = new AtomicInteger();
+    private final AtomicInteger eventosRecebidos = new AtomicInteger();
+    private final Set<String> titularesTls = ConcurrentHashMap.newKeySet();
+    private volatile Parametros parametros;
+    private volatile Disponibilidade disponibilidade = Disponibilidade.OPERANDO;
+    private ScheduledExecutorService oscilador;
+    private ScheduledFuture<?> oscilacao;
+
+    public enum Disponibilidade {
+        OPERANDO, PARALISADA, FORA_DO_AR
+    }
+
+    /**
+     * @param latencia           espera de cada requisição
+     * @param tempoProcessamento tempo até um lote assíncrono ficar pronto
+     * @param taxaRejeicao       fração das NFC-e rejeitadas, de 0 a 1
+     */
+    public record Parametros(Duration latencia, Duration tempoProcessamento, double taxaRejeicao) {
+
+        public Parametros {
+            if (taxaRejeicao < 0 || taxaRejeicao > 1) {
+                throw new IllegalArgumentException("Taxa de rejeição deve estar entre 0 e 1: " + taxaRejeicao);
+            }
+        }
+    }
+
+    private record Lote(long prontoEm, List<String> protocolos) {
+    }
+
+    /**
+     * Sobe o servidor em {@code porta}; 0 escolhe uma porta livre.
+     */
+    public SefazSimulada(int porta, Parametros parametros) throws IOException {
+        this(porta, parametros, null);
+    }
+
+    /**
+     * Com {@code tls} não nulo sobe em HTTPS com autenticação do cliente obrigatória; os certificados aceitos
+     * são os que as autoridades de {@code tls} validam.
+     */
+    public SefazSimulada(int porta, Parametros parametros, SSLContext tls) throws IOException {
+        this.parametros = parametros;
+        InetSocketAddress endereco = new InetSocketAddress("localhost", porta);
+        if (tls != null) {
+            HttpsServer https = HttpsServer.create(endereco, 0);
+            https.setHttpsConfigurator(new HttpsConfigurator(tls) {
+                @Override
+                public void configure(HttpsParameters params) {
+                    SSLParameters ssl = getSSLContext().getDefaultSSLParameters();
+                    ssl.setNeedClientAuth(true);
+                    params.setSSLParameters(ssl);
+                }
+            });
+            this.servidor = https;
+        } else {
+            this.servidor = HttpServer.create(endereco, 0);
+        }
+        this.servidor.createContext("/", this::atender);
+        this.servidor.setExecutor(executor);
+        this.servidor.start();
+    }
+
+    public int porta() {
+        return servidor.getAddress().getPort();
+    }
+
+    public String url(String caminho) {
+        return (servidor instanceof HttpsServer ? "https" : "http") + "://localhost:" + porta() + caminho;
+    }
+
+    public void configurar(Parametros parametros) {
+        this.parametros = parametros;
+    }
+
+    public Disponibilidade disponibilidade() {
+        return disponibilidade;
+    }
+
+    /**
+     * Muda a disponibilidade e para a oscilação, se houver.
+     */
+    public synchronized void disponibilidade(Disponibilidade nova) {
+        pararOscilacao();
+        disponibilidade = nova;
+    }
+
+    /**
+     * Alterna entre OPERANDO e FORA_DO_AR a cada {@code periodo}, começando fora do ar.
+     */
+    public synchronized void oscilar(Duration periodo) {
+        pararOscilacao();
+        if (oscilador == null) {
+            oscilador = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("sefaz-simulada-oscilacao").daemon().factory());
+        }
+        disponibilidade = Disponibilidade.FORA_DO_AR;
+        oscilacao = oscilador.scheduleAtFixedRate(() -> disponibilidade =
+                        disponibilidade == Disponibilidade.OPERANDO ? Disponibilidade.FORA_DO_AR : Disponibilidade.OPERANDO,
+                periodo.toMillis(), periodo.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void pararOscilacao() {
+        if (oscilacao != null) {
+            oscilacao.cancel(false);
+            oscilacao = null;
+        }
+    }
+
+    public int requisicoesAutorizacao() {
+        return requisicoesAutorizacao.get();
+    }
+
+    public int requisicoesConsulta() {
+        return requisicoesConsulta.get();
+    }
+
+    public int requisicoesStatus() {
+        return requisicoesStatus.get();
+    }
+
+    public int requisicoesEvento() {
+        return requisicoesEvento.get();
+    }
+
+    public int requisicoesConsultaProtocolo() {
+        return requisicoesConsultaProtocolo.get();
+    }
+
+    /**
+     * Os próximos {@code quantidade} lotes são processados, mas a resposta vira HTTP 503.
+     */
+    public void perderRespostas(int quantidade) {
+        respostasAPerder.set(quantidade);
+    }
+
+    /**
+     * Os próximos {@code quantidade} documentos são processados, mas o {@code protNFe} deles fica fora do retorno
+     * do lote.
+     */
+    public void omitirProtocolos(int quantidade) {
+        protocolosAOmitir.set(quantidade);
+    }
+
+    /**
+     * Requisições respondidas com 503 por estar FORA_DO_AR.
+     */
+    public int requisicoesRecusadas() {
+        return requisicoesRecusadas.get();
+    }
+
+    public int documentosRecebidos() {
+        return documentosRecebidos.get();
+    }
+
+    public int eventosRecebidos() {
+        return eventosRecebidos.get();
+    }
+
+    /**
+     * Titulares dos certificados de cliente apresentados nas conexões HTTPS.
+     */
+    public Set<String> titularesTls() {
+        return Set.copyOf(titularesTls);
+    }
+
+    private void atender(HttpExchange troca) throws IOException {
+        try (troca) {
+            if (troca instanceof HttpsExchange https) {
+                registrarTitular(https);
+            }
+            String pedido = new String(troca.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            Disponibilidade situacao = disponibilidade;
+            if (situacao == Disponibilidade.FORA_DO_AR) {
+                requisicoesRecusadas.incrementAndGet();
+                responder(troca, 503, "Serviço indisponível");
+                return;
+            }
+            Parametros atual = parametros;
+            if (!atual.latencia().isZero()) {
+                Thread.sleep(atual.latencia());
+            }
+
+            String retorno;
+            if (pedido.contains("<consStatServ")) {
+                requisicoesStatus.incrementAndGet();
+                retorno = situacao == Disponibilidade.OPERANDO
+                        ? retorno("retConsStatServ", RetornoSefaz.SERVICO_EM_OPERACAO, "Serviço em Operação",
+                        "<dhRecbto>" + agora() + "</dhRecbto><tMed>1</tMed>")
+                        : retorno("retConsStatServ", RetornoSefaz.SERVICO_PARALISADO,
+                        "Serviço Paralisado Momentaneamente (curto prazo)", "<dhRecbto>" + agora() + "</dhRecbto>");
+            } else if (situacao == Disponibilidade.PARALISADA) {
+                retorno = retorno(pedido.contains("<enviNFe") ? "retEnviNFe"
+                                : pedido.contains("<envEvento") ? "retEnvEvento"
+                                : pedido.contains("<consSitNFe") ? "retConsSitNFe" : "retConsReciNFe",
+                        RetornoSefaz.SERVICO_PARALISADO, "Serviço Paralisado Momentaneamente (curto prazo)", "");
+            } else if (pedido.contains("<enviNFe")) {
+                requisicoesAutorizacao.incrementAndGet();
+                retorno = autorizar(pedido, atual);
+                if (respostasAPerder.getAndUpdate(restantes -> Math.max(0, restantes - 1)) > 0) {
+                    requisicoesRecusadas.incrementAndGet();
+                    responder(troca, 503, "Serviço indisponível");
+                    return;
+                }
+            } else if (pedido.contains("<consSitNFe")) {
+                requisicoesConsultaProtocolo.incrementAndGet();
+                retorno = consultarProtocolo(pedido);
+            } else if (pedido.contains("<envEvento")) {
+                requisicoesEvento.incrementAndGet();
+                retorno = registrarEventos(pedido, atual);
+            } else if (pedido.contains("<consReciNFe")) {
+                requisicoesConsulta.incrementAndGet();
+                retorno = consultarRecibo(pedido);
+            } else {
+                responder(troca, 400, "Operação não suportada");
+                return;
+            }
+            responder(troca, 200, envelope(retorno));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void registrarTitular(HttpsExchange troca) {
+        try {
+            titularesTls.add(troca.getSSLSession().getPeerPrincipal().getName());
+        } catch (SSLPeerUnverifiedException e) {
+            // Não acontece com autenticação do cliente obrigatória
+        }
+    }
+
+    private String autorizar(String pedido, Parametros atual) {
+        List<String> chaves = new ArrayList<>();
+        Matcher encontradas = CHAVE.matcher(pedido);
+        while (encontradas.find()) {
+            chaves.add(encontradas.group(1));
+        }
+        documentosRecebidos.addAndGet(chaves.size());
+        if (chaves.isEmpty()) {
+            return retorno("retEnviNFe", "225", "Rejeição: Falha no Schema XML do lote de NFe", "");
+        }
+        if (pedido.contains("<indSinc>1</indSinc>") && chaves.size() > 1) {
+            return retorno("retEnviNFe", "452",
+                    "Rejeição: Solicitada resposta síncrona para Lote com mais de uma NF-e (indSinc=1)", "");
+        }
+
+        List<String> protocolos = new ArrayList<>();
+        for (String chave : chaves) {
+            String protocolo = protocolo(chave, atual.taxaRejeicao());
+            if (protocolosAOmitir.getAndUpdate(restantes -> Math.max(0, restantes - 1)) == 0) {
+                protocolos.add(protocolo);
+            }
+        }
+
+        if (pedido.contains("<indSinc>1</indSinc>")) {
+            return retorno("retEnviNFe", RetornoSefaz.LOTE_PROCESSADO, "Lote processado", String.join("", protocolos));
+        }
+
+        String recibo = String.format("35%013d", sequenciaRecibo.incrementAndGet());
+        lotes.put(recibo, new Lote(System.nanoTime() + atual.tempoProcessamento().toNanos(), protocolos));
+        long tMed = Math.max(1, (atual.tempoProcessamento().toMillis() + 999) / 1000);
+        return retorno("retEnviNFe", RetornoSefaz.LOTE_RECEBIDO, "Lote recebido com sucesso",
+                "<infRec><nRec>" + recibo + "</nRec><tMed>" + tMed + "</tMed></infRec>");
+    }
+
+    private String consultarRecibo(String pedido) {
+        Matcher recibo = RECIBO.matcher(pedido);
+        Lote lote = recibo.find() ? lotes.get(recibo.group(1)) : null;
+        if (lote == null) {
+            return retorno("retConsReciNFe", "106", "Lote não localizado", "");
+        }
+        if (System.nanoTime() < lote.prontoEm()) {
+            return retorno("retConsReciNFe", RetornoSefaz.LOTE_EM_PROCESSAMENTO, "Lote em processamento",
+                    "<nRec>" + recibo.group(1) + "</nRec>");
+        }
+        return retorno("retConsReciNFe", RetornoSefaz.LOTE_PROCESSADO, "Lote processado",
+                "<nRec>" + recibo.group(1) + "</nRec>" + String.join("", lote.protocolos()));
+    }
+
+    private String consultarProtocolo(String pedido) {
+        Matcher chave = CHAVE_CONSULTA.matcher(pedido);
+        String protocolo = chave.find() ? autorizadas.get(chave.group(1)) : null;
+        if (protocolo == null) {
+            return retorno("retConsSitNFe", "217", "Rejeição: NF-e não consta na base de dados da SEFAZ", "");
+        }
+        return retorno("retConsSitNFe", RetornoSefaz.AUTORIZADO, "Autorizado o uso da NF-e",
+                "<chNFe>" + chave.group(1) + "</chNFe>" + protocolo);
+    }
+
+    private String registrarEventos(String pedido, Parametros atual) {
+        StringBuilder eventos = new StringBuilder();
+        Matcher ids = EVENTO.matcher(pedido);
+        int quantidade = 0;
+        while (ids.find()) {
+            quantidade++;
+            eventos.append(retEvento(ids.group(1), ids.group(2), ids.group(3), atual.taxaRejeicao()));
+        }
+        eventosRecebidos.addAndGet(quantidade);
+        if (quantidade == 0) {
+            return retorno("retEnvEvento", "225", "Rejeição: Falha no Schema XML do lote de eventos", "");
+        }
+        return retorno("retEnvEvento", "128", "Lote de Evento Processado", eventos.toString());
+    }
+
+    private String retEvento(String tipoEvento, String chave, String sequencia, double taxaRejeicao) {
+        boolean rejeitado = ThreadLocalRandom.current().nextDouble() < taxaRejeicao;
+        StringBuilder ret = new StringBuilder(448)
+                .append("<retEvento versao=\"1.00\"><infEvento>")
+                .append("<tpAmb>2</tpAmb><verAplic>SIMULADA</verAplic><cOrgao>35</cOrgao>");
+        if (rejeitado) {
+            ret.append("<cStat>").append(REJEICAO_SIMULADA).append("</cStat>")
+                    .append("<xMotivo>Rejeição: Erro não catalogado (simulado)</xMotivo>")
+                    .append("<chNFe>").append(chave).append("</chNFe>");
+        } else {
+            ret.append("<cStat>135</cStat><xMotivo>Evento registrado e vinculado a NF-e</xMotivo>")
+                    .append("<chNFe>").append(chave).append("</chNFe>")
+                    .append("<tpEvento>").append(tipoEvento).append("</tpEvento>")
+                    .append("<xEvento>Cancelamento registrado</xEvento>")
+                    .append("<nSeqEvento>").append(Integer.parseInt(sequencia)).append("</nSeqEvento>")
+                    .append("<dhRegEvento>").append(agora()).append("</dhRegEvento>")
+                    .append("<nProt>").append(String.format("135%012d", sequenciaProtocolo.incrementAndGet()))
+                    .append("</nProt>");
+        }
+        return ret.append("</infEvento></retEvento>").toString();
+    }
+
+    private String protocolo(String chave, double taxaRejeicao) {
+        String autorizada = autorizadas.get(chave);
+        if (autorizada != null) {
+            Matcher numero = NUMERO_PROTOCOLO.matcher(autorizada);
+            return "<protNFe versao=\"4.00\"><infProt><tpAmb>2</tpAmb><verAplic>SIMULADA</verAplic>"
+                    + "<chNFe>" + chave + "</chNFe><dhRecbto>" + agora() + "</dhRecbto>"
+                    + "<cStat>204</cStat><xMotivo>Rejeição: Duplicidade de NF-e [nProt:"
+                    + (numero.find() ? numero.group(1) : "") + "]</xMotivo></infProt></protNFe>";
+        }
+        boolean rejeitada = ThreadLocalRandom.current().nextDouble() < taxaRejeicao;
+        String dhRecbto = agora();
+        StringBuilder prot = new StringBuilder(384)
+                .append("<protNFe versao=\"4.00\"><infProt>")
+                .append("<tpAmb>2</tpAmb><verAplic>SIMULADA</verAplic>")
+                .append("<chNFe>").append(chave).append("</chNFe>")
+                .append("<dhRecbto>").append(dhRecbto).append("</dhRecbto>");
+        if (rejeitada) {
+            prot.append("<cStat>").append(REJEICAO_SIMULADA).append("</cStat>")
+                    .append("<xMotivo>Rejeição: Erro não catalogado (simulado)</xMotivo>");
+        } else {
+            prot.append("<nProt>").append(String.format("135%012d", sequenciaProtocolo.incrementAndGet()))
+                    .append("</nProt>")
+                    .append("<cStat>").append(RetornoSefaz.AUTORIZADO).append("</cStat>")
+                    .append("<xMotivo>Autorizado o uso da NF-e</xMotivo>");
+        }
+        String protocolo = prot.append("</infProt></protNFe>").toString();
+        if (!rejeitada) {
+            autorizadas.put(chave, protocolo);
+        }
+        return protocolo;
+    }
+
+    private static String agora() {
+        return OffsetDateTime.now(FUSO).truncatedTo(ChronoUnit.SECONDS).format(DATA_HORA);
+    }
+
+    private static String retorno(String elemento, String cStat, String motivo, String conteudo) {
+        return "<" + elemento + " xmlns=\"" + MensagemSefaz.NAMESPACE_NFE + "\" versao=\"4.00\">"
+                + "<tpAmb>2</tpAmb><verAplic>SIMULADA</verAplic>"
+                + "<cStat>" + cStat + "</cStat><xMotivo>" + motivo + "</xMotivo><cUF>35</cUF>"
+                + conteudo + "</" + elemento + ">";
+    }
+
+    private static String envelope(String retorno) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><soap12:Envelope xmlns:soap12=\""
+                + MensagemSefaz.NAMESPACE_SOAP + "\"><soap12:Body><nfeResultMsg>" + retorno
+                + "</nfeResultMsg></soap12:Body></soap12:Envelope>";
+    }
+
+    private static void responder(HttpExchange troca, int status, String corpo) throws IOException {
+        byte[] bytes = corpo.getBytes(StandardCharsets.UTF_8);
+        troca.getResponseHeaders().set("Content-Type", "application/soap+xml; charset=utf-8");
+        troca.sendResponseHeaders(status, bytes.length);
+        try (OutputStream saida = troca.getResponseBody()) {
+            saida.write(bytes);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        servidor.stop(0);
+        executor.shutdownNow();
+        if (oscilador != null) {
+            oscilador.shutdownNow();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int porta = 8089;
+        long latenciaMs = 100;
+        long processamentoMs = 1000;
+        double taxaRejeicao = 0;
+        long oscilacaoMs = 0;
+        for (String arg : args) {
+            String[] partes = arg.replaceFirst("^--", "").split("=", 2);
+            if (partes.length != 2) {
+                throw new IllegalArgumentException("Argumento inválido: " + arg);
+            }
+            switch (partes[0]) {
+                case "porta" -> porta = Integer.parseInt(partes[1]);
+                case "latencia-ms" -> latenciaMs = Long.parseLong(partes[1]);
+                case "processamento-ms" -> processamentoMs = Long.parseLong(partes[1]);
+                case "taxa-rejeicao" -> taxaRejeicao = Double.parseDouble(partes[1]);
+                case "oscilacao-ms" -> oscilacaoMs = Long.parseLong(partes[1]);
+                default -> throw new IllegalArgumentException("Argumento desconhecido: " + arg);
+            }
+        }
+        SefazSimulada sefaz = new SefazSimulada(porta, new Parametros(Duration.ofMillis(latenciaMs),
+                Duration.ofMillis(processamentoMs), taxaRejeicao));
+        if (oscilacaoMs > 0) {
+            sefaz.oscilar(Duration.ofMillis(oscilacaoMs));
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(sefaz::close));
+        System.out.println("SEFAZ simulada em " + sefaz.url("/") + " - latência " + latenciaMs
+                + " ms, processamento " + processamentoMs + " ms, rejeição " + taxaRejeicao
+                + (oscilacaoMs > 0 ? ", oscilando a cada " + oscilacaoMs + " ms" : ""));
+    }
+}